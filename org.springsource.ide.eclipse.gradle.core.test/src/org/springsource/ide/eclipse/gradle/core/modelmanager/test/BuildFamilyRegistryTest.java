@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager.test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.BuildFamilyRegistry;
+
+public class BuildFamilyRegistryTest extends TestCase {
+
+	private File dir;
+	private GradleProject root;
+	private GradleProject a;
+	private GradleProject b;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dir = File.createTempFile("family", "test").getCanonicalFile();
+		dir.delete();
+		root = project("root");
+		a = project("root/a");
+		b = project("root/b");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		BuildFamilyRegistry.getInstance().clear();
+		FileUtils.deleteDirectory(dir);
+		super.tearDown();
+	}
+
+	public void testRecordAndLookup() throws Exception {
+		BuildFamilyRegistry registry = BuildFamilyRegistry.getInstance();
+		assertNull(registry.getRootLocation(a));
+		assertNull(registry.getFamily(root));
+
+		registry.setRootLocation(root, root.getLocation());
+		registry.setRootLocation(a, root.getLocation());
+		registry.setRootLocation(b, root.getLocation());
+		registry.setFamily(root, Arrays.asList(b, root, a));
+		assertEquals(root.getLocation(), registry.getRootLocation(a));
+		assertFamily(registry.getFamily(root), root, a, b);
+
+		//Persisted in the preferences
+		assertEquals(root.getLocation(), a.getProjectPreferences().getRootProjectLocation());
+		registry.clear();
+		assertEquals(root.getLocation(), registry.getRootLocation(b));
+		assertFamily(registry.getFamily(root), root, a, b);
+
+		registry.setRootLocation(b, null);
+		registry.setFamily(root, Arrays.asList(root, a));
+		assertNull(registry.getRootLocation(b));
+		assertNull(b.getProjectPreferences().getRootProjectLocation());
+		assertFamily(registry.getFamily(root), root, a);
+	}
+
+	/**
+	 * After the first lookup, the preferences are no longer consulted.
+	 */
+	public void testLookupFromMemory() throws Exception {
+		BuildFamilyRegistry registry = BuildFamilyRegistry.getInstance();
+		a.getProjectPreferences().setRootProjectLocation(root.getLocation());
+		assertEquals(root.getLocation(), registry.getRootLocation(a));
+
+		a.getProjectPreferences().setRootProjectLocation(null);
+		assertEquals(root.getLocation(), registry.getRootLocation(a));
+		registry.clear();
+		assertNull(registry.getRootLocation(a));
+	}
+
+	/**
+	 * Only root locations that are different from the known or persisted ones count as changes.
+	 */
+	public void testRootChangeCount() throws Exception {
+		BuildFamilyRegistry registry = BuildFamilyRegistry.getInstance();
+		int changes = registry.getRootChangeCount();
+		registry.setRootLocation(a, root.getLocation());
+		assertEquals(++changes, registry.getRootChangeCount());
+		registry.setRootLocation(a, root.getLocation());
+		assertEquals(changes, registry.getRootChangeCount());
+
+		//Forgetting a project whose preferences didn't change
+		registry.forget(a);
+		registry.setRootLocation(a, root.getLocation());
+		assertEquals(changes, registry.getRootChangeCount());
+
+		//Forgetting a project whose preferences did change
+		a.getProjectPreferences().setRootProjectLocation(null);
+		registry.forget(a);
+		assertEquals(++changes, registry.getRootChangeCount());
+		assertNull(registry.getRootLocation(a));
+
+		registry.setRootLocation(a, b.getLocation());
+		assertEquals(++changes, registry.getRootChangeCount());
+	}
+
+	private void assertFamily(File[] actual, GradleProject... expected) {
+		assertNotNull(actual);
+		File[] locations = new File[expected.length];
+		for (int i = 0; i < locations.length; i++) {
+			locations[i] = expected[i].getLocation();
+		}
+		Arrays.sort(locations);
+		assertEquals(Arrays.asList(locations), Arrays.asList(actual));
+	}
+
+	private GradleProject project(String path) {
+		File location = new File(dir, path);
+		location.mkdirs();
+		return GradleCore.create(location);
+	}
+
+}
@@ -10,17 +10,28 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.gradle.core.modelmanager.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Proxy;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.jobs.Job;
+import org.gradle.tooling.model.ExternalDependency;
+import org.gradle.tooling.model.GradleTask;
 import org.gradle.tooling.model.eclipse.EclipseProject;
+import org.gradle.tooling.model.eclipse.EclipseProjectDependency;
 import org.springsource.ide.eclipse.gradle.core.GradleCore;
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
 import org.springsource.ide.eclipse.gradle.core.modelmanager.BuildResult;
 import org.springsource.ide.eclipse.gradle.core.modelmanager.DefaultModelBuilder;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.ModelSnapshot;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.ToolinApiUtils;
 import org.springsource.ide.eclipse.gradle.core.test.GradleTest;
 import org.springsource.ide.eclipse.gradle.core.util.Distributions;
 import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
@@ -40,6 +51,95 @@ public class DefaultModelBuilderTest extends GradleTest {
 		assertEquals("quickstart",  model.getName());
 	}
 	
+	/**
+	 * Models are detached from the tooling API: they are plain objects that don't keep the tooling API's
+	 * objects alive, and files and strings are shared with other models.
+	 */
+	public void testDetachedModel() throws Throwable {
+		File projectLoc = getTestProjectCopy("multiproject");
+		GradleProject project = GradleCore.create(projectLoc);
+		BuildResult<EclipseProject> result = builder.buildModel(project, EclipseProject.class, new NullProgressMonitor());
+		assertSucceeded(result);
+		EclipseProject built = result.getModel();
+		assertTrue(ModelSnapshot.isDetached(built));
+
+		EclipseProject raw = ToolinApiUtils.buildModel(project, EclipseProject.class, new NullProgressMonitor());
+		assertFalse(ModelSnapshot.isDetached(raw));
+		EclipseProject detached = new ModelSnapshot.Capture().detach(raw, EclipseProject.class);
+		assertEquals(raw.getName(), detached.getName());
+		assertEquals(raw.getChildren().size(), detached.getChildren().size());
+		assertEquals(raw.getProjectDependencies().size(), detached.getProjectDependencies().size());
+		assertEquals(raw.getGradleProject().getTasks().size(), detached.getGradleProject().getTasks().size());
+
+		EclipseProject rawSub = raw.getChildren().getAt(0);
+		EclipseProject sub = detached.getChildren().getAt(0);
+		assertEquals(rawSub.getClasspath().size(), sub.getClasspath().size());
+		assertNoProxies(detached);
+		assertSame(detached, sub.getParent());
+		assertSame(sub.getGradleProject(), detached.getGradleProject().findByPath(":subproject"));
+		assertSame(detached.getGradleProject(), sub.getGradleProject().getParent());
+
+		//Files are shared with the model that was built before
+		File junit = getClasspathEntry(sub, "junit").getFile();
+		assertNotSame(junit, getClasspathEntry(rawSub, "junit").getFile());
+		assertSame(junit, getClasspathEntry(built.getChildren().getAt(0), "junit").getFile());
+
+		//Detached models survive a trip through a snapshot
+		EclipseProject restored = ModelSnapshot.restore(serialize(new ModelSnapshot.Capture().capture(detached, EclipseProject.class)), EclipseProject.class);
+		assertEquals("multiproject", restored.getName());
+		assertEquals("subproject", restored.getChildren().getAt(0).getName());
+		assertSame(restored, restored.getChildren().getAt(0).getParent());
+		assertEquals(junit, getClasspathEntry(restored.getChildren().getAt(0), "junit").getFile());
+
+		//The tooling API's model can be garbage collected
+		WeakReference<EclipseProject> rawRef = new WeakReference<EclipseProject>(raw);
+		raw = null;
+		rawSub = null;
+		for (int i = 0; i < 20 && rawRef.get()!=null; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		assertNull(rawRef.get());
+		assertEquals("multiproject", detached.getName());
+	}
+
+	private void assertNoProxies(EclipseProject project) {
+		assertFalse(Proxy.isProxyClass(project.getClass()));
+		assertFalse(Proxy.isProxyClass(project.getGradleProject().getClass()));
+		for (ExternalDependency e : project.getClasspath()) {
+			assertFalse(Proxy.isProxyClass(e.getClass()));
+		}
+		for (EclipseProjectDependency d : project.getProjectDependencies()) {
+			assertFalse(Proxy.isProxyClass(d.getClass()));
+		}
+		for (GradleTask t : project.getGradleProject().getTasks()) {
+			assertFalse(Proxy.isProxyClass(t.getClass()));
+			assertSame(project.getGradleProject(), t.getProject());
+		}
+		for (EclipseProject child : project.getChildren()) {
+			assertNoProxies(child);
+		}
+	}
+
+	private ExternalDependency getClasspathEntry(EclipseProject project, String name) {
+		for (ExternalDependency e : project.getClasspath()) {
+			if (e.getFile().getName().startsWith(name)) {
+				return e;
+			}
+		}
+		fail("No '"+name+"' jar on the classpath of "+project.getName());
+		return null;
+	}
+
+	private Object serialize(Object captured) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(captured);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		return in.readObject();
+	}
+
 	public void testBuildModelWithDifferentReleases() throws Exception {
 		class Result {
 			int minorVersion;
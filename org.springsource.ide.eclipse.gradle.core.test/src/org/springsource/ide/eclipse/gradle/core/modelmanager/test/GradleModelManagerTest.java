@@ -12,10 +12,14 @@ package org.springsource.ide.eclipse.gradle.core.modelmanager.test;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.AssertionFailedError;
 
@@ -23,6 +27,7 @@ import org.apache.commons.io.FileUtils;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.jobs.Job;
 import org.gradle.tooling.model.DomainObjectSet;
 import org.gradle.tooling.model.UnsupportedMethodException;
@@ -35,8 +40,10 @@ import org.springsource.ide.eclipse.gradle.core.GradleCore;
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
 import org.springsource.ide.eclipse.gradle.core.classpathcontainer.FastOperationFailedException;
 import org.springsource.ide.eclipse.gradle.core.modelmanager.AbstractModelBuilder;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.FamilyModelBuilder;
 import org.springsource.ide.eclipse.gradle.core.modelmanager.GradleModelManager;
 import org.springsource.ide.eclipse.gradle.core.modelmanager.IGradleModelListener;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.WorkspaceSnapshot;
 import org.springsource.ide.eclipse.gradle.core.test.GradleTest;
 import org.springsource.ide.eclipse.gradle.core.test.util.TestUtils;
 import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
@@ -959,6 +966,278 @@ public class GradleModelManagerTest extends GradleTest {
 		mgr.getModel(project("animal/bird/swallow"), BarModel.class, new NullProgressMonitor());
 	}
 	
+	/**
+	 * Builds for projects in unrelated build families should not block one another.
+	 * Requests for members of the same family should still share a single build.
+	 */
+	public void testIndependentFamiliesBuildInParallel() throws Exception {
+		GradleProject animal = project("animal");
+		GradleProject people = project("people");
+		
+		//We need at least one succesful model build per family (to be able to determine grouping)
+		mgr.getModel(animal, FooHierarchyModel.class, new NullProgressMonitor());
+		mgr.getModel(people, FooHierarchyModel.class, new NullProgressMonitor());
+		mgr.invalidate();
+		builder.reset();
+		
+		builder.expectOverlappingBuilds(2);
+		
+		List<ModelPromise<FooHierarchyModel>> promises = new ArrayList<ModelPromise<FooHierarchyModel>>();
+		for (GradleProject project : testProjects()) {
+			promises.add(getModelPromise(project, FooHierarchyModel.class));
+		}
+		for (ModelPromise<FooHierarchyModel> promise : promises) {
+			promise.join();
+		}
+		
+		builder.dump();
+		assertEquals(2, builder.totalBuilds()); //one per family
+		assertTrue("Builds did not overlap", builder.buildsOverlapped()); //both families built at the same time
+		assertEquals(2, builder.peakConcurrentBuilds());
+	}
+	
+	/**
+	 * Many requests for single-project models of different projects should build concurrently.
+	 */
+	public void testIndependentSingleBuildsInParallel() throws Exception {
+		List<GradleProject> projects = testProjects();
+		builder.expectOverlappingBuilds(projects.size());
+		
+		List<ModelPromise<FooModel>> promises = new ArrayList<ModelPromise<FooModel>>();
+		for (GradleProject project : projects) {
+			promises.add(getModelPromise(project, FooModel.class));
+		}
+		for (ModelPromise<FooModel> promise : promises) {
+			promise.join();
+		}
+		
+		assertEquals(projects.size(), builder.totalBuilds());
+		assertTrue("Builds did not overlap", builder.buildsOverlapped());
+	}
+	
+	public void testMaxConcurrentBuilds() throws Exception {
+		builder.setBuildDuration(500);
+		builder.setMaxConcurrentBuilds(2);
+		
+		List<GradleProject> projects = testProjects();
+		List<ModelPromise<FooModel>> promises = new ArrayList<ModelPromise<FooModel>>();
+		for (GradleProject project : projects) {
+			promises.add(getModelPromise(project, FooModel.class));
+		}
+		for (ModelPromise<FooModel> promise : promises) {
+			FooModel model = promise.join();
+			assertNotNull(model.getFoo());
+		}
+		
+		assertEquals(projects.size(), builder.totalBuilds());
+		assertTrue("Limit exceeded: "+builder.peakConcurrentBuilds(), builder.peakConcurrentBuilds()<=2);
+	}
+	
+	/**
+	 * A request for a supertype model should be satisfied by a concurrently executing build
+	 * of a subtype model rather than start a build of its own.
+	 */
+	public void testSupertypeRequestJoinsSubtypeBuild() throws Exception {
+		GradleProject animal = project("animal");
+		GradleProject cow = project("animal/mamal/cow");
+
+		//We need at least one succesful model build (to be able to determine grouping)
+		mgr.getModel(animal, FooHierarchyModel.class, new NullProgressMonitor());
+		mgr.invalidate();
+		builder.reset();
+
+		builder.setBuildDuration(1000);
+		ModelPromise<FooHierarchyModel> fooPromise = getModelPromise(animal, FooHierarchyModel.class);
+		Thread.sleep(200); //"animal" build should now be underway.
+		ModelPromise<HierarchicalEclipseProject> hierarchyPromise = getModelPromise(cow, HierarchicalEclipseProject.class);
+
+		assertEquals("Foo(animal)", fooPromise.join().getFoo());
+		assertEquals("cow", hierarchyPromise.join().getName());
+		assertEquals(1, builder.totalBuilds());
+	}
+
+	/**
+	 * Canceling one of several requests waiting for the same build should not cancel the
+	 * build on which the other requests depend.
+	 */
+	public void testCancelingJoinedRequestKeepsBuild() throws Exception {
+		GradleProject animal = project("animal");
+		builder.setBuildDuration(1000); //give us some time to cancel a request.
+
+		ModelPromise<FooModel> initiator = getModelPromise(animal, FooModel.class);
+		Thread.sleep(200); //build should now be underway.
+		ModelPromise<FooModel> joiner = getModelPromise(animal, FooModel.class);
+		Thread.sleep(200);
+		joiner.cancel();
+
+		try {
+			joiner.join();
+			fail("Should have been canceled");
+		} catch (Throwable e) {
+			assertTrue("Expected cancelation but got: "+e, ExceptionUtil.isCancelation(e));
+		}
+		assertEquals("Foo(animal)", initiator.join().getFoo());
+		assertEquals(1, builder.totalBuilds());
+	}
+
+	/**
+	 * A request that comes along after the build it could join was canceled should not share in the
+	 * cancelation, but get its model from a new build.
+	 */
+	public void testLateRequestAfterCancelBuildsAgain() throws Exception {
+		GradleProject animal = project("animal");
+		builder.setBuildDuration(1000); //give us some time to cancel a build.
+
+		ModelPromise<FooModel> initiator = getModelPromise(animal, FooModel.class);
+		while (builder.totalBuilds()==0) {
+			Thread.sleep(10); //wait for the build to get underway.
+		}
+		initiator.cancel();
+		ModelPromise<FooModel> late = getModelPromise(animal, FooModel.class);
+
+		try {
+			initiator.join();
+			fail("Should have been canceled");
+		} catch (Throwable e) {
+			assertTrue("Expected cancelation but got: "+e, ExceptionUtil.isCancelation(e));
+		}
+		assertEquals("Foo(animal)", late.join().getFoo());
+		assertEquals(2, builder.totalBuilds());
+	}
+
+	/**
+	 * Models of a type the builder can build for a whole family should be built with a single
+	 * build per family, also for the first request when the family isn't known yet.
+	 */
+	public void testFamilyBuild() throws Exception {
+		BazModel model = mgr.getModel(project("animal/mamal/cow"), BazModel.class, new NullProgressMonitor());
+		assertEquals("Baz(cow)", model.getBaz());
+		assertEquals(1, builder.totalBuilds());
+		assertEquals(1, builder.count(project("animal"), BazModel.class));
+
+		//All family members were built together with the cow.
+		for (String name : new String[] {"animal", "animal/mamal", "animal/mamal/dog", "animal/bird", "animal/bird/penguin"}) {
+			assertEquals("Baz("+new File(name).getName()+")", mgr.getModel(project(name), BazModel.class).getBaz());
+		}
+
+		mgr.invalidate();
+		builder.reset();
+		builder.setBuildDuration(500);
+
+		List<ModelPromise<BazModel>> promises = new ArrayList<ModelPromise<BazModel>>();
+		for (GradleProject project : testProjects()) {
+			promises.add(getModelPromise(project, BazModel.class));
+		}
+		for (ModelPromise<BazModel> promise : promises) {
+			assertNotNull(promise.join().getBaz());
+		}
+		builder.dump();
+		assertEquals(2, builder.totalBuilds()); //one per family
+		assertEquals(1, builder.count(project("animal"), BazModel.class));
+		assertEquals(1, builder.count(project("people"), BazModel.class));
+	}
+
+	public void testFamilyBuildFailure() throws Exception {
+		GradleProject animal = project("animal");
+		//We need at least one succesful model build (to know the family members)
+		mgr.getModel(animal, BazModel.class, new NullProgressMonitor());
+		mgr.invalidate();
+		builder.reset();
+
+		BadProjectException error = new BadProjectException("animal");
+		builder.addError(BazModel.class, animal, error);
+		try {
+			mgr.getModel(project("animal/mamal/dog"), BazModel.class, new NullProgressMonitor());
+			fail("Should have failed");
+		} catch (CoreException e) {
+			assertEquals(error, ExceptionUtil.getDeepestCause(e));
+		}
+		//Failure is cached for the whole family
+		try {
+			mgr.getModel(project("animal/bird"), BazModel.class);
+			fail("Should have failed");
+		} catch (CoreException e) {
+			assertEquals(error, ExceptionUtil.getDeepestCause(e));
+		}
+		assertEquals(1, builder.totalBuilds());
+	}
+
+	/**
+	 * Rebuilding the models of several members of a family should invalidate the whole family once, and
+	 * build it with a single build.
+	 */
+	public void testRebuildFamily() throws Exception {
+		List<GradleProject> animals = Arrays.asList(project("animal/mamal/cow"), project("animal/bird/penguin"), project("animal/mamal"));
+		List<GradleProject> people = Arrays.asList(project("people/john"), project("people/mary"));
+		for (Class<?> type : new Class<?>[] {BazModel.class, FooHierarchyModel.class}) {
+			//We need a succesful build of each family first (to know the family members)
+			mgr.getModel(project("animal"), type, new NullProgressMonitor());
+			mgr.getModel(project("people"), type, new NullProgressMonitor());
+			Object dogModel = mgr.getModel(project("animal/mamal/dog"), type);
+			builder.reset();
+
+			mgr.rebuildFamily(animals, type, new NullProgressMonitor());
+			mgr.rebuildFamily(people, type, new NullProgressMonitor());
+			builder.dump();
+			assertEquals(2, builder.totalBuilds()); //one per root
+			assertEquals(1, builder.count(project("animal"), type));
+			assertEquals(1, builder.count(project("people"), type));
+
+			//Members that weren't asked for got new models from the same build.
+			Object newDogModel = mgr.getModel(project("animal/mamal/dog"), type);
+			assertNotSame(dogModel, newDogModel);
+			assertEquals(2, builder.totalBuilds());
+		}
+	}
+
+	/**
+	 * Rebuilding the models of a family for several model types invalidates the family once, so that the
+	 * models built for one type are still there after building the next.
+	 */
+	public void testRebuildFamilyTypes() throws Exception {
+		mgr.getModel(project("animal"), BazModel.class, new NullProgressMonitor());
+		mgr.getModel(project("animal"), FooHierarchyModel.class, new NullProgressMonitor());
+		builder.reset();
+
+		Map<Class<?>, List<GradleProject>> byType = new LinkedHashMap<Class<?>, List<GradleProject>>();
+		byType.put(BazModel.class, Arrays.asList(project("animal/mamal/cow")));
+		byType.put(FooHierarchyModel.class, Arrays.asList(project("animal/bird/penguin")));
+		mgr.rebuildFamily(byType, new NullProgressMonitor());
+		assertEquals(2, builder.totalBuilds()); //one per type
+		assertEquals(1, builder.count(project("animal"), BazModel.class));
+		assertEquals(1, builder.count(project("animal"), FooHierarchyModel.class));
+
+		assertNotNull(mgr.getModel(project("animal/mamal/cow"), BazModel.class));
+		assertNotNull(mgr.getModel(project("animal/bird/penguin"), FooHierarchyModel.class));
+		assertEquals(2, builder.totalBuilds());
+	}
+
+	/**
+	 * Building a model with companion types should put models of the companion types for the whole
+	 * family in the cache.
+	 */
+	public void testCompanionModels() throws Exception {
+		builder.setCompanionTypes(FooHierarchyModel.class, BazModel.class);
+		FooHierarchyModel model = mgr.getModel(project("animal/bird"), FooHierarchyModel.class, new NullProgressMonitor());
+		assertEquals("Foo(bird)", model.getFoo());
+		assertEquals(1, builder.totalBuilds());
+
+		for (GradleProject project : testProjects(project("animal").getLocation(), new ArrayList<GradleProject>())) {
+			BazModel baz = mgr.getModel(project, BazModel.class);
+			assertEquals("Baz("+project.getLocation().getName()+")", baz.getBaz());
+		}
+		assertEquals("Baz(animal)", mgr.getModel(project("animal"), BazModel.class).getBaz());
+		assertEquals(1, builder.totalBuilds());
+
+		//Other families are not affected
+		try {
+			mgr.getModel(project("people/john"), BazModel.class);
+			fail("Should have thrown FastOperationFailedException");
+		} catch (FastOperationFailedException e) {
+			//OK!
+		}
+	}
+
 	//TODO: if make 'slow request' which starts a build, then a concurrent fast request...
 	// the fast request should fail fast and not block during the build.
 		
@@ -1230,6 +1509,21 @@ public class GradleModelManagerTest extends GradleTest {
 	public interface BarModel {
 		String getBar();
 	}
+
+	public interface BazModel {
+		String getBaz();
+	}
+
+	public class BazModelImpl extends MockModel implements BazModel {
+		public BazModelImpl(File loc) {
+			super(loc);
+		}
+
+		@Override
+		public String getBaz() {
+			return "Baz("+loc.getName()+")";
+		}
+	}
 	
 	public interface FooHierarchyModel extends HierarchicalEclipseProject {
 		String getFoo();
@@ -1239,7 +1533,13 @@ public class GradleModelManagerTest extends GradleTest {
 		String getBar();
 	}
 	
-	public class MockModelBuilder extends AbstractModelBuilder {
+	public class MockModelBuilder extends AbstractModelBuilder implements FamilyModelBuilder {
+
+		/**
+		 * Seconds a build waits for other builds to start, when tests expect overlapping builds. Only reached
+		 * when the builds don't overlap, so it can be generous.
+		 */
+		private static final int OVERLAP_TIMEOUT = 30;
 		
 		Map<String, Integer> buildCounters = new HashMap<String, Integer>();
 		Map<String, Throwable> errors = new HashMap<String, Throwable>();
@@ -1257,9 +1557,29 @@ public class GradleModelManagerTest extends GradleTest {
 			buildTime = duration;
 		}
 
-		public void reset() {
+		public synchronized void reset() {
 			buildCounters = new HashMap<String, Integer>();
 			errors = new HashMap<String, Throwable>();
+			peakBuilds = 0;
+		}
+		
+		private int activeBuilds = 0; //number of builds currently executing
+		private int peakBuilds = 0; //highest value activeBuilds has reached since last reset
+		
+		private synchronized void buildStarted() {
+			activeBuilds++;
+			peakBuilds = Math.max(peakBuilds, activeBuilds);
+		}
+		
+		private synchronized void buildFinished() {
+			activeBuilds--;
+		}
+		
+		/**
+		 * @return the maximum number of builds that were executing at the same time since last reset.
+		 */
+		public synchronized int peakConcurrentBuilds() {
+			return peakBuilds;
 		}
 
 		private long buildTime = 0; //to simulate that builds are 'slow'. Disabled by default. Must
@@ -1286,6 +1606,7 @@ public class GradleModelManagerTest extends GradleTest {
 		protected <T> T doBuild(GradleProject project, Class<T> requiredType, IProgressMonitor monitor) throws CoreException {
 			System.out.println(">> building "+project.getLocation().getName()+"::"+requiredType.getSimpleName());
 			incrementBuildCount(project, requiredType);
+			buildStarted();
 			monitor.beginTask("Building of type "+requiredType.getSimpleName()+" for '"+project.getDisplayName()+"'", 1);
 			try {
 				simulateBuildTime(monitor);
@@ -1296,12 +1617,106 @@ public class GradleModelManagerTest extends GradleTest {
 				}
 				throw ExceptionUtil.coreException("No such project: "+project.getLocation());
 			} finally {
+				buildFinished();
 				System.out.println("<< building "+project.getLocation().getName()+"::"+requiredType.getSimpleName());
 				monitor.done();
 			}
 		}
 
+		private Map<Class<?>, Class<?>[]> companionTypes = new HashMap<Class<?>, Class<?>[]>();
+
+		@Override
+		public boolean canBuildFamily(Class<?> type) {
+			return BazModel.class.equals(type);
+		}
+
+		public void setCompanionTypes(Class<?> type, Class<?>... companions) {
+			companionTypes.put(type, companions);
+		}
+
+		@Override
+		public Class<?>[] getCompanionTypes(Class<?> type) {
+			return companionTypes.get(type);
+		}
+
+		/**
+		 * Builds the model for a given project, and the companion models for all projects in its hierarchy. The
+		 * build is counted as a build of the root type for the given project.
+		 */
+		@Override
+		public WorkspaceSnapshot buildSnapshot(GradleProject project, Class<?> rootType, Class<?>[] companions, IProgressMonitor monitor) throws CoreException {
+			System.out.println(">> building snapshot "+project.getLocation().getName()+"::"+rootType.getSimpleName());
+			acquireBuildSlot(monitor);
+			incrementBuildCount(project, rootType);
+			buildStarted();
+			try {
+				simulateBuildTime(monitor);
+				checkError(project, rootType);
+				WorkspaceSnapshot snapshot = new WorkspaceSnapshot(rootType, companions);
+				snapshot.setRootModel(createModel(project.getLocation(), rootType));
+				HierarchicalEclipseProject root = rootOf(project);
+				for (Class<?> type : companions) {
+					addModels(snapshot, root, type);
+				}
+				return snapshot;
+			} finally {
+				buildFinished();
+				releaseBuildSlot();
+				System.out.println("<< building snapshot "+project.getLocation().getName()+"::"+rootType.getSimpleName());
+			}
+		}
+
+		private void addModels(WorkspaceSnapshot snapshot, HierarchicalEclipseProject project, Class<?> type) throws CoreException {
+			File loc = project.getProjectDirectory();
+			snapshot.put(type, loc, createModel(loc, type));
+			for (HierarchicalEclipseProject child : project.getChildren()) {
+				addModels(snapshot, child, type);
+			}
+		}
+
+		private HierarchicalEclipseProject rootOf(GradleProject project) {
+			HierarchicalEclipseProject root = new VanillaHierarchyModel(project.getLocation());
+			while (root.getParent()!=null) {
+				root = root.getParent();
+			}
+			return root;
+		}
+
+		/**
+		 * Builds models for all projects in the hierarchy of a given project. The build is counted as
+		 * a build of the root project.
+		 */
+		@Override
+		public <T> Map<File, T> buildFamilyModels(GradleProject project, Class<T> type, IProgressMonitor monitor) throws CoreException {
+			HierarchicalEclipseProject root = rootOf(project);
+			GradleProject rootProject = GradleCore.create(root.getProjectDirectory());
+			System.out.println(">> building family "+rootProject.getLocation().getName()+"::"+type.getSimpleName());
+			acquireBuildSlot(monitor);
+			incrementBuildCount(rootProject, type);
+			buildStarted();
+			try {
+				simulateBuildTime(monitor);
+				checkError(rootProject, type);
+				Map<File, T> models = new LinkedHashMap<File, T>();
+				collectModels(root, type, models);
+				return models;
+			} finally {
+				buildFinished();
+				releaseBuildSlot();
+				System.out.println("<< building family "+rootProject.getLocation().getName()+"::"+type.getSimpleName());
+			}
+		}
+
+		private <T> void collectModels(HierarchicalEclipseProject project, Class<T> type, Map<File, T> models) throws CoreException {
+			File loc = project.getProjectDirectory();
+			models.put(loc, createModel(loc, type));
+			for (HierarchicalEclipseProject child : project.getChildren()) {
+				collectModels(child, type, models);
+			}
+		}
+
 		private void simulateBuildTime(IProgressMonitor monitor) {
+			awaitOverlap();
 			if (buildTime>0) {
 				long start = System.currentTimeMillis();
 				long end = start + buildTime;
@@ -1310,7 +1725,48 @@ public class GradleModelManagerTest extends GradleTest {
 					try {
 						Thread.sleep(buildTime/10);
 					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new OperationCanceledException();
+					}
+				}
+			}
+		}
+
+		/**
+		 * When set, each build waits until this many builds have started. Lets tests check that builds
+		 * run at the same time without depending on how long anything takes.
+		 */
+		private CountDownLatch overlap = null;
+		private boolean overlapTimedOut = false;
+
+		public synchronized void expectOverlappingBuilds(int count) {
+			overlap = new CountDownLatch(count);
+			overlapTimedOut = false;
+		}
+
+		/**
+		 * @return true if the number of builds passed to {@link #expectOverlappingBuilds(int)} were all running at once.
+		 */
+		public synchronized boolean buildsOverlapped() {
+			return overlap!=null && overlap.getCount()==0 && !overlapTimedOut;
+		}
+
+		private void awaitOverlap() {
+			CountDownLatch latch;
+			synchronized (this) {
+				latch = overlap;
+			}
+			if (latch!=null) {
+				latch.countDown();
+				try {
+					if (!latch.await(OVERLAP_TIMEOUT, TimeUnit.SECONDS)) {
+						synchronized (this) {
+							overlapTimedOut = true;
+						}
 					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new OperationCanceledException();
 				}
 			}
 		}
@@ -1359,6 +1815,8 @@ public class GradleModelManagerTest extends GradleTest {
 			return (T) new FooModelImpl(loc);
 		} else if (type.equals(BarModel.class)) {
 			return (T) new BarModelImpl(loc);
+		} else if (type.equals(BazModel.class)) {
+			return (T) new BazModelImpl(loc);
 		} else if (type.equals(FooHierarchyModel.class)) {
 			return (T) new FooHierarchyModelImpl(loc);
 		} else if (type.equals(HierarchicalEclipseProject.class)) {
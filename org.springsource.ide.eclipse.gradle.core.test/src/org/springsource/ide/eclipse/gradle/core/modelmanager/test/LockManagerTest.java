@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager.test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.Lock;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.LockManager;
+
+public class LockManagerTest extends TestCase {
+
+	private LockManager locks = new LockManager();
+
+	/**
+	 * Acquires a lock in a separate thread. The lock is kept until the test calls 'release'.
+	 */
+	private class Locker extends Thread {
+		private final Set<String> keys;
+		private final NullProgressMonitor mon = new NullProgressMonitor();
+		private Lock lock;
+		private Throwable error;
+		private boolean interrupted;
+
+		Locker(String... keys) {
+			this.keys = keys.length==0 ? null : new HashSet<String>(Arrays.asList(keys));
+			setDaemon(true);
+			start();
+		}
+
+		@Override
+		public void run() {
+			try {
+				Lock l = keys==null ? locks.lockAll(mon) : locks.lock(keys, mon);
+				synchronized (this) {
+					lock = l;
+					notifyAll();
+				}
+			} catch (Throwable e) {
+				synchronized (this) {
+					error = e;
+					interrupted = isInterrupted();
+					notifyAll();
+				}
+			}
+		}
+
+		synchronized boolean isLocked() {
+			return lock!=null;
+		}
+
+		synchronized void waitLocked() throws Exception {
+			long end = System.currentTimeMillis()+5000;
+			while (lock==null && error==null && System.currentTimeMillis()<end) {
+				wait(100);
+			}
+			assertNull(error);
+			assertNotNull("Lock not obtained: "+keys, lock);
+		}
+
+		void release() throws Exception {
+			waitLocked();
+			lock.release();
+		}
+	}
+
+	public void testDisjointKeys() throws Exception {
+		Locker a = new Locker("a", "b");
+		a.waitLocked();
+		Locker c = new Locker("c");
+		c.waitLocked();
+		a.release();
+		c.release();
+		assertEquals(0, locks.getContendedAcquisitions());
+	}
+
+	public void testAllOrNothing() throws Exception {
+		Locker a = new Locker("a");
+		a.waitLocked();
+		Locker ab = new Locker("a", "b");
+		waitForWaiters(1);
+		assertFalse(ab.isLocked());
+		a.release();
+		ab.waitLocked();
+		//Both keys are now held
+		Locker b = new Locker("b");
+		waitForWaiters(1);
+		ab.release();
+		b.waitLocked();
+		b.release();
+	}
+
+	/**
+	 * A request should not be overtaken by later requests for some of the same keys.
+	 */
+	public void testFifo() throws Exception {
+		Locker a = new Locker("a");
+		a.waitLocked();
+		Locker ab = new Locker("a", "b");
+		waitForWaiters(1);
+		Locker b = new Locker("b"); //Could be granted, but would starve 'ab'.
+		Locker c = new Locker("c"); //Not in conflict with any waiting request.
+		c.waitLocked();
+		waitForWaiters(2);
+		assertFalse(b.isLocked());
+
+		a.release();
+		ab.waitLocked();
+		assertFalse(b.isLocked());
+		ab.release();
+		b.waitLocked();
+		b.release();
+		c.release();
+
+		assertEquals(0, locks.getWaiting());
+		assertEquals(2, locks.getContendedAcquisitions());
+	}
+
+	public void testLockAll() throws Exception {
+		Locker a = new Locker("a");
+		a.waitLocked();
+		Locker all = new Locker();
+		waitForWaiters(1);
+		Locker b = new Locker("b");
+		waitForWaiters(2);
+		assertFalse(all.isLocked());
+		assertFalse(b.isLocked());
+
+		a.release();
+		all.waitLocked();
+		assertFalse(b.isLocked());
+		all.release();
+		b.waitLocked();
+		b.release();
+	}
+
+	public void testCancel() throws Exception {
+		Locker a = new Locker("a");
+		a.waitLocked();
+		Locker ab = new Locker("a", "b");
+		waitForWaiters(1);
+		Locker b = new Locker("b");
+		waitForWaiters(2);
+
+		ab.mon.setCanceled(true);
+		ab.join(5000);
+		assertTrue(ab.error instanceof OperationCanceledException);
+		assertNull(ab.lock);
+
+		//'b' is no longer blocked by the canceled request
+		b.waitLocked();
+		b.release();
+		a.release();
+		assertEquals(0, locks.getWaiting());
+	}
+
+	/**
+	 * An interrupted thread stops waiting and keeps its interrupted status.
+	 */
+	public void testInterrupt() throws Exception {
+		Locker a = new Locker("a");
+		a.waitLocked();
+		Locker ab = new Locker("a", "b");
+		waitForWaiters(1);
+
+		ab.interrupt();
+		ab.join(5000);
+		assertTrue(ab.error instanceof OperationCanceledException);
+		assertTrue(ab.interrupted);
+		assertNull(ab.lock);
+
+		Locker b = new Locker("b");
+		b.waitLocked();
+		b.release();
+		a.release();
+		assertEquals(0, locks.getWaiting());
+	}
+
+	/**
+	 * Many threads repeatedly locking random sets of keys from a large number of families. Checks that
+	 * no two threads ever hold the same key and that no thread gets stuck waiting forever
+	 * (e.g. because of a lost wakeup).
+	 */
+	public void testManyFamilies() throws Exception {
+		final int families = 200;
+		final int threads = 16;
+		final int iterations = 2000;
+		final AtomicInteger[] holders = new AtomicInteger[families];
+		for (int i = 0; i < families; i++) {
+			holders[i] = new AtomicInteger();
+		}
+		final AtomicInteger violations = new AtomicInteger();
+		final AtomicInteger done = new AtomicInteger();
+		Thread[] workers = new Thread[threads];
+		long start = System.currentTimeMillis();
+		for (int t = 0; t < threads; t++) {
+			final Random random = new Random(t);
+			workers[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < iterations; i++) {
+						Set<Integer> keys = new HashSet<Integer>();
+						int size = 1 + random.nextInt(3);
+						while (keys.size()<size) {
+							keys.add(random.nextInt(families));
+						}
+						Lock lock = i%500==0 ? locks.lockAll(null) : locks.lock(keys, null);
+						try {
+							for (int k : keys) {
+								if (holders[k].incrementAndGet()!=1) {
+									violations.incrementAndGet();
+								}
+							}
+							Thread.yield();
+							for (int k : keys) {
+								holders[k].decrementAndGet();
+							}
+						} finally {
+							lock.release();
+						}
+					}
+					done.incrementAndGet();
+				}
+			};
+			workers[t].setDaemon(true);
+			workers[t].start();
+		}
+		for (Thread w : workers) {
+			w.join(60000);
+		}
+		long duration = System.currentTimeMillis() - start;
+		assertEquals("Some threads are stuck", threads, done.get());
+		assertEquals(0, violations.get());
+		assertEquals(0, locks.getWaiting());
+		assertEquals(threads*iterations, locks.getAcquisitions());
+		System.out.println("LockManager: "+(threads*iterations)+" locks in "+duration+" ms, "
+				+locks.getContendedAcquisitions()+" contended, total wait "+locks.getTotalWaitTime()
+				+" ms, max wait "+locks.getMaxWaitTime()+" ms");
+	}
+
+	private void waitForWaiters(int expected) throws Exception {
+		long end = System.currentTimeMillis()+5000;
+		while (locks.getWaiting()!=expected && System.currentTimeMillis()<end) {
+			Thread.sleep(10);
+		}
+		assertEquals(expected, locks.getWaiting());
+	}
+
+}
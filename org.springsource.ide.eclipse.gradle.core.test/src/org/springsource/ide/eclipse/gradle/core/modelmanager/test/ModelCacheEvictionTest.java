@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager.test;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.classpathcontainer.FastOperationFailedException;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.AbstractModelBuilder;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.GradleModelManager;
+
+/**
+ * Tests for evicting models from the model cache to keep its memory use bounded.
+ */
+public class ModelCacheEvictionTest extends TestCase {
+
+	public static class Model {
+		final GradleProject project;
+		Model(GradleProject project) {
+			this.project = project;
+		}
+	}
+
+	private static class Builder extends AbstractModelBuilder {
+		int builds = 0;
+		@Override
+		protected synchronized <T> T doBuild(GradleProject project, Class<T> type, IProgressMonitor mon) throws Exception {
+			builds++;
+			return type.cast(new Model(project));
+		}
+	}
+
+	private File root;
+	private Builder builder;
+	private GradleModelManager mgr;
+	private GradleProject[] projects;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = File.createTempFile("eviction", "test").getCanonicalFile();
+		root.delete();
+		builder = new Builder();
+		mgr = new GradleModelManager(builder);
+		projects = new GradleProject[4];
+		for (int i = 0; i < projects.length; i++) {
+			File dir = new File(root, "project"+i);
+			dir.mkdirs();
+			projects[i] = new GradleProject(dir, mgr);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(root);
+		super.tearDown();
+	}
+
+	public void testLeastRecentlyUsedEvicted() throws Exception {
+		mgr.setMaxResidentProjects(2);
+		mgr.getModel(projects[0], Model.class, new NullProgressMonitor());
+		Thread.sleep(5);
+		mgr.getModel(projects[1], Model.class, new NullProgressMonitor());
+		Thread.sleep(5);
+		mgr.getModel(projects[0], Model.class); //make project1 the least recently used one
+		Thread.sleep(5);
+		mgr.getModel(projects[2], Model.class, new NullProgressMonitor());
+
+		assertEquals(2, mgr.getResidentProjectCount());
+		assertEquals(2, mgr.getResidentModelCount());
+		assertEquals(1, mgr.getEvictionCount());
+		assertNotNull(mgr.getModel(projects[0], Model.class));
+		assertNotNull(mgr.getModel(projects[2], Model.class));
+		assertMissing(projects[1]);
+
+		//Evicted models are rebuilt when needed.
+		assertEquals(3, builder.builds);
+		Model model = mgr.getModel(projects[1], Model.class, new NullProgressMonitor());
+		assertSame(projects[1], model.project);
+		assertEquals(4, builder.builds);
+		assertEquals(2, mgr.getEvictionCount());
+	}
+
+	public void testInactiveProjectsEvicted() throws Exception {
+		mgr.getModel(projects[0], Model.class, new NullProgressMonitor());
+		mgr.getModel(projects[1], Model.class, new NullProgressMonitor());
+
+		//Test projects aren't in the workspace, so they count as inactive.
+		mgr.trimCache();
+		assertEquals(2, mgr.getResidentProjectCount());
+		assertEquals(0, mgr.getEvictionCount());
+
+		mgr.setInactiveEvictionDelay(0);
+		Thread.sleep(5);
+		mgr.trimCache();
+		assertEquals(0, mgr.getResidentProjectCount());
+		assertEquals(2, mgr.getEvictionCount());
+		assertMissing(projects[0]);
+		assertMissing(projects[1]);
+	}
+
+	public void testNoEvictionWithinBudget() throws Exception {
+		mgr.setMaxResidentProjects(projects.length);
+		for (GradleProject project : projects) {
+			mgr.getModel(project, Model.class, new NullProgressMonitor());
+		}
+		assertEquals(projects.length, mgr.getResidentProjectCount());
+		assertEquals(0, mgr.getEvictionCount());
+	}
+
+	/**
+	 * Models of projects that are open and in active use are not evicted, even if that means the cache
+	 * exceeds its budget. Projects without models don't count toward the budget.
+	 */
+	public void testActiveProjectsNotEvicted() throws Exception {
+		mgr = new GradleModelManager(builder) {
+			@Override
+			protected boolean isOpen(GradleProject project) {
+				return project==projects[0] || project==projects[1];
+			}
+		};
+		projects[0] = new GradleProject(projects[0].getLocation(), mgr);
+		projects[1] = new GradleProject(projects[1].getLocation(), mgr);
+		projects[2] = new GradleProject(projects[2].getLocation(), mgr);
+		projects[3] = new GradleProject(projects[3].getLocation(), mgr);
+		mgr.setMaxResidentProjects(1);
+
+		assertMissing(projects[3]);
+		mgr.getModel(projects[0], Model.class, new NullProgressMonitor());
+		Thread.sleep(5);
+		mgr.getModel(projects[1], Model.class, new NullProgressMonitor());
+		assertEquals(2, mgr.getResidentProjectCount());
+		assertEquals(0, mgr.getEvictionCount());
+		assertNotNull(mgr.getModel(projects[0], Model.class));
+
+		//A closed project is evicted first, even if it was used more recently.
+		Thread.sleep(5);
+		mgr.getModel(projects[2], Model.class, new NullProgressMonitor());
+		assertEquals(2, mgr.getResidentProjectCount());
+		assertMissing(projects[2]);
+		assertNotNull(mgr.getModel(projects[0], Model.class));
+		assertNotNull(mgr.getModel(projects[1], Model.class));
+
+		//Once idle, open projects are evicted as well.
+		mgr.setIdleEvictionDelay(0);
+		Thread.sleep(5);
+		mgr.trimCache();
+		assertEquals(1, mgr.getResidentProjectCount());
+	}
+
+	private void assertMissing(GradleProject project) throws Exception {
+		try {
+			mgr.getModel(project, Model.class);
+			fail("Should have thrown FastOperationFailedException");
+		} catch (FastOperationFailedException e) {
+			//OK!
+		}
+	}
+
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager.test;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.classpathcontainer.FastOperationFailedException;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.AbstractModelBuilder;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.GradleModelManager;
+
+/**
+ * Tests for looking up models in the model cache, i.e. the 'fast' getModel calls that are made
+ * from the UI thread.
+ */
+public class ModelLookupTest extends TestCase {
+
+	public interface Basic {
+	}
+
+	public interface Detailed extends Basic {
+	}
+
+	public static class BasicModel implements Basic {
+	}
+
+	public static class DetailedModel implements Detailed {
+	}
+
+	private static class Builder extends AbstractModelBuilder {
+		@Override
+		protected <T> T doBuild(GradleProject project, Class<T> type, IProgressMonitor mon) throws Exception {
+			if (type.equals(Basic.class)) {
+				return type.cast(new BasicModel());
+			} else if (type.equals(Detailed.class)) {
+				return type.cast(new DetailedModel());
+			}
+			throw new IllegalArgumentException("Unknown model type: "+type);
+		}
+	}
+
+	private File root;
+	private GradleModelManager mgr;
+	private GradleProject project;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = File.createTempFile("lookup", "test").getCanonicalFile();
+		root.delete();
+		File dir = new File(root, "project");
+		dir.mkdirs();
+		mgr = new GradleModelManager(new Builder());
+		project = new GradleProject(dir, mgr);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(root);
+		super.tearDown();
+	}
+
+	public void testSubtypeModel() throws Exception {
+		assertMissing(Basic.class);
+		Detailed detailed = mgr.getModel(project, Detailed.class, new NullProgressMonitor());
+		assertSame(detailed, mgr.getModel(project, Basic.class));
+		assertSame(detailed, mgr.getModel(project, Detailed.class));
+	}
+
+	public void testExactTypePreferred() throws Exception {
+		Detailed detailed = mgr.getModel(project, Detailed.class, new NullProgressMonitor());
+		Basic basic = mgr.getModel(project, Basic.class, new NullProgressMonitor());
+		assertSame(detailed, basic); //Satisfied from cache, no build.
+
+		mgr.invalidate(project);
+		assertMissing(Basic.class);
+		basic = mgr.getModel(project, Basic.class, new NullProgressMonitor());
+		assertTrue(basic instanceof BasicModel);
+		assertMissing(Detailed.class);
+
+		detailed = mgr.getModel(project, Detailed.class, new NullProgressMonitor());
+		assertSame(basic, mgr.getModel(project, Basic.class));
+		assertSame(detailed, mgr.getModel(project, Detailed.class));
+	}
+
+	/**
+	 * Simulates the UI thread(s) looking up models while background jobs keep replacing them.
+	 * Reports lookup throughput, as a rough benchmark.
+	 */
+	public void testLookupsDuringCacheUpdates() throws Exception {
+		final int readers = 4;
+		final long duration = 2000;
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		final AtomicLong lookups = new AtomicLong();
+		final AtomicLong misses = new AtomicLong();
+		final AtomicLong updates = new AtomicLong();
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+		mgr.getModel(project, Detailed.class, new NullProgressMonitor());
+		Thread[] threads = new Thread[readers+1];
+		for (int i = 0; i < readers; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						long count = 0;
+						while (!stop.get()) {
+							try {
+								assertNotNull(mgr.getModel(project, Basic.class));
+							} catch (FastOperationFailedException e) {
+								misses.incrementAndGet();
+							}
+							count++;
+						}
+						lookups.addAndGet(count);
+					} catch (Throwable e) {
+						error.compareAndSet(null, e);
+					}
+				}
+			};
+		}
+		threads[readers] = new Thread() {
+			public void run() {
+				try {
+					while (!stop.get()) {
+						mgr.invalidate(project);
+						mgr.getModel(project, Detailed.class, new NullProgressMonitor());
+						mgr.getModel(project, Basic.class, new NullProgressMonitor());
+						updates.incrementAndGet();
+					}
+				} catch (Throwable e) {
+					error.compareAndSet(null, e);
+				}
+			}
+		};
+		for (Thread t : threads) {
+			t.setDaemon(true);
+			t.start();
+		}
+		Thread.sleep(duration);
+		stop.set(true);
+		for (Thread t : threads) {
+			t.join(10000);
+		}
+		if (error.get()!=null) {
+			throw new AssertionError(error.get());
+		}
+		assertTrue(updates.get()>0);
+		System.out.println("Model lookups: "+lookups.get()/duration+" per ms with "+readers+" readers, "
+				+misses.get()+" misses, "+updates.get()+" cache updates");
+	}
+
+	private void assertMissing(Class<?> type) throws Exception {
+		try {
+			mgr.getModel(project, type);
+			fail("Should have thrown FastOperationFailedException");
+		} catch (FastOperationFailedException e) {
+			//OK!
+		}
+	}
+
+}
@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.gradle.tooling.model.DomainObjectSet;
+import org.gradle.tooling.model.UnsupportedMethodException;
+import org.gradle.tooling.model.gradle.ProjectPublications;
+import org.gradle.tooling.model.internal.ImmutableDomainObjectSet;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.AbstractModelBuilder;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.GradleModelManager;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.ModelSnapshot;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.ModelSnapshotStore;
+
+public class ModelSnapshotTest extends TestCase {
+
+	public interface Node {
+		String getName();
+		File getLocation();
+		Node getParent();
+		DomainObjectSet<? extends Node> getChildren();
+		String getUnsupported();
+	}
+
+	public interface Dependency {
+		Node getTarget();
+	}
+
+	public interface ProjectNode extends Node {
+		ProjectNode getParent();
+		DomainObjectSet<? extends ProjectNode> getChildren();
+		DomainObjectSet<? extends Dependency> getDependencies();
+	}
+
+	public class ProjectNodeImpl implements ProjectNode {
+		private String name;
+		private ProjectNodeImpl parent;
+		private List<ProjectNodeImpl> children = new ArrayList<ProjectNodeImpl>();
+		private List<Dependency> dependencies = new ArrayList<Dependency>();
+
+		public ProjectNodeImpl(ProjectNodeImpl parent, String name) {
+			this.parent = parent;
+			this.name = name;
+			if (parent!=null) {
+				parent.children.add(this);
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public File getLocation() {
+			return new File("/projects/"+name);
+		}
+
+		public ProjectNode getParent() {
+			return parent;
+		}
+
+		public DomainObjectSet<? extends ProjectNode> getChildren() {
+			return new ImmutableDomainObjectSet<ProjectNode>(children);
+		}
+
+		public DomainObjectSet<? extends Dependency> getDependencies() {
+			return new ImmutableDomainObjectSet<Dependency>(dependencies);
+		}
+
+		public String getUnsupported() {
+			throw new UnsupportedMethodException("Not supported by this Gradle version");
+		}
+
+		public void dependsOn(final ProjectNodeImpl target) {
+			dependencies.add(new Dependency() {
+				public Node getTarget() {
+					return target;
+				}
+			});
+		}
+	}
+
+	public void testRoundTrip() throws Exception {
+		ProjectNodeImpl root = new ProjectNodeImpl(null, "root");
+		ProjectNodeImpl a = new ProjectNodeImpl(root, "a");
+		ProjectNodeImpl b = new ProjectNodeImpl(root, "b");
+		b.dependsOn(a);
+
+		ProjectNode restored = ModelSnapshot.restore(serialize(new ModelSnapshot.Capture().capture(root, ProjectNode.class)), ProjectNode.class);
+
+		assertEquals("root", restored.getName());
+		assertEquals(new File("/projects/root"), restored.getLocation());
+		assertNull(restored.getParent());
+		assertEquals(2, restored.getChildren().size());
+
+		ProjectNode restoredA = restored.getChildren().getAll().get(0);
+		ProjectNode restoredB = restored.getChildren().getAll().get(1);
+		assertEquals("a", restoredA.getName());
+		assertEquals("b", restoredB.getName());
+
+		//Structure of the graph is preserved
+		assertSame(restored, restoredA.getParent());
+		assertSame(restoredA, restoredB.getDependencies().getAll().get(0).getTarget());
+
+		try {
+			restored.getUnsupported();
+			fail("Should have thrown");
+		} catch (UnsupportedMethodException e) {
+			assertEquals("Not supported by this Gradle version", e.getMessage());
+		}
+	}
+
+	/**
+	 * An object first reached through a supertype and later through a subtype should be restored
+	 * as an instance of the subtype.
+	 */
+	public void testSubtypeReachedLater() throws Exception {
+		ProjectNodeImpl root = new ProjectNodeImpl(null, "root");
+		ProjectNodeImpl a = new ProjectNodeImpl(root, "a");
+		ProjectNodeImpl b = new ProjectNodeImpl(root, "b");
+		a.dependsOn(b); //captured as 'Node' before it is reached as child of root
+
+		ProjectNode restored = ModelSnapshot.restore(serialize(new ModelSnapshot.Capture().capture(root, ProjectNode.class)), ProjectNode.class);
+		ProjectNode restoredB = restored.getChildren().getAll().get(1);
+		assertEquals("b", restoredB.getName());
+		assertSame(restoredB, restored.getChildren().getAll().get(0).getDependencies().getAll().get(0).getTarget());
+		assertSame(restored, restoredB.getParent());
+	}
+
+	public void testDetach() throws Exception {
+		ProjectNodeImpl root = new ProjectNodeImpl(null, "root");
+		ProjectNodeImpl a = new ProjectNodeImpl(root, "a");
+		ProjectNodeImpl b = new ProjectNodeImpl(root, "b");
+		b.dependsOn(a);
+
+		ModelSnapshot.Capture capture = new ModelSnapshot.Capture();
+		ProjectNode detached = capture.detach(toolingProxy(root, ProjectNode.class), ProjectNode.class);
+		assertTrue(ModelSnapshot.isDetached(detached));
+		assertEquals("root", detached.getName());
+		ProjectNode detachedA = detached.getChildren().getAll().get(0);
+		ProjectNode detachedB = detached.getChildren().getAll().get(1);
+		assertSame(detachedA, detachedB.getDependencies().getAll().get(0).getTarget());
+		assertSame(detached.getChildren(), detached.getChildren());
+		try {
+			detached.getUnsupported();
+			fail("Should have thrown");
+		} catch (UnsupportedMethodException e) {
+			assertEquals("Not supported by this Gradle version", e.getMessage());
+		}
+
+		//Models that aren't tooling API proxies are left alone
+		assertSame(detached, capture.detach(detached, ProjectNode.class));
+		assertSame(root, capture.detach(root, ProjectNode.class));
+
+		//Equal values captured with the same Capture are shared
+		ProjectNode again = capture.detach(toolingProxy(root, ProjectNode.class), ProjectNode.class);
+		assertNotSame(detached, again);
+		assertNotSame(root.getLocation(), root.getLocation());
+		assertSame(detached.getLocation(), again.getLocation());
+		assertSame(detachedB, again.getChildren().getAll().get(1));
+	}
+
+	/**
+	 * Capturing a detached model, e.g. to save it to a snapshot, reuses its captured state.
+	 */
+	public void testCaptureDetached() throws Exception {
+		ProjectNodeImpl root = new ProjectNodeImpl(null, "root");
+		new ProjectNodeImpl(root, "a");
+		ProjectNode detached = new ModelSnapshot.Capture().detach(toolingProxy(root, ProjectNode.class), ProjectNode.class);
+
+		ProjectNode restored = ModelSnapshot.restore(serialize(new ModelSnapshot.Capture().capture(detached, ProjectNode.class)), ProjectNode.class);
+		assertEquals("root", restored.getName());
+		assertEquals("a", restored.getChildren().getAll().get(0).getName());
+	}
+
+	public void testFingerprint() throws Exception {
+		File root = createTempDir();
+		try {
+			File sub = new File(root, "sub");
+			sub.mkdirs();
+			FileUtils.write(new File(root, "settings.gradle"), "include 'sub'");
+			FileUtils.write(new File(sub, "build.gradle"), "apply plugin: 'java'");
+
+			String fingerprint = ModelSnapshotStore.fingerprint(root, sub);
+			assertEquals(fingerprint, ModelSnapshotStore.fingerprint(root, sub));
+
+			FileUtils.write(new File(root, "gradle.properties"), "version=1.0");
+			String withProperties = ModelSnapshotStore.fingerprint(root, sub);
+			assertFalse(fingerprint.equals(withProperties));
+
+			FileUtils.write(new File(sub, "build.gradle"), "apply plugin: 'java'\napply plugin: 'eclipse'");
+			String withEclipse = ModelSnapshotStore.fingerprint(root, sub);
+			assertFalse(withProperties.equals(withEclipse));
+
+			FileUtils.write(new File(root, "buildSrc/src/main/groovy/Plugin.groovy"), "class Plugin {}");
+			String withBuildSrc = ModelSnapshotStore.fingerprint(root, sub);
+			assertFalse(withEclipse.equals(withBuildSrc));
+
+			//Other files don't matter, nor do the scripts of other projects
+			File other = new File(root, "other");
+			other.mkdirs();
+			FileUtils.write(new File(other, "build.gradle"), "apply plugin: 'java'");
+			FileUtils.write(new File(sub, "Foo.java"), "class Foo {}");
+			FileUtils.write(new File(root, "buildSrc/build/classes/Plugin.class"), "xxx");
+			assertEquals(withBuildSrc, ModelSnapshotStore.fingerprint(root, sub));
+		} finally {
+			FileUtils.deleteDirectory(root);
+		}
+	}
+
+	/**
+	 * Callers that can't wait never read snapshots from disk.
+	 */
+	public void testRestoreNotLoaded() throws Exception {
+		File dir = createTempDir();
+		try {
+			File projectDir = new File(dir, "project");
+			projectDir.mkdirs();
+			GradleProject project = new GradleProject(projectDir, new GradleModelManager(new AbstractModelBuilder() {
+				@Override
+				protected <T> T doBuild(GradleProject project, Class<T> type, IProgressMonitor mon) throws Exception {
+					throw new UnsupportedOperationException();
+				}
+			}));
+			ModelSnapshotStore store = new ModelSnapshotStore(new File(dir, "snapshots"));
+			assertSame(ModelSnapshotStore.NOT_LOADED, store.restore(project, false));
+			assertNull(store.restore(project, true));
+			assertNull(store.restore(project, false));
+		} finally {
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * Snapshots are fingerprinted when the build starts. Scripts edited after that make the snapshot
+	 * out of date, even if they were edited before it was written.
+	 */
+	public void testFingerprintTakenAtBuildStart() throws Exception {
+		File dir = createTempDir();
+		try {
+			GradleProject unchanged = createProject(new File(dir, "unchanged"));
+			GradleProject edited = createProject(new File(dir, "edited"));
+			ModelSnapshotStore store = new ModelSnapshotStore(new File(dir, "snapshots"));
+			ModelSnapshotStore.BuildInputs inputs = store.takeFingerprints(Arrays.asList(unchanged, edited));
+			store.modelBuilt(unchanged, ProjectPublications.class, publications(), inputs);
+			store.modelBuilt(edited, ProjectPublications.class, publications(), inputs);
+
+			File script = new File(edited.getLocation(), "build.gradle");
+			FileUtils.write(script, "apply plugin: 'java'\napply plugin: 'eclipse'");
+			script.setLastModified(script.lastModified()+2000);
+			store.flush();
+
+			store = new ModelSnapshotStore(new File(dir, "snapshots"));
+			ModelSnapshotStore.Restored restored = store.restore(unchanged, true);
+			assertTrue(restored.isUpToDate());
+			assertTrue(restored.getModels().containsKey(ProjectPublications.class));
+			restored = store.restore(edited, true);
+			assertFalse(restored.isUpToDate());
+			assertTrue(restored.getModels().containsKey(ProjectPublications.class));
+		} finally {
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	private GradleProject createProject(File projectDir) throws Exception {
+		projectDir.mkdirs();
+		FileUtils.write(new File(projectDir, "build.gradle"), "apply plugin: 'java'");
+		return new GradleProject(projectDir, new GradleModelManager(new AbstractModelBuilder() {
+			@Override
+			protected <T> T doBuild(GradleProject project, Class<T> type, IProgressMonitor mon) throws Exception {
+				throw new UnsupportedOperationException();
+			}
+		}));
+	}
+
+	/**
+	 * A ProjectPublications model without any publications.
+	 */
+	private static ProjectPublications publications() {
+		return (ProjectPublications) Proxy.newProxyInstance(ProjectPublications.class.getClassLoader(), new Class<?>[] { ProjectPublications.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (DomainObjectSet.class.equals(method.getReturnType())) {
+					return new ImmutableDomainObjectSet<Object>(Collections.emptyList());
+				}
+				return null;
+			}
+		});
+	}
+
+	private File createTempDir() throws Exception {
+		File dir = File.createTempFile("snapshot", "test");
+		dir.delete();
+		dir.mkdirs();
+		return dir;
+	}
+
+	/**
+	 * Wraps an object in a dynamic proxy, like the models returned by the tooling API.
+	 */
+	private static <T> T toolingProxy(final Object target, Class<T> type) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				try {
+					return method.invoke(target, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}));
+	}
+
+	private Object serialize(Object captured) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(captured);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		return in.readObject();
+	}
+
+}
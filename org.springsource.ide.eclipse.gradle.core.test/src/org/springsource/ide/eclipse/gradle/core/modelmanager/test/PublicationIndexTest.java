@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager.test;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.tooling.model.GradleModuleVersion;
+import org.gradle.tooling.model.gradle.GradlePublication;
+import org.gradle.tooling.model.gradle.ProjectPublications;
+import org.gradle.tooling.model.internal.ImmutableDomainObjectSet;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.GradleModelManager;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.PublicationIndex;
+
+public class PublicationIndexTest extends TestCase {
+
+	private File root;
+	private GradleProject foo;
+	private GradleProject bar;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = File.createTempFile("publications", "test").getCanonicalFile();
+		root.delete();
+		GradleModelManager mgr = new GradleModelManager(null);
+		foo = new GradleProject(mkdir(new File(root, "foo")), mgr);
+		bar = new GradleProject(mkdir(new File(root, "bar")), mgr);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtils.deleteDirectory(root);
+		super.tearDown();
+	}
+
+	public void testFind() throws Exception {
+		PublicationIndex index = new PublicationIndex();
+		index.add(foo, publications("org.example:foo:1.0", "org.example:foo-api:1.0"));
+		index.add(bar, publications("org.example:bar:2.0"));
+
+		assertProjects(index.find(module("org.example:foo:3.0")), foo); //version is ignored
+		assertProjects(index.find(module("org.example:foo-api:1.0")), foo);
+		assertProjects(index.find(module("org.example:bar:2.0")), bar);
+		assertProjects(index.find(module("org.other:bar:2.0")));
+		assertProjects(index.find(null));
+
+		assertTrue(index.isIndexed(foo));
+		assertTrue(index.isIndexed(bar));
+	}
+
+	public void testReplaceAndInvalidate() throws Exception {
+		PublicationIndex index = new PublicationIndex();
+		index.add(foo, publications("org.example:foo:1.0"));
+		index.add(bar, publications("org.example:foo:1.0"));
+		assertProjects(index.find(module("org.example:foo:1.0")), foo, bar);
+
+		index.add(foo, publications("org.example:renamed:1.0"));
+		assertProjects(index.find(module("org.example:foo:1.0")), bar);
+		assertProjects(index.find(module("org.example:renamed:1.0")), foo);
+
+		assertTrue(index.setComplete(index.getGeneration()));
+		index.invalidate(bar);
+		assertFalse(index.isComplete());
+		assertFalse(index.isIndexed(bar));
+		assertProjects(index.find(module("org.example:foo:1.0")));
+
+		index.invalidate();
+		assertFalse(index.isIndexed(foo));
+		assertProjects(index.find(module("org.example:renamed:1.0")));
+	}
+
+	/**
+	 * The index isn't marked complete if it became incomplete while the client was indexing missing projects.
+	 */
+	public void testCompleteSinceGeneration() throws Exception {
+		PublicationIndex index = new PublicationIndex();
+		int generation = index.getGeneration();
+		index.add(foo, publications("org.example:foo:1.0"));
+		index.setIncomplete(); //e.g. a project was added to the workspace
+		index.add(bar, publications("org.example:bar:1.0"));
+		assertFalse(index.setComplete(generation));
+		assertFalse(index.isComplete());
+
+		assertTrue(index.setComplete(index.getGeneration()));
+		assertTrue(index.isComplete());
+	}
+
+	private static File mkdir(File dir) {
+		dir.mkdirs();
+		return dir;
+	}
+
+	private void assertProjects(GradleProject[] actual, GradleProject... expected) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i]);
+		}
+	}
+
+	private static ProjectPublications publications(String... coordinates) {
+		List<GradlePublication> pubs = new ArrayList<GradlePublication>();
+		for (String c : coordinates) {
+			pubs.add(mock(GradlePublication.class, "getId", module(c)));
+		}
+		return mock(ProjectPublications.class, "getPublications", new ImmutableDomainObjectSet<GradlePublication>(pubs));
+	}
+
+	private static GradleModuleVersion module(String coordinates) {
+		String[] parts = coordinates.split(":");
+		return mock(GradleModuleVersion.class, "getGroup", parts[0], "getName", parts[1], "getVersion", parts[2]);
+	}
+
+	/**
+	 * Creates an object implementing a given interface, with methods returning given values.
+	 * @param methodsAndValues alternating method names and return values.
+	 */
+	private static <T> T mock(Class<T> type, final Object... methodsAndValues) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				for (int i = 0; i < methodsAndValues.length; i+=2) {
+					if (methodsAndValues[i].equals(method.getName())) {
+						return methodsAndValues[i+1];
+					}
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		}));
+	}
+
+}
@@ -15,8 +15,14 @@ import java.io.File;
 import junit.framework.TestSuite;
 
 import org.apache.commons.io.FileUtils;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.test.BuildFamilyRegistryTest;
 import org.springsource.ide.eclipse.gradle.core.modelmanager.test.DefaultModelBuilderTest;
 import org.springsource.ide.eclipse.gradle.core.modelmanager.test.GradleModelManagerTest;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.test.LockManagerTest;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.test.ModelCacheEvictionTest;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.test.ModelLookupTest;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.test.ModelSnapshotTest;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.test.PublicationIndexTest;
 import org.springsource.ide.eclipse.gradle.core.test.util.ManagedTestSuite;
 import org.springsource.ide.eclipse.gradle.core.test.util.RefreshAllActionCoreTests;
 
@@ -41,9 +47,19 @@ public class AllGradleCoreTests extends ManagedTestSuite {
 		TestSuite suite = new ManagedTestSuite(AllGradleCoreTests.class.getName());
 		suite.addTestSuite(DefaultModelBuilderTest.class);
 		suite.addTestSuite(GradleModelManagerTest.class);
+		suite.addTestSuite(ModelSnapshotTest.class);
+		suite.addTestSuite(PublicationIndexTest.class);
+		suite.addTestSuite(LockManagerTest.class);
+		suite.addTestSuite(ModelLookupTest.class);
+		suite.addTestSuite(ModelCacheEvictionTest.class);
+		suite.addTestSuite(BuildFamilyRegistryTest.class);
 		suite.addTestSuite(GradleRefreshPreferencesTest.class);
 		suite.addTestSuite(ArrayEncoderTest.class);
 		suite.addTestSuite(TopoSortTest.class);
+		suite.addTestSuite(ProjectLocationIndexTest.class);
+		suite.addTestSuite(GradleProjectManagerTest.class);
+		suite.addTestSuite(GradleWorkspaceListenerTest.class);
+		suite.addTestSuite(DependencyRefresherTest.class);
 		suite.addTestSuite(GradleProjectTest.class);
 		suite.addTestSuite(JarRemappingTests.class);
 		suite.addTestSuite(GradleImportTests.class);
@@ -12,7 +12,12 @@ package org.springsource.ide.eclipse.gradle.core.test;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IAccessRule;
+import org.eclipse.jdt.core.IClasspathAttribute;
+import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
 import org.springsource.ide.eclipse.gradle.core.GradleCore;
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
 import org.springsource.ide.eclipse.gradle.core.classpathcontainer.GradleClassPathContainer;
@@ -200,6 +205,58 @@ public class ClasspathContainerTests extends GradleTest {
 		}.waitFor(4000);
 	}
 
-	
+	/**
+	 * Refreshing dependencies only makes JDT re-resolve the container when its entries changed.
+	 */
+	public void testNotifyJDTOnlyWhenEntriesChanged() throws Exception {
+		String projectName = "notifyJdt";
+		GradleImportOperation importOp = simpleProjectImport(projectName,
+				"apply plugin: 'java'\n");
+		importOp.verify();
+		importOp.perform(defaultTestErrorHandler(), new NullProgressMonitor());
+		IProject p = getProject(projectName);
+		GradleClassPathContainer container = getGradleProject(projectName).getClassPathcontainer();
+		container.getClasspathEntries(); //Make sure JDT has resolved the container
+
+		int skipped = GradleClassPathContainer.getSkippedNotifications();
+		refreshDependencies(p);
+		assertEquals("JDT notified although entries unchanged", skipped+1, GradleClassPathContainer.getSkippedNotifications());
+
+		createFile(p, "build.gradle",
+				"apply plugin: 'java'\n" +
+				"dependencies {\n" +
+				"	compile files('lib/extra.jar')\n" +
+				"}");
+		refreshDependencies(p);
+		assertEquals("JDT not notified although entries changed", skipped+1, GradleClassPathContainer.getSkippedNotifications());
+	}
+
+	public void testSameEntries() throws Exception {
+		IClasspathEntry[] entries = new IClasspathEntry[] {
+				JavaCore.newLibraryEntry(new Path("/libs/a.jar"), new Path("/libs/a-sources.jar"), null, true),
+				JavaCore.newProjectEntry(new Path("/other"), true)
+		};
+		IClasspathEntry[] same = new IClasspathEntry[] {
+				JavaCore.newLibraryEntry(new Path("/libs/a.jar"), new Path("/libs/a-sources.jar"), null, true),
+				JavaCore.newProjectEntry(new Path("/other"), true)
+		};
+		assertTrue(GradleClassPathContainer.sameEntries(entries, same));
+
+		assertFalse(GradleClassPathContainer.sameEntries(entries, new IClasspathEntry[] { entries[0] }));
+		assertFalse(GradleClassPathContainer.sameEntries(entries, new IClasspathEntry[] { entries[1], entries[0] }));
+		assertFalse(GradleClassPathContainer.sameEntries(entries, new IClasspathEntry[] {
+				JavaCore.newLibraryEntry(new Path("/libs/a.jar"), new Path("/libs/a-sources.jar"), null, false),
+				entries[1]
+		}));
+		assertFalse(GradleClassPathContainer.sameEntries(entries, new IClasspathEntry[] {
+				JavaCore.newLibraryEntry(new Path("/libs/a.jar"), new Path("/libs/a-src.jar"), null, true),
+				entries[1]
+		}));
+		IClasspathAttribute javadoc = JavaCore.newClasspathAttribute(IClasspathAttribute.JAVADOC_LOCATION_ATTRIBUTE_NAME, "file:/libs/a-javadoc.jar");
+		assertFalse(GradleClassPathContainer.sameEntries(entries, new IClasspathEntry[] {
+				JavaCore.newLibraryEntry(new Path("/libs/a.jar"), new Path("/libs/a-sources.jar"), null, new IAccessRule[0], new IClasspathAttribute[] {javadoc}, true),
+				entries[1]
+		}));
+	}
 
 }
@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
+import org.springsource.ide.eclipse.gradle.core.actions.Continuable;
+import org.springsource.ide.eclipse.gradle.core.autorefresh.DependencyRefresher;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.BuildFamilyRegistry;
+import org.springsource.ide.eclipse.gradle.core.test.util.ACondition;
+import org.springsource.ide.eclipse.gradle.core.util.Continuation;
+import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
+import org.springsource.ide.eclipse.gradle.core.util.JobUtil;
+
+public class DependencyRefresherTest extends GradleTest {
+
+	private static final int DELAY = 100;
+
+	private static final long TIMEOUT = 10000;
+
+	/**
+	 * Conflicts with the refresh jobs, so the test can keep them from running.
+	 */
+	private static final ISchedulingRule REFRESH_RULE = JobUtil.lightRule("REFRESH_RULE");
+
+	/**
+	 * Doesn't build anything. A refresh runs until the test finishes it, or until it is canceled.
+	 */
+	private static class FakeRefresher extends DependencyRefresher {
+		final List<List<String>> started = new ArrayList<List<String>>();
+		final List<String> ended = new ArrayList<String>();
+		boolean finished = false;
+		boolean ignoreCancel = false;
+
+		@Override
+		protected Job refresh(List<IProject> projects, final Continuation<Void> cont) {
+			List<String> names = new ArrayList<String>();
+			for (IProject project : projects) {
+				names.add(project.getName());
+			}
+			synchronized (this) {
+				started.add(names);
+			}
+			return JobUtil.schedule(REFRESH_RULE, new Continuable("Fake refresh", 1, new Continuation<Void>() {
+				@Override
+				public void apply(Void value) {
+					ended("done");
+					cont.apply(value);
+				}
+				@Override
+				public void error(Throwable e) {
+					ended(ExceptionUtil.isCancelation(e) ? "canceled" : e.toString());
+					cont.error(e);
+				}
+			}) {
+				@Override
+				public void doit(Continuation<Void> cont, IProgressMonitor monitor) throws Exception {
+					while (!isFinished()) {
+						if (!ignoreCancel) {
+							JobUtil.checkCanceled(monitor);
+						}
+						Thread.sleep(10);
+					}
+					cont.apply(null);
+				}
+			});
+		}
+
+		synchronized void ended(String how) {
+			ended.add(how);
+		}
+
+		synchronized boolean isFinished() {
+			return finished;
+		}
+
+		synchronized void finish() {
+			finished = true;
+		}
+
+		synchronized int startedCount() {
+			return started.size();
+		}
+
+		synchronized int endedCount() {
+			return ended.size();
+		}
+	}
+
+	private FakeRefresher refresher;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		createFamily("a", 5);
+		createFamily("b", 5);
+		for (String name : new String[] {"x", "y"}) {
+			IProject project = getProject(name);
+			project.create(new NullProgressMonitor());
+			project.open(new NullProgressMonitor());
+		}
+		refresher = new FakeRefresher();
+		refresher.setDelay(DELAY);
+		refresher.enable(true);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		refresher.enable(false);
+		refresher.finish();
+		BuildFamilyRegistry.getInstance().clear();
+		super.tearDown();
+	}
+
+	/**
+	 * A burst of edits leads to a single refresh, once the edits stop.
+	 */
+	public void testDebounce() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			dirty("a-"+(i%5));
+			Thread.sleep(DELAY/5);
+		}
+		waitForStarted(1);
+		Thread.sleep(4*DELAY);
+		assertEquals(1, refresher.startedCount());
+		assertEquals(1, refresher.getRefreshCount());
+		assertEquals(new HashSet<String>(Arrays.asList("a-0", "a-1", "a-2", "a-3", "a-4")), new HashSet<String>(refresher.started.get(0)));
+
+		refresher.finish();
+		waitForEnded(1);
+		assertEquals("done", refresher.ended.get(0));
+		assertEquals(0, refresher.getCanceledCount());
+	}
+
+	/**
+	 * Families are refreshed separately. Projects whose family isn't known are refreshed together.
+	 */
+	public void testFamilies() throws Exception {
+		dirty("a-1");
+		dirty("b-2");
+		dirty("x");
+		dirty("y");
+		waitForStarted(3);
+		List<HashSet<String>> started = new ArrayList<HashSet<String>>();
+		for (List<String> names : refresher.started) {
+			started.add(new HashSet<String>(names));
+		}
+		assertTrue(started.contains(new HashSet<String>(Arrays.asList("a-1"))));
+		assertTrue(started.contains(new HashSet<String>(Arrays.asList("b-2"))));
+		assertTrue(started.contains(new HashSet<String>(Arrays.asList("x", "y"))));
+		assertEquals(3, refresher.getRefreshCount());
+	}
+
+	/**
+	 * An edit during a refresh of the same family cancels the refresh. The family is refreshed again once
+	 * the canceled refresh has stopped.
+	 */
+	public void testSupersede() throws Exception {
+		dirty("a-1");
+		waitForStarted(1);
+		dirty("a-2");
+		dirty("b-2"); //Other families aren't affected
+		waitForEnded(1);
+		assertEquals("canceled", refresher.ended.get(0));
+		waitForStarted(3);
+		assertEquals(1, refresher.getCanceledCount());
+		assertEquals(3, refresher.getRefreshCount());
+		assertTrue(refresher.started.contains(Arrays.asList("b-2")));
+		assertEquals(new HashSet<String>(Arrays.asList("a-1", "a-2")), new HashSet<String>(refresher.started.get(2).contains("b-2") ? refresher.started.get(1) : refresher.started.get(2)));
+	}
+
+	/**
+	 * A canceled refresh that doesn't stop right away keeps the next refresh of its family from starting
+	 * until it has stopped.
+	 */
+	public void testNoOverlap() throws Exception {
+		refresher.ignoreCancel = true;
+		dirty("a-1");
+		waitForStarted(1);
+		dirty("a-2");
+		Thread.sleep(4*DELAY);
+		assertEquals(1, refresher.startedCount());
+		assertEquals(1, refresher.getCanceledCount());
+
+		refresher.finish();
+		waitForEnded(1);
+		waitForStarted(2);
+		assertEquals(new HashSet<String>(Arrays.asList("a-1", "a-2")), new HashSet<String>(refresher.started.get(1)));
+	}
+
+	/**
+	 * A refresh that is canceled before its job gets to run is done right away.
+	 */
+	public void testCancelBeforeStart() throws Exception {
+		Job.getJobManager().beginRule(REFRESH_RULE, new NullProgressMonitor());
+		try {
+			dirty("a-1");
+			waitForStarted(1);
+			dirty("a-2");
+			assertEquals(1, refresher.endedCount());
+			assertEquals("canceled", refresher.ended.get(0));
+			waitForStarted(2);
+			assertEquals(1, refresher.endedCount());
+		} finally {
+			Job.getJobManager().endRule(REFRESH_RULE);
+		}
+		refresher.finish();
+		waitForEnded(2);
+		assertEquals("done", refresher.ended.get(1));
+		assertEquals(1, refresher.getCanceledCount());
+		assertEquals(2, refresher.getRefreshCount());
+	}
+
+	private void dirty(String projectName) {
+		refresher.addDirty(GradleCore.create(getProject(projectName)));
+	}
+
+	private void waitForStarted(final int count) throws Exception {
+		new ACondition() {
+			@Override
+			public boolean test() throws Exception {
+				assertEquals(count, refresher.startedCount());
+				return true;
+			}
+		}.waitFor(TIMEOUT);
+	}
+
+	private void waitForEnded(final int count) throws Exception {
+		new ACondition() {
+			@Override
+			public boolean test() throws Exception {
+				assertEquals(count, refresher.endedCount());
+				return true;
+			}
+		}.waitFor(TIMEOUT);
+	}
+
+	private void createFamily(String name, int size) throws Exception {
+		IProject root = null;
+		for (int i = 0; i < size; i++) {
+			IProject project = getProject(name+"-"+i);
+			project.create(new NullProgressMonitor());
+			project.open(new NullProgressMonitor());
+			if (root==null) {
+				root = project;
+			}
+			BuildFamilyRegistry.getInstance().setRootLocation(GradleCore.create(project), root.getLocation().toFile());
+		}
+	}
+
+}
@@ -69,6 +69,7 @@ import org.springsource.ide.eclipse.gradle.core.util.ErrorHandler;
 import org.springsource.ide.eclipse.gradle.core.util.GradleRunnable;
 import org.springsource.ide.eclipse.gradle.core.util.JobUtil;
 import org.springsource.ide.eclipse.gradle.core.util.Joinable;
+import org.springsource.ide.eclipse.gradle.core.util.RefreshPlanner;
 import org.springsource.ide.eclipse.gradle.core.util.TimeUtils;
 import org.springsource.ide.eclipse.gradle.core.wizards.GradleImportOperation;
 import org.springsource.ide.eclipse.gradle.core.wtp.WTPUtil;
@@ -1041,6 +1042,27 @@ public class GradleImportTests extends GradleTest {
 		assertWtpAfterGradleDependencies(jp);		
 	}
 
+	/**
+	 * After running tasks, only the parts of a project that tasks are expected to change are refreshed,
+	 * unless a full refresh is enabled in the refresh preferences.
+	 */
+	public void testTargetedRefresh() throws Exception {
+		importTestProject("quickstart-noeclipse");
+		GradleProject gp = getGradleProject("quickstart-noeclipse");
+		IProject project = gp.getProject();
+		File dir = gp.getLocation();
+		FileUtils.write(new File(dir, "src/main/java/org/gradle/Added.java"), "package org.gradle;\npublic class Added {}\n");
+		FileUtils.write(new File(dir, "build/output/data.txt"), "data");
+
+		RefreshPlanner.refresh(gp, new NullProgressMonitor());
+		assertTrue(project.getFile("src/main/java/org/gradle/Added.java").exists());
+		assertFalse(project.getFile("build/output/data.txt").exists());
+
+		gp.getRefreshPreferences().setFullRefresh(true);
+		RefreshPlanner.refresh(gp, new NullProgressMonitor());
+		assertTrue(project.getFile("build/output/data.txt").exists());
+	}
+
 	public static void reimport(final GradleProject gp) throws Exception {
 		JobUtil.withRule(JobUtil.buildRule(), new NullProgressMonitor(), 1, new GradleRunnable("Reimport "+gp.getDisplayName()) {
 			public void doit(IProgressMonitor mon) throws Exception {
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.GradleProjectManager;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.GradleModelManager;
+
+public class GradleProjectManagerTest extends GradleTest {
+
+	private File root;
+	private GradleProjectManager manager;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = new File(ResourcesPlugin.getWorkspace().getRoot().getLocation().toFile().getParentFile(), "projectManagerTest");
+		FileUtils.deleteQuietly(root);
+		root.mkdirs();
+		manager = new GradleProjectManager(new GradleModelManager(null));
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(manager, IResourceChangeEvent.POST_CHANGE);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(manager);
+		super.tearDown();
+		FileUtils.deleteQuietly(root);
+	}
+
+	public void testEquivalentLocations() throws Exception {
+		File dir = new File(root, "a");
+		dir.mkdirs();
+		new File(root, "b").mkdirs();
+		GradleProject project = manager.getOrCreate(dir);
+		assertEquals(dir.getCanonicalFile(), project.getLocation());
+		assertSame(project, manager.getOrCreate(new File(root, "b/../a")));
+		assertSame(project, manager.getOrCreate(new File(new File(root, "a").getPath()+File.separator)));
+		assertSame(project, manager.get(dir.getCanonicalFile()));
+	}
+
+	public void testConcurrentLookups() throws Exception {
+		final File[] dirs = new File[20];
+		for (int i = 0; i < dirs.length; i++) {
+			dirs[i] = new File(root, "project"+i);
+			dirs[i].mkdirs();
+		}
+		final GradleProject[][] found = new GradleProject[8][dirs.length];
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[found.length];
+		for (int t = 0; t < threads.length; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int i = 0; i < dirs.length; i++) {
+							found[thread][i] = manager.getOrCreate(dirs[(i+thread)%dirs.length]);
+						}
+					} catch (Throwable e) {
+						error.compareAndSet(null, e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join(10000);
+		}
+		if (error.get()!=null) {
+			throw new AssertionError(error.get());
+		}
+		for (int i = 0; i < dirs.length; i++) {
+			GradleProject project = manager.getOrCreate(dirs[i]);
+			for (int t = 0; t < threads.length; t++) {
+				assertSame(project, found[t][(i-t+dirs.length)%dirs.length]);
+			}
+		}
+	}
+
+	/**
+	 * Canonical paths are remembered until projects are added, removed or moved in the workspace.
+	 */
+	public void testCanonicalPathsForgottenOnWorkspaceChanges() throws Exception {
+		File a = new File(root, "a");
+		File b = new File(root, "b");
+		a.mkdirs();
+		b.mkdirs();
+		File link = new File(root, "link");
+		Files.createSymbolicLink(link.toPath(), a.toPath());
+
+		GradleProject projectA = manager.getOrCreate(link);
+		assertEquals(a.getCanonicalFile(), projectA.getLocation());
+
+		link.delete();
+		Files.createSymbolicLink(link.toPath(), b.toPath());
+		assertSame(projectA, manager.getOrCreate(link)); //Remembered
+
+		IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject("projectManagerTest");
+		project.create(new NullProgressMonitor());
+		project.delete(true, true, new NullProgressMonitor());
+		assertEquals(b.getCanonicalFile(), manager.getOrCreate(link).getLocation());
+	}
+
+}
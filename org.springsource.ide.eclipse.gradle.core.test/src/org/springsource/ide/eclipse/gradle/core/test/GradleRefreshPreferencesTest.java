@@ -12,8 +12,13 @@ package org.springsource.ide.eclipse.gradle.core.test;
 
 import static org.junit.Assert.assertArrayEquals;
 
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
 import org.springsource.ide.eclipse.gradle.core.actions.GradleRefreshPreferences;
+import org.springsource.ide.eclipse.gradle.core.preferences.AbstractGradleProjectPreferences;
 import org.springsource.ide.eclipse.gradle.core.wizards.GradleImportOperation;
 
 
@@ -52,6 +57,38 @@ public class GradleRefreshPreferencesTest extends GradleTest {
 		copyAndTest(importOp, refreshPrefs);
 	}
 	
+	/**
+	 * Many changes in a row should be written to disk only once, but a fresh preferences object
+	 * for the same project should still see all of them.
+	 */
+	public void testCoalescedWrites() throws Exception {
+		File location = File.createTempFile("prefs", "test").getCanonicalFile();
+		location.delete();
+		location.mkdirs();
+		try {
+			GradleProject project = GradleCore.create(location);
+			GradleRefreshPreferences refreshPrefs = project.getRefreshPreferences();
+			AbstractGradleProjectPreferences.flushNow();
+			int changes = AbstractGradleProjectPreferences.getChangeCount();
+			int writes = AbstractGradleProjectPreferences.getWriteCount();
+
+			for (int i = 0; i < 100; i++) {
+				refreshPrefs.setBeforeTasks(new String[] {"task"+i});
+				refreshPrefs.setDoBeforeTasks(i%2==0);
+			}
+			GradleRefreshPreferences fresh = new GradleRefreshPreferences(project);
+			assertArrayEquals(new String[] {"task99"}, fresh.getBeforeTasks());
+			assertFalse(fresh.getDoBeforeTasks());
+			AbstractGradleProjectPreferences.flushNow();
+
+			assertEquals(200, AbstractGradleProjectPreferences.getChangeCount() - changes);
+			int written = AbstractGradleProjectPreferences.getWriteCount() - writes;
+			assertTrue("Too many writes: "+written, written<10);
+		} finally {
+			FileUtils.deleteDirectory(location);
+		}
+	}
+
 	private void copyAndTest(GradleImportOperation importOp,
 			GradleRefreshPreferences refreshPrefs) {
 		refreshPrefs.copyFrom(importOp);
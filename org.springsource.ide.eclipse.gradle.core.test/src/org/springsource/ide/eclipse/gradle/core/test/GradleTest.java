@@ -60,6 +60,7 @@ import org.springsource.ide.eclipse.gradle.core.GradleProject;
 import org.springsource.ide.eclipse.gradle.core.ProjectMapperFactory;
 import org.springsource.ide.eclipse.gradle.core.actions.RefreshDependenciesActionCore;
 import org.springsource.ide.eclipse.gradle.core.classpathcontainer.GradleClassPathContainer;
+import org.springsource.ide.eclipse.gradle.core.preferences.AbstractGradleProjectPreferences;
 import org.springsource.ide.eclipse.gradle.core.preferences.GradlePreferences;
 import org.springsource.ide.eclipse.gradle.core.test.GradleImportTests.WaitForRefresh;
 import org.springsource.ide.eclipse.gradle.core.test.util.GitProject;
@@ -97,6 +98,7 @@ public abstract class GradleTest extends TestCase {
 		preferences.putBoolean("org.codehaus.groovy.eclipse.dsl.auto.add.support", false);
 		preferences.flush();
 		
+		AbstractGradleProjectPreferences.flushNow(); //Don't let pending writes from a previous test land in this one.
 		ISchedulingRule buildRule = ResourcesPlugin.getWorkspace().getRuleFactory().buildRule();
 		Job.getJobManager().beginRule(buildRule, new NullProgressMonitor());
 		try {
@@ -0,0 +1,472 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
+import org.springsource.ide.eclipse.gradle.core.GradleNature;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.autorefresh.BuildInputsIndex;
+import org.springsource.ide.eclipse.gradle.core.autorefresh.BuildScriptDigests;
+import org.springsource.ide.eclipse.gradle.core.autorefresh.GradleWorkspaceListener;
+import org.springsource.ide.eclipse.gradle.core.autorefresh.IDirtyProjectListener;
+import org.springsource.ide.eclipse.gradle.core.autorefresh.RootMembersIndex;
+import org.springsource.ide.eclipse.gradle.core.classpathcontainer.FastOperationFailedException;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.BuildFamilyRegistry;
+
+public class GradleWorkspaceListenerTest extends GradleTest {
+
+	/**
+	 * Number of projects in each of the two build families in the test workspace.
+	 */
+	private static final int FAMILY_SIZE = 100;
+
+	/**
+	 * Treats all Gradle projects as dependency managed, so the test doesn't need real
+	 * classpath containers.
+	 */
+	private static class Index extends RootMembersIndex {
+		@Override
+		protected boolean isDependencyManaged(GradleProject project) {
+			return true;
+		}
+	}
+
+	/**
+	 * Treats every build script event as a content change.
+	 */
+	private static class AlwaysChanged extends BuildScriptDigests {
+		@Override
+		public synchronized boolean update(IFile file) {
+			return true;
+		}
+	}
+
+	/**
+	 * Knows the build scripts of the test families without a Gradle model: every project's
+	 * 'build.gradle'. Records which scripts are read.
+	 */
+	private static class Inputs extends BuildInputsIndex {
+		final List<String> buildScriptRequests = new ArrayList<String>();
+		final List<String> scriptsRead = new ArrayList<String>();
+		/**
+		 * Family whose model is not available.
+		 */
+		String unknownFamily = null;
+
+		Inputs(RootMembersIndex members) {
+			super(members);
+		}
+		@Override
+		protected Collection<File> getBuildScripts(GradleProject root) throws FastOperationFailedException {
+			String family = root.getName().substring(0, 1);
+			buildScriptRequests.add(family);
+			if (family.equals(unknownFamily)) {
+				throw new FastOperationFailedException();
+			}
+			List<File> scripts = new ArrayList<File>();
+			for (int i = 0; i < FAMILY_SIZE; i++) {
+				scripts.add(new File(getProject(family+"-"+i).getLocation().toFile(), "build.gradle"));
+			}
+			return scripts;
+		}
+		@Override
+		protected Collection<String> getAppliedScripts(File script) {
+			scriptsRead.add(script.getParentFile().getName()+"/"+script.getName());
+			return super.getAppliedScripts(script);
+		}
+	}
+
+	private static class DirtyProjects implements IDirtyProjectListener {
+		final Set<GradleProject> dirty = new HashSet<GradleProject>();
+		public void addDirty(GradleProject gp) {
+			dirty.add(gp);
+		}
+		public void removeDirty(GradleProject gp) {
+			dirty.remove(gp);
+		}
+	}
+
+	private Index index;
+	private DirtyProjects dirtyProjects;
+	private GradleWorkspaceListener listener;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				createFamily("a");
+				createFamily("b");
+			}
+		}, new NullProgressMonitor());
+		index = new Index();
+		dirtyProjects = new DirtyProjects();
+		listener = new GradleWorkspaceListener(dirtyProjects, index, new AlwaysChanged());
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(listener, IResourceChangeEvent.POST_CHANGE);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(listener);
+		BuildFamilyRegistry.getInstance().clear();
+		super.tearDown();
+	}
+
+	public void testOnlyFamilyDirtied() throws Exception {
+		listener.resourceChanged(buildScriptChanged("a-7"));
+		assertEquals(FAMILY_SIZE, dirtyProjects.dirty.size());
+		for (GradleProject gp : dirtyProjects.dirty) {
+			assertTrue(gp.getProject().getName().startsWith("a-"));
+		}
+	}
+
+	public void testIndexFollowsWorkspaceChanges() throws Exception {
+		listener.resourceChanged(buildScriptChanged("a-0"));
+		assertTrue(dirtyProjects.dirty.contains(GradleCore.create(getProject("a-3"))));
+		dirtyProjects.dirty.clear();
+
+		getProject("a-3").close(new NullProgressMonitor());
+		getProject("a-4").delete(true, true, new NullProgressMonitor());
+		listener.resourceChanged(buildScriptChanged("a-0"));
+		assertEquals(FAMILY_SIZE-2, dirtyProjects.dirty.size());
+		dirtyProjects.dirty.clear();
+
+		getProject("a-3").open(new NullProgressMonitor());
+		listener.resourceChanged(buildScriptChanged("a-0"));
+		assertEquals(FAMILY_SIZE-1, dirtyProjects.dirty.size());
+
+		//A root project change (e.g. after a model build) rebuilds the index.
+		int rebuilds = index.getRebuildCount();
+		BuildFamilyRegistry.getInstance().setRootLocation(GradleCore.create(getProject("b-1")), getProject("a-0").getLocation().toFile());
+		dirtyProjects.dirty.clear();
+		listener.resourceChanged(buildScriptChanged("a-0"));
+		assertEquals(FAMILY_SIZE, dirtyProjects.dirty.size());
+		assertEquals(rebuilds+1, index.getRebuildCount());
+	}
+
+	public void testUnchangedContentIgnored() throws Exception {
+		BuildScriptDigests digests = new BuildScriptDigests();
+		String content = "//"+System.nanoTime()+"\napply plugin: 'java'\n"; //Not seen before
+		IFile script = getProject("a-5").getFile("build.gradle");
+		script.create(new ByteArrayInputStream(content.getBytes()), true, null);
+		assertTrue(digests.update(script));
+		assertFalse(digests.update(script));
+
+		script.touch(null);
+		assertFalse(digests.update(script));
+		script.setContents(new ByteArrayInputStream(content.replace("\n", "\r\n").getBytes()), true, false, null);
+		assertFalse(digests.update(script));
+		assertEquals(3, digests.getUnchangedCount());
+
+		script.setContents(new ByteArrayInputStream((content+"apply plugin: 'eclipse'\n").getBytes()), true, false, null);
+		assertTrue(digests.update(script));
+		script.delete(true, null);
+		assertTrue(digests.update(script));
+		assertFalse(digests.update(script));
+	}
+
+	public void testBuildInputs() throws Exception {
+		IProject root = getProject("a-0");
+		createFile(getProject("a-2").getFile("build.gradle"), "apply from: \"$rootDir/gradle/shared.gradle\"\n");
+		root.getFolder("gradle").create(true, true, null);
+		createFile(root.getFile("gradle/shared.gradle"), "apply(from: 'other.gradle')\napply from: 'http://example.com/remote.gradle'\n");
+		listener = new GradleWorkspaceListener(dirtyProjects, index, new AlwaysChanged(), new Inputs(index));
+
+		assertDirties(root.getFile("settings.gradle"), "a-");
+		assertDirties(root.getFile("gradle.properties"), "a-");
+		assertDirties(root.getFile("gradle/wrapper/gradle-wrapper.properties"), "a-");
+		assertDirties(root.getFile("buildSrc/src/main/groovy/Plugin.groovy"), "a-");
+		assertDirties(root.getFile("gradle/shared.gradle"), "a-");
+		assertDirties(getProject("a-2").getFile("other.gradle"), "a-"); //Relative to the applying project
+		assertDirties(getProject("b-3").getFile("build.gradle"), "b-");
+		//Scripts may be applied in ways the index can't follow, so any .gradle file in a project folder is an input
+		assertDirties(getProject("a-3").getFile("unrelated.gradle"), "a-");
+		assertDirties(getProject("b-0").getFile("gradle/shared.gradle"), "b-");
+		assertDirties(getProject("a-3").getFile("notes.txt"), null);
+		IProject other = getProject("other");
+		other.create(null);
+		other.open(null);
+		assertDirties(other.getFile("unrelated.gradle"), null);
+	}
+
+	/**
+	 * A changed script is read again, and is the only script read again. Scripts that are no longer applied
+	 * are no longer inputs.
+	 */
+	public void testChangedScriptsRead() throws Exception {
+		IProject other = getProject("other");
+		other.create(null);
+		other.open(null);
+		IProject root = getProject("a-0");
+		root.getFolder("gradle").create(true, true, null);
+		createFile(root.getFile("gradle/shared.gradle"), "apply from: 'other.gradle'\n");
+		createFile(getProject("a-2").getFile("build.gradle"),
+				"apply from: \"$rootDir/gradle/shared.gradle\"\napply from: \"$rootDir/../other/common.gradle\"\n");
+		Inputs inputs = new Inputs(index);
+		listener = new GradleWorkspaceListener(dirtyProjects, index, new AlwaysChanged(), inputs);
+		assertDirties(getProject("a-3").getFile("notes.txt"), null);
+		assertEquals(2*FAMILY_SIZE+3, inputs.scriptsRead.size()); //All build scripts, shared.gradle, other.gradle, common.gradle
+
+		inputs.scriptsRead.clear();
+		assertDirties(other.getFile("common.gradle"), "a-");
+		assertEquals("[other/common.gradle]", inputs.scriptsRead.toString());
+
+		inputs.scriptsRead.clear();
+		assertDirties(root.getFile("gradle/shared.gradle"), "a-");
+		assertEquals("[gradle/shared.gradle]", inputs.scriptsRead.toString());
+
+		inputs.scriptsRead.clear();
+		getProject("a-2").getFile("build.gradle").setContents(new ByteArrayInputStream("apply plugin: 'java'\n".getBytes()), true, false, null);
+		assertDirties(getProject("a-2").getFile("build.gradle"), "a-");
+		assertEquals("[a-2/build.gradle]", inputs.scriptsRead.toString());
+		assertDirties(other.getFile("common.gradle"), null);
+		assertEquals("[a-2/build.gradle]", inputs.scriptsRead.toString());
+	}
+
+	/**
+	 * Builds whose inputs are unknown aren't indexed again until their model changes, and any .gradle file
+	 * in their projects is treated as an input.
+	 */
+	public void testUnknownInputsNotRetried() throws Exception {
+		Inputs inputs = new Inputs(index);
+		inputs.unknownFamily = "b";
+		listener = new GradleWorkspaceListener(dirtyProjects, index, new AlwaysChanged(), inputs);
+		for (int i = 0; i < 10; i++) {
+			assertDirties(getProject("b-"+i).getFile("build.gradle"), "b-");
+			assertDirties(getProject("a-"+i).getFile("build.gradle"), "a-");
+		}
+		assertDirties(getProject("b-3").getFile("unrelated.gradle"), "b-");
+		assertEquals(2, inputs.buildScriptRequests.size());
+		assertTrue(inputs.buildScriptRequests.containsAll(Arrays.asList("a", "b")));
+	}
+
+	/**
+	 * Fires a change event for a file, and checks that it dirties exactly the projects in the family
+	 * with the given name prefix, or no projects if the prefix is null.
+	 */
+	private void assertDirties(IFile file, String family) {
+		dirtyProjects.dirty.clear();
+		listener.resourceChanged(changed(file));
+		assertEquals(file.toString(), family==null ? 0 : FAMILY_SIZE, dirtyProjects.dirty.size());
+		for (GradleProject gp : dirtyProjects.dirty) {
+			assertTrue(gp.getProject().getName().startsWith(family));
+		}
+	}
+
+	private static void createFile(IFile file, String content) throws CoreException {
+		file.create(new ByteArrayInputStream(content.getBytes()), true, null);
+	}
+
+	/**
+	 * Projects being added, closed or opened, and root locations being recorded again after a model build,
+	 * don't rebuild the index.
+	 */
+	public void testNoFullRebuild() throws Exception {
+		BuildFamilyRegistry registry = BuildFamilyRegistry.getInstance();
+		listener.resourceChanged(buildScriptChanged("a-0"));
+		int rebuilds = index.getRebuildCount();
+		int rootChanges = registry.getRootChangeCount();
+
+		IProject other = getProject("other");
+		other.create(new NullProgressMonitor());
+		other.open(new NullProgressMonitor());
+		getProject("a-5").close(new NullProgressMonitor());
+		getProject("a-5").open(new NullProgressMonitor());
+		registry.setRootLocation(GradleCore.create(getProject("a-1")), getProject("a-0").getLocation().toFile());
+
+		dirtyProjects.dirty.clear();
+		listener.resourceChanged(buildScriptChanged("a-0"));
+		assertEquals(FAMILY_SIZE, dirtyProjects.dirty.size());
+		assertEquals(rootChanges, registry.getRootChangeCount());
+		assertEquals(rebuilds, index.getRebuildCount());
+	}
+
+	/**
+	 * Fires synthetic build script change events at the listener and reports the cost per event, as
+	 * a rough benchmark. The build scripts exist, and don't change, so all but the first event for each
+	 * script are recognized as not changing anything.
+	 */
+	public void testEventCost() throws Exception {
+		final int EVENTS = 2000;
+		byte[] script = ("//"+System.nanoTime()+"\napply plugin: 'java'\n").getBytes(); //Not seen before
+		for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+			project.getFile("build.gradle").create(new ByteArrayInputStream(script), true, null);
+		}
+		BuildScriptDigests digests = new BuildScriptDigests();
+		listener = new GradleWorkspaceListener(dirtyProjects, index, digests);
+		listener.resourceChanged(buildScriptChanged("b-0")); //Build the index outside the measurement.
+		long start = System.nanoTime();
+		for (int i = 0; i < EVENTS; i++) {
+			listener.resourceChanged(buildScriptChanged((i%2==0 ? "a-" : "b-")+(i%FAMILY_SIZE)));
+		}
+		long duration = System.nanoTime() - start;
+		assertEquals(2*FAMILY_SIZE, dirtyProjects.dirty.size());
+		assertEquals(1, index.getRebuildCount());
+		assertEquals(EVENTS-FAMILY_SIZE, digests.getUnchangedCount()); //Events cycle through FAMILY_SIZE scripts
+		System.out.println("GradleWorkspaceListener: "+(duration/EVENTS/1000)+" us per build script change event, "
+				+2*FAMILY_SIZE+" projects in workspace");
+	}
+
+	private void createFamily(String name) throws CoreException {
+		IProject root = null;
+		for (int i = 0; i < FAMILY_SIZE; i++) {
+			IProject project = getProject(name+"-"+i);
+			project.create(new NullProgressMonitor());
+			project.open(new NullProgressMonitor());
+			IProjectDescription description = project.getDescription();
+			description.setNatureIds(new String[] {GradleNature.NATURE_ID});
+			project.setDescription(description, new NullProgressMonitor());
+			if (root==null) {
+				root = project;
+			}
+			BuildFamilyRegistry.getInstance().setRootLocation(GradleCore.create(project), root.getLocation().toFile());
+		}
+	}
+
+	private static IResourceChangeEvent buildScriptChanged(String projectName) {
+		return changed(getProject(projectName).getFile("build.gradle"));
+	}
+
+	private static IResourceChangeEvent changed(IFile changedFile) {
+		IProject project = changedFile.getProject();
+		FakeDelta file = new FakeDelta(changedFile);
+		FakeDelta projectDelta = new FakeDelta(project, file);
+		final FakeDelta rootDelta = new FakeDelta(ResourcesPlugin.getWorkspace().getRoot(), projectDelta);
+		return new IResourceChangeEvent() {
+			public IMarkerDelta[] findMarkerDeltas(String type, boolean includeSubtypes) {
+				return new IMarkerDelta[0];
+			}
+			public int getBuildKind() {
+				return 0;
+			}
+			public IResourceDelta getDelta() {
+				return rootDelta;
+			}
+			public IResource getResource() {
+				return null;
+			}
+			public Object getSource() {
+				return ResourcesPlugin.getWorkspace();
+			}
+			public int getType() {
+				return POST_CHANGE;
+			}
+		};
+	}
+
+	/**
+	 * A CHANGED delta with content changes, for a resource and some of its members.
+	 */
+	private static class FakeDelta implements IResourceDelta {
+
+		private final IResource resource;
+		private final IResourceDelta[] children;
+
+		FakeDelta(IResource resource, IResourceDelta... children) {
+			this.resource = resource;
+			this.children = children;
+		}
+
+		public void accept(IResourceDeltaVisitor visitor) throws CoreException {
+			if (visitor.visit(this)) {
+				for (IResourceDelta child : children) {
+					child.accept(visitor);
+				}
+			}
+		}
+
+		public void accept(IResourceDeltaVisitor visitor, boolean includePhantoms) throws CoreException {
+			accept(visitor);
+		}
+
+		public void accept(IResourceDeltaVisitor visitor, int memberFlags) throws CoreException {
+			accept(visitor);
+		}
+
+		public IResourceDelta findMember(IPath path) {
+			return null;
+		}
+
+		public IResourceDelta[] getAffectedChildren() {
+			return children;
+		}
+
+		public IResourceDelta[] getAffectedChildren(int kindMask) {
+			return children;
+		}
+
+		public IResourceDelta[] getAffectedChildren(int kindMask, int memberFlags) {
+			return children;
+		}
+
+		public int getFlags() {
+			return resource.getType()==IResource.FILE ? CONTENT : 0;
+		}
+
+		public IPath getFullPath() {
+			return resource.getFullPath();
+		}
+
+		public int getKind() {
+			return CHANGED;
+		}
+
+		public IMarkerDelta[] getMarkerDeltas() {
+			return new IMarkerDelta[0];
+		}
+
+		public IPath getMovedFromPath() {
+			return null;
+		}
+
+		public IPath getMovedToPath() {
+			return null;
+		}
+
+		public IPath getProjectRelativePath() {
+			return resource.getProjectRelativePath();
+		}
+
+		public IResource getResource() {
+			return resource;
+		}
+
+		@SuppressWarnings("rawtypes")
+		public Object getAdapter(Class adapter) {
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.test;
+
+import java.io.File;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.springsource.ide.eclipse.gradle.core.util.ProjectLocationIndex;
+
+public class ProjectLocationIndexTest extends GradleTest {
+
+	private File root;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = new File(ResourcesPlugin.getWorkspace().getRoot().getLocation().toFile().getParentFile(), "locationIndexTest");
+		root.mkdirs();
+	}
+
+	public void testExactAndContainingLookups() throws Exception {
+		ProjectLocationIndex index = ProjectLocationIndex.getInstance();
+		File outerLoc = new File(root, "outer");
+		File innerLoc = new File(outerLoc, "inner");
+
+		assertNull(index.getProject(outerLoc));
+		assertNull(index.getContainingProject(new File(innerLoc, "bin")));
+
+		IProject outer = createProject("outerProject", outerLoc);
+		IProject inner = createProject("innerProject", innerLoc);
+
+		assertEquals(outer, index.getProject(outerLoc));
+		assertEquals(inner, index.getProject(innerLoc));
+		assertNull(index.getProject(new File(outerLoc, "other")));
+
+		assertEquals(inner, index.getContainingProject(new File(innerLoc, "bin/classes")));
+		assertEquals(inner, index.getContainingProject(innerLoc));
+		assertEquals(outer, index.getContainingProject(new File(outerLoc, "bin")));
+		assertNull(index.getContainingProject(new File(root, "elsewhere/lib")));
+
+		inner.delete(false, true, new NullProgressMonitor());
+		assertNull(index.getProject(innerLoc));
+		assertEquals(outer, index.getContainingProject(new File(innerLoc, "bin")));
+	}
+
+	/**
+	 * Resource change events are only delivered at the end of a workspace operation. Projects created
+	 * earlier in the same operation should still be found.
+	 */
+	public void testProjectCreatedInCurrentOperation() throws Exception {
+		final ProjectLocationIndex index = ProjectLocationIndex.getInstance();
+		final File loc = new File(root, "sameName");
+		final File otherLoc = new File(root, "folderName");
+		assertNull(index.getProject(loc)); //Make sure index is initialized before we start
+		final IProject[] found = new IProject[2];
+		ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				createProject("sameName", loc);
+				found[0] = index.getProject(loc);
+				createProject("projectName", otherLoc);
+				found[1] = index.getProject(otherLoc);
+			}
+		}, new NullProgressMonitor());
+		assertEquals(getProject("sameName"), found[0]);
+		assertEquals(getProject("projectName"), found[1]);
+	}
+
+	/**
+	 * Looking up a location without a project again doesn't scan the workspace, unless projects were
+	 * added, removed or moved since the last lookup.
+	 */
+	public void testRepeatedMisses() throws Exception {
+		ProjectLocationIndex index = ProjectLocationIndex.getInstance();
+		File loc = new File(root, "neverImported");
+		assertNull(index.getProject(loc));
+		int scans = index.getScanCount();
+		for (int i = 0; i < 100; i++) {
+			assertNull(index.getProject(loc));
+		}
+		assertEquals(scans, index.getScanCount());
+
+		createProject("other", new File(root, "other"));
+		assertNull(index.getProject(loc));
+		assertEquals(scans+1, index.getScanCount());
+		assertNull(index.getProject(loc));
+		assertEquals(scans+1, index.getScanCount());
+
+		IProject project = createProject("neverImported", loc);
+		assertEquals(project, index.getProject(loc));
+	}
+
+	private IProject createProject(String name, File location) throws CoreException {
+		location.mkdirs();
+		IWorkspace ws = ResourcesPlugin.getWorkspace();
+		IProject project = ws.getRoot().getProject(name);
+		IProjectDescription description = ws.newProjectDescription(name);
+		description.setLocation(new Path(location.getAbsolutePath()));
+		project.create(description, new NullProgressMonitor());
+		project.open(new NullProgressMonitor());
+		return project;
+	}
+
+}
@@ -18,6 +18,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.springsource.ide.eclipse.gradle.core.util.TopoSort;
@@ -146,6 +147,56 @@ public class TopoSortTest extends TestCase {
 		checkResult(sorter, false);
 	}
 
+	/**
+	 * Several cycles that share nodes, plus some edges between them.
+	 */
+	public void testTangledCycles() {
+		edge("A", "B"); edge("B", "C"); edge("C", "A");
+		edge("C", "D"); edge("D", "B");
+		edge("E", "C"); edge("F", "E"); edge("E", "F");
+		edge("G", "A");
+		TopoSort<String> sorter = new TopoSort<String>(getElements(), getCompare());
+		checkResult(sorter, true);
+		List<String> result = sorter.getSorted();
+		assertEquals(result, new TopoSort<String>(getElements(), getCompare()).getSorted()); //deterministic
+	}
+
+	/**
+	 * Sorts a graph of 10000 nodes: a long chain with random shortcuts, then the same with a couple of
+	 * cycles added. Reports timings, as a rough benchmark of how sorting scales.
+	 */
+	public void testLargeGraph() {
+		final int N = 10000;
+		Random random = new Random(42);
+		for (int i = 0; i < N; i++) {
+			String node = "node"+i;
+			node(node);
+			if (i>0) {
+				edge(node, "node"+(i-1));
+				for (int j = 0; j < 3; j++) {
+					edge(node, "node"+random.nextInt(i));
+				}
+			}
+		}
+		long start = System.currentTimeMillis();
+		TopoSort<String> sorter = new TopoSort<String>(getElements(), getCompare());
+		assertFalse(sorter.hasCycle());
+		long dagTime = System.currentTimeMillis() - start;
+		checkOrder(sorter.getSorted(), getCompare());
+		for (int i = 0; i < sorter.getSorted().size(); i++) {
+			assertEquals("node"+i, sorter.getSorted().get(i));
+		}
+
+		edge("node0", "node"+(N-1));
+		edge("node100", "node5000");
+		start = System.currentTimeMillis();
+		sorter = new TopoSort<String>(getElements(), getCompare());
+		assertTrue(sorter.hasCycle());
+		long cycleTime = System.currentTimeMillis() - start;
+		checkOrder(sorter.getSorted(), sorter.getModifiedPartialOrder());
+		System.out.println("TopoSort of "+N+" nodes: "+dagTime+" ms (DAG), "+cycleTime+" ms (with cycles)");
+	}
+
 	private void genTree(String parent, int d) {
 		if (d==1) {
 			node(parent);
@@ -202,6 +253,24 @@ public class TopoSortTest extends TestCase {
 		}
 	}
 
+	/**
+	 * Like {@link #checkResult(TopoSort, boolean)} but in linear time, for large graphs.
+	 */
+	private void checkOrder(List<String> result, PartialOrder<String> order) {
+		assertEquals(getElements().size(), result.size());
+		Map<String, Integer> position = new HashMap<String, Integer>();
+		for (int i = 0; i < result.size(); i++) {
+			position.put(result.get(i), i);
+		}
+		for (String node : result) {
+			for (String pred : order.getPredecessors(node)) {
+				if (!pred.equals(node)) {
+					assertTrue(pred+" should come before "+node, position.get(pred)<position.get(node));
+				}
+			}
+		}
+	}
+
 	private Collection<String> getElements() {
 		return graph.keySet();
 	}
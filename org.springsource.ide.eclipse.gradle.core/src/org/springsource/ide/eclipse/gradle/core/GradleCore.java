@@ -16,6 +16,7 @@ import java.util.Collection;
 import java.util.List;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
@@ -29,8 +30,6 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.gradle.tooling.model.ExternalDependency;
 import org.gradle.tooling.model.GradleModuleVersion;
 import org.gradle.tooling.model.eclipse.HierarchicalEclipseProject;
-import org.gradle.tooling.model.gradle.GradlePublication;
-import org.gradle.tooling.model.gradle.ProjectPublications;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.prefs.BackingStoreException;
 import org.springsource.ide.eclipse.gradle.core.autorefresh.DependencyRefresher;
@@ -38,9 +37,14 @@ import org.springsource.ide.eclipse.gradle.core.classpathcontainer.FastOperation
 import org.springsource.ide.eclipse.gradle.core.modelmanager.DefaultModelBuilder;
 import org.springsource.ide.eclipse.gradle.core.modelmanager.GradleModelManager;
 import org.springsource.ide.eclipse.gradle.core.modelmanager.ModelBuilder;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.ModelSnapshotStore;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.PublicationIndex;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.ToolinApiUtils;
+import org.springsource.ide.eclipse.gradle.core.preferences.AbstractGradleProjectPreferences;
 import org.springsource.ide.eclipse.gradle.core.preferences.GradleAPIProperties;
 import org.springsource.ide.eclipse.gradle.core.preferences.GradlePreferences;
 import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
+import org.springsource.ide.eclipse.gradle.core.util.ProjectLocationIndex;
 
 
 /**
@@ -76,6 +80,12 @@ public class GradleCore extends Plugin {
 		Assert.isTrue(instance==null);
 		GradleCore.context = bundleContext;
 		instance = this;
+		ModelSnapshotStore snapshots = new ModelSnapshotStore(getStateLocation().append("modelSnapshots").toFile());
+		snapshots.prune();
+		modelManager.setSnapshotStore(snapshots);
+		modelManager.setProjectManager(projectManager);
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(projectManager, IResourceChangeEvent.POST_CHANGE);
+		openCloseListeners(); //Needed even without listeners, to keep the publication index up-to-date.
 		DependencyRefresher.init();
 	}
 
@@ -92,6 +102,15 @@ public class GradleCore extends Plugin {
 		if (openCloseListeners!=null) {
 			ResourcesPlugin.getWorkspace().removeResourceChangeListener(openCloseListeners);
 		}
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(projectManager);
+		ToolinApiUtils.getConnectionPool().dispose();
+		ProjectLocationIndex.dispose();
+		AbstractGradleProjectPreferences.flushNow();
+		ModelSnapshotStore snapshots = modelManager.getSnapshotStore();
+		if (snapshots!=null) {
+			snapshots.flush();
+			modelManager.setSnapshotStore(null);
+		}
 		super.stop(bundleContext);
 	}
 
@@ -212,25 +231,36 @@ public class GradleCore extends Plugin {
 	 * Callers should have a mechanism in place to populate the cache beforehand.
 	 */
 	public static IProject getGradleProject(ExternalDependency gEntry) throws FastOperationFailedException {
-		Collection<GradleProject> projects = getGradleProjects();
-		//File file = gEntry.getFile();
 		FastOperationFailedException throwAtEnd = null;
 		try {
-			for (GradleProject gp : projects) {
-				IProject p = gp.getProject();
-				if (p!=null) { //only projects that exist in the workspace are interesting.
+			GradleModuleVersion dependency = gEntry.getGradleModuleVersion();
+			if (dependency==null) {
+				return null;
+			}
+			PublicationIndex index = modelManager.getPublicationIndex();
+			IProject found = findPublishingProject(index, dependency);
+			if (found!=null || index.isComplete()) {
+				return found;
+			}
+			//Not found, but some projects may not be indexed yet. Their publications may be in the model
+			// cache even if they weren't built in this session (e.g. restored from a snapshot).
+			int generation = index.getGeneration();
+			for (GradleProject gp : getGradleProjects()) {
+				if (!index.isIndexed(gp) && gp.getProject()!=null) { //only projects that exist in the workspace are interesting.
 					try {
-						ProjectPublications publications = gp.getPublications();
-						for (GradlePublication pub : publications.getPublications()) {
-							if (matches(pub.getId(), gEntry.getGradleModuleVersion())) {
-								return p;
-							}
-						}
+						index.add(gp, gp.getPublications());
 					} catch (FastOperationFailedException e) {
 						throwAtEnd = e;
 					}
 				}
 			}
+			if (throwAtEnd==null) {
+				index.setComplete(generation);
+			}
+			found = findPublishingProject(index, dependency);
+			if (found!=null) {
+				return found;
+			}
 		} catch (Throwable e) {
 			if (ExceptionUtil.isUnknownModelException(e)) {
 				//Ignore, it means this feature is not supported on older version of gradle.
@@ -245,26 +275,26 @@ public class GradleCore extends Plugin {
 		return null;
 	}
 
-	private static boolean matches(GradleModuleVersion publication, GradleModuleVersion dependency) {
-		//TODO: make matching algo configurable to some degree.
-		return publication!=null && dependency!=null && equal(publication.getGroup(), dependency.getGroup())
-			&& equal(publication.getName(), dependency.getName());
-		//	&& equal(publication.getVersion(), dependency.getVersion());
-	}
-
-	private static boolean equal(String x, String y) {
-		if (x==null) {
-			return x == y;
+	private static IProject findPublishingProject(PublicationIndex index, GradleModuleVersion dependency) {
+		for (GradleProject gp : index.find(dependency)) {
+			IProject p = gp.getProject();
+			if (p!=null && p.isAccessible() && GradleNature.hasNature(p)) {
+				return p;
+			}
 		}
-		return x.equals(y);
+		return null;
 	}
 
 	public synchronized void addOpenCloseListener(ProjectOpenCloseListener l) {
+		openCloseListeners().add(l);
+	}
+
+	private synchronized ProjectOpenCloseListenerManager openCloseListeners() {
 		if (openCloseListeners==null) {
-			openCloseListeners = new ProjectOpenCloseListenerManager();
+			openCloseListeners = new ProjectOpenCloseListenerManager(modelManager.getPublicationIndex());
 			ResourcesPlugin.getWorkspace().addResourceChangeListener(openCloseListeners);
 		}
-		openCloseListeners.add(l);
+		return openCloseListeners;
 	}
 
 	public synchronized void removeOpenCloseListener(ProjectOpenCloseListener l) {
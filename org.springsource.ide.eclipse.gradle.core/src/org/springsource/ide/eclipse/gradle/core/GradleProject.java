@@ -25,7 +25,6 @@ import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.FileLocator;
@@ -58,6 +57,7 @@ import org.springsource.ide.eclipse.gradle.core.classpathcontainer.GradleClassPa
 import org.springsource.ide.eclipse.gradle.core.classpathcontainer.GradleClasspathContainerInitializer;
 import org.springsource.ide.eclipse.gradle.core.classpathcontainer.GradleDependencyComputer;
 import org.springsource.ide.eclipse.gradle.core.launch.GradleLaunchConfigurationDelegate;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.BuildFamilyRegistry;
 import org.springsource.ide.eclipse.gradle.core.modelmanager.GradleModelManager;
 import org.springsource.ide.eclipse.gradle.core.modelmanager.IGradleModelListener;
 import org.springsource.ide.eclipse.gradle.core.preferences.GradleImportPreferences;
@@ -69,6 +69,7 @@ import org.springsource.ide.eclipse.gradle.core.util.GradleRunnable;
 import org.springsource.ide.eclipse.gradle.core.util.IllegalClassPathEntryException;
 import org.springsource.ide.eclipse.gradle.core.util.JobUtil;
 import org.springsource.ide.eclipse.gradle.core.util.NatureUtils;
+import org.springsource.ide.eclipse.gradle.core.util.ProjectLocationIndex;
 import org.springsource.ide.eclipse.gradle.core.wtp.WTPUtil;
 import org.springsource.ide.eclipse.gradle.toolingapi.GradleToolingApi;
 
@@ -111,7 +112,6 @@ public class GradleProject {
 	 */
 	private GradleClassPathContainer classPathContainer = null;
 
-	private IProject cachedProject;
 
 	private Map<Class<?>, Job> modelFetchingJobsCache = new ConcurrentHashMap<Class<?>, Job>();
 
@@ -167,14 +167,7 @@ public class GradleProject {
 		try {
 			IProject project = getProject();
 			if (project != null) {
-				boolean shouldExport = GradleCore.getInstance().getPreferences().isExportDependencies();
-				boolean isExported = GradleClassPathContainer.isExported(getJavaProject());
-				if (shouldExport!=isExported) {
-					GradleClassPathContainer container = getClassPathcontainer();
-					if (container!=null) {
-						container.setExported(shouldExport, new SubProgressMonitor(monitor, 1));
-					}
-				}
+				refreshContainerExported(new SubProgressMonitor(monitor, 1));
 				//TODO: the requestUpdateFor is asynchronous... make it synchronous!
 				GradleClasspathContainerInitializer.requestUpdateFor(project, false);
 			}
@@ -183,6 +176,25 @@ public class GradleProject {
 		}
 	}
 
+	/**
+	 * Makes the 'exported' status of the classpath container agree with the preferences.
+	 */
+	public void refreshContainerExported(IProgressMonitor monitor) throws CoreException {
+		monitor.beginTask("Refresh Classpath Container exported status", 1);
+		try {
+			boolean shouldExport = GradleCore.getInstance().getPreferences().isExportDependencies();
+			boolean isExported = GradleClassPathContainer.isExported(getJavaProject());
+			if (shouldExport!=isExported) {
+				GradleClassPathContainer container = getClassPathcontainer();
+				if (container!=null) {
+					container.setExported(shouldExport, new SubProgressMonitor(monitor, 1));
+				}
+			}
+		} finally {
+			monitor.done();
+		}
+	}
+
 	/**
 	 * Reconfigures the project's source folders in Java classpath based on current gradle model.
 	 * (Note that this doesn't force the gradle model itself to be updated!)
@@ -579,26 +591,30 @@ public class GradleProject {
 		try {
 			return mgr.getModel(this, type);
 		} catch (FastOperationFailedException e) {
-			//TODO: looks like race condition. Yes this map is synchronized, but what is stopping two
-			// separate threads from getting here at the same time and both putting a new job in 
-			// because they find that modelFetchingJobsCache.get(type)==null???
-			Job job = modelFetchingJobsCache.get(type);
-			if (job == null) {
-				modelFetchingJobsCache.put(type, JobUtil.schedule(
-						JobUtil.NO_RULE,
-						new GradleRunnable("Obtaining Gradle model: "
-								+ type.getName()) {
+			//Only one background job per model type. Note that, even without this, concurrent requests
+			// for the same model would be coalesced into a single build by the model manager.
+			synchronized (modelFetchingJobsCache) {
+				Job job = modelFetchingJobsCache.get(type);
+				if (job == null) {
+					modelFetchingJobsCache.put(type, JobUtil.schedule(
+							JobUtil.NO_RULE,
+							new GradleRunnable("Obtaining Gradle model: "
+									+ type.getName()) {
 
-							@Override
-							public void doit(IProgressMonitor mon)
-									throws Exception {
-								try {
-									mgr.getModel(GradleProject.this, type, mon);
-								} finally {
-									modelFetchingJobsCache.remove(type);
+								@Override
+								public void doit(IProgressMonitor mon)
+										throws Exception {
+									try {
+										mgr.getModel(GradleProject.this, type, mon);
+									} finally {
+										//Synchronized: must not run before the job was put in the map.
+										synchronized (modelFetchingJobsCache) {
+											modelFetchingJobsCache.remove(type);
+										}
+									}
 								}
-							}
-						}));
+							}));
+				}
 			}
 			throw e;
 		}
@@ -689,6 +705,20 @@ public class GradleProject {
 		mgr.invalidate(this);
 	}
 
+	/**
+	 * Invalidate the models of the build family of some projects, and rebuild the models of the given types for
+	 * the projects. The projects should all belong to the same family. The family is invalidated only once. For
+	 * model types that are built for a whole family at once, this takes a single build per type.
+	 */
+	public static void rebuildFamilyModels(Map<Class<?>, List<GradleProject>> projectsByType, IProgressMonitor monitor) throws CoreException {
+		for (List<GradleProject> projects : projectsByType.values()) {
+			if (!projects.isEmpty()) {
+				projects.get(0).mgr.rebuildFamily(projectsByType, monitor);
+				return;
+			}
+		}
+	}
+
 	/**
 	 * Add whatever configuration stuff is expected of a Gradle project. Note that the fact that already a
 	 * GradleProject instance exists is no guarantee that things like required natures are already added
@@ -735,20 +765,7 @@ public class GradleProject {
 	 * doesn't exist in the workspace this method returns null.
 	 */
 	public IProject getProject() {
-		//TODO: This cached doesn't work well if correct value for getProject is null. But this is tricky,
-		//  since 'caching' a null value is a bit dangerous. We would need to nvalidate the cached value
-		//  somehow if when projects get created in the workspace.
-		if (cachedProject!=null && cachedProject.exists()) {
-			return cachedProject;
-		}
-		for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
-			IPath loc = project.getLocation();
-			if (loc!=null && loc.toFile().equals(location)) {
-				this.cachedProject = project;
-				return project;
-			}
-		};
-		return null;
+		return ProjectLocationIndex.getInstance().getProject(location);
 	}
 
 	@Override
@@ -950,12 +967,10 @@ public class GradleProject {
 	 * root project.
 	 */
 	public GradleProject getRootProject() throws FastOperationFailedException {
-		GradleProjectPreferences prefs = getProjectPreferences();
-		if (prefs!=null) {
-			File rootLocation = prefs.getRootProjectLocation();
-			if (rootLocation!=null) {
-				return GradleCore.create(rootLocation);
-			}
+		BuildFamilyRegistry families = BuildFamilyRegistry.getInstance();
+		File rootLocation = families.getRootLocation(this);
+		if (rootLocation!=null) {
+			return GradleCore.create(rootLocation);
 		}
 		//Sometimes the prefs get damaged because somebody deleted them... or whatever.
 		// Try to recover if we have cached models.
@@ -965,8 +980,9 @@ public class GradleProject {
 			while ((parent=root.getParent())!=null) {
 				root = parent;
 			}
-			prefs.setRootProjectLocation(root.getProjectDirectory());
-			return GradleCore.create(root);
+			GradleProject rootProject = GradleCore.create(root);
+			families.setRootLocation(this, rootProject.getLocation());
+			return rootProject;
 		} catch (Throwable e) {
 			//ignore recovery attempt failures.
 		}
@@ -12,28 +12,44 @@ package org.springsource.ide.eclipse.gradle.core;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.IPath;
 import org.gradle.tooling.model.eclipse.HierarchicalEclipseProject;
 import org.springsource.ide.eclipse.gradle.core.classpathcontainer.GradleClassPathContainer;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.BuildFamilyRegistry;
 import org.springsource.ide.eclipse.gradle.core.modelmanager.GradleModelManager;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.ModelSnapshotStore;
 
 /**
  * An instance of this class is responsible for managing the creation of GradleProject instances.
+ * <p>
+ * Looking up a known project doesn't take locks and, after the first lookup of a given location, doesn't
+ * access the file system. The canonical paths of locations are remembered until a project in the
+ * workspace is added, removed, moved or otherwise changes location (to receive such events the
+ * manager must be registered as a resource change listener).
  * 
  * @author Kris De Volder
  */
-public class GradleProjectManager {
-	
-	//TODO: delete entries when not needed anymore somehow... (how would we know?)
+public class GradleProjectManager implements IResourceChangeListener {
 	
 	/**
 	 * Keeps an index of all known Gradle projects. The key used for the index is the canonical path
-	 * of the projects folder location in the file system.
+	 * of the projects folder location in the file system. Entries for deleted projects are removed
+	 * when the model manager evicts their models (see {@link #forget(GradleProject)}).
+	 */
+	private Map<String, GradleProject> gradleProjects = new ConcurrentHashMap<String, GradleProject>();
+
+	/**
+	 * Canonical files of the locations that projects were looked up with, keyed by absolute path.
 	 */
-	private Map<String, GradleProject> gradleProjects = new HashMap<String, GradleProject>();
+	private final Map<String, File> canonicalFiles = new ConcurrentHashMap<String, File>();
 	private GradleModelManager modelManager;
 	
 	public GradleProjectManager(GradleModelManager mgr) {
@@ -60,22 +76,83 @@ public class GradleProjectManager {
 //		}
 //	}
 
-	public synchronized GradleProject getOrCreate(File location) {
+	public GradleProject getOrCreate(File location) {
 		File canonicalFile = toCanonicalFile(location);
 		GradleProject project = get(canonicalFile);
-		if (project==null) {
-			project = new GradleProject(canonicalFile, modelManager);
-			gradleProjects.put(canonicalFile.getPath(), project);
+		if (project!=null) {
+			return project;
+		}
+		synchronized (this) {
+			project = get(canonicalFile);
+			if (project==null) {
+				project = new GradleProject(canonicalFile, modelManager);
+				gradleProjects.put(canonicalFile.getPath(), project);
+			}
+			return project;
 		}
-		return project;
 	}
 	
 	private File toCanonicalFile(File location) {
-		try {
-			return location.getCanonicalFile();
-		} catch (IOException e) {
-			GradleCore.log(e);
-			return location.getAbsoluteFile(); //Best we can do
+		String path = location.getAbsolutePath();
+		File canonicalFile = canonicalFiles.get(path);
+		if (canonicalFile==null) {
+			try {
+				canonicalFile = location.getCanonicalFile();
+			} catch (IOException e) {
+				GradleCore.log(e);
+				return location.getAbsoluteFile(); //Best we can do
+			}
+			canonicalFiles.put(path, canonicalFile);
+		}
+		return canonicalFile;
+	}
+
+	/**
+	 * Forgets the canonical paths of project locations when projects are added, removed or moved in the
+	 * workspace. These events are rare, so all of them are forgotten. The build families recorded for
+	 * projects that were added, opened or replaced are forgotten too, since their preferences may have
+	 * changed.
+	 */
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta==null) {
+			return;
+		}
+		for (IResourceDelta projectDelta : delta.getAffectedChildren()) {
+			if (projectDelta.getResource().getType()==IResource.PROJECT) {
+				int kind = projectDelta.getKind();
+				int flags = projectDelta.getFlags();
+				if (kind==IResourceDelta.ADDED || kind==IResourceDelta.REMOVED
+						|| (flags & (IResourceDelta.OPEN | IResourceDelta.DESCRIPTION | IResourceDelta.REPLACED))!=0) {
+					canonicalFiles.clear();
+				}
+				if (kind==IResourceDelta.ADDED || (flags & (IResourceDelta.OPEN | IResourceDelta.REPLACED))!=0) {
+					forgetBuildFamily((IProject) projectDelta.getResource());
+				}
+			}
+		}
+	}
+
+	private void forgetBuildFamily(IProject project) {
+		IPath location = project.getLocation();
+		if (location!=null) {
+			GradleProject gp = get(toCanonicalFile(location.toFile()));
+			if (gp!=null) {
+				BuildFamilyRegistry.getInstance().forget(gp);
+			}
+		}
+	}
+
+	/**
+	 * Forget about a project that no longer exists, so the GradleProject instance can be garbage collected.
+	 * Does nothing if the project's location still exists, or if the project is not the instance
+	 * that is known for its location.
+	 */
+	public synchronized void forget(GradleProject project) {
+		File location = project.getLocation();
+		if (!location.exists() && gradleProjects.get(location.getPath())==project) {
+			gradleProjects.remove(location.getPath());
+			canonicalFiles.clear();
 		}
 	}
 
@@ -102,6 +179,10 @@ public class GradleProjectManager {
 				GradleSaveParticipant.getInstance().clearAll();
 			}
 		}
+		ModelSnapshotStore snapshots = modelManager.getSnapshotStore();
+		if (snapshots!=null) {
+			snapshots.clearAll();
+		}
 	}
 
 }
@@ -19,6 +19,7 @@ import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.runtime.ListenerList;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.PublicationIndex;
 
 /**
  * @author John Schneider
@@ -27,8 +28,14 @@ import org.eclipse.core.runtime.OperationCanceledException;
 public class ProjectOpenCloseListenerManager implements IResourceChangeListener {
 
 	private ListenerList listeners = new ListenerList();
-	//No need to lazy init this list because the ProjectOpenCloseListenerManager only gets created if
-	// at least one listener needs to be added to it.
+	//No need to lazy init this list. There's only one ProjectOpenCloseListenerManager, created when
+	// GradleCore is started.
+
+	private final PublicationIndex publications;
+
+	public ProjectOpenCloseListenerManager(PublicationIndex publications) {
+		this.publications = publications;
+	}
 
 	@Override
 	public void resourceChanged(IResourceChangeEvent event) {
@@ -55,6 +62,10 @@ public class ProjectOpenCloseListenerManager implements IResourceChangeListener
 				IResourceDelta delta = event.getDelta();
 				if (delta == null) return;
 
+				if (delta.getAffectedChildren(IResourceDelta.ADDED).length>0) {
+					//New projects may publish artifacts that were previously resolved as jars.
+					publications.setIncomplete();
+				}
 				IResourceDelta[] projDeltas = delta.getAffectedChildren(IResourceDelta.CHANGED);
 				for (int i = 0; i < projDeltas.length; ++i) {
 					IResourceDelta projDelta = projDeltas[i];
@@ -75,6 +86,7 @@ public class ProjectOpenCloseListenerManager implements IResourceChangeListener
 
 	private void projectClosed(final IProject project) {
 		if (GradleNature.hasNature(project)) {
+			publications.invalidate(GradleCore.create(project));
 			for (Object l : listeners.getListeners()) {
 				((ProjectOpenCloseListener)l).projectClosed(project);
 			}
@@ -83,6 +95,7 @@ public class ProjectOpenCloseListenerManager implements IResourceChangeListener
 
 	private void projectOpened(final IProject project) {
 		if (GradleNature.hasNature(project)) {
+			publications.invalidate(GradleCore.create(project));
 			for (Object l : listeners.getListeners()) {
 				((ProjectOpenCloseListener)l).projectOpened(project);
 			}
@@ -11,6 +11,10 @@
 package org.springsource.ide.eclipse.gradle.core.actions;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.springsource.ide.eclipse.gradle.core.util.Continuation;
 import org.springsource.ide.eclipse.gradle.core.util.GradleRunnable;
 
@@ -18,7 +22,8 @@ import org.springsource.ide.eclipse.gradle.core.util.GradleRunnable;
 /**
  * This is a GradleRunnable that is associated with a continuation. When using continuations, 
  * use this style of runable. It makes sure thrown execptions are automatically passed on
- * to the continuation.
+ * to the continuation. When run as a job, the continuation is also called if the job is canceled
+ * before it gets to run.
  * 
  * @author Kris De Volder
  */
@@ -26,6 +31,7 @@ public abstract class Continuable extends GradleRunnable {
 	
 	Continuation<Void> cont;
 	private int ticks;
+	private volatile boolean started = false;
 
 	public Continuable(String jobName, int ticks, Continuation<Void> cont) {
 		super(jobName);
@@ -39,6 +45,7 @@ public abstract class Continuable extends GradleRunnable {
 	 */
 	@Override
 	public final void doit(IProgressMonitor monitor) throws Exception {
+		started = true;
 		monitor.beginTask(jobName, ticks);
 		try {
 			doit(cont, monitor);
@@ -49,6 +56,21 @@ public abstract class Continuable extends GradleRunnable {
 		}
 	}
 
+	@Override
+	public Job asJob() {
+		Job job = super.asJob();
+		job.addJobChangeListener(new JobChangeAdapter() {
+			@Override
+			public void done(IJobChangeEvent event) {
+				if (!started) {
+					//Canceled before it ran. Without this, callers waiting for the continuation would wait forever.
+					cont.error(new OperationCanceledException());
+				}
+			}
+		});
+		return job;
+	}
+
 	/**
 	 * This method is called by the Continuable when it is run. The call will be wrapped with an appropriate 
 	 * try catch that catches any uncaught exceptions and propagates them to the continuation. If no exceptions
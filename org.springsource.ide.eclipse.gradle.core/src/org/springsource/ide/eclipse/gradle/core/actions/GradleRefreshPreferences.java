@@ -12,6 +12,7 @@ package org.springsource.ide.eclipse.gradle.core.actions;
 
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
 import org.springsource.ide.eclipse.gradle.core.preferences.AbstractGradleProjectPreferences;
+import org.springsource.ide.eclipse.gradle.core.util.RefreshPlanner;
 import org.springsource.ide.eclipse.gradle.core.wizards.GradleImportOperation;
 
 /**
@@ -32,6 +33,13 @@ public class GradleRefreshPreferences extends AbstractGradleProjectPreferences {
 	private static final String DO_BEFORE_TASKS = "enableBeforeTasks";
 	private static final String BEFORE_TASKS = "beforeTasks";
 	private static final String AFTER_TASKS = "afterTasks";
+	private static final String FULL_REFRESH = "fullRefresh";
+
+	/**
+	 * By default, only the parts of a project that Gradle tasks are likely to change are refreshed
+	 * after running tasks on it (see {@link RefreshPlanner}).
+	 */
+	public static final boolean DEFAULT_FULL_REFRESH = false;
 
 	public GradleRefreshPreferences(GradleProject project) {
 		super(project, "org.springsource.ide.eclipse.gradle.refresh");
@@ -86,6 +94,17 @@ public class GradleRefreshPreferences extends AbstractGradleProjectPreferences {
 		return getStrings(AFTER_TASKS, GradleImportOperation.DEFAULT_AFTER_TASKS);
 	}
 	
+	/**
+	 * @return true if the whole project should be refreshed after running Gradle tasks on it.
+	 */
+	public boolean getFullRefresh() {
+		return get(FULL_REFRESH, DEFAULT_FULL_REFRESH);
+	}
+
+	public void setFullRefresh(boolean enable) {
+		put(FULL_REFRESH, enable);
+	}
+	
 	/**
 	 * Set all the refresh preferences based on a the properties of a given importOperation.
 	 */
@@ -10,21 +10,35 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.gradle.core.actions;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.core.runtime.jobs.IJobManager;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
 import org.springsource.ide.eclipse.gradle.core.GradleCore;
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
 import org.springsource.ide.eclipse.gradle.core.classpathcontainer.ClassPathModel;
+import org.springsource.ide.eclipse.gradle.core.classpathcontainer.GradleClassPathContainer;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.BuildFamilyRegistry;
 import org.springsource.ide.eclipse.gradle.core.util.Continuation;
 import org.springsource.ide.eclipse.gradle.core.util.JobUtil;
 import org.springsource.ide.eclipse.gradle.core.util.Joinable;
 import org.springsource.ide.eclipse.gradle.core.util.JoinableContinuation;
+import org.springsource.ide.eclipse.gradle.core.util.ProjectFamilyExecutor;
+import org.springsource.ide.eclipse.gradle.core.util.ProjectFamilyExecutor.ProjectWork;
 
 
 /**
@@ -36,39 +50,126 @@ public class RefreshDependenciesActionCore {
 
 	/**
 	 * Exposes what this UI action does through an easy to call static method.
+	 * @return The job that does the refresh. Canceling it cancels the whole refresh. The continuation
+	 *     is called when the refresh is done, failed or was canceled, also if it was canceled before it started.
 	 */
-	private static void callOn(final IProjectProvider _projects, Continuation<Void> cont) {
+	public static Job callOn(final IProjectProvider _projects, Continuation<Void> cont) {
 		final int BIG_WORK = 10000;
-		JobUtil.schedule(JobUtil.LIGHT_RULE, new Continuable("Refresh project models", BIG_WORK, cont) {
+		//A single job that takes the rules it needs itself: just the light rule while building the models,
+		// and the build rule only while updating the classpath containers.
+		return JobUtil.schedule(JobUtil.NO_RULE, new Continuable("Refresh project dependencies", BIG_WORK, cont) {
 			@Override
-			public void doit(Continuation<Void> cont, IProgressMonitor monitor) throws CoreException {
+			public void doit(Continuation<Void> cont, IProgressMonitor monitor) throws Exception {
 				List<IProject> projects = _projects.get();
 				if (!projects.isEmpty()) {
-					int workUnit = BIG_WORK / projects.size() / 2;
+					int workUnit = BIG_WORK / projects.size() / 3;
 					final List<GradleProject> gps = new ArrayList<GradleProject>(projects.size());
 					for (IProject p : projects) {
-						GradleProject gp = GradleCore.create(p);
-						gp.invalidateGradleModel();
-						gps.add(gp);
+						gps.add(GradleCore.create(p));
 						monitor.worked(workUnit);
 					}
-					for (GradleProject gp : gps) {
-						ClassPathModel.getClassPathModel(gp, new SubProgressMonitor(monitor, workUnit));
+					IJobManager jobManager = Job.getJobManager();
+					try {
+						jobManager.beginRule(JobUtil.LIGHT_RULE, monitor);
+						buildModels(gps, new SubProgressMonitor(monitor, workUnit*gps.size()));
+					} finally {
+						jobManager.endRule(JobUtil.LIGHT_RULE);
+					}
+					ISchedulingRule buildRule = JobUtil.buildRule();
+					try {
+						jobManager.beginRule(buildRule, monitor);
+						updateContainers(withFamilies(gps), new SubProgressMonitor(monitor, workUnit*gps.size()));
+					} finally {
+						jobManager.endRule(buildRule);
+					}
+				}
+				cont.apply(null);
+			}
+		});
+	}
+
+	/**
+	 * Updates the classpath containers of some projects in one go, from the models in the cache.
+	 */
+	private static void updateContainers(Collection<GradleProject> gps, IProgressMonitor monitor) throws CoreException {
+		monitor.beginTask("Update classpath containers", gps.size());
+		try {
+			List<GradleClassPathContainer> containers = new ArrayList<GradleClassPathContainer>(gps.size());
+			for (GradleProject gp : gps) {
+				GradleClassPathContainer container = gp.getClassPathcontainer();
+				if (gp.getProject()!=null && container!=null) {
+					gp.refreshContainerExported(new SubProgressMonitor(monitor, 1));
+					containers.add(container);
+				} else {
+					monitor.worked(1);
+				}
+			}
+			GradleClassPathContainer.notifyJDT(containers);
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * @return The projects, and the other members of their build families. Rebuilding a family gives all its
+	 *     members new models, so their classpath containers need updating too.
+	 */
+	private static Collection<GradleProject> withFamilies(List<GradleProject> gps) {
+		Set<GradleProject> projects = new LinkedHashSet<GradleProject>(gps);
+		Set<GradleProject> roots = new HashSet<GradleProject>();
+		for (GradleProject gp : gps) {
+			GradleProject root = gp.getRootProjectMaybe();
+			if (root!=null && roots.add(root)) {
+				File[] family = BuildFamilyRegistry.getInstance().getFamily(root);
+				if (family!=null) {
+					for (File member : family) {
+						projects.add(GradleCore.create(member));
 					}
-					JobUtil.schedule(new Continuable("Refresh project dependencies", projects.size(), cont) {
-						@Override
-						public void doit(Continuation<Void> cont, IProgressMonitor monitor) throws Exception {
-							for (GradleProject gp : gps) {
-								gp.refreshDependencies(new SubProgressMonitor(monitor, 1));
-							}
-							cont.apply(null);
-						}
-					});
+				}
+			}
+		}
+		return projects;
+	}
+
+	/**
+	 * Builds the models of some projects. One build per build family: the whole family is invalidated once
+	 * and built once. The models of the other members then come from the cache.
+	 */
+	private static void buildModels(List<GradleProject> gps, IProgressMonitor monitor) throws Exception {
+		final Map<GradleProject, List<GradleProject>> families = new LinkedHashMap<GradleProject, List<GradleProject>>();
+		for (List<GradleProject> family : ProjectFamilyExecutor.groupByRoot(gps)) {
+			families.put(family.get(0), family);
+		}
+		int concurrency = GradleCore.getInstance().getPreferences().getMaxConcurrentBuilds();
+		new ProjectFamilyExecutor("Build project models", concurrency).execute(families.keySet(), monitor, new ProjectWork() {
+			public void run(GradleProject first, IProgressMonitor mon) throws Exception {
+				mon.beginTask("Build models for family of "+first.getDisplayName(), 1);
+				try {
+					GradleProject.rebuildFamilyModels(groupByModelType(families.get(first)), new SubProgressMonitor(mon, 1));
+				} finally {
+					mon.done();
 				}
 			}
 		});
 	}
 
+	/**
+	 * Groups projects by the type of model their classpath is computed from. Usually, all projects
+	 * in a family use the same type.
+	 */
+	private static Map<Class<?>, List<GradleProject>> groupByModelType(List<GradleProject> projects) {
+		Map<Class<?>, List<GradleProject>> groups = new LinkedHashMap<Class<?>, List<GradleProject>>();
+		for (GradleProject project : projects) {
+			Class<?> type = ClassPathModel.getModelType(project);
+			List<GradleProject> group = groups.get(type);
+			if (group==null) {
+				groups.put(type, group = new ArrayList<GradleProject>());
+			}
+			group.add(project);
+		}
+		return groups;
+	}
+
 	/**
 	 * A convenience method that wraps the callback-style method so it returns a 'Joinable' instead.
 	 */
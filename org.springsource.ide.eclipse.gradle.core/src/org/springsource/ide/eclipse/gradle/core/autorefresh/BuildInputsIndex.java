@@ -0,0 +1,536 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.autorefresh;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.gradle.tooling.model.GradleScript;
+import org.gradle.tooling.model.eclipse.EclipseProject;
+import org.gradle.tooling.model.eclipse.HierarchicalEclipseProject;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.ProjectHierarchyVisitor;
+import org.springsource.ide.eclipse.gradle.core.classpathcontainer.FastOperationFailedException;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.BuildFamilyRegistry;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.IGradleModelListener;
+
+/**
+ * Index from files that Gradle builds read to the root projects of the builds that read them. Used by the
+ * {@link GradleWorkspaceListener} so that a changed file dirties exactly the builds that depend on it.
+ * <p>
+ * The inputs of a build are:
+ * <ul>
+ *   <li>the build scripts of all its projects, as reported by the Gradle model</li>
+ *   <li>'settings.gradle', 'gradle.properties' and 'gradle/wrapper/gradle-wrapper.properties' in the root project</li>
+ *   <li>everything in the root project's 'buildSrc' folder</li>
+ *   <li>scripts applied with 'apply from:' by any of the above, as far as their paths can be worked out
+ *       without running the build (i.e. literal paths, possibly starting with $rootDir or $projectDir)</li>
+ *   <li>any other .gradle file in the folders of its projects. Scripts can be applied in ways that can't be
+ *       worked out without running the build (e.g. 'apply from: file(...)'), and such scripts are almost always
+ *       kept with the projects that use them.</li>
+ * </ul>
+ * The inputs of a build can only be worked out when the model of its root project is available. Builds
+ * for which this is not the case are 'unknown', and the listener falls back to treating any .gradle file
+ * in their projects as an input.
+ * <p>
+ * The inputs of a build are worked out again when the model of its root project changes. Scripts are
+ * only read again after they change, when the scripts they apply are worked out again.
+ */
+public class BuildInputsIndex {
+
+	/**
+	 * Files in the root project folder that are read by every build, if they exist.
+	 */
+	private static final String[] ROOT_INPUTS = {
+		"settings.gradle",
+		"gradle.properties",
+		"gradle/wrapper/gradle-wrapper.properties"
+	};
+
+	private static final String BUILD_SRC = "buildSrc";
+
+	private static final String SCRIPT_EXTENSION = "gradle";
+
+	private static final Pattern APPLY_FROM = Pattern.compile("apply\\s*\\(?\\s*from\\s*:\\s*(['\"])([^'\"]+)\\1");
+
+	/**
+	 * Inputs of a single build.
+	 */
+	private static class BuildInputs {
+		final GradleProject root;
+
+		/**
+		 * Whether the inputs are known. If not, the other fields are empty.
+		 */
+		boolean known = false;
+
+		/**
+		 * The build scripts of the projects in the build, as reported by the model.
+		 */
+		List<File> buildScripts = Collections.emptyList();
+
+		/**
+		 * The build scripts, and the scripts they apply.
+		 */
+		Set<IPath> scripts = Collections.emptySet();
+
+		BuildInputs(GradleProject root) {
+			this.root = root;
+		}
+	}
+
+	/**
+	 * Paths with the roots of the builds that read them. Also keeps track of the folders that contain
+	 * paths, so that it can tell whether there are any paths in a folder without looking at all of them.
+	 */
+	private static class PathMap {
+		private final Map<IPath, Set<GradleProject>> readers = new HashMap<IPath, Set<GradleProject>>();
+
+		/**
+		 * Number of paths inside each folder that contains any.
+		 */
+		private final Map<IPath, Integer> containing = new HashMap<IPath, Integer>();
+
+		Set<GradleProject> get(IPath path) {
+			return readers.get(path);
+		}
+
+		void add(IPath path, GradleProject root) {
+			Set<GradleProject> existing = readers.get(path);
+			if (existing==null) {
+				readers.put(path, existing = new HashSet<GradleProject>());
+				for (IPath folder = path.removeLastSegments(1); folder.segmentCount()>0; folder = folder.removeLastSegments(1)) {
+					Integer count = containing.get(folder);
+					containing.put(folder, count==null ? 1 : count+1);
+				}
+			}
+			existing.add(root);
+		}
+
+		void remove(IPath path, GradleProject root) {
+			Set<GradleProject> existing = readers.get(path);
+			if (existing!=null && existing.remove(root) && existing.isEmpty()) {
+				readers.remove(path);
+				for (IPath folder = path.removeLastSegments(1); folder.segmentCount()>0; folder = folder.removeLastSegments(1)) {
+					int count = containing.get(folder);
+					if (count==1) {
+						containing.remove(folder);
+					} else {
+						containing.put(folder, count-1);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return Whether a given folder is one of the paths, or contains any of them.
+		 */
+		boolean hasPathsIn(IPath folder) {
+			return readers.containsKey(folder) || containing.containsKey(folder);
+		}
+
+		/**
+		 * Add the readers of the paths that are folders containing a given path.
+		 */
+		void addAncestorReaders(IPath path, Set<GradleProject> result) {
+			for (IPath folder = path.removeLastSegments(1); folder.segmentCount()>0; folder = folder.removeLastSegments(1)) {
+				Set<GradleProject> found = readers.get(folder);
+				if (found!=null) {
+					result.addAll(found);
+				}
+			}
+		}
+
+		boolean hasAncestorIn(IPath path) {
+			for (IPath folder = path; folder.segmentCount()>0; folder = folder.removeLastSegments(1)) {
+				if (readers.containsKey(folder)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		boolean isEmpty() {
+			return readers.isEmpty();
+		}
+	}
+
+	private final RootMembersIndex members;
+
+	/**
+	 * Files in the root project folder that every build reads.
+	 */
+	private final PathMap rootInputs = new PathMap();
+
+	/**
+	 * Build scripts and the scripts they apply.
+	 */
+	private final PathMap scripts = new PathMap();
+
+	/**
+	 * Folders of which every file is an input.
+	 */
+	private final PathMap folders = new PathMap();
+
+	/**
+	 * Folders of which every .gradle file is an input: the project folders of each build.
+	 */
+	private final PathMap scriptFolders = new PathMap();
+
+	/**
+	 * The builds this index knows about, keyed by root project. Includes builds whose inputs are unknown.
+	 */
+	private final Map<GradleProject, BuildInputs> builds = new HashMap<GradleProject, BuildInputs>();
+
+	/**
+	 * Roots whose model changed since their inputs were last worked out. This is the only thing that can
+	 * make the inputs of an unknown build known. Model listeners are called while builds are finishing, so
+	 * this is not guarded by the index's lock.
+	 */
+	private final Set<GradleProject> modelChanged = Collections.newSetFromMap(new ConcurrentHashMap<GradleProject, Boolean>());
+
+	private final IGradleModelListener modelListener = new IGradleModelListener() {
+		public <T> void modelChanged(GradleProject project, Class<T> type, T model) {
+			modelChanged.add(project);
+		}
+	};
+
+	/**
+	 * The scripts that scripts apply, as written in them, keyed by script location. Scripts are read again
+	 * when they change (see {@link #inputsChanged(Collection)}).
+	 */
+	private final Map<IPath, Collection<String>> appliedScripts = new HashMap<IPath, Collection<String>>();
+
+	/**
+	 * {@link BuildFamilyRegistry#getRootChangeCount()} when the index was last brought up-to-date.
+	 */
+	private int rootChangeCount = -1;
+
+	public BuildInputsIndex(RootMembersIndex members) {
+		this.members = members;
+	}
+
+	/**
+	 * Add the inputs of builds that are not in the index yet, and work out the inputs of builds whose model
+	 * changed again. Should be called before looking things up in the index. This is cheap when nothing
+	 * changed.
+	 */
+	public synchronized void update() {
+		int currentChangeCount = BuildFamilyRegistry.getInstance().getRootChangeCount();
+		if (rootChangeCount!=currentChangeCount) {
+			rootChangeCount = currentChangeCount;
+			removeAll();
+		}
+		Collection<GradleProject> roots = members.getRoots();
+		if (!builds.isEmpty()) {
+			Set<GradleProject> current = new HashSet<GradleProject>(roots);
+			for (GradleProject root : new ArrayList<GradleProject>(builds.keySet())) {
+				if (!current.contains(root)) {
+					remove(builds.get(root));
+				}
+			}
+		}
+		for (GradleProject root : roots) {
+			BuildInputs build = builds.get(root);
+			if (build==null) {
+				builds.put(root, build = new BuildInputs(root));
+				modelChanged.remove(root);
+				root.addModelListener(modelListener);
+				index(build);
+			} else if (modelChanged.remove(root)) {
+				index(build);
+			}
+		}
+	}
+
+	/**
+	 * Called after files changed. The scripts among them are read again, and the scripts read by the
+	 * builds that read them are worked out again.
+	 */
+	public synchronized void inputsChanged(Collection<IPath> locations) {
+		Set<GradleProject> affected = new HashSet<GradleProject>();
+		for (IPath location : locations) {
+			if (appliedScripts.remove(location)!=null) {
+				Set<GradleProject> readers = scripts.get(location);
+				if (readers!=null) {
+					affected.addAll(readers);
+				}
+			}
+		}
+		for (GradleProject root : affected) {
+			BuildInputs build = builds.get(root);
+			if (build!=null && build.known) {
+				updateScripts(build);
+			}
+		}
+	}
+
+	/**
+	 * @return Roots of the builds that read a given file.
+	 */
+	public synchronized Collection<GradleProject> getReaders(IPath location) {
+		Set<GradleProject> readers = new HashSet<GradleProject>();
+		addAll(rootInputs.get(location), readers);
+		addAll(scripts.get(location), readers);
+		if (!folders.isEmpty()) {
+			folders.addAncestorReaders(location, readers);
+		}
+		if (SCRIPT_EXTENSION.equals(location.getFileExtension())) {
+			scriptFolders.addAncestorReaders(location, readers);
+		}
+		return readers;
+	}
+
+	/**
+	 * @return Whether the inputs of a build are in the index.
+	 */
+	public synchronized boolean isIndexed(GradleProject root) {
+		BuildInputs build = builds.get(root);
+		return build!=null && build.known;
+	}
+
+	/**
+	 * @return Whether any input is inside a given folder.
+	 */
+	public synchronized boolean hasInputsIn(IPath folder) {
+		return rootInputs.hasPathsIn(folder) || scripts.hasPathsIn(folder)
+				|| folders.hasPathsIn(folder) || folders.hasAncestorIn(folder)
+				|| scriptFolders.hasPathsIn(folder) || scriptFolders.hasAncestorIn(folder);
+	}
+
+	/**
+	 * Forget everything. The inputs of all builds are worked out again by the next {@link #update()}.
+	 */
+	public synchronized void clear() {
+		removeAll();
+		appliedScripts.clear();
+	}
+
+	/**
+	 * @return The build scripts of all projects in the build of a given root project.
+	 * @throws FastOperationFailedException if the model of the root project is not available.
+	 */
+	protected Collection<File> getBuildScripts(GradleProject root) throws FastOperationFailedException, CoreException {
+		final List<File> scripts = new ArrayList<File>();
+		new ProjectHierarchyVisitor() {
+			@Override
+			protected void visit(HierarchicalEclipseProject project) throws Exception {
+				scripts.add(getBuildScript((EclipseProject) project));
+			}
+		}.accept(root.getGradleModel());
+		return scripts;
+	}
+
+	private static File getBuildScript(EclipseProject project) {
+		try {
+			GradleScript script = project.getGradleProject().getBuildScript();
+			if (script.getSourceFile()!=null) {
+				return script.getSourceFile();
+			}
+		} catch (UnsupportedOperationException e) {
+			//Too old a version of Gradle, the model doesn't know the build script.
+		}
+		return new File(project.getProjectDirectory(), "build.gradle");
+	}
+
+	/**
+	 * Work out the inputs of a build, if they changed.
+	 */
+	private void index(BuildInputs build) {
+		List<File> buildScripts;
+		try {
+			buildScripts = new ArrayList<File>(getBuildScripts(build.root));
+		} catch (FastOperationFailedException e) {
+			removeInputs(build); //Unknown until the model is built.
+			return;
+		} catch (CoreException e) {
+			removeInputs(build); //Unknown, the model can't be built.
+			return;
+		}
+		if (build.known && buildScripts.equals(build.buildScripts)) {
+			return;
+		}
+		removeInputs(build);
+		GradleProject root = build.root;
+		IPath rootDir = toPath(root.getLocation());
+		for (String input : ROOT_INPUTS) {
+			rootInputs.add(rootDir.append(input), root);
+		}
+		folders.add(rootDir.append(BUILD_SRC), root);
+		for (File script : buildScripts) {
+			scriptFolders.add(toPath(script).removeLastSegments(1), root);
+		}
+		build.buildScripts = buildScripts;
+		build.known = true;
+		updateScripts(build);
+	}
+
+	/**
+	 * Work out the scripts a build reads again, reading only the scripts that weren't read before or changed.
+	 */
+	private void updateScripts(BuildInputs build) {
+		IPath rootDir = toPath(build.root.getLocation());
+		Set<IPath> found = new LinkedHashSet<IPath>();
+		for (File script : build.buildScripts) {
+			IPath path = toPath(script);
+			findScripts(path, path.removeLastSegments(1), rootDir, found);
+		}
+		for (IPath script : build.scripts) {
+			if (!found.contains(script)) {
+				removeScript(script, build.root);
+			}
+		}
+		for (IPath script : found) {
+			scripts.add(script, build.root);
+		}
+		build.scripts = found;
+	}
+
+	private void findScripts(IPath script, IPath projectDir, IPath rootDir, Set<IPath> found) {
+		if (!found.add(script)) {
+			return;
+		}
+		Collection<String> applied = appliedScripts.get(script);
+		if (applied==null) {
+			appliedScripts.put(script, applied = getAppliedScripts(script.toFile()));
+		}
+		for (String path : applied) {
+			IPath resolved = resolve(path, projectDir, rootDir);
+			if (resolved!=null) {
+				findScripts(resolved, projectDir, rootDir, found);
+			}
+		}
+	}
+
+	private void removeScript(IPath script, GradleProject root) {
+		scripts.remove(script, root);
+		if (scripts.get(script)==null) {
+			appliedScripts.remove(script);
+		}
+	}
+
+	private void removeInputs(BuildInputs build) {
+		if (build.known) {
+			GradleProject root = build.root;
+			IPath rootDir = toPath(root.getLocation());
+			for (String input : ROOT_INPUTS) {
+				rootInputs.remove(rootDir.append(input), root);
+			}
+			folders.remove(rootDir.append(BUILD_SRC), root);
+			for (File script : build.buildScripts) {
+				scriptFolders.remove(toPath(script).removeLastSegments(1), root);
+			}
+			for (IPath script : build.scripts) {
+				removeScript(script, root);
+			}
+			build.known = false;
+			build.buildScripts = Collections.emptyList();
+			build.scripts = Collections.emptySet();
+		}
+	}
+
+	private void remove(BuildInputs build) {
+		removeInputs(build);
+		builds.remove(build.root);
+		build.root.removeModelListener(modelListener);
+	}
+
+	private void removeAll() {
+		for (BuildInputs build : new ArrayList<BuildInputs>(builds.values())) {
+			remove(build);
+		}
+	}
+
+	/**
+	 * @return The paths that a script applies other scripts from, as written in the script.
+	 */
+	protected Collection<String> getAppliedScripts(File script) {
+		if (!script.isFile()) {
+			return Collections.emptySet();
+		}
+		Set<String> applied = new LinkedHashSet<String>();
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(script));
+			String line;
+			while ((line = reader.readLine())!=null) {
+				Matcher matcher = APPLY_FROM.matcher(line);
+				while (matcher.find()) {
+					applied.add(matcher.group(2));
+				}
+			}
+		} catch (IOException e) {
+			GradleCore.log(e);
+		} finally {
+			if (reader!=null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return applied;
+	}
+
+	/**
+	 * @return Location of an applied script, or null if it can't be worked out without running the
+	 *     build, or is not a local file.
+	 */
+	private static IPath resolve(String applied, IPath projectDir, IPath rootDir) {
+		if (applied.contains("://")) {
+			return null;
+		}
+		String path = applied
+				.replace("${rootDir}", rootDir.toString())
+				.replace("$rootDir", rootDir.toString())
+				.replace("${rootProject.projectDir}", rootDir.toString())
+				.replace("${projectDir}", projectDir.toString())
+				.replace("$projectDir", projectDir.toString());
+		if (path.contains("$")) {
+			return null;
+		}
+		IPath resolved = new Path(path);
+		if (!resolved.isAbsolute()) {
+			//Like project.file(path), relative paths are relative to the project, even in applied scripts.
+			resolved = projectDir.append(resolved);
+		}
+		return resolved;
+	}
+
+	private static IPath toPath(File file) {
+		return new Path(file.getAbsolutePath());
+	}
+
+	private static void addAll(Set<GradleProject> readers, Set<GradleProject> result) {
+		if (readers!=null) {
+			result.addAll(readers);
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.autorefresh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
+import org.springsource.ide.eclipse.gradle.core.GradleSaveParticipant;
+
+/**
+ * Remembers a digest of the content of build scripts, so that changes that leave a script's content the same
+ * (e.g. touching the file, or switching to a git branch where it has the same content) don't cause a model
+ * rebuild.
+ * <p>
+ * Digests are SHA-1 hashes of the file content, ignoring carriage returns so that line ending conversions
+ * don't count as changes. They are kept per project in the {@link GradleSaveParticipant}, so they survive
+ * restarts.
+ */
+public class BuildScriptDigests {
+
+	private static final String STORE_KEY = "buildScriptDigests";
+
+	/**
+	 * Recorded for files that don't exist.
+	 */
+	private static final String ABSENT = "";
+
+	private int unchanged = 0;
+
+	/**
+	 * Record the digest of a file's current content.
+	 * @return true if the content is different from the last time, or if there is no digest for
+	 *     the file yet.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized boolean update(IFile file) {
+		String digest = digest(file);
+		IProject project = file.getProject();
+		String key = file.getProjectRelativePath().toString();
+		GradleSaveParticipant store = GradleSaveParticipant.getInstance();
+		Serializable stored = store.get(project, STORE_KEY);
+		HashMap<String, String> digests = stored instanceof HashMap ? (HashMap<String, String>) stored : null;
+		if (digests!=null && digest.equals(digests.get(key))) {
+			unchanged++;
+			return false;
+		}
+		//Don't change the stored map, it may be being saved.
+		digests = digests==null ? new HashMap<String, String>() : new HashMap<String, String>(digests);
+		digests.put(key, digest);
+		store.put(project, STORE_KEY, digests);
+		return true;
+	}
+
+	/**
+	 * @return Number of times a build script changed without its content changing.
+	 */
+	public synchronized int getUnchangedCount() {
+		return unchanged;
+	}
+
+	/**
+	 * @return Hex encoded digest of a file's content, or {@link #ABSENT} if the file doesn't exist.
+	 *     If the file can't be read, a digest is returned that will not match any other.
+	 */
+	protected String digest(IFile file) {
+		if (!file.exists()) {
+			return ABSENT;
+		}
+		InputStream in = null;
+		try {
+			MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			in = file.getContents(true);
+			byte[] buf = new byte[8192];
+			int read;
+			while ((read = in.read(buf))>=0) {
+				int start = 0;
+				for (int i = 0; i < read; i++) {
+					if (buf[i]=='\r') {
+						sha1.update(buf, start, i-start);
+						start = i+1;
+					}
+				}
+				sha1.update(buf, start, read-start);
+			}
+			return toHex(sha1.digest());
+		} catch (NoSuchAlgorithmException e) {
+			GradleCore.log(e);
+		} catch (CoreException e) {
+			GradleCore.log(e);
+		} catch (IOException e) {
+			GradleCore.log(e);
+		} finally {
+			if (in!=null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return "unreadable@"+System.nanoTime();
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length*2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b>>4)&0xF, 16));
+			hex.append(Character.forDigit(b&0xF, 16));
+		}
+		return hex.toString();
+	}
+
+}
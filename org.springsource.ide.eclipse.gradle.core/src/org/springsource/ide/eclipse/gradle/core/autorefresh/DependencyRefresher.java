@@ -11,8 +11,13 @@
 package org.springsource.ide.eclipse.gradle.core.autorefresh;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
@@ -23,13 +28,19 @@ import org.springsource.ide.eclipse.gradle.core.GradleCore;
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
 import org.springsource.ide.eclipse.gradle.core.actions.IProjectProvider;
 import org.springsource.ide.eclipse.gradle.core.actions.RefreshDependenciesActionCore;
+import org.springsource.ide.eclipse.gradle.core.util.Continuation;
 import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
 
 /**
  * An instance of this class is responsible for tracking a set of 'dirty' Gradle projects
  * and refreshing their dependencies after some delay. The delay serves as a kind of buffer
  * to avoid bursts of large number of small change events to potentially trigger multiple
- * executions of the refresh job.
+ * executions of the refresh job. The delay adapts to how fast edits come in and how long
+ * refreshes take (see {@link #getQuietPeriod()}).
+ * <p>
+ * Each build family is refreshed separately. If a project is dirtied while its family is
+ * being refreshed, the refresh is canceled and started again after the edits stop. Projects
+ * whose build family isn't known yet are refreshed together.
  * 
  * @author Kris De Volder
  */
@@ -58,25 +69,93 @@ public class DependencyRefresher implements IDirtyProjectListener {
 		return instance;
 	}
 	
+	/**
+	 * Longest time to wait for a burst of edits to end, as a multiple of the configured delay.
+	 */
+	private static final int MAX_DELAY_FACTOR = 4;
+
+	/**
+	 * Weight of a new observation in the running averages of edit gaps and refresh times.
+	 */
+	private static final double SMOOTHING = 0.25;
+
 	private long delay = GradleCore.getInstance().getPreferences().getAutoRefreshDelay();
 	private boolean isEnabled = false;
 	
 	private Set<GradleProject> dirtyProjects = new HashSet<GradleProject>();
 	private long lastDirtied = System.currentTimeMillis();
-	
+
+	/**
+	 * Running average of the time between edits that are part of the same burst, in milliseconds.
+	 */
+	private double averageEditGap = 0;
+
+	/**
+	 * Running average of the time a refresh takes, in milliseconds.
+	 */
+	private double averageRefreshTime = 0;
+
+	/**
+	 * Refreshes that have been started and haven't finished yet, keyed by root project (null for
+	 * the projects whose root isn't known). A refresh is finished when its continuation is called.
+	 */
+	private Map<GradleProject, Refresh> inFlight = new HashMap<GradleProject, Refresh>();
+
+	private int refreshCount = 0;
+	private int postponedCount = 0;
+	private int canceledCount = 0;
+
 	/**
-	 * Returns a copy of the current list of dirty projects and empties the 
-	 * dirty projects. This is 
+	 * The refresh of the dirty projects in one build family.
 	 */
-	private synchronized List<IProject> getAndClearDirties() {
-		List<IProject> result = new ArrayList<IProject>();
-		for (GradleProject gp : dirtyProjects) {
-			IProject p = gp.getProject();
-			if (p!=null) {
-				result.add(p);
+	private class Refresh extends Continuation<Void> {
+		final GradleProject root;
+		final List<GradleProject> projects;
+		final long started = System.currentTimeMillis();
+		Job job;
+		boolean canceled = false;
+
+		Refresh(GradleProject root, List<GradleProject> projects) {
+			this.root = root;
+			this.projects = projects;
+		}
+
+		@Override
+		public void apply(Void value) {
+			refreshDone(this);
+		}
+
+		@Override
+		public void error(Throwable e) {
+			if (!ExceptionUtil.isCancelation(e)) {
+				GradleCore.log(e);
+			}
+			refreshDone(this);
+		}
+	}
+
+	/**
+	 * Takes the dirty projects whose build family isn't being refreshed already, and empties the dirty
+	 * projects. 
+	 * @return the projects, grouped by root project.
+	 */
+	private synchronized Map<GradleProject, List<GradleProject>> getAndClearDirties() {
+		Map<GradleProject, List<GradleProject>> result = new LinkedHashMap<GradleProject, List<GradleProject>>();
+		for (Iterator<GradleProject> iter = dirtyProjects.iterator(); iter.hasNext();) {
+			GradleProject gp = iter.next();
+			GradleProject root = getRoot(gp);
+			if (!inFlight.containsKey(root)) {
+				//Otherwise, leave it dirty until the canceled refresh is done. Avoids two builds of the same family at once.
+				iter.remove();
+				if (gp.getProject()!=null) {
+					List<GradleProject> family = result.get(root);
+					if (family==null) {
+						result.put(root, family = new ArrayList<GradleProject>());
+					}
+					family.add(gp);
+				}
 			}
 		}
-		dirtyProjects.clear();
 		return result;
 	}
 	
@@ -87,22 +166,21 @@ public class DependencyRefresher implements IDirtyProjectListener {
 			mon.beginTask("Check for dirty Gradle projects", 1);
 			long now = System.currentTimeMillis();
 			try {
-				if (now - lastDirtied < delay) {
+				long quietPeriod = getQuietPeriod();
+				if (now - lastDirtied < quietPeriod) {
 					//too soon try again later
 					//this can happen if change events keep triggering more
 					//projects getting dirtied after the first one.
-					this.schedule(delay);
+					postponed();
+					this.schedule(quietPeriod - (now - lastDirtied));
 				} else {
-					//Beware RefreshDependenciesActionCore also does its work in a job.
-					//We want to make sure it fetches the list of projects only when it actually runs
-					//This is to avoid that some additional dirty projects got added since then.
-					//That would cause additional refreshes being triggered.
-					RefreshDependenciesActionCore.callOn(new IProjectProvider() {
-						@Override
-						public List<IProject> get() {
-							return getAndClearDirties();
-						}
-					});
+					for (Entry<GradleProject, List<GradleProject>> family : getAndClearDirties().entrySet()) {
+						startRefresh(family.getKey(), family.getValue());
+					}
+					if (hasDirties()) {
+						//Some families were still being refreshed. Try again later.
+						this.schedule(quietPeriod);
+					}
 				}
 			} finally {
 				mon.done();
@@ -111,14 +189,101 @@ public class DependencyRefresher implements IDirtyProjectListener {
 		}
 	};
 
-	
+	private synchronized void startRefresh(GradleProject root, List<GradleProject> projects) {
+		List<IProject> eclipseProjects = new ArrayList<IProject>(projects.size());
+		for (GradleProject gp : projects) {
+			eclipseProjects.add(gp.getProject());
+		}
+		Refresh refresh = new Refresh(root, projects);
+		inFlight.put(root, refresh);
+		refreshCount++;
+		//The job can't call the continuation before we've left this synchronized method.
+		refresh.job = refresh(eclipseProjects, refresh);
+	}
+
+	/**
+	 * Starts refreshing the dependencies of some projects.
+	 * @return The job doing the refresh. Canceling it cancels the whole refresh. The continuation must be called
+	 *     when the refresh is done, also when it is canceled.
+	 */
+	protected Job refresh(List<IProject> projects, Continuation<Void> cont) {
+		return RefreshDependenciesActionCore.callOn(IProjectProvider.from(projects), cont);
+	}
+
+	private synchronized void refreshDone(Refresh refresh) {
+		if (inFlight.get(refresh.root)==refresh) {
+			inFlight.remove(refresh.root);
+		}
+		if (!refresh.canceled) {
+			averageRefreshTime = average(averageRefreshTime, System.currentTimeMillis() - refresh.started);
+		}
+	}
+
+	/**
+	 * Called when a project is dirtied while its family is being refreshed. The model being built is already
+	 * out of date, so the refresh is canceled and its projects are refreshed again after the current burst of edits.
+	 */
+	private synchronized void supersede(Refresh refresh) {
+		if (!refresh.canceled) {
+			refresh.canceled = true;
+			canceledCount++;
+			dirtyProjects.addAll(refresh.projects);
+			//The refresh stays in flight until the job calls the continuation, so that the next refresh
+			// of the family doesn't start before this one has stopped.
+			refresh.job.cancel();
+		}
+	}
+
+	/**
+	 * How long the workspace must be free of edits before starting a refresh. This is at least the delay
+	 * set in the preferences. It is longer when edits tend to come in slowly (e.g. while an external tool
+	 * is rewriting many files), or refreshes tend to take long (so that waiting a little longer costs 
+	 * little compared to a refresh that turns out to be out of date right away).
+	 */
+	synchronized long getQuietPeriod() {
+		long quietPeriod = Math.max(delay, (long) (2 * averageEditGap));
+		quietPeriod = Math.max(quietPeriod, (long) (averageRefreshTime / 10));
+		return Math.min(quietPeriod, delay * MAX_DELAY_FACTOR);
+	}
+
+	private synchronized void postponed() {
+		postponedCount++;
+	}
+
+	private synchronized boolean hasDirties() {
+		return !dirtyProjects.isEmpty();
+	}
+
+	private static double average(double average, long observation) {
+		return average==0 ? observation : average * (1-SMOOTHING) + observation * SMOOTHING;
+	}
+
+	/**
+	 * @return The root project of a project, or null if it isn't known. Projects whose root isn't known
+	 *     may be in the same family, so they are all refreshed together.
+	 */
+	private static GradleProject getRoot(GradleProject gp) {
+		return gp.getRootProjectMaybe();
+	}
+
 	/**
 	 * Called when a workspace change dirties a project.
 	 */
 	public synchronized void addDirty(GradleProject gp) {
 		if (isEnabled) {
+			long now = System.currentTimeMillis();
+			long gap = now - lastDirtied;
+			if (gap > 0 && gap < delay * MAX_DELAY_FACTOR) {
+				//Part of a burst of edits. (Edits dirtying many projects at once count once.)
+				averageEditGap = average(averageEditGap, gap);
+			}
+			lastDirtied = now;
 			this.dirtyProjects.add(gp);
-			checkDirty.schedule(delay);
+			Refresh refresh = inFlight.get(getRoot(gp));
+			if (refresh!=null) {
+				supersede(refresh);
+			}
+			checkDirty.schedule(getQuietPeriod());
 		}
 	}
 	
@@ -162,8 +327,30 @@ public class DependencyRefresher implements IDirtyProjectListener {
 		}
 	}
 
-	public void setDelay(int autoRefreshDelay) {
+	public synchronized void setDelay(int autoRefreshDelay) {
 		this.delay = autoRefreshDelay;
 	}
 
+	/**
+	 * @return Number of refreshes that were started.
+	 */
+	public synchronized int getRefreshCount() {
+		return refreshCount;
+	}
+
+	/**
+	 * @return Number of times a refresh was put off because edits were still coming in. Without this, each
+	 *     of these would have been a refresh that was out of date before it finished.
+	 */
+	public synchronized int getPostponedCount() {
+		return postponedCount;
+	}
+
+	/**
+	 * @return Number of refreshes that were canceled because more edits to the same build came in.
+	 */
+	public synchronized int getCanceledCount() {
+		return canceledCount;
+	}
+
 }
@@ -10,39 +10,54 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.gradle.core.autorefresh;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
-import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.springsource.ide.eclipse.gradle.core.GradleCore;
 import org.springsource.ide.eclipse.gradle.core.GradleNature;
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
 import org.springsource.ide.eclipse.gradle.core.classpathcontainer.FastOperationFailedException;
-import org.springsource.ide.eclipse.gradle.core.classpathcontainer.GradleClassPathContainer;
 
 /**
  * Listens for workspace changes and marks Gradle projects as dirty when
- * any .gradle file is changed.
+ * the content of any file their build reads is changed.
  * 
  * @author Kris De Volder
  */
-public class GradleWorkspaceListener {
+public class GradleWorkspaceListener implements IResourceChangeListener {
 	
+	private final IDirtyProjectListener dirtyProjectListener;
+	private final RootMembersIndex index;
+	private final BuildScriptDigests digests;
+	private final BuildInputsIndex inputs;
+
 	/**
-	 * Get a set of root GradleProjects that are affected by changes to .gradle files. A root project is considered
+	 * Get a set of root GradleProjects that are affected by changes to files their builds read (see
+	 * {@link BuildInputsIndex}). For builds whose inputs are not known, a root project is considered
 	 * affected if a .gradle file is changed in the project itself or any of its nested projects.
+	 * <p>
+	 * Also tells the index about projects that were added, removed, opened or closed, or whose description
+	 * or .classpath file changed.
+	 *
+	 * @param changedInputs Receives the locations of the changed files that builds read.
 	 */
-	private Set<GradleProject> getAffectedRootProjects(IResourceChangeEvent event) {
+	private Set<GradleProject> getAffectedRootProjects(IResourceChangeEvent event, final Collection<IPath> changedInputs) {
 		final Set<GradleProject> affectedRootProjects = new HashSet<GradleProject>();
 		IResourceDelta delta = event.getDelta();
+		inputs.update();
 		try {
 			delta.accept(new IResourceDeltaVisitor() {
 				@Override
@@ -51,20 +66,47 @@ public class GradleWorkspaceListener {
 					int type = rsrc.getType();
 					switch (type) {
 					case IResource.PROJECT:
-						//only interested in Gradle projects
-						return GradleNature.hasNature((IProject)rsrc);
+						IProject project = (IProject) rsrc;
+						if (delta.getKind()!=IResourceDelta.CHANGED || (delta.getFlags() & PROJECT_CHANGES)!=0) {
+							index.projectChanged(project);
+						}
+						//only interested in Gradle projects, and projects with files that builds read (e.g. shared scripts)
+						return GradleNature.hasNature(project) 
+								|| (project.getLocation()!=null && inputs.hasInputsIn(project.getLocation()));
 					case IResource.FILE: 
-						//only interested in *.gradle files
-		               if ("gradle".equals(rsrc.getFileExtension())) {	
+		               if (".classpath".equals(rsrc.getName()) && rsrc.getParent().getType()==IResource.PROJECT) {
+		            	   index.projectChanged(rsrc.getProject());
+		            	   break;
+		               }
+		               IPath location = rsrc.getLocation();
+		               Collection<GradleProject> readers = location==null ? Collections.<GradleProject>emptySet() : inputs.getReaders(location);
+		               GradleProject unindexedRoot = null;
+		               if ("gradle".equals(rsrc.getFileExtension()) && GradleNature.hasNature(rsrc.getProject())) {
 		            	   GradleProject gp = GradleCore.create(rsrc.getProject());
 		            	   try {
 		            		   GradleProject root = gp.getRootProject();
-		            		   affectedRootProjects.add(root);
+		            		   if (!inputs.isIndexed(root)) {
+		            			   unindexedRoot = root; //Don't know what the build reads, assume it reads all .gradle files.
+		            		   }
 		            	   } catch (FastOperationFailedException e) {
 		            		   //If we can't do it without building a gradle model then don't bother.
 		            		   //We really don't want this to automatically start building gradle models.
 		            	   }
 		               }
+		               if (readers.isEmpty() && unindexedRoot==null) {
+		            	   break; //Not read by any build
+		               }
+		               if (delta.getKind()==IResourceDelta.CHANGED && (delta.getFlags() & CONTENT_CHANGES)==0) {
+		            	   break; //e.g. only markers changed
+		               }
+		               if (!digests.update((IFile)rsrc)) {
+		            	   break; //Same content as before
+		               }
+		               affectedRootProjects.addAll(readers);
+		               changedInputs.add(location);
+		               if (unindexedRoot!=null) {
+		            	   affectedRootProjects.add(unindexedRoot);
+		               }
 		               break;
 					default:
 						break;
@@ -78,38 +120,51 @@ public class GradleWorkspaceListener {
 		}
 		return affectedRootProjects;
 	}
+
+	/**
+	 * Flags of project deltas that may change whether a project is in the index.
+	 */
+	private static final int PROJECT_CHANGES = IResourceDelta.OPEN | IResourceDelta.DESCRIPTION;
+
+	/**
+	 * Flags of file deltas that may mean the content of the file changed.
+	 */
+	private static final int CONTENT_CHANGES = IResourceDelta.CONTENT | IResourceDelta.REPLACED;
 	
 	public GradleWorkspaceListener(final IDirtyProjectListener dirtyProjectListener) {
-		IWorkspace workspace = ResourcesPlugin.getWorkspace();
-		IResourceChangeListener listener = new IResourceChangeListener() {
-			public void resourceChanged(IResourceChangeEvent event) {
-				if (event.getType() != IResourceChangeEvent.POST_CHANGE)
-					return;
-				
-				final Set<GradleProject> affectedRootProjects = getAffectedRootProjects(event);
-				if (!affectedRootProjects.isEmpty()) {
-					for (IProject p : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
-						if (GradleNature.hasNature(p)) {
-							GradleProject gp = GradleCore.create(p);
-							if (GradleClassPathContainer.isOnClassPath(gp.getJavaProject())) {
-								//Auto refresh is limited to projects that have dependency management
-								//enabled. It may be possible to broaden this.
-								try {
-									if (affectedRootProjects.contains(gp.getRootProject())) {
-										dirtyProjectListener.addDirty(gp);
-									}
-								} catch (FastOperationFailedException e) {
-									//ignore
-								}
-							}
-						}
-					}
-				}
-			}
+		this(dirtyProjectListener, new RootMembersIndex(), new BuildScriptDigests());
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE);
+	}
+
+	/**
+	 * Creates a listener that isn't registered with the workspace. Used in testing.
+	 */
+	public GradleWorkspaceListener(IDirtyProjectListener dirtyProjectListener, RootMembersIndex index, BuildScriptDigests digests) {
+		this(dirtyProjectListener, index, digests, new BuildInputsIndex(index));
+	}
 
-		};
-		workspace.addResourceChangeListener(listener);
+	/**
+	 * Creates a listener that isn't registered with the workspace. Used in testing.
+	 */
+	public GradleWorkspaceListener(IDirtyProjectListener dirtyProjectListener, RootMembersIndex index, BuildScriptDigests digests, BuildInputsIndex inputs) {
+		this.dirtyProjectListener = dirtyProjectListener;
+		this.index = index;
+		this.digests = digests;
+		this.inputs = inputs;
 	}
 
+	public void resourceChanged(IResourceChangeEvent event) {
+		if (event.getType() != IResourceChangeEvent.POST_CHANGE)
+			return;
+		
+		Collection<IPath> changedInputs = new ArrayList<IPath>();
+		Set<GradleProject> affectedRootProjects = getAffectedRootProjects(event, changedInputs);
+		inputs.inputsChanged(changedInputs); //The changes may have added or removed applied scripts
+		for (GradleProject root : affectedRootProjects) {
+			for (GradleProject gp : index.getMembers(root)) {
+				dirtyProjectListener.addDirty(gp);
+			}
+		}
+	}
 
 }
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.autorefresh;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
+import org.springsource.ide.eclipse.gradle.core.GradleNature;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.classpathcontainer.GradleClassPathContainer;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.BuildFamilyRegistry;
+
+/**
+ * Index from root projects to the workspace projects in their build that have dependency management
+ * enabled. Used by the {@link GradleWorkspaceListener} to find the projects to mark dirty when a build
+ * script changes, without looking at every project in the workspace.
+ * <p>
+ * The index is built the first time it is used. After that, it is kept up-to-date by telling it about
+ * projects whose natures or classpath may have changed (see {@link #projectChanged(IProject)}). It is
+ * rebuilt when the root project of any project changes, which only happens when models are built.
+ */
+public class RootMembersIndex {
+
+	/**
+	 * Dependency managed projects, with their root project.
+	 */
+	private Map<IProject, GradleProject> roots = null;
+
+	/**
+	 * The GradleProjects of the dependency managed projects. Kept so that projects can be removed
+	 * from the index after they were deleted.
+	 */
+	private Map<IProject, GradleProject> gradleProjects = null;
+
+	/**
+	 * Dependency managed projects, keyed by their root project.
+	 */
+	private Map<GradleProject, Set<GradleProject>> members = null;
+
+	/**
+	 * {@link BuildFamilyRegistry#getRootChangeCount()} when the index was built.
+	 */
+	private int rootChangeCount;
+
+	private int rebuilds = 0;
+
+	/**
+	 * @return The dependency managed projects in the workspace that have a given root project.
+	 */
+	public synchronized Collection<GradleProject> getMembers(GradleProject root) {
+		ensureIndexed();
+		Set<GradleProject> found = members.get(root);
+		if (found==null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(new LinkedHashSet<GradleProject>(found));
+	}
+
+	/**
+	 * @return The root projects that have dependency managed projects in the workspace.
+	 */
+	public synchronized Collection<GradleProject> getRoots() {
+		ensureIndexed();
+		return new ArrayList<GradleProject>(members.keySet());
+	}
+
+	/**
+	 * Called when a project was added, removed, opened or closed, or when its natures or classpath
+	 * may have changed.
+	 */
+	public synchronized void projectChanged(IProject project) {
+		if (roots!=null) {
+			remove(project);
+			add(project);
+		}
+	}
+
+	/**
+	 * Forget everything, the index will be rebuilt when it is next used.
+	 */
+	public synchronized void clear() {
+		roots = null;
+		gradleProjects = null;
+		members = null;
+	}
+
+	/**
+	 * @return How many times the index was built from scratch.
+	 */
+	public synchronized int getRebuildCount() {
+		return rebuilds;
+	}
+
+	/**
+	 * @return Whether a project takes part in auto refresh. Auto refresh is limited to projects that
+	 *     have dependency management enabled. It may be possible to broaden this.
+	 */
+	protected boolean isDependencyManaged(GradleProject project) {
+		return GradleClassPathContainer.isOnClassPath(project.getJavaProject());
+	}
+
+	private void ensureIndexed() {
+		int currentChangeCount = BuildFamilyRegistry.getInstance().getRootChangeCount();
+		if (roots==null || rootChangeCount!=currentChangeCount) {
+			rootChangeCount = currentChangeCount;
+			rebuilds++;
+			roots = new HashMap<IProject, GradleProject>();
+			gradleProjects = new HashMap<IProject, GradleProject>();
+			members = new HashMap<GradleProject, Set<GradleProject>>();
+			for (IProject p : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+				add(p);
+			}
+		}
+	}
+
+	private void add(IProject project) {
+		if (GradleNature.hasNature(project)) {
+			GradleProject gp = GradleCore.create(project);
+			if (isDependencyManaged(gp)) {
+				GradleProject root = gp.getRootProjectMaybe();
+				if (root!=null) {
+					roots.put(project, root);
+					gradleProjects.put(project, gp);
+					Set<GradleProject> family = members.get(root);
+					if (family==null) {
+						members.put(root, family = new LinkedHashSet<GradleProject>());
+					}
+					family.add(gp);
+				}
+			}
+		}
+	}
+
+	private void remove(IProject project) {
+		GradleProject root = roots.remove(project);
+		GradleProject gp = gradleProjects.remove(project);
+		if (root!=null) {
+			Set<GradleProject> family = members.get(root);
+			if (family!=null) {
+				family.remove(gp);
+				if (family.isEmpty()) {
+					members.remove(root);
+				}
+			}
+		}
+	}
+
+}
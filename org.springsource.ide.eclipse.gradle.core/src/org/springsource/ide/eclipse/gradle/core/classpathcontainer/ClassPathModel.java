@@ -51,6 +51,13 @@ public abstract class ClassPathModel {
 	 */
 	public abstract DomainObjectSet<? extends EclipseProjectDependency> getProjectDependencies();	
 	
+	/**
+	 * @return The type of Gradle model that the classpath model of a project is computed from.
+	 */
+	public static Class<?> getModelType(GradleProject project) {
+		return project.useCustomToolingModel() ? StsEclipseProject.class : EclipseProject.class;
+	}
+
 	public static ClassPathModel getClassPathModel(GradleProject project) throws CoreException, FastOperationFailedException {
 		if (project.useCustomToolingModel()) {
 			return from(project.getModel(StsEclipseProject.class));
@@ -11,7 +11,14 @@
 package org.springsource.ide.eclipse.gradle.core.classpathcontainer;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.Assert;
@@ -40,6 +47,7 @@ import org.springsource.ide.eclipse.gradle.core.preferences.GradlePreferences;
 import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
 import org.springsource.ide.eclipse.gradle.core.util.GradleRunnable;
 import org.springsource.ide.eclipse.gradle.core.util.JobUtil;
+import org.springsource.ide.eclipse.gradle.core.util.ObjectUtil;
 import org.springsource.ide.eclipse.gradle.core.wtp.WTPUtil;
 
 
@@ -95,6 +103,17 @@ public class GradleClassPathContainer implements IClasspathContainer /*, Cloneab
 
 	private static ProjectOpenCloseListener openCloseListener;
 
+	/**
+	 * Entries first handed out after JDT was last told to (re)initialize this container, i.e. the
+	 * entries JDT resolved the container to. Null if no entries were handed out since.
+	 */
+	private IClasspathEntry[] lastPublished = null;
+
+	/**
+	 * Number of times {@link #notifyJDT()} didn't need to notify JDT because entries didn't change.
+	 */
+	private static final AtomicInteger skippedNotifications = new AtomicInteger();
+
 	public void addRefreshListener(IRefreshListener l) {
 		Assert.isLegal(refreshListener==null);
 		refreshListener = l;
@@ -151,6 +170,14 @@ public class GradleClassPathContainer implements IClasspathContainer /*, Cloneab
 	}
 
 	public synchronized IClasspathEntry[] getClasspathEntries() {
+		IClasspathEntry[] entries = computeEntries();
+		if (lastPublished==null) {
+			lastPublished = entries;
+		}
+		return entries;
+	}
+
+	private IClasspathEntry[] computeEntries() {
 		ensureOpenCloseListener();
 		GradleDependencyComputer dependencyComputer = project.getDependencyComputer();
 		debug("getClassPathEntries called");
@@ -186,6 +213,13 @@ public class GradleClassPathContainer implements IClasspathContainer /*, Cloneab
 		};
 	}
 
+	/**
+	 * Called when JDT is about to (re)initialize this container.
+	 */
+	private synchronized void jdtReset() {
+		lastPublished = null;
+	}
+
 	/**
 	 * Ensures that open close listener is registered to respond to openening and closing of projects
 	 * in correspondence to whether or not the corresponding option is enabled in preferences.
@@ -266,16 +300,118 @@ public class GradleClassPathContainer implements IClasspathContainer /*, Cloneab
 	}
 
 	/**
-	 * Poke JDT when the container became fully initialised.
+	 * Poke JDT when the container became fully initialised. JDT is only notified if the entries in the
+	 * container are different from the entries JDT got from it before, since this makes JDT re-resolve
+	 * the classpath and rebuild its indexes.
+	 * @return true if JDT was notified, false if nothing changed.
 	 */
-	void notifyJDT() {
+	boolean notifyJDT() {
 		debug("notifyJDT");
-//		setJDTClassPathContainer(project, path,
-//					isInitialized()? this : null);
-//		System.err.println("JDT notified: "+this);
-//		JavaModelManager.getJavaModelManager().getClasspathContainer(getPath(), project);
-		setJDTClassPathContainer(project.getJavaProject(), path, null); // Makes JDT get our class path initialiser to run again.
+		boolean changed = entriesChanged();
+		if (changed) {
+//			setJDTClassPathContainer(project, path,
+//						isInitialized()? this : null);
+//			System.err.println("JDT notified: "+this);
+//			JavaModelManager.getJavaModelManager().getClasspathContainer(getPath(), project);
+			jdtReset();
+			setJDTClassPathContainer(project.getJavaProject(), path, null); // Makes JDT get our class path initialiser to run again.
+		} else {
+			debug("entries unchanged, JDT not notified");
+			skippedNotifications.incrementAndGet();
+		}
 		notifyRefreshListener();
+		return changed;
+	}
+
+	/**
+	 * Like {@link #notifyJDT()} but for a number of containers at once. JDT is told about all the
+	 * changed containers in a single operation.
+	 * @return The number of containers that were unchanged.
+	 */
+	public static int notifyJDT(Collection<GradleClassPathContainer> containers) {
+		Map<IPath, List<IJavaProject>> changed = new LinkedHashMap<IPath, List<IJavaProject>>();
+		int unchanged = 0;
+		for (GradleClassPathContainer container : containers) {
+			IJavaProject javaProject = container.project.getJavaProject();
+			if (javaProject!=null) { //project may be null, if project got deleted since the refresh got started...
+				if (container.entriesChanged()) {
+					container.jdtReset();
+					List<IJavaProject> projects = changed.get(container.path);
+					if (projects==null) {
+						changed.put(container.path, projects = new ArrayList<IJavaProject>());
+					}
+					projects.add(javaProject);
+				} else {
+					unchanged++;
+					skippedNotifications.incrementAndGet();
+				}
+			}
+		}
+		for (Entry<IPath, List<IJavaProject>> e : changed.entrySet()) {
+			List<IJavaProject> projects = e.getValue();
+			try {
+				JavaCore.setClasspathContainer(e.getKey(),
+						projects.toArray(new IJavaProject[projects.size()]),
+						new IClasspathContainer[projects.size()], // all null: makes JDT get our class path initialiser to run again.
+						new NullProgressMonitor());
+			} catch (JavaModelException ex) {
+				GradleCore.log(ex);
+			}
+		}
+		for (GradleClassPathContainer container : containers) {
+			container.notifyRefreshListener();
+		}
+		debug("notifyJDT: "+unchanged+" of "+containers.size()+" containers unchanged");
+		return unchanged;
+	}
+
+	/**
+	 * @return true unless the container's entries are known to be the same as the entries JDT got from it.
+	 */
+	private synchronized boolean entriesChanged() {
+		return lastPublished==null || !sameEntries(lastPublished, computeEntries());
+	}
+
+	/**
+	 * @return Number of times a classpath container didn't notify JDT because its entries were unchanged.
+	 */
+	public static int getSkippedNotifications() {
+		return skippedNotifications.get();
+	}
+
+	/**
+	 * Structural comparison of classpath entries. Compares all attributes of the entries that
+	 * JDT cares about: kinds, paths, source attachments, export flags, access rules and extra attributes
+	 * (e.g. javadoc location).
+	 */
+	public static boolean sameEntries(IClasspathEntry[] a, IClasspathEntry[] b) {
+		if (a==b) {
+			return true;
+		}
+		if (a==null || b==null || a.length!=b.length) {
+			return false;
+		}
+		for (int i = 0; i < a.length; i++) {
+			if (!sameEntry(a[i], b[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean sameEntry(IClasspathEntry a, IClasspathEntry b) {
+		return a.getEntryKind()==b.getEntryKind()
+			&& a.getContentKind()==b.getContentKind()
+			&& a.isExported()==b.isExported()
+			&& ObjectUtil.equal(a.getPath(), b.getPath())
+			&& ObjectUtil.equal(a.getSourceAttachmentPath(), b.getSourceAttachmentPath())
+			&& ObjectUtil.equal(a.getSourceAttachmentRootPath(), b.getSourceAttachmentRootPath())
+			&& ObjectUtil.equal(a.getOutputLocation(), b.getOutputLocation())
+			&& a.combineAccessRules()==b.combineAccessRules()
+			&& Arrays.equals(a.getAccessRules(), b.getAccessRules())
+			&& Arrays.equals(a.getExtraAttributes(), b.getExtraAttributes())
+			&& Arrays.equals(a.getInclusionPatterns(), b.getInclusionPatterns())
+			&& Arrays.equals(a.getExclusionPatterns(), b.getExclusionPatterns());
 	}
 
 	private void notifyRefreshListener() {
@@ -287,6 +423,9 @@ public class GradleClassPathContainer implements IClasspathContainer /*, Cloneab
 	public static void setJDTClassPathContainer(IJavaProject project, IPath path, GradleClassPathContainer container) {
 		if (project!=null) {
 			GradleClasspathContainerInitializer.debug("setting container on "+project.getElementName()+" to "+container);
+			if (container!=null) {
+				container.jdtReset();
+			}
 			//project may be null, if project got deleted since the refresh got started...
 			try {
 				JavaCore.setClasspathContainer(path,
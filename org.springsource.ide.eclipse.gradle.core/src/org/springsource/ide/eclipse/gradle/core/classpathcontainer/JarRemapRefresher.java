@@ -10,7 +10,9 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.gradle.core.classpathcontainer;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Platform;
@@ -21,6 +23,8 @@ import org.springsource.ide.eclipse.gradle.core.GradleProject;
 import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
 import org.springsource.ide.eclipse.gradle.core.util.GradleRunnable;
 import org.springsource.ide.eclipse.gradle.core.util.JobUtil;
+import org.springsource.ide.eclipse.gradle.core.util.ProjectFamilyExecutor;
+import org.springsource.ide.eclipse.gradle.core.util.ProjectFamilyExecutor.ProjectWork;
 
 /**
  * Manages a Job that refreshes classpath containers for all projects in 
@@ -92,32 +96,37 @@ public class JarRemapRefresher {
 						//Force publications models into the model cache, if we are going
 						//to need them.
 						if (GradleCore.getInstance().getPreferences().getRemapJarsToGradleProjects()) {
-							for (GradleProject p : projects) {
-								JobUtil.checkCanceled(mon);
-								try {
-									p.getPublications(new SubProgressMonitor(mon, 1));
-								} catch (Throwable e) {
-									if (ExceptionUtil.isUnknownModelException(e)) {
-										//ignore
-									} else {
-										GradleCore.log(e);
+							int concurrency = GradleCore.getInstance().getPreferences().getMaxConcurrentBuilds();
+							new ProjectFamilyExecutor("Computing project publications", concurrency).execute(projects, new SubProgressMonitor(mon, projects.size()), new ProjectWork() {
+								public void run(GradleProject p, IProgressMonitor mon) throws Exception {
+									try {
+										p.getPublications(mon);
+									} catch (Throwable e) {
+										if (ExceptionUtil.isUnknownModelException(e)) {
+											//ignore
+										} else {
+											GradleCore.log(e);
+										}
 									}
 								}
-							}
+							});
+						} else {
+							mon.worked(projects.size());
 						}
 						
 						mon.subTask("Updating classpaths");
-						JobUtil.withRule(JobUtil.buildRule(), mon, 1, new GradleRunnable("Refresh Gradle Classpath Containers") {
+						JobUtil.withRule(JobUtil.buildRule(), mon, projects.size()+1, new GradleRunnable("Refresh Gradle Classpath Containers") {
 							public void doit(IProgressMonitor mon) throws Exception {
+								List<GradleClassPathContainer> containers = new ArrayList<GradleClassPathContainer>(projects.size());
 								for (GradleProject p : projects) {
 									GradleClassPathContainer classpath = p.getClassPathcontainer();
 									if (classpath!=null) {
-										mon.subTask("Refresh "+p.getName());
 										classpath.clearPersistedEntries();
-										classpath.notifyJDT();
+										containers.add(classpath);
 									}
-									mon.worked(1);
 								}
+								int unchanged = GradleClassPathContainer.notifyJDT(containers);
+								debug("Classpath containers unchanged: "+unchanged+" of "+containers.size());
 							}
 						});
 					}
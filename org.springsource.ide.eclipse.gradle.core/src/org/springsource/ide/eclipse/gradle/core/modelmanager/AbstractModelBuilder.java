@@ -11,7 +11,9 @@
 package org.springsource.ide.eclipse.gradle.core.modelmanager;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.util.JobUtil;
 
 /**
  * Convenient abstract class to implement {@link ModelBuilder}. 
@@ -19,6 +21,16 @@ import org.springsource.ide.eclipse.gradle.core.GradleProject;
  * @author Kris De Volder
  */
 public abstract class AbstractModelBuilder implements ModelBuilder {
+
+	/**
+	 * Upper bound on the number of concurrently executing calls to 'doBuild'.
+	 */
+	private int maxConcurrentBuilds = Integer.MAX_VALUE;
+
+	/**
+	 * Number of calls to 'doBuild' currently executing.
+	 */
+	private int activeBuilds = 0;
 	
 	/**
 	 * Note that multiple build request could happen concurrently. A specific builder implementation may or may not 
@@ -32,15 +44,66 @@ public abstract class AbstractModelBuilder implements ModelBuilder {
 	 * <p>
 	 * In some scenarios this 'best effort' may fail. So implementors must assume the worst and either 
 	 * ensure their implementation allows for concurrent builds or provide a synchronization mechanism.
+	 * <p>
+	 * Builders that want to bound the number of concurrent builds rather than forbid them altogether
+	 * should use {@link #setMaxConcurrentBuilds(int)} or override {@link #getMaxConcurrentBuilds()}.
 	 */
 	protected abstract <T> T doBuild(GradleProject project, Class<T> type, final IProgressMonitor mon) throws Exception;
 	
 	public final <T> BuildResult<T> buildModel(GradleProject project, Class<T> type, final IProgressMonitor mon) {
 		try {
-			return new BuildResult<T>(type, doBuild(project, type, mon));
+			acquireBuildSlot(mon);
+			try {
+				return new BuildResult<T>(type, adapt(doBuild(project, type, mon), type));
+			} finally {
+				releaseBuildSlot();
+			}
 		} catch (Throwable e) {
 			 return new BuildResult<T>(type,e);
 		}
 	}
-	
+
+	/**
+	 * Called on each model built by 'doBuild' before it is returned as part of a {@link BuildResult}.
+	 * Subclasses may override this to convert models into a different representation. The default
+	 * implementation returns the model as is.
+	 */
+	protected <T> T adapt(T model, Class<T> type) {
+		return model;
+	}
+
+	/**
+	 * Block until the number of active builds drops below the limit, or the monitor is canceled.
+	 * Being interrupted while waiting is treated as a cancelation.
+	 * Subclasses that start builds by other means than 'doBuild' should call this before starting
+	 * a build and {@link #releaseBuildSlot()} after it is done.
+	 */
+	protected final synchronized void acquireBuildSlot(IProgressMonitor mon) {
+		while (activeBuilds >= Math.max(1, getMaxConcurrentBuilds())) {
+			JobUtil.checkCanceled(mon);
+			try {
+				//Timeout: limit may be changed via preferences without notifying us and we must poll the monitor.
+				wait(500);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			}
+		}
+		activeBuilds++;
+	}
+
+	protected final synchronized void releaseBuildSlot() {
+		activeBuilds--;
+		notifyAll();
+	}
+
+	protected int getMaxConcurrentBuilds() {
+		return maxConcurrentBuilds;
+	}
+
+	public synchronized void setMaxConcurrentBuilds(int max) {
+		this.maxConcurrentBuilds = max;
+		notifyAll();
+	}
+
 }
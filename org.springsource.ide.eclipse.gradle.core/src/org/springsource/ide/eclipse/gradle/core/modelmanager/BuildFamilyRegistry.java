@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gradle.tooling.model.eclipse.HierarchicalEclipseProject;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+
+/**
+ * Keeps track of 'build families' in memory: the root project of each project and the members of
+ * the build of each root project, as determined by the last successful build. Build families are
+ * predicted each time a model is requested, so they should be cheap to look up.
+ * <p>
+ * The information is persisted in the Gradle preferences of the projects. It is read from there the
+ * first time a project is looked up. Changes are written to the preferences, which are saved to disk
+ * in the background. Code that records root projects or build families should do so through the
+ * registry, rather than by changing the preferences directly.
+ * <p>
+ * Projects being added to or removed from the workspace may come with different preferences, so the
+ * registry forgets about such projects (see {@link #forget(GradleProject)}).
+ */
+public class BuildFamilyRegistry {
+
+	/**
+	 * Property name used for storing information about a project 'Build Group'. This info is
+	 * stored into the Gradle project preferences area of the root project of a project hierarchy/
+	 * This info is updated each time there is a succesfull model build.
+	 * <p>
+	 * The info is used to allow determining the likely members of a Build Group even in the absence
+	 * of a succesful build. (E.g to determine members of a build group before a build is complete,
+	 * or to guess group members in case of failed builds).
+	 */
+	private static final String BUILD_FAMILY_PROP = "build.family."+HierarchicalEclipseProject.class.getName();
+
+	/**
+	 * Recorded for projects known not to have a root project or build family.
+	 */
+	private static final File NO_ROOT = new File("");
+	private static final File[] NO_FAMILY = new File[0];
+
+	private static final BuildFamilyRegistry instance = new BuildFamilyRegistry();
+
+	public static BuildFamilyRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Root project location, keyed by project location.
+	 */
+	private final ConcurrentHashMap<File, File> roots = new ConcurrentHashMap<File, File>();
+
+	/**
+	 * Sorted member locations, keyed by root project location.
+	 */
+	private final ConcurrentHashMap<File, File[]> families = new ConcurrentHashMap<File, File[]>();
+
+	/**
+	 * Incremented whenever the root location of a project changes, or when everything is forgotten.
+	 */
+	private final AtomicInteger rootChanges = new AtomicInteger();
+
+	/**
+	 * @return Location of the root project of a given project, or null if it is not known.
+	 */
+	public File getRootLocation(GradleProject project) {
+		File root = roots.get(project.getLocation());
+		if (root==null) {
+			root = project.getProjectPreferences().getRootProjectLocation();
+			File existing = roots.putIfAbsent(project.getLocation(), root==null ? NO_ROOT : root);
+			if (existing!=null) {
+				root = existing;
+			}
+		}
+		return root==NO_ROOT ? null : root;
+	}
+
+	/**
+	 * Record the location of the root project of a given project. Pass null to record that the
+	 * project's root project is not known.
+	 */
+	public void setRootLocation(GradleProject project, File root) {
+		File recorded = root==null ? NO_ROOT : root;
+		File known = roots.get(project.getLocation());
+		if (known==null) {
+			//Not looked up yet, the persisted location is what it was.
+			known = getPersistedRoot(project);
+		}
+		//Note: preferences only schedule a write if the value is different.
+		project.getProjectPreferences().setRootProjectLocation(root);
+		File old = roots.put(project.getLocation(), recorded);
+		if (!recorded.equals(old==null ? known : old)) {
+			rootChanges.incrementAndGet();
+		}
+	}
+
+	private static File getPersistedRoot(GradleProject project) {
+		File root = project.getProjectPreferences().getRootProjectLocation();
+		return root==null ? NO_ROOT : root;
+	}
+
+	/**
+	 * @return A number that changes whenever the root location of a project may have changed. Can be
+	 *     used to tell whether information derived from root locations is still valid.
+	 */
+	public int getRootChangeCount() {
+		return rootChanges.get();
+	}
+
+	/**
+	 * @return Locations of the members of the build of a given root project, or null if the build family
+	 *     of the project is not known. The returned array must not be modified.
+	 */
+	public File[] getFamily(GradleProject root) {
+		File[] members = families.get(root.getLocation());
+		if (members==null) {
+			members = root.getProjectPreferences().get(BUILD_FAMILY_PROP, (File[])null);
+			if (members!=null) {
+				Arrays.sort(members);
+			}
+			File[] existing = families.putIfAbsent(root.getLocation(), members==null ? NO_FAMILY : members);
+			if (existing!=null) {
+				members = existing;
+			}
+		}
+		return members==NO_FAMILY ? null : members;
+	}
+
+	/**
+	 * Record the members of the build of a given root project.
+	 */
+	public void setFamily(GradleProject root, Collection<GradleProject> members) {
+		File[] locations = new File[members.size()];
+		int i = 0;
+		for (GradleProject member : members) {
+			locations[i++] = member.getLocation();
+		}
+		Arrays.sort(locations);
+		root.getProjectPreferences().put(BUILD_FAMILY_PROP, locations);
+		families.put(root.getLocation(), locations);
+	}
+
+	/**
+	 * Forget what is known about a single project, e.g. because it was added to the workspace and may
+	 * come with different preferences. The information will be read from the preferences again when needed.
+	 * Only counts as a root change if the persisted root location is different from the known one.
+	 */
+	public void forget(GradleProject project) {
+		families.remove(project.getLocation());
+		File old = roots.remove(project.getLocation());
+		if (old!=null && !old.equals(getPersistedRoot(project))) {
+			rootChanges.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Forget everything. The information will be read from the preferences again when needed.
+	 */
+	public void clear() {
+		roots.clear();
+		families.clear();
+		rootChanges.incrementAndGet();
+	}
+
+}
@@ -36,6 +36,20 @@ public abstract class BuildStrategy {
 	public BuildStrategy(ModelBuilder builder) {
 		this.builder = builder;
 	}
+
+	private WorkspaceSnapshot companionModels = null;
+
+	/**
+	 * Models of other types that were built together with the models returned by the last call to
+	 * {@link #buildModels(GradleProject, Class, IProgressMonitor)}. May be null.
+	 */
+	public WorkspaceSnapshot getCompanionModels() {
+		return companionModels;
+	}
+
+	protected void setCompanionModels(WorkspaceSnapshot companionModels) {
+		this.companionModels = companionModels;
+	}
 	
 	public interface BuildRequestor {
 		void addResult(GradleProject project, BuildResult<?> result);
@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.Job;
+import org.gradle.tooling.ProjectConnection;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
+import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
+import org.springsource.ide.eclipse.gradle.core.util.ObjectUtil;
+
+/**
+ * Keeps tooling API {@link ProjectConnection}s open so that repeated model builds and
+ * task executions on the same project reuse a 'warm' connection rather than paying
+ * for distribution resolution and daemon handshake each time.
+ * <p>
+ * Connections are shared: tooling API connections are thread-safe so a single connection
+ * may be borrowed by several clients at once. Every call to 'borrow' must be matched with a
+ * call to 'release'. Connections that have not been borrowed for some time are closed
+ * by a background job.
+ */
+public class ConnectionPool {
+
+	/**
+	 * Default time (in milliseconds) an unused connection is kept open.
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 3 * 60 * 1000;
+
+	/**
+	 * Creates new connections when the pool doesn't have a suitable one.
+	 */
+	public interface ConnectionFactory {
+		ProjectConnection connect(Key key, IProgressMonitor mon) throws Exception;
+	}
+
+	/**
+	 * Identifies the settings a connection was created with. A pooled connection is only
+	 * reused for requests with equal settings.
+	 */
+	public static final class Key {
+		private final File projectDir;
+		private final URI distribution;
+		private final File gradleUserHome;
+		private final File javaHome;
+
+		public Key(File projectDir, URI distribution, File gradleUserHome, File javaHome) {
+			this.projectDir = projectDir;
+			this.distribution = distribution;
+			this.gradleUserHome = gradleUserHome;
+			this.javaHome = javaHome;
+		}
+
+		public File getProjectDir() {
+			return projectDir;
+		}
+
+		public URI getDistribution() {
+			return distribution;
+		}
+
+		public File getGradleUserHome() {
+			return gradleUserHome;
+		}
+
+		public File getJavaHome() {
+			return javaHome;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((projectDir == null) ? 0 : projectDir.hashCode());
+			result = prime * result + ((distribution == null) ? 0 : distribution.hashCode());
+			result = prime * result + ((gradleUserHome == null) ? 0 : gradleUserHome.hashCode());
+			result = prime * result + ((javaHome == null) ? 0 : javaHome.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			return ObjectUtil.equal(projectDir, other.projectDir)
+					&& ObjectUtil.equal(distribution, other.distribution)
+					&& ObjectUtil.equal(gradleUserHome, other.gradleUserHome)
+					&& ObjectUtil.equal(javaHome, other.javaHome);
+		}
+
+		@Override
+		public String toString() {
+			return "Key [projectDir=" + projectDir + ", distribution=" + distribution +
+					", gradleUserHome=" + gradleUserHome + ", javaHome=" + javaHome + "]";
+		}
+	}
+
+	private static class Entry {
+		final ProjectConnection connection;
+		int borrowers = 0;
+		long lastUsed = System.currentTimeMillis();
+		/**
+		 * Set when the entry was removed from the pool while still in use. The connection is closed
+		 * as soon as the last borrower releases it.
+		 */
+		boolean stale = false;
+
+		Entry(ProjectConnection connection) {
+			this.connection = connection;
+		}
+	}
+
+	private final ConnectionFactory factory;
+	private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+	private final Map<Key, Entry> pool = new HashMap<Key, Entry>();
+	private final Map<ProjectConnection, Entry> borrowed = new IdentityHashMap<ProjectConnection, Entry>();
+
+	private final Job evictionJob = new Job("Close idle Gradle connections") {
+		{
+			setSystem(true);
+		}
+		@Override
+		protected IStatus run(IProgressMonitor mon) {
+			evictIdle();
+			if (!isEmpty()) {
+				schedule(idleTimeout);
+			}
+			return ExceptionUtil.OK_STATUS;
+		}
+	};
+
+	public ConnectionPool(ConnectionFactory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Obtain a connection for the given settings, reusing a pooled connection if one is available.
+	 * The caller must eventually call {@link #release(ProjectConnection)} on the returned connection,
+	 * and must not close it.
+	 */
+	public ProjectConnection borrow(Key key, IProgressMonitor mon) throws Exception {
+		synchronized (this) {
+			Entry entry = pool.get(key);
+			if (entry!=null) {
+				return checkout(entry);
+			}
+		}
+		//Connect outside of the synch block, this may be slow.
+		ProjectConnection connection = factory.connect(key, mon);
+		ProjectConnection redundant = null;
+		try {
+			synchronized (this) {
+				Entry entry = pool.get(key);
+				if (entry==null) {
+					entry = new Entry(connection);
+					pool.put(key, entry);
+				} else {
+					//Someone else connected with same settings while we were busy. Use theirs.
+					redundant = connection;
+				}
+				return checkout(entry);
+			}
+		} finally {
+			evictionJob.schedule(idleTimeout);
+			if (redundant!=null) {
+				close(redundant);
+			}
+		}
+	}
+
+	private ProjectConnection checkout(Entry entry) {
+		entry.borrowers++;
+		entry.lastUsed = System.currentTimeMillis();
+		borrowed.put(entry.connection, entry);
+		return entry.connection;
+	}
+
+	/**
+	 * Give back a connection obtained by {@link #borrow(Key, IProgressMonitor)}.
+	 */
+	public void release(ProjectConnection connection) {
+		boolean close = false;
+		synchronized (this) {
+			Entry entry = borrowed.get(connection);
+			if (entry==null) {
+				//Not ours, or already released by all borrowers. Shouldn't happen.
+				GradleCore.warn("Released a Gradle connection that was not borrowed from the pool");
+				return;
+			}
+			entry.borrowers--;
+			entry.lastUsed = System.currentTimeMillis();
+			if (entry.borrowers<=0) {
+				borrowed.remove(connection);
+				close = entry.stale;
+			}
+		}
+		if (close) {
+			close(connection);
+		}
+	}
+
+	/**
+	 * Close all connections in the pool. Connections that are currently borrowed are closed
+	 * when they are released. Called when preferences that affect how connections are created change.
+	 */
+	public void invalidate() {
+		List<ProjectConnection> toClose = new ArrayList<ProjectConnection>();
+		synchronized (this) {
+			for (Entry e : pool.values()) {
+				if (e.borrowers>0) {
+					e.stale = true;
+				} else {
+					toClose.add(e.connection);
+				}
+			}
+			pool.clear();
+		}
+		for (ProjectConnection c : toClose) {
+			close(c);
+		}
+	}
+
+	/**
+	 * Close connections that have not been borrowed for longer than the idle timeout.
+	 * @return number of connections closed.
+	 */
+	public int evictIdle() {
+		List<ProjectConnection> toClose = new ArrayList<ProjectConnection>();
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			Iterator<Entry> iter = pool.values().iterator();
+			while (iter.hasNext()) {
+				Entry e = iter.next();
+				if (e.borrowers==0 && now - e.lastUsed >= idleTimeout) {
+					iter.remove();
+					toClose.add(e.connection);
+				}
+			}
+		}
+		for (ProjectConnection c : toClose) {
+			close(c);
+		}
+		return toClose.size();
+	}
+
+	public synchronized boolean isEmpty() {
+		return pool.isEmpty();
+	}
+
+	public synchronized int size() {
+		return pool.size();
+	}
+
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Close all connections and stop the eviction job.
+	 */
+	public void dispose() {
+		evictionJob.cancel();
+		invalidate();
+	}
+
+	private static void close(ProjectConnection connection) {
+		try {
+			connection.close();
+		} catch (Throwable e) {
+			GradleCore.log(e);
+		}
+	}
+
+}
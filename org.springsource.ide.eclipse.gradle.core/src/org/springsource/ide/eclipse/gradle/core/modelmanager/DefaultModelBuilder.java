@@ -10,21 +10,41 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.gradle.core.modelmanager;
 
+import io.pivotal.tooling.model.eclipse.StsEclipseProject;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.gradle.tooling.model.eclipse.EclipseProject;
+import org.gradle.tooling.model.gradle.BuildInvocations;
+import org.gradle.tooling.model.gradle.ProjectPublications;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.preferences.GradlePreferences;
 import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
 
 /**
  * Default implementation of ModelBuilder. Delegates to Gradle tooling API.
+ * <p>
+ * Builds for unrelated build families may run concurrently (builds within the same family are
+ * serialized by the {@link GradleModelManager}). The number of concurrent builds is bounded
+ * by a workspace preference.
+ * <p>
+ * Models are detached from the tooling API as soon as they are built (see {@link ModelSnapshot}), so
+ * that the tooling API's objects can be garbage collected.
  * 
  * @author Kris De Volder
  */
-public class DefaultModelBuilder extends AbstractModelBuilder {
+public class DefaultModelBuilder extends AbstractModelBuilder implements FamilyModelBuilder {
 	
 	@Override
-	synchronized public <T> T doBuild(GradleProject project, Class<T> type, IProgressMonitor mon) throws CoreException {
+	public <T> T doBuild(GradleProject project, Class<T> type, IProgressMonitor mon) throws CoreException {
 		mon.beginTask(jobName(project, type), 10);
 		try {
 			return ToolinApiUtils.buildModel(project, type, new SubProgressMonitor(mon, 9));
@@ -41,6 +61,80 @@ public class DefaultModelBuilder extends AbstractModelBuilder {
 		}
 	}
 	
+	@Override
+	public boolean canBuildFamily(Class<?> type) {
+		return BuildInvocations.class.equals(type) || ProjectPublications.class.equals(type);
+	}
+
+	@Override
+	public <T> Map<File, T> buildFamilyModels(GradleProject project, Class<T> type, IProgressMonitor mon) throws CoreException {
+		String jobName = "Build '"+type.getSimpleName()+"' models for '"+project.getDisplayName()+"' and related projects";
+		acquireBuildSlot(mon);
+		try {
+			Map<File, T> models = ToolinApiUtils.executeAction(project, new FamilyModelAction<T>(type), jobName, mon);
+			ModelSnapshot.Capture capture = new ModelSnapshot.Capture();
+			Map<File, T> detached = new LinkedHashMap<File, T>();
+			for (Entry<File, T> e : models.entrySet()) {
+				detached.put(e.getKey(), capture.detach(e.getValue(), type));
+			}
+			return detached;
+		} finally {
+			releaseBuildSlot();
+		}
+	}
+
+	@Override
+	public Class<?>[] getCompanionTypes(Class<?> type) {
+		if (EclipseProject.class.equals(type) || StsEclipseProject.class.equals(type)) {
+			//Refreshing dependencies builds these. The task view and jar remapping need the others
+			// for the same projects soon after.
+			return new Class<?>[] { BuildInvocations.class, ProjectPublications.class };
+		}
+		return null;
+	}
+
+	@Override
+	public WorkspaceSnapshot buildSnapshot(GradleProject project, Class<?> rootType, Class<?>[] companionTypes, IProgressMonitor mon) throws CoreException {
+		String jobName = "Build '"+rootType.getSimpleName()+"' model for '"+project.getDisplayName()+"' and related models";
+		acquireBuildSlot(mon);
+		try {
+			return detach(ToolinApiUtils.executeAction(project, new WorkspaceSnapshotAction(rootType, companionTypes), jobName, mon), rootType);
+		} finally {
+			releaseBuildSlot();
+		}
+	}
+
+	@Override
+	protected <T> T adapt(T model, Class<T> type) {
+		return new ModelSnapshot.Capture().detach(model, type);
+	}
+
+	private static WorkspaceSnapshot detach(WorkspaceSnapshot snapshot, Class<?> rootType) {
+		ModelSnapshot.Capture capture = new ModelSnapshot.Capture();
+		Set<Class<?>> types = snapshot.getProjectTypes();
+		WorkspaceSnapshot detached = new WorkspaceSnapshot(rootType, types.toArray(new Class<?>[types.size()]));
+		detached.setRootModel(detach(capture, snapshot.getRootModel(rootType), rootType));
+		for (Class<?> type : types) {
+			for (Entry<File, ?> e : snapshot.getProjectModels(type).entrySet()) {
+				detached.put(type, e.getKey(), detach(capture, e.getValue(), type));
+			}
+		}
+		return detached;
+	}
+
+	private static <T> T detach(ModelSnapshot.Capture capture, Object model, Class<T> type) {
+		return capture.detach(type.cast(model), type);
+	}
+
+	@Override
+	protected int getMaxConcurrentBuilds() {
+		GradleCore core = GradleCore.getInstance();
+		if (core!=null) {
+			return core.getPreferences().getMaxConcurrentBuilds();
+		}
+		return GradlePreferences.DEFAULT_MAX_CONCURRENT_BUILDS;
+	}
+	
 	public static <T> String jobName(GradleProject project, Class<T> requiredType) {
 		return "Build '"+requiredType.getSimpleName()+"' model for '"+project.getDisplayName();
 	}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubProgressMonitor;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
+
+/**
+ * Build strategy for model types that are not hierarchical, but that a {@link FamilyModelBuilder}
+ * can build for all the projects in a Gradle build at once. One request builds the models for
+ * the whole build family, so the build is configured only once rather than once per project.
+ * <p>
+ * Build families are predicted and recorded in the same way as the {@link HierarchicalProjectBuildStrategy}
+ * does.
+ */
+public class FamilyBuildStrategy extends BuildStrategy {
+
+	private final FamilyModelBuilder familyBuilder;
+
+	public FamilyBuildStrategy(FamilyModelBuilder builder) {
+		super(builder);
+		this.familyBuilder = builder;
+	}
+
+	@Override
+	public <T> List<ProjectBuildResult<T>> buildModels(GradleProject focusProject, Class<T> type, IProgressMonitor mon) throws CoreException {
+		mon.beginTask("Build "+type.getSimpleName()+" models", 2);
+		try {
+			GradleProject rootProject = HierarchicalProjectBuildStrategy.getRootProject(focusProject);
+			GradleProject[] buildFamily = null;
+			if (rootProject!=null) {
+				buildFamily = HierarchicalProjectBuildStrategy.getBuildFamily(rootProject);
+			}
+			GradleProject referenceProject = buildFamily==null ? focusProject : rootProject;
+			Map<File, T> models;
+			try {
+				models = familyBuilder.buildFamilyModels(referenceProject, type, new SubProgressMonitor(mon, 1));
+			} catch (Throwable e) {
+				if (ExceptionUtil.isUnsupportedVersionException(e)) {
+					//Gradle version too old to build models this way.
+					return buildSingle(focusProject, type, new SubProgressMonitor(mon, 1));
+				}
+				return failed(focusProject, buildFamily, new BuildResult<T>(type, e));
+			}
+
+			List<ProjectBuildResult<T>> results = new ArrayList<ProjectBuildResult<T>>(models.size());
+			ProjectBuildResult<T> focusResult = null;
+			GradleProject newRoot = null;
+			Set<GradleProject> newMembers = new LinkedHashSet<GradleProject>();
+			for (Entry<File, T> e : models.entrySet()) {
+				GradleProject project = GradleCore.create(e.getKey());
+				if (newRoot==null) {
+					newRoot = project; //root always comes first
+				}
+				newMembers.add(project);
+				if (e.getValue()!=null) {
+					ProjectBuildResult<T> result = new ProjectBuildResult<T>(project, new BuildResult<T>(type, e.getValue()));
+					if (project==focusProject) {
+						focusResult = result;
+					} else {
+						results.add(result);
+					}
+				}
+			}
+			if (newRoot!=null) {
+				for (GradleProject member : newMembers) {
+					HierarchicalProjectBuildStrategy.setRootProject(member, newRoot);
+				}
+				HierarchicalProjectBuildStrategy.setBuildFamily(newRoot, newMembers);
+				//Update family members that became orphans
+				if (buildFamily!=null) {
+					for (GradleProject oldMember : buildFamily) {
+						if (!newMembers.contains(oldMember)) {
+							HierarchicalProjectBuildStrategy.setRootProject(oldMember, null);
+						}
+					}
+				}
+			}
+			if (focusResult==null) {
+				//Family was mispredicted, or the focus project's model isn't available this way. Let the
+				// builder try to build it on its own (this will also produce a proper error if there's no model).
+				focusResult = new ProjectBuildResult<T>(focusProject, builder.buildModel(focusProject, type, new SubProgressMonitor(mon, 1)));
+			}
+			results.add(0, focusResult); //focus project always first!
+			return results;
+		} finally {
+			mon.done();
+		}
+	}
+
+	private <T> List<ProjectBuildResult<T>> buildSingle(GradleProject focusProject, Class<T> type, IProgressMonitor mon) {
+		List<ProjectBuildResult<T>> results = new ArrayList<ProjectBuildResult<T>>(1);
+		results.add(new ProjectBuildResult<T>(focusProject, builder.buildModel(focusProject, type, mon)));
+		return results;
+	}
+
+	private <T> List<ProjectBuildResult<T>> failed(GradleProject focusProject, GradleProject[] buildFamily, BuildResult<T> failure) {
+		List<ProjectBuildResult<T>> results = new ArrayList<ProjectBuildResult<T>>();
+		results.add(new ProjectBuildResult<T>(focusProject, failure)); //focus project always first!
+		//Use persisted 'build family' to mark other family members as failed.
+		if (buildFamily!=null) {
+			for (GradleProject familyMember : buildFamily) {
+				if (focusProject!=familyMember) {
+					results.add(new ProjectBuildResult<T>(familyMember, failure));
+				}
+			}
+		}
+		return results;
+	}
+
+	@Override
+	public <T> Set<GradleProject> predictBuildFamily(GradleProject focusProject, Class<T> type) {
+		GradleProject root = HierarchicalProjectBuildStrategy.getRootProject(focusProject);
+		if (root!=null) {
+			GradleProject[] members = HierarchicalProjectBuildStrategy.getBuildFamily(root);
+			if (members!=null) {
+				return new HashSet<GradleProject>(Arrays.asList(members));
+			}
+		}
+		return null;
+	}
+
+}
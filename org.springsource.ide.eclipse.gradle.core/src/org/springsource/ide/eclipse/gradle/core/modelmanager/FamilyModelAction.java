@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+
+import org.gradle.tooling.BuildAction;
+import org.gradle.tooling.BuildController;
+import org.gradle.tooling.model.gradle.BasicGradleProject;
+import org.gradle.tooling.model.gradle.GradleBuild;
+
+/**
+ * BuildAction that fetches a model of a given type for every project in a Gradle build. The
+ * models are returned in a map keyed by project directory.
+ * <p>
+ * The root project's entry always comes first. It is mapped to null if the model is not
+ * available for the root project. Other projects for which the model is not available are
+ * left out of the map.
+ * <p>
+ * Note: this class is serialized and executed inside the Gradle build process. It should
+ * not reference any Eclipse classes.
+ */
+public class FamilyModelAction<T> implements BuildAction<LinkedHashMap<File, T>> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Class<T> type;
+
+	public FamilyModelAction(Class<T> type) {
+		this.type = type;
+	}
+
+	@Override
+	public LinkedHashMap<File, T> execute(BuildController controller) {
+		GradleBuild build = controller.getBuildModel();
+		LinkedHashMap<File, T> models = new LinkedHashMap<File, T>();
+		BasicGradleProject root = build.getRootProject();
+		models.put(root.getProjectDirectory(), controller.findModel(root, type));
+		for (BasicGradleProject project : build.getProjects()) {
+			File dir = project.getProjectDirectory();
+			if (!models.containsKey(dir)) {
+				T model = controller.findModel(project, type);
+				if (model!=null) {
+					models.put(dir, model);
+				}
+			}
+		}
+		return models;
+	}
+
+}
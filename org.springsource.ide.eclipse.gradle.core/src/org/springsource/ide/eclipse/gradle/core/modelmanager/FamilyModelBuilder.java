@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager;
+
+import java.io.File;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+
+/**
+ * A ModelBuilder that, for some model types, can build the models of all the projects in
+ * a Gradle build at once. It can also fetch models of other types together with a model,
+ * as a {@link WorkspaceSnapshot}.
+ */
+public interface FamilyModelBuilder extends ModelBuilder {
+
+	/**
+	 * @return true if models of the given type should be built for a whole build family at once.
+	 */
+	boolean canBuildFamily(Class<?> type);
+
+	/**
+	 * Build models for all projects in the build that a given project belongs to.
+	 *
+	 * @return Models keyed by project location. The root project's entry comes first. It is mapped to null
+	 *      if the root project doesn't have a model of the requested type.
+	 */
+	<T> Map<File, T> buildFamilyModels(GradleProject project, Class<T> type, IProgressMonitor mon) throws CoreException;
+
+	/**
+	 * @return Types of models that should be fetched for all projects in the build whenever a model of
+	 *      the given type is built, or null if models of the given type should be built on their own.
+	 */
+	Class<?>[] getCompanionTypes(Class<?> type);
+
+	/**
+	 * Build a model of a given type for a project, together with models of companion types for every
+	 * project in the same build.
+	 */
+	WorkspaceSnapshot buildSnapshot(GradleProject project, Class<?> rootType, Class<?>[] companionTypes, IProgressMonitor mon) throws CoreException;
+
+}
@@ -10,20 +10,35 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.gradle.core.modelmanager;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.ListenerList;
+import org.eclipse.core.runtime.SubProgressMonitor;
 import org.gradle.tooling.model.eclipse.HierarchicalEclipseProject;
+import org.gradle.tooling.model.gradle.ProjectPublications;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.GradleProjectManager;
 import org.springsource.ide.eclipse.gradle.core.InconsistenProjectHierarchyException;
 import org.springsource.ide.eclipse.gradle.core.classpathcontainer.FastOperationFailedException;
+import org.springsource.ide.eclipse.gradle.core.preferences.GradlePreferences;
+import org.springsource.ide.eclipse.gradle.core.util.JobUtil;
 
 /**
  * Manages GradleModels for all GradleProjects. Each GradleProject may be
@@ -33,15 +48,90 @@ import org.springsource.ide.eclipse.gradle.core.classpathcontainer.FastOperation
  */
 public class GradleModelManager {
 
+	/**
+	 * Minimum time (in milliseconds) between two checks for models of projects that are no longer open.
+	 */
+	private static final long EVICTION_SWEEP_INTERVAL = 60000;
+
+	private static final Comparator<GradleProjectModelManager> LEAST_RECENTLY_USED = new Comparator<GradleProjectModelManager>() {
+		@Override
+		public int compare(GradleProjectModelManager m1, GradleProjectModelManager m2) {
+			long t1 = m1.getLastAccess();
+			long t2 = m2.getLastAccess();
+			return t1<t2 ? -1 : t1==t2 ? 0 : 1;
+		}
+	};
+
 	private ModelBuilder builder;
-	private Map<GradleProject, GradleProjectModelManager> managers;
+	/**
+	 * Per-project caches. Replaced rather than cleared on invalidation so that lookups, which
+	 * don't take locks, never see a half-cleared map.
+	 */
+	private volatile Map<GradleProject, GradleProjectModelManager> managers = new ConcurrentHashMap<GradleProject, GradleProjectModelManager>();
 	private Map<Class<?>, LockManager> lockManagers = null; // lock managers, per model type.
 	private Map<GradleProject,ListenerList> listeners;
 	
+	/**
+	 * Builds currently executing. Used to let concurrent requests for the same model share a single build.
+	 */
+	private final List<InFlightBuild> inFlight = new ArrayList<InFlightBuild>();
+	
+	/**
+	 * Persists models across sessions. May be null, in which case models are only cached in memory.
+	 */
+	private ModelSnapshotStore snapshots = null;
+	
+	/**
+	 * Publications of the projects, indexed by coordinates. Filled as publications models land in the cache.
+	 */
+	private final PublicationIndex publications = new PublicationIndex();
+
+	/**
+	 * Used to forget about projects that were deleted. May be null.
+	 */
+	private GradleProjectManager projectManager = null;
+
+	/**
+	 * Maximum number of projects for which models are kept in memory. If not positive the limit is taken from
+	 * the preferences.
+	 */
+	private int maxResidentProjects = 0;
+
+	/**
+	 * Time (in milliseconds) that models of projects that aren't open in the workspace are kept after their
+	 * last use.
+	 */
+	private long inactiveEvictionDelay = 5 * 60000;
+
+	/**
+	 * Time (in milliseconds) after their last use that models of projects that are open in the workspace
+	 * may be evicted to stay within {@link #getMaxResidentProjects()}. Models in active use are never evicted.
+	 */
+	private long idleEvictionDelay = 60000;
+
+	private volatile long lastEvictionSweep = System.currentTimeMillis();
+	private volatile int evictionCount = 0;
+	
 	public GradleModelManager(ModelBuilder builder) {
 		this.builder = builder;
 	}
 	
+	public void setSnapshotStore(ModelSnapshotStore snapshots) {
+		this.snapshots = snapshots;
+	}
+	
+	public ModelSnapshotStore getSnapshotStore() {
+		return snapshots;
+	}
+	
+	public PublicationIndex getPublicationIndex() {
+		return publications;
+	}
+
+	public void setProjectManager(GradleProjectManager projectManager) {
+		this.projectManager = projectManager;
+	}
+	
 	public <T> T getModel(GradleProject project, Class<T> type) throws CoreException, FastOperationFailedException {
 		return getManager(project).getModel(type);
 	}
@@ -50,27 +140,96 @@ public class GradleModelManager {
 	 * Clears out all models in all the caches.
 	 */
 	public synchronized void invalidate() {
-		managers = null;
+		managers = new ConcurrentHashMap<GradleProject, GradleProjectModelManager>();
+		publications.invalidate();
+		if (snapshots!=null) {
+			snapshots.invalidate();
+		}
 	}
 	
 	/**
 	 * Clears out models of all types for a given project.
 	 */
 	public synchronized void invalidate(GradleProject gradleProject) {
-		if (managers!=null) {
-			managers.remove(gradleProject);
+		managers.remove(gradleProject);
+		publications.invalidate(gradleProject);
+		if (snapshots!=null) {
+			snapshots.invalidate(gradleProject);
 		}
 	}
 	
-	private synchronized GradleProjectModelManager getManager(GradleProject project) {
-		if (managers==null) {
-			managers = new HashMap<GradleProject, GradleProjectModelManager>();
+	/**
+	 * Clears out models of all types for some projects, and for all the members of their build families
+	 * (as far as they are known). Used before rebuilding a family, so that no stale models of members
+	 * are left behind, and the members don't each trigger a build of their own.
+	 */
+	public synchronized void invalidateFamilies(Collection<GradleProject> projects) {
+		Set<GradleProject> invalid = new LinkedHashSet<GradleProject>(projects);
+		for (GradleProject project : projects) {
+			GradleProject root = HierarchicalProjectBuildStrategy.getRootProject(project);
+			if (root!=null) {
+				invalid.add(root);
+				GradleProject[] family = HierarchicalProjectBuildStrategy.getBuildFamily(root);
+				if (family!=null) {
+					invalid.addAll(Arrays.asList(family));
+				}
+			}
+		}
+		for (GradleProject project : invalid) {
+			invalidate(project);
+		}
+	}
+
+	/**
+	 * Rebuilds the models of a given type for some projects of the same build family. The family is invalidated
+	 * once, and then models are requested for the projects one after the other. For model types that are built
+	 * for whole families (or hierarchies) at once, the first request builds the models for the whole family and
+	 * the others are served from the cache.
+	 * <p>
+	 * Uses one unit of work per project.
+	 */
+	public <T> void rebuildFamily(List<GradleProject> projects, Class<T> type, IProgressMonitor mon) throws CoreException {
+		rebuildFamily(Collections.<Class<?>, List<GradleProject>>singletonMap(type, projects), mon);
+	}
+
+	/**
+	 * Like {@link #rebuildFamily(List, Class, IProgressMonitor)}, for projects of the same build family whose
+	 * models are of different types. The family is invalidated once, before building any of the models, so
+	 * that the models built for one type aren't thrown away before building the next.
+	 * <p>
+	 * Uses one unit of work per project.
+	 */
+	public void rebuildFamily(Map<Class<?>, List<GradleProject>> projectsByType, IProgressMonitor mon) throws CoreException {
+		List<GradleProject> projects = new ArrayList<GradleProject>();
+		for (List<GradleProject> typeProjects : projectsByType.values()) {
+			projects.addAll(typeProjects);
+		}
+		mon.beginTask("Build models", projects.size());
+		try {
+			invalidateFamilies(projects);
+			for (Entry<Class<?>, List<GradleProject>> e : projectsByType.entrySet()) {
+				for (GradleProject project : e.getValue()) {
+					JobUtil.checkCanceled(mon);
+					getModel(project, e.getKey(), new SubProgressMonitor(mon, 1));
+				}
+			}
+		} finally {
+			mon.done();
 		}
+	}
+
+	private GradleProjectModelManager getManager(GradleProject project) {
 		GradleProjectModelManager existing = managers.get(project);
-		if (existing==null) {
-			managers.put(project, existing = new GradleProjectModelManager(this, project));
+		if (existing!=null) {
+			return existing;
+		}
+		synchronized (this) {
+			existing = managers.get(project);
+			if (existing==null) {
+				managers.put(project, existing = new GradleProjectModelManager(this, project));
+			}
+			return existing;
 		}
-		return existing;
 	}
 
 	public <T> T getModel(GradleProject project, Class<T> type, IProgressMonitor mon) throws CoreException {
@@ -87,14 +246,19 @@ public class GradleModelManager {
 		if (HierarchicalEclipseProject.class.isAssignableFrom(type)) {
 			return new HierarchicalProjectBuildStrategy(builder);
 		}
+		if (builder instanceof FamilyModelBuilder && ((FamilyModelBuilder) builder).canBuildFamily(type)) {
+			return new FamilyBuildStrategy((FamilyModelBuilder) builder);
+		}
 		return new SingleProjectBuildStrategy(builder);
 	}
 	
 	/**
 	 * Add new build results to the model cache, overwriting any buildresults that are
 	 * already stored at the same coordinates.
+	 *
+	 * @param inputs Fingerprints of the inputs of the build, taken when it started. May be null.
 	 */
-	<T> void addToCache(List<ProjectBuildResult<T>> buildResults) {
+	<T> void addToCache(List<ProjectBuildResult<T>> buildResults, ModelSnapshotStore.BuildInputs inputs) {
 		synchronized (this) {
 			for (ProjectBuildResult<?> buildResult : buildResults) {
 				if (!buildResult.isCancelation()) {
@@ -107,9 +271,166 @@ public class GradleModelManager {
 		// the cache
 		for (ProjectBuildResult<T> buildResult : buildResults) {
 			if (!buildResult.isFailure()) {
+				indexPublications(buildResult.getProject(), buildResult.getResult().getModel());
+				if (snapshots!=null) {
+					snapshots.modelBuilt(buildResult.getProject(), buildResult.getResult().getType(), buildResult.getResult().getModel(), inputs);
+				}
 				notifyListeners(buildResult.getProject(), buildResult.getResult().getType(), buildResult.getResult().getModel());
 			}
 		}
+		evictIfNeeded();
+	}
+	
+	/**
+	 * Add the per-project models from a snapshot to the model caches of their respective types.
+	 */
+	void addToCache(WorkspaceSnapshot snapshot, ModelSnapshotStore.BuildInputs inputs) {
+		if (snapshot!=null) {
+			for (Class<?> type : snapshot.getProjectTypes()) {
+				addToCache(snapshot, type, inputs);
+			}
+		}
+	}
+
+	private <T> void addToCache(WorkspaceSnapshot snapshot, Class<T> type, ModelSnapshotStore.BuildInputs inputs) {
+		Map<File, T> models = snapshot.getProjectModels(type);
+		List<ProjectBuildResult<T>> results = new ArrayList<ProjectBuildResult<T>>(models.size());
+		for (Entry<File, T> e : models.entrySet()) {
+			results.add(new ProjectBuildResult<T>(GradleCore.create(e.getKey()), new BuildResult<T>(type, e.getValue())));
+		}
+		addToCache(results, inputs);
+	}
+
+	/**
+	 * Evict models that are no longer needed now, rather than wait for the next periodic check.
+	 */
+	public void trimCache() {
+		evict(System.currentTimeMillis());
+	}
+
+	private void evictIfNeeded() {
+		long now = System.currentTimeMillis();
+		if (getResidentProjectCount()>getMaxResidentProjects() || now-lastEvictionSweep>EVICTION_SWEEP_INTERVAL) {
+			evict(now);
+		}
+	}
+
+	/**
+	 * Removes models from the cache to keep memory use bounded. Models of projects that are not open in the
+	 * workspace (i.e. closed, deleted or not imported) are removed when they haven't been used for a while.
+	 * If that doesn't bring the number of projects with models in the cache within the limit, the least
+	 * recently used ones are removed as well, as long as they are closed or idle. So the limit may be
+	 * exceeded when more projects than that are in active use.
+	 * <p>
+	 * Eviction is transparent to clients: evicted models are restored from their snapshot or rebuilt when
+	 * they are requested again.
+	 */
+	private synchronized void evict(long now) {
+		lastEvictionSweep = now;
+		List<GradleProjectModelManager> candidates = new ArrayList<GradleProjectModelManager>();
+		int resident = 0;
+		for (GradleProjectModelManager manager : managers.values()) {
+			boolean open = isOpen(manager.getProject());
+			if (manager.size()>0) {
+				resident++;
+			}
+			if (!open || now-manager.getLastAccess()>idleEvictionDelay) {
+				candidates.add(manager);
+			}
+		}
+		Collections.sort(candidates, LEAST_RECENTLY_USED);
+		int excess = resident - getMaxResidentProjects();
+		for (GradleProjectModelManager candidate : candidates) {
+			//Managers without models take next to no memory, only evict them when they are inactive.
+			boolean hasModels = candidate.size()>0;
+			if ((excess>0 && hasModels) || (now-candidate.getLastAccess()>inactiveEvictionDelay && !isOpen(candidate.getProject()))) {
+				if (evict(candidate) && hasModels) {
+					excess--;
+				}
+			}
+		}
+	}
+
+	private boolean evict(GradleProjectModelManager manager) {
+		GradleProject project = manager.getProject();
+		if (managers.get(project)!=manager) {
+			return false;
+		}
+		//Tell the snapshot store first, so that a new manager for the project can restore the models right away.
+		if (snapshots!=null) {
+			snapshots.evict(project);
+		}
+		managers.remove(project);
+		evictionCount++;
+		if (projectManager!=null && !project.getLocation().exists()) {
+			projectManager.forget(project);
+		}
+		return true;
+	}
+
+	protected boolean isOpen(GradleProject project) {
+		IProject eclipseProject = project.getProject();
+		return eclipseProject!=null && eclipseProject.isAccessible();
+	}
+
+	protected int getMaxResidentProjects() {
+		if (maxResidentProjects>0) {
+			return maxResidentProjects;
+		}
+		GradleCore core = GradleCore.getInstance();
+		if (core!=null) {
+			return Math.max(1, core.getPreferences().getMaxResidentProjects());
+		}
+		return GradlePreferences.DEFAULT_MAX_RESIDENT_PROJECTS;
+	}
+
+	/**
+	 * Sets the maximum number of projects for which models are kept in memory. Overrides the preferences.
+	 */
+	public void setMaxResidentProjects(int max) {
+		this.maxResidentProjects = max;
+	}
+
+	/**
+	 * @return The number of times the models of a project were evicted from the cache.
+	 */
+	public int getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return The number of projects that have models in the cache.
+	 */
+	public int getResidentProjectCount() {
+		int count = 0;
+		for (GradleProjectModelManager manager : managers.values()) {
+			if (manager.size()>0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return The number of models in the cache, over all projects.
+	 */
+	public int getResidentModelCount() {
+		int count = 0;
+		for (GradleProjectModelManager manager : managers.values()) {
+			count += manager.size();
+		}
+		return count;
+	}
+
+	private void indexPublications(GradleProject project, Object model) {
+		if (model instanceof ProjectPublications) {
+			try {
+				publications.add(project, (ProjectPublications) model);
+			} catch (Throwable e) {
+				publications.invalidate(project);
+				GradleCore.log(e);
+			}
+		}
 	}
 	
 	private synchronized ListenerList listeners(GradleProject project) {
@@ -157,14 +478,54 @@ public class GradleModelManager {
 
 	/**
 	 * Synchronization helper to make requests for models in the same project family sequential.
+	 * The lock managers are per model type, so the project locations suffice as keys.
 	 */
-	Lock lockFamily(Class<?> type, Collection<GradleProject> predictedFamily) {
+	Lock lockFamily(Class<?> type, Collection<GradleProject> predictedFamily, IProgressMonitor mon) {
 		LockManager lockManager = getLockManager(type);
-		Set<String> keys = new HashSet<String>();
+		Set<File> keys = new HashSet<File>();
 		for (GradleProject project : predictedFamily) {
-			keys.add(project.getLocation().toString()+"::"+type.getName());
+			keys.add(project.getLocation());
 		}
-		return lockManager.lock(keys);
+		return lockManager.lock(keys, mon);
+	}
+
+	/**
+	 * Find a build that is currently executing and will produce a model for the given project
+	 * that can satisfy a request for the given type (i.e. a model of the type itself or a subtype).
+	 * Builds that have been canceled are ignored.
+	 * @return The build or null if there is no such build.
+	 */
+	InFlightBuild findInFlightBuild(GradleProject project, Class<?> type) {
+		synchronized (inFlight) {
+			for (InFlightBuild build : inFlight) {
+				if (build.produces(project, type) && build.isJoinable()) {
+					return build;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Register a build that is about to start, so that concurrent requests can join it.
+	 * The caller must call {@link #finishBuild(InFlightBuild)} when the build is done
+	 * and its results have been added to the cache.
+	 */
+	InFlightBuild startBuild(Class<?> type, Collection<GradleProject> members, IProgressMonitor initiator) {
+		//Fingerprint the inputs before the build reads them, so edits made during the build aren't missed.
+		ModelSnapshotStore.BuildInputs inputs = snapshots!=null ? snapshots.takeFingerprints(members) : null;
+		InFlightBuild build = new InFlightBuild(type, members, inputs, initiator);
+		synchronized (inFlight) {
+			inFlight.add(build);
+		}
+		return build;
+	}
+	
+	void finishBuild(InFlightBuild build) {
+		synchronized (inFlight) {
+			inFlight.remove(build);
+		}
+		build.finish();
 	}
 
 	private synchronized LockManager getLockManager(Class<?> type) {
@@ -181,8 +542,8 @@ public class GradleModelManager {
 		return manager;
 	}
 
-	Lock lockAll(Class<?> type) {
-		return getLockManager(type).lockAll();
+	Lock lockAll(Class<?> type, IProgressMonitor mon) {
+		return getLockManager(type).lockAll(mon);
 	}
 	
 	
@@ -203,5 +564,21 @@ public class GradleModelManager {
 	
 	protected int SLEEP_BETWEEN_RETRIES = 0;
 
+	/**
+	 * Sets how long models of projects that aren't open in the workspace are kept after their last use.
+	 * Meant for testing purposes.
+	 */
+	public void setInactiveEvictionDelay(long delay) {
+		this.inactiveEvictionDelay = delay;
+	}
+
+	/**
+	 * Sets how long models of projects that are open in the workspace are kept after their last use
+	 * before they may be evicted. Meant for testing purposes.
+	 */
+	public void setIdleEvictionDelay(long delay) {
+		this.idleEvictionDelay = delay;
+	}
+
 
 }
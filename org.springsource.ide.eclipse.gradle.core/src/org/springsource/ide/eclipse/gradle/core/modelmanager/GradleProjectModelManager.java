@@ -10,22 +10,30 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.gradle.core.modelmanager;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.ListenerList;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubProgressMonitor;
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
 import org.springsource.ide.eclipse.gradle.core.InconsistenProjectHierarchyException;
 import org.springsource.ide.eclipse.gradle.core.classpathcontainer.FastOperationFailedException;
 import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
+import org.springsource.ide.eclipse.gradle.core.util.GradleRunnable;
+import org.springsource.ide.eclipse.gradle.core.util.JobUtil;
 import org.springsource.ide.eclipse.gradle.core.util.ObjectUtil;
 import org.springsource.ide.eclipse.gradle.core.wizards.GradleImportOperation.ExistingProjectException;
 
@@ -39,6 +47,112 @@ public class GradleProjectModelManager {
 	
 	private Map<Class<?>, BuildResult<?>> cache;
 	
+	/**
+	 * Models restored from an out-of-date snapshot. These are returned by {@link #getModelMaybe(Class)} until
+	 * they have been replaced by freshly built models, but are never used to avoid a build.
+	 */
+	private Map<Class<?>, BuildResult<?>> staleCache;
+	private volatile boolean snapshotRestored = false;
+
+	/**
+	 * Read-only view of the contents of 'cache' and 'staleCache'. Replaced by a new one each time the caches
+	 * change, so that model lookups don't need to take locks.
+	 */
+	private volatile ModelIndex index = ModelIndex.EMPTY;
+
+	/**
+	 * Time of the last request for a model of this project. Used to decide which models to evict
+	 * when the model cache grows too big.
+	 */
+	private volatile long lastAccess = System.currentTimeMillis();
+
+	/**
+	 * Immutable index of the cached build results. Lookups for a requested type are answered by scanning the
+	 * results once, the answer is remembered for later lookups of the same type.
+	 */
+	private static final class ModelIndex {
+
+		static final ModelIndex EMPTY = new ModelIndex(null, null);
+
+		private static final Object NONE = new Object();
+
+		private final BuildResult<?>[] fresh;
+		private final BuildResult<?>[] stale;
+
+		/**
+		 * Memo of lookups that include stale models.
+		 */
+		private final ConcurrentHashMap<Class<?>, Object> found = new ConcurrentHashMap<Class<?>, Object>();
+
+		/**
+		 * Memo of lookups that only consider fresh models.
+		 */
+		private final ConcurrentHashMap<Class<?>, Object> foundFresh = new ConcurrentHashMap<Class<?>, Object>();
+
+		ModelIndex(Map<Class<?>, BuildResult<?>> cache, Map<Class<?>, BuildResult<?>> staleCache) {
+			this.fresh = toArray(cache);
+			this.stale = toArray(staleCache);
+		}
+
+		private static BuildResult<?>[] toArray(Map<Class<?>, BuildResult<?>> cache) {
+			if (cache==null) {
+				return new BuildResult<?>[0];
+			}
+			return cache.values().toArray(new BuildResult<?>[cache.size()]);
+		}
+
+		int size() {
+			return fresh.length + stale.length;
+		}
+
+		<T> T find(Class<T> type, boolean includeStale) {
+			ConcurrentHashMap<Class<?>, Object> memo = includeStale ? found : foundFresh;
+			Object model = memo.get(type);
+			if (model==null) {
+				model = lookup(fresh, type);
+				if (model==null && includeStale) {
+					model = lookup(stale, type);
+				}
+				if (model==null) {
+					model = NONE;
+				}
+				memo.put(type, model);
+			}
+			return model==NONE ? null : type.cast(model);
+		}
+
+		Throwable getError(Class<?> type) {
+			//In case of failure explanation we only match the requested type exactly
+			// because there's a chance that building model of subtype fails if 
+			// the one for supertype can succeed.
+			for (BuildResult<?> buildResult : fresh) {
+				if (buildResult.getType().equals(type)) {
+					return buildResult.isFailed() ? buildResult.getError() : null;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Finds the best model for a requested type: a model of exactly that type if there is one, else
+		 * a model of some subtype.
+		 */
+		private static Object lookup(BuildResult<?>[] results, Class<?> type) {
+			Object subtypeModel = null;
+			for (BuildResult<?> buildResult : results) {
+				if (buildResult.isSucceeded()) {
+					Class<?> modelType = buildResult.getType();
+					if (modelType.equals(type)) {
+						return buildResult.getModel();
+					} else if (subtypeModel==null && type.isAssignableFrom(modelType)) {
+						subtypeModel = buildResult.getModel();
+					}
+				}
+			}
+			return subtypeModel;
+		}
+	}
+	
 	public GradleProjectModelManager(GradleModelManager mgr, GradleProject project) {
 		this.mgr = mgr;
 		this.project = project;
@@ -57,40 +171,32 @@ public class GradleProjectModelManager {
 	}
 
 	/**
-	 * Gets model from cache if available and returns null otherwise.
+	 * Gets model from cache if available and returns null otherwise. This doesn't take any locks
+	 * (except the first time it is called, to restore models from a snapshot) and never reads
+	 * snapshots from disk.
 	 */
-	@SuppressWarnings("unchecked")
-	public synchronized <T> T getModelMaybe(Class<T> type) {
-		if (cache!=null) {
-			for (BuildResult<?> buildResult : cache.values()) {
-				if (buildResult.isSucceeded()) {
-					Class<?> modelType = buildResult.getType();
-					if (type.isAssignableFrom(modelType)) {
-						return (T)buildResult.getModel();
-					}
-				}
-			}
-		}
-		//Not found 
-		return null;
+	public <T> T getModelMaybe(Class<T> type) {
+		lastAccess = System.currentTimeMillis();
+		restoreSnapshot(false);
+		return index.find(type, true);
 	}
-	
+
+	/**
+	 * Like {@link #getModelMaybe(Class)} but ignores models from out-of-date snapshots.
+	 */
+	private <T> T getFreshModel(Class<T> type) {
+		lastAccess = System.currentTimeMillis();
+		restoreSnapshot(true);
+		return index.find(type, false);
+	}
+
 	/**
 	 * Tries to find explanation for a failed model build. May return null if 
 	 * model build has not failed (either a build result has not yet been
 	 * stored or the stored build result is a succesful one).
 	 */
-	public synchronized Throwable getFailureExplanation(Class<?> type) {
-		//In case of failure explanation we only match the requested type exactly
-		// because there's a chance that building model of subtype fails if 
-		// the one for supertype can succeed.
-		if (cache!=null) {
-			BuildResult<?> buildResult = cache.get(type);
-			if (buildResult!=null && buildResult.isFailed()) {
-				return buildResult.getError();
-			}
-		}
-		return null;
+	public Throwable getFailureExplanation(Class<?> type) {
+		return index.getError(type);
 	}
 
 	public <T> T getModel(Class<T> type, IProgressMonitor mon) throws CoreException {
@@ -107,6 +213,8 @@ public class GradleProjectModelManager {
 					try {
 						Thread.sleep(mgr.SLEEP_BETWEEN_RETRIES);
 					} catch (InterruptedException e1) {
+						Thread.currentThread().interrupt();
+						throw new OperationCanceledException();
 					}
 				}
 				return getModelInternal(type, mon);
@@ -117,14 +225,37 @@ public class GradleProjectModelManager {
 	}
 	
 	private <T> T getModelInternal(Class<T> type, IProgressMonitor mon) throws CoreException {
+		mon.beginTask("Fetch model of type "+type.getSimpleName()+" for project "+project.getDisplayName(), 11);
+		try {
+			//If another request is already building a model that satisfies ours, just wait for it.
+			InFlightBuild inFlight = mgr.findInFlightBuild(project, type);
+			if (inFlight!=null && inFlight.join(new SubProgressMonitor(mon, 1))) {
+				T fromCache = getFreshModel(type);
+				if (fromCache!=null) {
+					return fromCache;
+				}
+				Throwable failureExplanation = getFailureExplanation(type);
+				if (failureExplanation!=null) {
+					throw ExceptionUtil.coreException(failureExplanation);
+				}
+				//The build didn't produce our model (e.g. family was mispredicted). Try building it ourselves.
+			} else {
+				mon.worked(1);
+			}
+			return buildModel(type, mon);
+		} finally {
+			mon.done();
+		}
+	}
+
+	private <T> T buildModel(Class<T> type, IProgressMonitor mon) throws CoreException {
 		BuildStrategy buildStrategy = mgr.getBuildStrategy(project, type);
-		Lock lock = lockFamily(buildStrategy, type); 
-		mon.beginTask("Fetch model of type "+type.getSimpleName()+" for project "+project.getDisplayName(), 10);
+		Lock lock = lockFamily(buildStrategy, type, mon);
 		try {
 			synchronized (this) {
 				//All that goes in here is deciding if we should do a build, this should be fast
 				// the actual model build might be long and should be outside synch block!
-				T fromCache = getModelMaybe(type);
+				T fromCache = getFreshModel(type);
 				mon.worked(1);
 				if (fromCache!=null) {
 					return fromCache;
@@ -138,8 +269,21 @@ public class GradleProjectModelManager {
 			}
 			//If we get here we need to attempt to build the model. 
 			//Take care to keep build outside of any synchronized blocks!
-			List<ProjectBuildResult<T>> buildResults = buildStrategy.buildModels(project, type, new SubProgressMonitor(mon, 8));
-			mgr.addToCache(buildResults);
+			Set<GradleProject> members = new HashSet<GradleProject>();
+			members.add(project);
+			Set<GradleProject> predictedFamily = buildStrategy.predictBuildFamily(project, type);
+			if (predictedFamily!=null) {
+				members.addAll(predictedFamily);
+			}
+			InFlightBuild build = mgr.startBuild(type, members, new SubProgressMonitor(mon, 8));
+			List<ProjectBuildResult<T>> buildResults;
+			try {
+				buildResults = buildStrategy.buildModels(project, type, build.getMonitor());
+				mgr.addToCache(buildResults, build.getInputs());
+				mgr.addToCache(buildStrategy.getCompanionModels(), build.getInputs());
+			} finally {
+				mgr.finishBuild(build);
+			}
 			ProjectBuildResult<T> primaryResult = getFirst(buildResults);
 			if (primaryResult!=null && primaryResult.getProject().equals(project)) {
 				return (T) primaryResult.getResult().get();
@@ -147,16 +291,15 @@ public class GradleProjectModelManager {
 				throw ExceptionUtil.inconsistentProjectHierachy(project);
 			}
 		} finally {
-			mon.done();
 			lock.release();
 		}
 	}
 	
-	private Lock lockFamily(BuildStrategy buildStrategy, Class<?> type) {
+	private Lock lockFamily(BuildStrategy buildStrategy, Class<?> type, IProgressMonitor mon) {
 		Collection<GradleProject> predictedFamily = buildStrategy.predictBuildFamily(project, type);
 		Lock lock = null;
 		do {
-			lock = predictedFamily==null?mgr.lockAll(type):mgr.lockFamily(type, predictedFamily);
+			lock = predictedFamily==null?mgr.lockAll(type, mon):mgr.lockFamily(type, predictedFamily, mon);
 			//After aquiring the lock we should recompuet predictedFamily and check if its still the same
 			// It might have been changed by builds we were waiting for.
 			Set<GradleProject> repredicted = buildStrategy.predictBuildFamily(project, type);
@@ -176,11 +319,110 @@ public class GradleProjectModelManager {
 		return null;
 	}
 
+	GradleProject getProject() {
+		return project;
+	}
+
+	long getLastAccess() {
+		return lastAccess;
+	}
+
+	/**
+	 * @return The number of models in the cache, including failed builds and stale models.
+	 */
+	int size() {
+		return index.size();
+	}
+
 	synchronized void addToCache(BuildResult<?> result) {
+		lastAccess = System.currentTimeMillis();
 		if (cache==null) {
 			cache = new HashMap<Class<?>, BuildResult<?>>();
 		}
 		cache.put(result.getType(), result);
+		if (staleCache!=null && result.isSucceeded()) {
+			Iterator<Class<?>> iter = staleCache.keySet().iterator();
+			while (iter.hasNext()) {
+				if (iter.next().isAssignableFrom(result.getType())) {
+					iter.remove();
+				}
+			}
+		}
+		index = new ModelIndex(cache, staleCache);
+	}
+
+	/**
+	 * Called the first time models are requested from this manager to add models from the
+	 * snapshot store to the cache. If the snapshot is out-of-date, the models are still served
+	 * but are rebuilt in the background.
+	 *
+	 * @param mayLoad Whether the snapshot may be read from disk by the calling thread. If not, and it
+	 *     hasn't been read yet, nothing is restored this time around.
+	 */
+	private void restoreSnapshot(boolean mayLoad) {
+		if (!snapshotRestored) {
+			restoreSnapshotSynchronized(mayLoad);
+		}
+	}
+
+	private synchronized void restoreSnapshotSynchronized(boolean mayLoad) {
+		if (snapshotRestored) {
+			return;
+		}
+		ModelSnapshotStore store = mgr.getSnapshotStore();
+		if (store==null) {
+			snapshotRestored = true;
+			return;
+		}
+		ModelSnapshotStore.Restored restored = store.restore(project, mayLoad);
+		if (restored==ModelSnapshotStore.NOT_LOADED) {
+			return;
+		}
+		snapshotRestored = true;
+		if (restored==null) {
+			return;
+		}
+		Map<Class<?>, BuildResult<?>> target;
+		if (restored.isUpToDate()) {
+			if (cache==null) {
+				cache = new HashMap<Class<?>, BuildResult<?>>();
+			}
+			target = cache;
+		} else {
+			target = staleCache = new HashMap<Class<?>, BuildResult<?>>();
+		}
+		for (Entry<Class<?>, Object> e : restored.getModels().entrySet()) {
+			if (!target.containsKey(e.getKey())) {
+				target.put(e.getKey(), buildResult(e.getKey(), e.getValue()));
+			}
+		}
+		index = new ModelIndex(cache, staleCache);
+		if (staleCache!=null && !staleCache.isEmpty()) {
+			revalidate(new ArrayList<Class<?>>(staleCache.keySet()));
+		}
+	}
+
+	private static <T> BuildResult<T> buildResult(Class<T> type, Object model) {
+		return new BuildResult<T>(type, type.cast(model));
+	}
+
+	/**
+	 * Rebuild the models of given types in the background.
+	 */
+	private void revalidate(final List<Class<?>> types) {
+		JobUtil.schedule(JobUtil.NO_RULE, new GradleRunnable("Revalidate Gradle models of "+project.getDisplayName()) {
+			@Override
+			public void doit(IProgressMonitor mon) throws Exception {
+				mon.beginTask("Revalidate Gradle models of "+project.getDisplayName(), types.size());
+				try {
+					for (Class<?> type : types) {
+						mgr.getModel(project, type, new SubProgressMonitor(mon, 1));
+					}
+				} finally {
+					mon.done();
+				}
+			}
+		});
 	}
 
 	
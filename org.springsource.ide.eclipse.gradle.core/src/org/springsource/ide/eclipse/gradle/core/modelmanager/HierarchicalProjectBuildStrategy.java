@@ -26,9 +26,11 @@ import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubProgressMonitor;
 import org.gradle.tooling.model.eclipse.HierarchicalEclipseProject;
 import org.springsource.ide.eclipse.gradle.core.GradleCore;
 import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
 
 /**
  * Build strategy specific for subtypes of HierarchicalEclipseProject. 
@@ -39,17 +41,6 @@ import org.springsource.ide.eclipse.gradle.core.GradleProject;
  */
 public class HierarchicalProjectBuildStrategy extends BuildStrategy {
 
-	/**
-	 * Property name used for storing information about a project 'Build Group'. This info is
-	 * stored into the Gradle project preferences area of the root project of a project hierarchy/
-	 * This info is updated each time there is a succesfull model build.
-	 * <p>
-	 * The info is used to allow determining the likely members of a Build Group even in the absence
-	 * of a succesful build. (E.g to determine members of a build group before a build is complete,
-	 * or to guess group members in case of failed builds).
-	 */
-	private static final String BUILD_FAMILY_PROP = "build.family."+HierarchicalEclipseProject.class.getName();
-	
 	public HierarchicalProjectBuildStrategy(ModelBuilder builder) {
 		super(builder);
 	}
@@ -105,23 +96,19 @@ public class HierarchicalProjectBuildStrategy extends BuildStrategy {
 		}
 	}
 
-	private static GradleProject getRootProject(GradleProject project) {
+	static GradleProject getRootProject(GradleProject project) {
 		//Note: it is important to use this method rather than the similar one that is
 		// defined on GradleProject because that one has some funky recovery logic for
 		// when someone deleted the prefs files. This creates some bad recursion.
-		File loc = project.getProjectPreferences().getRootProjectLocation();
+		File loc = BuildFamilyRegistry.getInstance().getRootLocation(project);
 		if (loc!=null && loc.exists()) {
 			return GradleCore.create(loc);
 		}
 		return null;
 	}
 	
-	private static void setRootProject(GradleProject project, GradleProject rootProject) {
-		if (rootProject!=null) {
-			project.getProjectPreferences().setRootProjectLocation(rootProject.getLocation());
-		} else {
-			project.getProjectPreferences().setRootProjectLocation(null);
-		}
+	static void setRootProject(GradleProject project, GradleProject rootProject) {
+		BuildFamilyRegistry.getInstance().setRootLocation(project, rootProject==null ? null : rootProject.getLocation());
 	}
 
 	/**
@@ -129,8 +116,8 @@ public class HierarchicalProjectBuildStrategy extends BuildStrategy {
 	 * build. This info is always stored and retreived from the rootProject. So if rootProject is not known then
 	 * build family can not be determined.
 	 */
-	private GradleProject[] getBuildFamily(GradleProject rootProject) {
-		File[] memberLocs = rootProject.getProjectPreferences().get(BUILD_FAMILY_PROP, (File[])null);
+	static GradleProject[] getBuildFamily(GradleProject rootProject) {
+		File[] memberLocs = BuildFamilyRegistry.getInstance().getFamily(rootProject);
 		if (memberLocs!=null) {
 			GradleProject[] members = new GradleProject[memberLocs.length];
 			for (int i = 0; i < members.length; i++) {
@@ -156,13 +143,8 @@ public class HierarchicalProjectBuildStrategy extends BuildStrategy {
 	/**
 	 * Record the build family just created by a build in the rootProject associated with that build.
 	 */
-	private void setBuildFamily(GradleProject rootProject, Set<GradleProject> members) {
-		File[] memberLocations = new File[members.size()];
-		int i = 0;
-		for (GradleProject member : members) {
-			memberLocations[i++] = member.getLocation();
-		}
-		rootProject.getProjectPreferences().put(BUILD_FAMILY_PROP, memberLocations);
+	static void setBuildFamily(GradleProject rootProject, Set<GradleProject> members) {
+		BuildFamilyRegistry.getInstance().setFamily(rootProject, members);
 	}
 
 	/**
@@ -176,7 +158,41 @@ public class HierarchicalProjectBuildStrategy extends BuildStrategy {
 	
 	public <T> BuildResult<? extends HierarchicalEclipseProject> buildReferenceModel(GradleProject project, Class<T> type, IProgressMonitor mon) throws CoreException, OperationCanceledException {
 		Assert.isLegal(HierarchicalEclipseProject.class.isAssignableFrom(type));
-		return builder.buildModel(project, (Class<? extends HierarchicalEclipseProject>)type, mon);
+		Class<? extends HierarchicalEclipseProject> hierarchyType = (Class<? extends HierarchicalEclipseProject>)type;
+		if (builder instanceof FamilyModelBuilder) {
+			FamilyModelBuilder familyBuilder = (FamilyModelBuilder) builder;
+			Class<?>[] companionTypes = familyBuilder.getCompanionTypes(type);
+			if (companionTypes!=null && companionTypes.length>0) {
+				return buildSnapshot(familyBuilder, project, hierarchyType, companionTypes, mon);
+			}
+		}
+		return builder.buildModel(project, hierarchyType, mon);
+	}
+
+	/**
+	 * Build the reference model together with the companion models of all projects in the build, so that the
+	 * build only needs to be configured once.
+	 */
+	private <T extends HierarchicalEclipseProject> BuildResult<T> buildSnapshot(FamilyModelBuilder familyBuilder, GradleProject project, Class<T> type, Class<?>[] companionTypes, IProgressMonitor mon) {
+		mon.beginTask("Build "+type.getSimpleName()+" model", 2);
+		try {
+			try {
+				WorkspaceSnapshot snapshot = familyBuilder.buildSnapshot(project, type, companionTypes, new SubProgressMonitor(mon, 1));
+				T model = snapshot.getRootModel(type);
+				if (model!=null) {
+					setCompanionModels(snapshot);
+					return new BuildResult<T>(type, model);
+				}
+			} catch (Throwable e) {
+				if (!ExceptionUtil.isUnsupportedVersionException(e)) {
+					return new BuildResult<T>(type, e);
+				}
+				//Gradle version too old for BuildActions.
+			}
+			return builder.buildModel(project, type, new SubProgressMonitor(mon, 1));
+		} finally {
+			mon.done();
+		}
 	}
 
 	
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.gradle.tooling.CancellationToken;
+import org.gradle.tooling.CancellationTokenSource;
+import org.gradle.tooling.GradleConnector;
+import org.gradle.tooling.internal.consumer.CancellationTokenInternal;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.util.GradleOpearionProgressMonitor;
+
+/**
+ * A model build that is currently executing. Concurrent requests for a model that this build
+ * is expected to produce can 'join' it rather than start a build of their own.
+ * <p>
+ * The build is executed by the thread of the request that started it (the 'initiator'). The build
+ * is only canceled when the initiator and all the requests that joined it have been canceled.
+ * Once a build is canceled it can't be joined anymore. Requests that come along after that start
+ * a build of their own, rather than share in a cancelation they didn't ask for.
+ */
+class InFlightBuild {
+
+	private final Class<?> type;
+	private final Set<GradleProject> members;
+	private final IProgressMonitor initiator;
+	private final ModelSnapshotStore.BuildInputs inputs;
+
+	/**
+	 * Number of requests currently waiting for this build, not counting the initiator.
+	 */
+	private int waiters = 0;
+	private boolean done = false;
+	private boolean canceled = false;
+
+	private final CancellationTokenSource cancellationSource = GradleConnector.newCancellationTokenSource();
+
+	InFlightBuild(Class<?> type, Collection<GradleProject> members, ModelSnapshotStore.BuildInputs inputs, IProgressMonitor initiator) {
+		this.type = type;
+		this.members = new HashSet<GradleProject>(members);
+		this.inputs = inputs;
+		this.initiator = initiator;
+		CancellationToken initiatorToken = GradleOpearionProgressMonitor.findCancellationToken(initiator);
+		if (initiatorToken instanceof CancellationTokenInternal) {
+			//Get notified right away when initiator is canceled rather than wait for someone to poll 'isCanceled'.
+			((CancellationTokenInternal) initiatorToken).getToken().addCallback(new Runnable() {
+				@Override
+				public void run() {
+					isCanceled();
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return true if this build will produce a model for the given project that can be used to satisfy
+	 * a request for the given type.
+	 */
+	boolean produces(GradleProject project, Class<?> requestedType) {
+		return requestedType.isAssignableFrom(type) && members.contains(project);
+	}
+
+	/**
+	 * @return Monitor that should be passed to the build. It reports progress to the initiator but is only
+	 * canceled when every request interested in the build has been canceled.
+	 */
+	IProgressMonitor getMonitor() {
+		return new GradleOpearionProgressMonitor(initiator, cancellationSource.token()) {
+			@Override
+			public boolean isCanceled() {
+				return InFlightBuild.this.isCanceled();
+			}
+		};
+	}
+
+	/**
+	 * @return Fingerprints of the inputs of the members, taken before the build started. Null if
+	 *     models aren't saved to snapshots.
+	 */
+	ModelSnapshotStore.BuildInputs getInputs() {
+		return inputs;
+	}
+
+	synchronized boolean isCanceled() {
+		if (!canceled && !done && waiters==0 && initiator.isCanceled()) {
+			canceled = true;
+			cancellationSource.cancel();
+		}
+		return canceled;
+	}
+
+	/**
+	 * @return true if a request can still wait for this build to produce its model, i.e. the build is
+	 *     still going and hasn't been canceled.
+	 */
+	synchronized boolean isJoinable() {
+		return !done && !isCanceled();
+	}
+
+	/**
+	 * Block until the build has finished. If the given monitor is canceled before that happens the
+	 * request stops waiting, but the build itself is only canceled if no one else is interested in it.
+	 * @return false if the build was canceled before the request joined it. The request should then 
+	 *     start a build of its own.
+	 */
+	synchronized boolean join(IProgressMonitor mon) throws OperationCanceledException {
+		if (isCanceled()) {
+			return false;
+		}
+		waiters++;
+		try {
+			while (!done) {
+				if (mon.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				try {
+					wait(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new OperationCanceledException();
+				}
+			}
+		} finally {
+			waiters--;
+			isCanceled();
+		}
+		return true;
+	}
+
+	synchronized void finish() {
+		done = true;
+		notifyAll();
+	}
+
+	@Override
+	public String toString() {
+		return "InFlightBuild [" + type.getSimpleName() + ", " + members + "]";
+	}
+
+}
@@ -10,114 +10,423 @@
  *******************************************************************************/
 package org.springsource.ide.eclipse.gradle.core.modelmanager;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.maven.wagon.observers.Debug;
-import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 
 /**
- * Manages locks on a set of strings.
+ * Manages locks on sets of keys. Keys can be any objects with proper equals and hashCode
+ * implementations.
+ * <p>
+ * Each key has its own FIFO queue of requests. A request is added to the queues of all its keys
+ * at once, and is granted when it is at the head of all of them. So requests are granted in FIFO
+ * order per key: a request for a large set of keys can not be starved by a stream of requests for
+ * smaller sets, and requests that don't share keys never wait for each other or contend for a
+ * common monitor. To add requests to several queues at once without deadlocks, the queues are
+ * always locked in the same order.
+ * <p>
+ * When a request is removed from a queue only the request that is next in line is woken up.
+ * <p>
+ * A thread that is interrupted while waiting for a lock gives up waiting, like when its monitor
+ * is canceled, and keeps its interrupted status.
  */
 public class LockManager {
-	
+
 	private static final boolean DEBUG = false;
 //		=  (""+Platform.getLocation()).contains("kdvolder")
 //		|| (""+Platform.getLocation()).contains("bamboo");
-	
+
 	private static void debug(String msg) {
 		if (DEBUG) {
 			System.out.println(msg);
 		}
 	}
-	
-	
-	private Set<String> locked = new HashSet<String>();
-	private boolean worldIsLocked = false;
+
+	/**
+	 * How often a waiting thread checks whether its request was canceled.
+	 */
+	private static final long CANCEL_POLLING_INTERVAL = 200;
+
+	/**
+	 * Queue of the requests for a single key. The request at the head of the queue holds the key.
+	 * Queues are removed from the manager when they become empty, after which they are 'dead'
+	 * and requests must not be added to them anymore.
+	 */
+	private static class KeyQueue {
+		final Object key;
+		/**
+		 * Unique id, defines the order in which queues are locked.
+		 */
+		final long id;
+		final LinkedList<Request> requests = new LinkedList<Request>();
+		boolean dead = false;
+
+		KeyQueue(Object key, long id) {
+			this.key = key;
+			this.id = id;
+		}
+	}
+
+	private static final Comparator<KeyQueue> QUEUE_ORDER = new Comparator<KeyQueue>() {
+		public int compare(KeyQueue a, KeyQueue b) {
+			return a.id<b.id ? -1 : a.id==b.id ? 0 : 1;
+		}
+	};
+
+	/**
+	 * A request for a lock. A request with keys==null is a request to lock 'the world'.
+	 */
+	private class Request implements Lock {
+		private final Object[] keys;
+		private KeyQueue[] queues;
+		private boolean signaled = false;
+
+		Request(Object[] keys) {
+			this.keys = keys;
+		}
+
+		@Override
+		public void release() {
+			releaseLock(this);
+		}
+
+		synchronized void signal() {
+			signaled = true;
+			notifyAll();
+		}
+
+		/**
+		 * Wait until signaled or until it is time to check for cancelation.
+		 */
+		synchronized void await() throws InterruptedException {
+			if (!signaled) {
+				wait(CANCEL_POLLING_INTERVAL);
+			}
+			signaled = false;
+		}
+
+		@Override
+		public String toString() {
+			if (keys==null) {
+				return "*";
+			}
+			StringBuilder buf = new StringBuilder("Lock {\n");
+			for (Object k : keys) {
+				buf.append(k);
+				buf.append("\n");
+			}
+			buf.append("}");
+			return buf.toString();
+		}
+	}
+
+	private final ConcurrentMap<Object, KeyQueue> queues = new ConcurrentHashMap<Object, KeyQueue>();
+	private final AtomicLong queueIds = new AtomicLong();
+
+	/**
+	 * Guards 'sharers' and 'worldRequests'. Only contended when 'the world' is locked.
+	 */
+	private final Object world = new Object();
+
+	/**
+	 * Number of requests for keys that are waiting for or holding their keys. A request to lock
+	 * 'the world' is granted when there are none.
+	 */
+	private int sharers = 0;
+
+	/**
+	 * Requests to lock 'the world' that are waiting or holding the lock, in the order they were made.
+	 */
+	private final LinkedList<Request> worldRequests = new LinkedList<Request>();
+
+	//Statistics
+	private final AtomicLong acquisitions = new AtomicLong();
+	private final AtomicLong contendedAcquisitions = new AtomicLong();
+	private final AtomicLong totalWaitTime = new AtomicLong(); //nanoseconds
+	private final AtomicLong maxWaitTime = new AtomicLong(); //nanoseconds
+	private final AtomicInteger waiting = new AtomicInteger();
 
 	/**
 	 * Obtain a lock on a given set of keys. All or none of the locks are obtained.
 	 * The caller must eventually call 'release' on the returned Lock object.
+	 *
+	 * @param mon If not null, waiting for the lock is aborted with an {@link OperationCanceledException}
+	 *         when this monitor is canceled.
 	 */
-	public synchronized Lock lock(Set<String> _keys) {
+	public Lock lock(Collection<?> keys, IProgressMonitor mon) {
 		//copy keys into an array, just in case clients might mutate the collection after passing it to us.
-		final String[] keys = _keys.toArray(new String[_keys.size()]);
-		while (!canLock(keys)) {
+		Request request = new Request(keys.toArray());
+		long start = System.nanoTime();
+		boolean contended = enterWorld(request, mon);
+		enqueue(request);
+		if (!isHead(request)) {
+			contended = true;
+			waiting.incrementAndGet();
 			try {
-				wait();
-			} catch (InterruptedException e) {
+				while (!isHead(request)) {
+					await(request, mon);
+				}
+			} catch (OperationCanceledException e) {
+				dequeue(request);
+				leaveWorld();
+				throw e;
+			} finally {
+				waiting.decrementAndGet();
 			}
 		}
-		for (String k : keys) {
-			locked.add(k);
-		}
-		return new Lock() {
-			@Override
-			public void release() {
-				releaseAll(keys);
+		return granted(request, contended, start);
+	}
+
+	/**
+	 * Lock 'the world'. This lock will only succeed if no other locks are currently held and
+	 * once this lock succeeds it needs to be released before any other locks can be obtained.
+	 *
+	 * @param mon If not null, waiting for the lock is aborted with an {@link OperationCanceledException}
+	 *         when this monitor is canceled.
+	 */
+	public Lock lockAll(IProgressMonitor mon) {
+		Request request = new Request(null);
+		long start = System.nanoTime();
+		boolean contended = false;
+		synchronized (world) {
+			worldRequests.add(request);
+			if (!canLockWorld(request)) {
+				contended = true;
+				waiting.incrementAndGet();
+				try {
+					while (!canLockWorld(request)) {
+						awaitWorld(mon);
+					}
+				} catch (OperationCanceledException e) {
+					worldRequests.remove(request);
+					world.notifyAll();
+					throw e;
+				} finally {
+					waiting.decrementAndGet();
+				}
 			}
-			@Override
-			public String toString() {
-				StringBuilder buf = new StringBuilder("Lock {\n");
-				for (String string : keys) {
-					buf.append(string);
-					buf.append("\n");
+		}
+		return granted(request, contended, start);
+	}
+
+	private boolean canLockWorld(Request request) {
+		return worldRequests.getFirst()==request && sharers==0;
+	}
+
+	/**
+	 * Wait until no earlier request to lock 'the world' is waiting or holding the lock, and
+	 * register a request for keys.
+	 * @return Whether the request had to wait.
+	 */
+	private boolean enterWorld(Request request, IProgressMonitor mon) {
+		synchronized (world) {
+			boolean contended = false;
+			if (!worldRequests.isEmpty()) {
+				contended = true;
+				waiting.incrementAndGet();
+				try {
+					while (!worldRequests.isEmpty()) {
+						awaitWorld(mon);
+					}
+				} finally {
+					waiting.decrementAndGet();
 				}
-				buf.append("}");
-				return buf.toString();
 			}
-		};
+			sharers++;
+			return contended;
+		}
+	}
+
+	private void leaveWorld() {
+		synchronized (world) {
+			sharers--;
+			if (sharers==0 && !worldRequests.isEmpty()) {
+				world.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock on 'world'.
+	 */
+	private void awaitWorld(IProgressMonitor mon) {
+		try {
+			world.wait(CANCEL_POLLING_INTERVAL);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		}
+		if (mon!=null && mon.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+	private void await(Request request, IProgressMonitor mon) {
+		try {
+			request.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		}
+		if (mon!=null && mon.isCanceled()) {
+			throw new OperationCanceledException();
+		}
 	}
 
-	private synchronized void releaseAll(String[] keys) {
-//		debug("releasing locks: ");
-		for (String k : keys) {
-			debug("   "+k);
-			locked.remove(k);
+	private Lock granted(Request request, boolean contended, long start) {
+		acquisitions.incrementAndGet();
+		if (contended) {
+			long waited = System.nanoTime() - start;
+			contendedAcquisitions.incrementAndGet();
+			totalWaitTime.addAndGet(waited);
+			long max;
+			while (waited>(max = maxWaitTime.get()) && !maxWaitTime.compareAndSet(max, waited)) {
+				//retry
+			}
 		}
-		notify();
+		return request;
 	}
 
-	private boolean canLock(String[] keys) {
-		if (worldIsLocked) {
-			return false;
+	/**
+	 * Add a request to the queues of all its keys, as a single atomic step.
+	 */
+	private void enqueue(Request request) {
+		while (true) {
+			KeyQueue[] keyQueues = new KeyQueue[request.keys.length];
+			for (int i = 0; i < keyQueues.length; i++) {
+				keyQueues[i] = getQueue(request.keys[i]);
+			}
+			Arrays.sort(keyQueues, QUEUE_ORDER);
+			if (enqueue(request, keyQueues, 0)) {
+				request.queues = keyQueues;
+				return;
+			}
+			//One of the queues died before we got hold of it. Try again.
 		}
-		for (String k : keys) {
-			if (locked.contains(k)) {
+	}
+
+	/**
+	 * Lock the queues from a given index on, in order, and add the request to all of them once all are locked.
+	 * @return false if one of the queues is dead.
+	 */
+	private boolean enqueue(Request request, KeyQueue[] keyQueues, int i) {
+		if (i==keyQueues.length) {
+			for (KeyQueue queue : keyQueues) {
+				queue.requests.add(request);
+			}
+			return true;
+		}
+		KeyQueue queue = keyQueues[i];
+		synchronized (queue) {
+			if (queue.dead) {
 				return false;
 			}
+			return enqueue(request, keyQueues, i+1);
 		}
-		return true;
+	}
+
+	private KeyQueue getQueue(Object key) {
+		KeyQueue queue = queues.get(key);
+		if (queue==null) {
+			KeyQueue created = new KeyQueue(key, queueIds.incrementAndGet());
+			queue = queues.putIfAbsent(key, created);
+			if (queue==null) {
+				queue = created;
+			}
+		}
+		return queue;
 	}
 
 	/**
-	 * Lock 'the world'. This lock will only succeed if no other locks are currently held and
-	 * once this lock succeeds it needs to be released before any other locks can be obtained.
+	 * Remove a request from the queues of all its keys and wake up the requests next in line.
 	 */
-	public synchronized Lock lockAll() {
-		while (worldIsLocked || !locked.isEmpty()) {
-			try {
-				wait();
-			} catch (InterruptedException e) {
+	private void dequeue(Request request) {
+		for (KeyQueue queue : request.queues) {
+			Request next = null;
+			synchronized (queue) {
+				queue.requests.remove(request);
+				if (queue.requests.isEmpty()) {
+					queue.dead = true;
+					queues.remove(queue.key, queue);
+				} else {
+					next = queue.requests.getFirst();
+				}
+			}
+			if (next!=null) {
+				next.signal();
 			}
 		}
-		worldIsLocked = true;
-		return new Lock() {
-			@Override
-			public void release() {
-				unlockTheWorld();
+	}
+
+	/**
+	 * @return Whether a request is at the head of the queues of all its keys. Once a request is at the
+	 *     head of a queue, it stays there until it is released.
+	 */
+	private static boolean isHead(Request request) {
+		for (KeyQueue queue : request.queues) {
+			synchronized (queue) {
+				if (queue.requests.getFirst()!=request) {
+					return false;
+				}
 			}
-			@Override
-			public String toString() {
-				return "*";
+		}
+		return true;
+	}
+
+	private void releaseLock(Request request) {
+		debug("releasing lock: "+request);
+		if (request.keys==null) {
+			synchronized (world) {
+				worldRequests.remove(request);
+				world.notifyAll();
 			}
-		};
+		} else {
+			dequeue(request);
+			leaveWorld();
+		}
 	}
 
-	private synchronized void unlockTheWorld() {
-		//debug("Releasing lock: *");
-		worldIsLocked = false;
-		notify();
+	/**
+	 * @return Number of locks granted so far.
+	 */
+	public long getAcquisitions() {
+		return acquisitions.get();
 	}
-	
+
+	/**
+	 * @return Number of locks that were not granted immediately.
+	 */
+	public long getContendedAcquisitions() {
+		return contendedAcquisitions.get();
+	}
+
+	/**
+	 * @return Total time (in milliseconds) spent waiting for locks to be granted.
+	 */
+	public long getTotalWaitTime() {
+		return totalWaitTime.get() / 1000000;
+	}
+
+	/**
+	 * @return Longest time (in milliseconds) a request waited for a lock to be granted.
+	 */
+	public long getMaxWaitTime() {
+		return maxWaitTime.get() / 1000000;
+	}
+
+	/**
+	 * @return Number of requests currently waiting.
+	 */
+	public int getWaiting() {
+		return waiting.get();
+	}
+
 }
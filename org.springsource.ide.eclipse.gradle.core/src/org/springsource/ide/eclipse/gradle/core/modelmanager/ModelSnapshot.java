@@ -0,0 +1,405 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager;
+
+import java.io.File;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gradle.tooling.model.UnsupportedMethodException;
+import org.gradle.tooling.model.internal.ImmutableDomainObjectSet;
+
+/**
+ * Helper to make detached, serializable copies of tooling API models and to turn such copies
+ * back into objects implementing the model interfaces.
+ * <p>
+ * Besides persisting models, this is used to replace the tooling API's models as soon as they are
+ * built (see {@link Capture#detach(Object, Class)}). The tooling API's dynamic proxies adapt their
+ * backing objects anew on every call of a getter and keep the whole backing object graph alive.
+ * <p>
+ * The models the model manager uses most (Eclipse projects, Gradle projects and their tasks, build
+ * invocations and publications, classpath entries) are captured as the plain value objects defined
+ * in {@link ModelValues}. Other models are captured generically as described below, and restored as
+ * dynamic proxies that only keep the captured values.
+ * <p>
+ * A model is captured by calling all the 'getter' methods of the interface through which it is
+ * accessed and recursively capturing the returned values. Objects reachable along different
+ * paths (e.g. a project reachable both as a child of its parent and as the target of a
+ * project dependency) are captured only once, so the structure of the model graph, including
+ * cycles, is preserved.
+ * <p>
+ * Methods that fail with an exception while capturing (typically {@link UnsupportedMethodException}
+ * because the Gradle version of the build doesn't support them) throw an
+ * {@link UnsupportedMethodException} when called on the restored model.
+ */
+public class ModelSnapshot {
+
+	/**
+	 * Captured state of a single model object.
+	 */
+	static final class Node implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Names of the interfaces through which the object was accessed.
+		 */
+		final Set<String> types = new LinkedHashSet<String>();
+
+		/**
+		 * Captured values of the getter methods, keyed by method name.
+		 */
+		final Map<String, Object> properties = new HashMap<String, Object>();
+
+		private transient Object restored;
+	}
+
+	/**
+	 * Captured value of a method returning a collection of values.
+	 */
+	static final class ListValue implements Serializable {
+		private static final long serialVersionUID = 1L;
+		final ArrayList<Object> elements;
+
+		private transient Object restored;
+
+		ListValue(ArrayList<Object> elements) {
+			this.elements = elements;
+		}
+	}
+
+	/**
+	 * Captured value of a method that could not be called.
+	 */
+	static final class Unsupported implements Serializable {
+		private static final long serialVersionUID = 1L;
+		final String message;
+
+		Unsupported(String message) {
+			this.message = message;
+		}
+	}
+
+	private static final Map<Class<?>, List<Method>> gettersCache = new ConcurrentHashMap<Class<?>, List<Method>>();
+
+	/**
+	 * Captures models. Models captured with the same instance share the captured state
+	 * of objects reachable from several of them.
+	 */
+	public static class Capture {
+
+		private final Map<Object, Node> nodes = new HashMap<Object, Node>();
+
+		private final ModelValues.Converter converter = new ModelValues.Converter();
+
+		/**
+		 * @return a serializable copy of a model that was obtained as an instance of the given type.
+		 */
+		public Object capture(Object model, Class<?> type) {
+			if (ModelValues.isModelType(type)) {
+				return converter.convert(model, type);
+			}
+			return capture(model, type, type);
+		}
+
+		/**
+		 * @return an immutable copy of a model, detached from the tooling API objects it was built from.
+		 *     Models that are tooling API proxies are copied, other models are returned as is.
+		 */
+		public <T> T detach(T model, Class<T> type) {
+			if (model==null || !Proxy.isProxyClass(model.getClass()) || isDetached(model)) {
+				return model;
+			}
+			return restore(capture(model, type), type);
+		}
+
+		private Object capture(Object value, Class<?> type, Type genericType) {
+			if (value==null) {
+				return null;
+			} else if (ModelValues.isValue(value)) {
+				return value;
+			} else if (Iterable.class.isAssignableFrom(type)) {
+				Class<?> elementType = elementType(genericType);
+				ArrayList<Object> elements = new ArrayList<Object>();
+				for (Object element : (Iterable<?>) value) {
+					elements.add(capture(element, elementType, elementType));
+				}
+				return new ListValue(elements);
+			} else if (ModelValues.isPropertyType(type)) {
+				return converter.convert(value, type);
+			} else if (type.isInterface() && !isPlainValue(value)) {
+				return captureNode(value, type);
+			} else if (value instanceof String || value instanceof File) {
+				return ModelValues.intern(value);
+			} else if (value instanceof Serializable) {
+				return value;
+			}
+			return new Unsupported("Value of type "+type.getName()+" can not be stored in a model snapshot");
+		}
+
+		private Node captureNode(Object value, Class<?> type) {
+			RestoredModel detached = restoredModel(value);
+			if (detached!=null && type.isInstance(value)) {
+				//Already a copy, with the properties of all its interfaces captured.
+				return detached.node;
+			}
+			Node node = nodes.get(value);
+			if (node==null) {
+				nodes.put(value, node = new Node());
+			} else if (!addType(node, type)) {
+				//Already captured through this type or one of its subtypes
+				return node;
+			}
+			node.types.add(type.getName());
+			for (Method m : getters(type)) {
+				Object captured;
+				try {
+					Object result = m.invoke(value);
+					captured = capture(result, m.getReturnType(), m.getGenericReturnType());
+				} catch (InvocationTargetException e) {
+					captured = new Unsupported(""+e.getCause().getMessage());
+				} catch (Exception e) {
+					captured = new Unsupported(""+e.getMessage());
+				}
+				node.properties.put(m.getName(), captured);
+			}
+			return node;
+		}
+
+		/**
+		 * Called when an already captured object is reached through a (possibly) different type.
+		 * @return true if the type is new and its properties must still be captured.
+		 */
+		private boolean addType(Node node, Class<?> type) {
+			ClassLoader loader = type.getClassLoader();
+			for (String existingName : new ArrayList<String>(node.types)) {
+				Class<?> existing = loadClass(existingName, loader);
+				if (existing==null) {
+					continue;
+				}
+				if (type.isAssignableFrom(existing)) {
+					return false;
+				} else if (existing.isAssignableFrom(type)) {
+					//New type is more specific and replaces existing one.
+					node.types.remove(existingName);
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Turn a value produced by {@link Capture#capture(Object, Class)} back into a model that can
+	 * be used in place of the original model.
+	 */
+	public static <T> T restore(Object captured, Class<T> type) {
+		ClassLoader loader = type.getClassLoader();
+		return type.cast(restoreValue(captured, type, loader==null ? ModelSnapshot.class.getClassLoader() : loader));
+	}
+
+	/**
+	 * @return true if the object is a restored or detached model.
+	 */
+	public static boolean isDetached(Object model) {
+		return ModelValues.isValue(model) || restoredModel(model)!=null;
+	}
+
+	private static RestoredModel restoredModel(Object model) {
+		if (model!=null && Proxy.isProxyClass(model.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(model);
+			if (handler instanceof RestoredModel) {
+				return (RestoredModel) handler;
+			}
+		}
+		return null;
+	}
+
+	private static Object restoreValue(Object value, Class<?> type, ClassLoader loader) {
+		if (value instanceof Node) {
+			return restoreNode((Node) value, loader);
+		} else if (value instanceof ListValue) {
+			return restoreList((ListValue) value, type, loader);
+		}
+		return value;
+	}
+
+	/**
+	 * A captured list is restored once, as a collection of the type of the method that returned it.
+	 * Lists that only contain plain values are restored as a read-only view of the captured list.
+	 */
+	private static Object restoreList(ListValue list, Class<?> type, ClassLoader loader) {
+		synchronized (list) {
+			if (list.restored==null) {
+				boolean plain = true;
+				List<Object> elements = new ArrayList<Object>(list.elements.size());
+				for (Object e : list.elements) {
+					Object restored = restoreValue(e, Object.class, loader);
+					plain = plain && restored==e;
+					elements.add(restored);
+				}
+				if (type.isAssignableFrom(ImmutableDomainObjectSet.class)) {
+					list.restored = new ImmutableDomainObjectSet<Object>(elements);
+				} else if (type.isAssignableFrom(List.class)) {
+					list.restored = Collections.unmodifiableList(plain ? list.elements : elements);
+				} else if (type.isAssignableFrom(Set.class)) {
+					list.restored = Collections.unmodifiableSet(new LinkedHashSet<Object>(elements));
+				} else {
+					list.restored = elements;
+				}
+			}
+			return list.restored;
+		}
+	}
+
+	private static Object restoreNode(Node node, ClassLoader loader) {
+		synchronized (node) {
+			if (node.restored==null) {
+				List<Class<?>> interfaces = new ArrayList<Class<?>>();
+				for (String name : node.types) {
+					Class<?> type = loadClass(name, loader);
+					if (type!=null) {
+						interfaces.add(type);
+					}
+				}
+				node.restored = Proxy.newProxyInstance(loader, interfaces.toArray(new Class<?>[interfaces.size()]), new RestoredModel(node, loader));
+			}
+			return node.restored;
+		}
+	}
+
+	private static class RestoredModel implements InvocationHandler {
+
+		private final Node node;
+		private final ClassLoader loader;
+
+		public RestoredModel(Node node, ClassLoader loader) {
+			this.node = node;
+			this.loader = loader;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			int argCount = args==null ? 0 : args.length;
+			if (argCount==1 && name.equals("equals")) {
+				return proxy==args[0];
+			} else if (argCount==0 && name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if (argCount==0 && name.equals("toString")) {
+				return "Snapshot"+node.types+"["+node.properties.get("getName")+"]";
+			} else if (argCount==1 && name.equals("findByPath")) {
+				return findByPath(proxy, (String)args[0]);
+			} else if (argCount>0 || !node.properties.containsKey(name)) {
+				throw new UnsupportedMethodException("Method '"+name+"' is not available in a model snapshot");
+			}
+			Object captured = node.properties.get(name);
+			if (captured instanceof Unsupported) {
+				throw new UnsupportedMethodException(((Unsupported) captured).message);
+			}
+			//Nodes and lists remember what they were restored to, so this returns the same object every time.
+			return restoreValue(captured, method.getReturnType(), loader);
+		}
+
+		/**
+		 * Emulates the 'findByPath' method of a tooling API GradleProject.
+		 */
+		private Object findByPath(Object proxy, String path) {
+			if (path.equals(node.properties.get("getPath"))) {
+				return proxy;
+			}
+			Object children = node.properties.get("getChildren");
+			if (children instanceof ListValue) {
+				for (Object child : ((ListValue) children).elements) {
+					if (child instanceof Node) {
+						Object restored = restoreNode((Node) child, loader);
+						Object found = restoredModel(restored).findByPath(restored, path);
+						if (found!=null) {
+							return found;
+						}
+					}
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * @return the public, argument-less methods returning a value of a given interface. When an interface
+	 * overrides a method with a more specific return type, only the most specific one is returned.
+	 */
+	private static List<Method> getters(Class<?> type) {
+		List<Method> getters = gettersCache.get(type);
+		if (getters==null) {
+			Map<String, Method> byName = new HashMap<String, Method>();
+			for (Method m : type.getMethods()) {
+				if (m.getParameterTypes().length==0 && m.getReturnType()!=void.class) {
+					Method existing = byName.get(m.getName());
+					if (existing==null || existing.getDeclaringClass().isAssignableFrom(m.getDeclaringClass())) {
+						byName.put(m.getName(), m);
+					}
+				}
+			}
+			getters = new ArrayList<Method>(byName.values());
+			gettersCache.put(type, getters);
+		}
+		return getters;
+	}
+
+	private static Class<?> elementType(Type genericType) {
+		if (genericType instanceof ParameterizedType) {
+			Type[] args = ((ParameterizedType) genericType).getActualTypeArguments();
+			if (args.length==1) {
+				return toClass(args[0]);
+			}
+		}
+		return Object.class;
+	}
+
+	private static Class<?> toClass(Type type) {
+		if (type instanceof Class) {
+			return (Class<?>) type;
+		} else if (type instanceof ParameterizedType) {
+			return toClass(((ParameterizedType) type).getRawType());
+		} else if (type instanceof WildcardType) {
+			return toClass(((WildcardType) type).getUpperBounds()[0]);
+		} else if (type instanceof TypeVariable) {
+			return toClass(((TypeVariable<?>) type).getBounds()[0]);
+		}
+		return Object.class;
+	}
+
+	private static boolean isPlainValue(Object value) {
+		return value instanceof String || value instanceof Number || value instanceof Boolean
+				|| value instanceof Character || value instanceof Enum;
+	}
+
+	private static Class<?> loadClass(String name, ClassLoader loader) {
+		try {
+			return Class.forName(name, false, loader==null ? ModelSnapshot.class.getClassLoader() : loader);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,827 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager;
+
+import io.pivotal.tooling.model.eclipse.StsEclipseProject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.Job;
+import org.gradle.tooling.model.eclipse.EclipseProject;
+import org.gradle.tooling.model.gradle.ProjectPublications;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
+import org.springsource.ide.eclipse.gradle.core.util.ObjectUtil;
+
+/**
+ * Persists snapshots of the models in the model cache to disk, so that after a restart of
+ * Eclipse models can be served right away instead of waiting for a tooling API build.
+ * <p>
+ * Snapshots are stored per build (i.e. one file per root project). The models of each project are
+ * stored together with a fingerprint of the files that define them: the build scripts in the project
+ * folder, the build scripts, 'settings.gradle', 'gradle.properties' and wrapper properties of the
+ * root project, and the contents of the root project's 'buildSrc' folder. When the fingerprint no
+ * longer matches the files on disk, the snapshot is still served but is considered out of date,
+ * so the model manager will revalidate it by building the model again in the background.
+ * <p>
+ * Snapshot files are only read in background threads. Until the snapshot of a build has been read,
+ * {@link #restore(GradleProject, boolean)} returns {@link #NOT_LOADED} to callers that can't wait.
+ * Snapshots of projects whose folder no longer exists are removed.
+ * <p>
+ * Snapshots are only read once per project per session. I.e. after the model cache has been
+ * invalidated models are obtained by building them. The exception are projects whose models were
+ * evicted from the model cache to save memory: their snapshot is read again once it is up-to-date.
+ */
+public class ModelSnapshotStore {
+
+	/**
+	 * Version of the on-disk format. Snapshots written with a different version are ignored.
+	 */
+	public static final int FORMAT_VERSION = 3;
+
+	/**
+	 * Delay (in milliseconds) before writing changed snapshots to disk. Saves of models built in
+	 * quick succession are combined into a single write.
+	 */
+	private static final long SAVE_DELAY = 2000;
+
+	/**
+	 * Time (in milliseconds) for which the inputs of a root project are assumed not to have changed.
+	 */
+	private static final long FINGERPRINT_TTL = 10000;
+
+	/**
+	 * The model types that are stored in snapshots.
+	 */
+	private static final Class<?>[] SNAPSHOT_TYPES = {
+		EclipseProject.class,
+		StsEclipseProject.class,
+		ProjectPublications.class
+	};
+
+	/**
+	 * Returned by {@link #restore(GradleProject, boolean)} when the snapshot hasn't been read yet.
+	 */
+	public static final Restored NOT_LOADED = new Restored(Collections.<Class<?>, Object>emptyMap(), false);
+
+	/**
+	 * Models restored from a snapshot.
+	 */
+	public static class Restored {
+		private final Map<Class<?>, Object> models;
+		private final boolean upToDate;
+
+		Restored(Map<Class<?>, Object> models, boolean upToDate) {
+			this.models = models;
+			this.upToDate = upToDate;
+		}
+
+		public Map<Class<?>, Object> getModels() {
+			return models;
+		}
+
+		/**
+		 * @return false if the files defining the build have changed since the snapshot was taken.
+		 */
+		public boolean isUpToDate() {
+			return upToDate;
+		}
+	}
+
+	/**
+	 * Fingerprints of the inputs of the projects in a build, taken before the build reads them. Files
+	 * edited while the build runs, or after it, then make the snapshot of its models out of date.
+	 */
+	public static class BuildInputs {
+		private final Map<File, File> roots = new HashMap<File, File>();
+		private final Map<File, String> fingerprints = new HashMap<File, String>();
+
+		/**
+		 * @return Fingerprint of the inputs of a project when the build started, or null if it wasn't
+		 *     taken, or was taken for another root project than the one the project has now.
+		 */
+		String getFingerprint(GradleProject project) {
+			File root = roots.get(project.getLocation());
+			if (root!=null && root.equals(rootOf(project))) {
+				return fingerprints.get(project.getLocation());
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Snapshot of the models of all the projects in a single build.
+	 */
+	private static class RootSnapshot implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final File root;
+		/**
+		 * Captured models, keyed by project location and then by model type name.
+		 */
+		final HashMap<File, HashMap<String, Object>> models = new HashMap<File, HashMap<String, Object>>();
+		/**
+		 * Fingerprint of the inputs of a project at the time its models were captured, keyed by project location.
+		 */
+		final HashMap<File, String> fingerprints = new HashMap<File, String>();
+
+		/**
+		 * Stamps of the inputs of the root project as they are now.
+		 */
+		transient String currentRootInputs;
+		transient long currentRootInputsTime;
+
+		RootSnapshot(File root) {
+			this.root = root;
+		}
+	}
+
+	private final File dir;
+
+	/**
+	 * Root snapshots that were read from or written to disk during this session, keyed by root location.
+	 */
+	private final Map<File, RootSnapshot> loaded = new HashMap<File, RootSnapshot>();
+
+	/**
+	 * Projects for which snapshot has been restored already.
+	 */
+	private final Set<GradleProject> restored = new HashSet<GradleProject>();
+
+	/**
+	 * Models built during this session (since the last time the project was invalidated).
+	 */
+	private final Map<GradleProject, Map<Class<?>, Object>> sessionModels = new HashMap<GradleProject, Map<Class<?>, Object>>();
+
+	/**
+	 * Fingerprint of the inputs from which the session models of a project were built. Null if they
+	 * weren't all built from the same inputs.
+	 */
+	private final Map<GradleProject, String> sessionFingerprints = new HashMap<GradleProject, String>();
+
+	/**
+	 * Projects whose snapshot must be written on next save.
+	 */
+	private final Set<GradleProject> dirty = new HashSet<GradleProject>();
+
+	/**
+	 * Projects evicted from the model cache whose models must be written before they can be released.
+	 */
+	private final Set<GradleProject> evicted = new HashSet<GradleProject>();
+
+	/**
+	 * Projects that were evicted from the model cache and may be restored from their snapshot again.
+	 */
+	private final Set<GradleProject> restorable = new HashSet<GradleProject>();
+
+	/**
+	 * Projects whose models are being written by the save job.
+	 */
+	private Set<GradleProject> saving = Collections.emptySet();
+
+	/**
+	 * Roots whose snapshot must be read by the load job.
+	 */
+	private final Set<File> toLoad = new LinkedHashSet<File>();
+
+	/**
+	 * Incremented when all snapshots are deleted, so that snapshots read before that are dropped.
+	 */
+	private int generation = 0;
+
+	private final Job saveJob = new Job("Save Gradle model snapshots") {
+		{
+			setSystem(true);
+		}
+		@Override
+		protected IStatus run(IProgressMonitor mon) {
+			save();
+			return ExceptionUtil.OK_STATUS;
+		}
+	};
+
+	private final Job loadJob = new Job("Load Gradle model snapshots") {
+		{
+			setSystem(true);
+		}
+		@Override
+		protected IStatus run(IProgressMonitor mon) {
+			File root;
+			while ((root = nextToLoad())!=null) {
+				load(root);
+			}
+			return ExceptionUtil.OK_STATUS;
+		}
+	};
+
+	private final Job pruneJob = new Job("Prune Gradle model snapshots") {
+		{
+			setSystem(true);
+		}
+		@Override
+		protected IStatus run(IProgressMonitor mon) {
+			pruneFiles();
+			return ExceptionUtil.OK_STATUS;
+		}
+	};
+
+	/**
+	 * @param dir Directory where snapshot files are kept.
+	 */
+	public ModelSnapshotStore(File dir) {
+		this.dir = dir;
+	}
+
+	public static boolean isSnapshotType(Class<?> type) {
+		for (Class<?> t : SNAPSHOT_TYPES) {
+			if (t.equals(type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Retrieve the models of a given project from its snapshot. This only returns something the first
+	 * time it is called for a given project.
+	 *
+	 * @param mayLoad Whether the snapshot may be read from disk by the calling thread. If not, and the
+	 *     snapshot hasn't been read yet, it is read in the background and {@link #NOT_LOADED} is returned.
+	 * @return Restored models or null if there's no snapshot for the project.
+	 */
+	public Restored restore(GradleProject project, boolean mayLoad) {
+		File root = rootOf(project);
+		synchronized (this) {
+			if (restored.contains(project)) {
+				return null;
+			}
+			if (evicted.remove(project)) {
+				//Evicted before its models were written. They are still here.
+				restored.add(project);
+				restorable.remove(project);
+				return new Restored(new LinkedHashMap<Class<?>, Object>(sessionModels.get(project)), true);
+			}
+			if (!mayLoad && !loaded.containsKey(root)) {
+				toLoad.add(root);
+				loadJob.schedule();
+				return NOT_LOADED;
+			}
+		}
+		RootSnapshot snapshot = load(root);
+		if (snapshot==null) {
+			synchronized (this) {
+				restored.add(project);
+				restorable.remove(project);
+			}
+			return null;
+		}
+		HashMap<String, Object> captured;
+		String fingerprint;
+		synchronized (this) {
+			//Captured models are replaced rather than modified, so they can be used outside the lock.
+			captured = snapshot.models.get(project.getLocation());
+			fingerprint = snapshot.fingerprints.get(project.getLocation());
+		}
+		Map<Class<?>, Object> models = new LinkedHashMap<Class<?>, Object>();
+		if (captured!=null) {
+			for (Entry<String, Object> e : captured.entrySet()) {
+				Class<?> type = snapshotType(e.getKey());
+				if (type!=null) {
+					try {
+						models.put(type, ModelSnapshot.restore(e.getValue(), type));
+					} catch (Exception error) {
+						GradleCore.log(error);
+					}
+				}
+			}
+		}
+		boolean upToDate = captured!=null && currentFingerprint(snapshot, project.getLocation()).equals(fingerprint);
+		synchronized (this) {
+			if (!restored.add(project)) {
+				return null;
+			}
+			restorable.remove(project);
+			if (captured==null) {
+				return null;
+			}
+			if (upToDate) {
+				//Keep track of them as if they were built, so they are written again with the project's new models.
+				Map<Class<?>, Object> session = sessionModels.get(project);
+				if (session==null) {
+					sessionModels.put(project, session = new HashMap<Class<?>, Object>());
+					sessionFingerprints.put(project, fingerprint);
+				} else if (!ObjectUtil.equal(fingerprint, sessionFingerprints.get(project))) {
+					sessionFingerprints.put(project, null);
+				}
+				for (Entry<Class<?>, Object> e : models.entrySet()) {
+					if (!session.containsKey(e.getKey())) {
+						session.put(e.getKey(), e.getValue());
+					}
+				}
+			}
+		}
+		return new Restored(models, upToDate);
+	}
+
+	/**
+	 * Take the fingerprints of the inputs of the projects in a build. Must be called before the
+	 * build starts, so that the fingerprints are not newer than the models it produces.
+	 */
+	public BuildInputs takeFingerprints(Collection<GradleProject> projects) {
+		BuildInputs inputs = new BuildInputs();
+		Map<File, String> rootInputs = new HashMap<File, String>();
+		for (GradleProject project : projects) {
+			File root = rootOf(project);
+			String stamps = rootInputs.get(root);
+			if (stamps==null) {
+				rootInputs.put(root, stamps = rootInputs(root));
+			}
+			inputs.roots.put(project.getLocation(), root);
+			inputs.fingerprints.put(project.getLocation(), sha1(stamps+projectInputs(project.getLocation())));
+		}
+		return inputs;
+	}
+
+	/**
+	 * Called when a model was added to the model cache. The model will be written to the snapshot
+	 * of its project a little while later.
+	 *
+	 * @param inputs Fingerprints taken when the build of the model started. If null, or if they don't
+	 *     include the project, the snapshot will be out of date when it is restored.
+	 */
+	public void modelBuilt(GradleProject project, Class<?> type, Object model, BuildInputs inputs) {
+		if (isSnapshotType(type)) {
+			String fingerprint = inputs!=null ? inputs.getFingerprint(project) : null;
+			synchronized (this) {
+				Map<Class<?>, Object> models = sessionModels.get(project);
+				if (models==null) {
+					sessionModels.put(project, models = new HashMap<Class<?>, Object>());
+					sessionFingerprints.put(project, fingerprint);
+				} else if (!ObjectUtil.equal(fingerprint, sessionFingerprints.get(project))) {
+					//Built from different inputs than the other models of the project.
+					sessionFingerprints.put(project, null);
+				}
+				models.put(type, model);
+				dirty.add(project);
+			}
+			saveJob.schedule(SAVE_DELAY);
+		}
+	}
+
+	/**
+	 * Called when the models of a project are removed from the model cache.
+	 */
+	public synchronized void invalidate(GradleProject project) {
+		sessionModels.remove(project);
+		sessionFingerprints.remove(project);
+		evicted.remove(project);
+		if (restorable.remove(project)) {
+			restored.add(project);
+		}
+	}
+
+	/**
+	 * Called when all models are removed from the model cache.
+	 */
+	public synchronized void invalidate() {
+		sessionModels.clear();
+		sessionFingerprints.clear();
+		evicted.clear();
+		restored.addAll(restorable);
+		restorable.clear();
+	}
+
+	/**
+	 * Called when the models of a project are evicted from the model cache to save memory. Unlike
+	 * invalidated models, evicted models are still valid. So once they have been written to disk
+	 * they are released and will be restored from the snapshot when they are needed again. Until
+	 * then they are restored from memory.
+	 */
+	public synchronized void evict(GradleProject project) {
+		if (!sessionModels.containsKey(project)) {
+			//No up-to-date models. The project will have to be rebuilt.
+			return;
+		}
+		restored.remove(project);
+		restorable.add(project);
+		if (dirty.contains(project) || saving.contains(project)) {
+			evicted.add(project);
+		} else {
+			sessionModels.remove(project);
+			sessionFingerprints.remove(project);
+		}
+	}
+
+	/**
+	 * Write pending changes to disk now, rather than wait for the background job to do it.
+	 */
+	public void flush() {
+		saveJob.cancel();
+		save();
+	}
+
+	/**
+	 * Delete the snapshots of builds whose root project folder no longer exists, in the background.
+	 */
+	public void prune() {
+		pruneJob.schedule();
+	}
+
+	/**
+	 * Delete all snapshots.
+	 */
+	public synchronized void clearAll() {
+		generation++;
+		loaded.clear();
+		toLoad.clear();
+		dirty.clear();
+		evicted.clear();
+		File[] files = dir.listFiles();
+		if (files!=null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	private void save() {
+		Map<GradleProject, Map<Class<?>, Object>> toSave = new HashMap<GradleProject, Map<Class<?>, Object>>();
+		Map<GradleProject, String> fingerprints = new HashMap<GradleProject, String>();
+		synchronized (this) {
+			for (GradleProject project : dirty) {
+				Map<Class<?>, Object> models = sessionModels.get(project);
+				if (models!=null) {
+					toSave.put(project, new HashMap<Class<?>, Object>(models));
+					fingerprints.put(project, sessionFingerprints.get(project));
+				}
+			}
+			dirty.clear();
+			saving = toSave.keySet();
+		}
+		if (toSave.isEmpty()) {
+			return;
+		}
+		//Capturing may take a little while for big builds. Don't hold on to the lock while doing it.
+		ModelSnapshot.Capture capture = new ModelSnapshot.Capture();
+		Map<GradleProject, HashMap<String, Object>> captured = new HashMap<GradleProject, HashMap<String, Object>>();
+		for (Entry<GradleProject, Map<Class<?>, Object>> e : toSave.entrySet()) {
+			try {
+				HashMap<String, Object> models = new HashMap<String, Object>();
+				for (Entry<Class<?>, Object> model : e.getValue().entrySet()) {
+					models.put(model.getKey().getName(), capture.capture(model.getValue(), model.getKey()));
+				}
+				captured.put(e.getKey(), models);
+			} catch (Throwable error) {
+				GradleCore.log(error);
+			}
+		}
+		//Also read the existing snapshots outside the lock.
+		for (GradleProject project : captured.keySet()) {
+			load(rootOf(project));
+		}
+		synchronized (this) {
+			Set<RootSnapshot> changed = new HashSet<RootSnapshot>();
+			for (Entry<GradleProject, HashMap<String, Object>> e : captured.entrySet()) {
+				GradleProject project = e.getKey();
+				File root = rootOf(project);
+				RootSnapshot snapshot = loaded.get(root);
+				if (snapshot==null) {
+					loaded.put(root, snapshot = new RootSnapshot(root));
+				}
+				snapshot.models.put(project.getLocation(), e.getValue());
+				snapshot.fingerprints.put(project.getLocation(), fingerprints.get(project));
+				changed.add(snapshot);
+			}
+			for (RootSnapshot snapshot : changed) {
+				if (prune(snapshot)) {
+					write(snapshot);
+				} else {
+					loaded.remove(snapshot.root);
+					getSnapshotFile(snapshot.root).delete();
+				}
+			}
+			saving = Collections.emptySet();
+			Iterator<GradleProject> iter = evicted.iterator();
+			while (iter.hasNext()) {
+				GradleProject project = iter.next();
+				if (!dirty.contains(project)) {
+					sessionModels.remove(project);
+					sessionFingerprints.remove(project);
+					if (!captured.containsKey(project)) {
+						//Not written, so the snapshot doesn't have its current models.
+						restorable.remove(project);
+						restored.add(project);
+					}
+					iter.remove();
+				}
+			}
+		}
+	}
+
+	private synchronized File nextToLoad() {
+		Iterator<File> iter = toLoad.iterator();
+		if (iter.hasNext()) {
+			File root = iter.next();
+			iter.remove();
+			return root;
+		}
+		return null;
+	}
+
+	/**
+	 * Get the snapshot of a given build, reading it from disk if it wasn't read yet. Reading is done
+	 * without holding on to the lock.
+	 */
+	private RootSnapshot load(File root) {
+		int readGeneration;
+		synchronized (this) {
+			if (loaded.containsKey(root)) {
+				return loaded.get(root);
+			}
+			readGeneration = generation;
+		}
+		RootSnapshot snapshot = read(root);
+		synchronized (this) {
+			if (loaded.containsKey(root)) {
+				//Read or created by another thread in the mean time.
+				return loaded.get(root);
+			}
+			if (readGeneration!=generation) {
+				return null;
+			}
+			loaded.put(root, snapshot);
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Remove the models of projects whose folder no longer exists from a snapshot.
+	 * @return false if nothing is left of the snapshot.
+	 */
+	private static boolean prune(RootSnapshot snapshot) {
+		if (!snapshot.root.isDirectory()) {
+			return false;
+		}
+		Iterator<File> iter = snapshot.models.keySet().iterator();
+		while (iter.hasNext()) {
+			File location = iter.next();
+			if (!location.isDirectory()) {
+				iter.remove();
+				snapshot.fingerprints.remove(location);
+			}
+		}
+		return !snapshot.models.isEmpty();
+	}
+
+	/**
+	 * Delete snapshot files of builds whose root project folder no longer exists. Only the header
+	 * of each file is read to find out which build it belongs to.
+	 */
+	private void pruneFiles() {
+		File[] files = dir.listFiles();
+		if (files==null) {
+			return;
+		}
+		for (File file : files) {
+			File root = readRoot(file);
+			if (root==null || !root.isDirectory()) {
+				synchronized (this) {
+					if (root!=null) {
+						loaded.remove(root);
+					}
+					file.delete();
+				}
+			}
+		}
+	}
+
+	private static File readRoot(File file) {
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt()==FORMAT_VERSION) {
+				return new File(in.readUTF());
+			}
+		} catch (Exception e) {
+			//Corrupt or incompatible file.
+		} finally {
+			if (in!=null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return null;
+	}
+
+	private RootSnapshot read(File root) {
+		File file = getSnapshotFile(root);
+		if (!file.exists()) {
+			return null;
+		}
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt()==FORMAT_VERSION && root.getAbsolutePath().equals(in.readUTF())) {
+				RootSnapshot snapshot = (RootSnapshot) in.readObject();
+				if (root.equals(snapshot.root) && prune(snapshot)) {
+					return snapshot;
+				}
+			}
+		} catch (Exception e) {
+			//Corrupt or incompatible file. Not a problem, it only means we'll have to build the models.
+			GradleCore.log(e);
+		} finally {
+			if (in!=null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		file.delete();
+		return null;
+	}
+
+	private void write(RootSnapshot snapshot) {
+		File file = getSnapshotFile(snapshot.root);
+		ObjectOutputStream out = null;
+		try {
+			dir.mkdirs();
+			out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(snapshot.root.getAbsolutePath());
+			out.writeObject(snapshot);
+		} catch (IOException e) {
+			GradleCore.log(e);
+			file.delete();
+		} finally {
+			if (out!=null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private File getSnapshotFile(File root) {
+		return new File(dir, sha1(root.getAbsolutePath())+".snapshot");
+	}
+
+	private static File rootOf(GradleProject project) {
+		File root = BuildFamilyRegistry.getInstance().getRootLocation(project);
+		if (root!=null) {
+			return root;
+		}
+		return project.getLocation();
+	}
+
+	private static Class<?> snapshotType(String name) {
+		for (Class<?> t : SNAPSHOT_TYPES) {
+			if (t.getName().equals(name)) {
+				return t;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Compute the fingerprint of a project's inputs, reusing recently computed stamps of the root project's inputs.
+	 */
+	private String currentFingerprint(RootSnapshot snapshot, File projectDir) {
+		String rootInputs = null;
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			if (snapshot.currentRootInputs!=null && now-snapshot.currentRootInputsTime<=FINGERPRINT_TTL) {
+				rootInputs = snapshot.currentRootInputs;
+			}
+		}
+		if (rootInputs==null) {
+			rootInputs = rootInputs(snapshot.root);
+			synchronized (this) {
+				snapshot.currentRootInputs = rootInputs;
+				snapshot.currentRootInputsTime = now;
+			}
+		}
+		return sha1(rootInputs+projectInputs(projectDir));
+	}
+
+	/**
+	 * Compute a fingerprint of the files that define the models of a project in a given build: the
+	 * build scripts in the project folder, and the inputs shared by all projects in the build (the
+	 * build scripts, 'settings.gradle', 'gradle.properties' and wrapper properties of the root
+	 * project, and everything in 'buildSrc'). Based on file size and time stamps so it is cheap enough
+	 * to compute at startup.
+	 */
+	public static String fingerprint(File root, File projectDir) {
+		return sha1(rootInputs(root)+projectInputs(projectDir));
+	}
+
+	private static String rootInputs(File root) {
+		TreeSet<File> files = new TreeSet<File>();
+		files.add(new File(root, "settings.gradle"));
+		files.add(new File(root, "gradle.properties"));
+		files.add(new File(root, "gradle/wrapper/gradle-wrapper.properties"));
+		addScripts(root, files);
+		File[] buildSrc = new File(root, "buildSrc").listFiles();
+		if (buildSrc!=null) {
+			for (File child : buildSrc) {
+				//Skip the output of building buildSrc, it changes whenever the build runs.
+				if (!child.getName().equals("build") && !child.getName().equals(".gradle")) {
+					addAll(child, files);
+				}
+			}
+		}
+		return stamps(files);
+	}
+
+	private static String projectInputs(File projectDir) {
+		TreeSet<File> files = new TreeSet<File>();
+		addScripts(projectDir, files);
+		return stamps(files);
+	}
+
+	private static void addScripts(File dir, Collection<File> files) {
+		File[] scripts = dir.listFiles();
+		if (scripts!=null) {
+			for (File script : scripts) {
+				if (script.getName().endsWith(".gradle") && script.isFile()) {
+					files.add(script);
+				}
+			}
+		}
+	}
+
+	private static void addAll(File file, Collection<File> files) {
+		File[] children = file.listFiles();
+		if (children!=null) {
+			for (File child : children) {
+				addAll(child, files);
+			}
+		} else {
+			files.add(file);
+		}
+	}
+
+	private static String stamps(Collection<File> files) {
+		StringBuilder data = new StringBuilder();
+		for (File file : files) {
+			data.append(file.getAbsolutePath());
+			if (file.exists()) {
+				data.append(':').append(file.length()).append(':').append(file.lastModified());
+			}
+			data.append('\n');
+		}
+		return data.toString();
+	}
+
+	private static String sha1(String data) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(data.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest) {
+				hex.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
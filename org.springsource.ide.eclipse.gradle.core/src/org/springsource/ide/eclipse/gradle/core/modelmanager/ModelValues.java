@@ -0,0 +1,897 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager;
+
+import java.io.File;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+
+import org.gradle.tooling.model.DomainObjectSet;
+import org.gradle.tooling.model.ExternalDependency;
+import org.gradle.tooling.model.GradleModuleVersion;
+import org.gradle.tooling.model.GradleProject;
+import org.gradle.tooling.model.GradleTask;
+import org.gradle.tooling.model.Task;
+import org.gradle.tooling.model.TaskSelector;
+import org.gradle.tooling.model.UnsupportedMethodException;
+import org.gradle.tooling.model.eclipse.EclipseLinkedResource;
+import org.gradle.tooling.model.eclipse.EclipseProject;
+import org.gradle.tooling.model.eclipse.EclipseProjectDependency;
+import org.gradle.tooling.model.eclipse.EclipseSourceDirectory;
+import org.gradle.tooling.model.eclipse.HierarchicalEclipseProject;
+import org.gradle.tooling.model.gradle.BuildInvocations;
+import org.gradle.tooling.model.gradle.GradlePublication;
+import org.gradle.tooling.model.gradle.GradleScript;
+import org.gradle.tooling.model.gradle.ProjectPublications;
+import org.gradle.tooling.model.internal.ImmutableDomainObjectSet;
+
+/**
+ * Immutable, serializable copies of the tooling API models the model manager keeps in memory:
+ * Eclipse projects with their classpath entries, Gradle projects with their tasks, build invocations
+ * and publications. Unlike the generic copies made by {@link ModelSnapshot} these are plain objects
+ * with a field per property.
+ * <p>
+ * String and File values are interned, so that e.g. a jar that is on the classpath of many projects,
+ * or of the projects of many builds, is represented by a single File object.
+ * <p>
+ * Methods that could not be called on the original model (typically because the Gradle version of
+ * the build doesn't support them) throw an {@link UnsupportedMethodException}. Some of the methods
+ * only exist in some versions of the model interfaces, so none of them are marked as overrides.
+ * <p>
+ * Like the models restored by {@link ModelSnapshot}, values are compared by identity.
+ */
+final class ModelValues {
+
+	private ModelValues() {
+	}
+
+	private static final Map<Object, WeakReference<Object>> interned = new WeakHashMap<Object, WeakReference<Object>>();
+
+	private static final ImmutableDomainObjectSet<Object> EMPTY = new ImmutableDomainObjectSet<Object>(Collections.emptyList());
+
+	/**
+	 * @return the canonical instance of a value that is equal to the given one.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> T intern(T value) {
+		if (value==null) {
+			return null;
+		}
+		synchronized (interned) {
+			WeakReference<Object> ref = interned.get(value);
+			Object existing = ref==null ? null : ref.get();
+			if (existing==null) {
+				interned.put(value, new WeakReference<Object>(value));
+				return value;
+			}
+			return (T) existing;
+		}
+	}
+
+	/**
+	 * @return true if the object is one of the value objects defined here.
+	 */
+	static boolean isValue(Object object) {
+		return object instanceof Value;
+	}
+
+	/**
+	 * @return true if models of the given type are turned into values when they are captured.
+	 */
+	static boolean isModelType(Class<?> type) {
+		return type==HierarchicalEclipseProject.class || type==BuildInvocations.class
+				|| type==ProjectPublications.class || isPropertyType(type);
+	}
+
+	/**
+	 * @return true if the values of properties of the given type are turned into values when a model is
+	 *     captured. This doesn't include {@link HierarchicalEclipseProject}, which is also the type
+	 *     through which other project models refer to each other.
+	 */
+	static boolean isPropertyType(Class<?> type) {
+		return type==EclipseProject.class || type==GradleProject.class || type==ExternalDependency.class
+				|| type==GradleModuleVersion.class || type==EclipseSourceDirectory.class
+				|| type==EclipseLinkedResource.class || type==GradlePublication.class || type==GradleScript.class;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> ImmutableDomainObjectSet<T> set(List<T> elements) {
+		if (elements.isEmpty()) {
+			return (ImmutableDomainObjectSet<T>) EMPTY;
+		}
+		return new ImmutableDomainObjectSet<T>(elements);
+	}
+
+	/**
+	 * Turns tooling API models into values. Objects reached from several models converted by the
+	 * same instance (e.g. a project reached as the target of a project dependency and as a child of
+	 * its parent) are converted only once.
+	 */
+	static final class Converter {
+
+		private final Map<Object, HierarchicalEclipseProjectValue> eclipseProjects = new HashMap<Object, HierarchicalEclipseProjectValue>();
+		private final Map<Object, HierarchicalEclipseProjectValue> hierarchicalProjects = new HashMap<Object, HierarchicalEclipseProjectValue>();
+		private final Map<Object, GradleProjectValue> gradleProjects = new HashMap<Object, GradleProjectValue>();
+
+		/**
+		 * @param type One of the types for which {@link ModelValues#isModelType(Class)} is true.
+		 */
+		Object convert(Object model, Class<?> type) {
+			if (model==null || isValue(model)) {
+				return model;
+			} else if (type==EclipseProject.class) {
+				return eclipseProject(model, true);
+			} else if (type==HierarchicalEclipseProject.class) {
+				return eclipseProject(model, false);
+			} else if (type==GradleProject.class) {
+				return gradleProject(model);
+			} else if (type==BuildInvocations.class) {
+				return buildInvocations(model);
+			} else if (type==ProjectPublications.class) {
+				return publications(model);
+			} else if (type==GradlePublication.class) {
+				return publication(model);
+			} else if (type==ExternalDependency.class) {
+				return externalDependency(model);
+			} else if (type==GradleModuleVersion.class) {
+				return moduleVersion(model);
+			} else if (type==EclipseSourceDirectory.class) {
+				return sourceDirectory(model);
+			} else if (type==EclipseLinkedResource.class) {
+				return linkedResource(model);
+			} else if (type==GradleScript.class) {
+				return script(model);
+			}
+			throw new IllegalArgumentException("Models of type "+type.getName()+" can not be converted to values");
+		}
+
+		private HierarchicalEclipseProjectValue eclipseProject(Object model, boolean full) {
+			Map<Object, HierarchicalEclipseProjectValue> converted = full ? eclipseProjects : hierarchicalProjects;
+			HierarchicalEclipseProjectValue value = converted.get(model);
+			if (value==null) {
+				//Create the projects of the whole build first, so that project dependencies can refer to them.
+				Class<?> type = full ? EclipseProject.class : HierarchicalEclipseProject.class;
+				Object root = model;
+				Object parent;
+				while ((parent = new Reader(root, type).get("getParent"))!=null) {
+					root = parent;
+				}
+				Map<HierarchicalEclipseProjectValue, Reader> created = new LinkedHashMap<HierarchicalEclipseProjectValue, Reader>();
+				createProjects(root, null, full, converted, created);
+				if (!converted.containsKey(model)) {
+					//Not a descendant of its own root?
+					createProjects(model, null, full, converted, created);
+				}
+				for (Entry<HierarchicalEclipseProjectValue, Reader> e : created.entrySet()) {
+					fill(e.getKey(), e.getValue(), full);
+				}
+				value = converted.get(model);
+			}
+			return value;
+		}
+
+		private HierarchicalEclipseProjectValue createProjects(Object model, HierarchicalEclipseProjectValue parent, boolean full,
+				Map<Object, HierarchicalEclipseProjectValue> converted, Map<HierarchicalEclipseProjectValue, Reader> created) {
+			HierarchicalEclipseProjectValue value = full ? new EclipseProjectValue() : new HierarchicalEclipseProjectValue();
+			Reader reader = new Reader(model, full ? EclipseProject.class : HierarchicalEclipseProject.class);
+			converted.put(model, value);
+			created.put(value, reader);
+			value.parent = parent;
+			List<HierarchicalEclipseProjectValue> children = new ArrayList<HierarchicalEclipseProjectValue>();
+			for (Object child : reader.list("getChildren")) {
+				children.add(createProjects(child, value, full, converted, created));
+			}
+			value.children = set(children);
+			return value;
+		}
+
+		private void fill(HierarchicalEclipseProjectValue value, Reader reader, boolean full) {
+			value.name = reader.string("getName");
+			value.description = reader.string("getDescription");
+			value.projectDirectory = reader.file("getProjectDirectory");
+			value.gradleProject = gradleProject(reader.get("getGradleProject"));
+			List<SourceDirectoryValue> sourceDirectories = new ArrayList<SourceDirectoryValue>();
+			for (Object e : reader.list("getSourceDirectories")) {
+				sourceDirectories.add(sourceDirectory(e));
+			}
+			value.sourceDirectories = set(sourceDirectories);
+			List<LinkedResourceValue> linkedResources = new ArrayList<LinkedResourceValue>();
+			for (Object e : reader.list("getLinkedResources")) {
+				linkedResources.add(linkedResource(e));
+			}
+			value.linkedResources = set(linkedResources);
+			List<ProjectDependencyValue> projectDependencies = new ArrayList<ProjectDependencyValue>();
+			for (Object e : reader.list("getProjectDependencies")) {
+				projectDependencies.add(projectDependency(e, full));
+			}
+			value.projectDependencies = set(projectDependencies);
+			if (full) {
+				List<ExternalDependencyValue> classpath = new ArrayList<ExternalDependencyValue>();
+				for (Object e : reader.list("getClasspath")) {
+					classpath.add(externalDependency(e));
+				}
+				((EclipseProjectValue) value).classpath = set(classpath);
+			}
+			value.unsupported = reader.unsupported;
+		}
+
+		private ProjectDependencyValue projectDependency(Object model, boolean full) {
+			Reader reader = new Reader(model, EclipseProjectDependency.class);
+			ProjectDependencyValue value = new ProjectDependencyValue();
+			value.path = reader.string("getPath");
+			value.exported = reader.bool("isExported");
+			Object target = reader.get("getTargetProject");
+			if (target!=null) {
+				value.targetProject = eclipseProject(target, full && target instanceof EclipseProject);
+			}
+			value.unsupported = reader.unsupported;
+			return value;
+		}
+
+		private GradleProjectValue gradleProject(Object model) {
+			if (model==null) {
+				return null;
+			}
+			GradleProjectValue value = gradleProjects.get(model);
+			if (value==null) {
+				Object root = model;
+				Object parent;
+				while ((parent = new Reader(root, GradleProject.class).get("getParent"))!=null) {
+					root = parent;
+				}
+				gradleProject(root, null);
+				value = gradleProjects.get(model);
+				if (value==null) {
+					value = gradleProject(model, null);
+				}
+			}
+			return value;
+		}
+
+		private GradleProjectValue gradleProject(Object model, GradleProjectValue parent) {
+			GradleProjectValue value = new GradleProjectValue();
+			gradleProjects.put(model, value);
+			Reader reader = new Reader(model, GradleProject.class);
+			value.parent = parent;
+			value.name = reader.string("getName");
+			value.description = reader.string("getDescription");
+			value.path = reader.string("getPath");
+			value.buildDirectory = reader.file("getBuildDirectory");
+			value.projectDirectory = reader.file("getProjectDirectory");
+			value.buildScript = script(reader.get("getBuildScript"));
+			List<GradleTaskValue> tasks = new ArrayList<GradleTaskValue>();
+			for (Object e : reader.list("getTasks")) {
+				GradleTaskValue task = new GradleTaskValue();
+				task.project = value;
+				tasks.add(task(e, GradleTask.class, task));
+			}
+			value.tasks = set(tasks);
+			List<GradleProjectValue> children = new ArrayList<GradleProjectValue>();
+			for (Object e : reader.list("getChildren")) {
+				children.add(gradleProject(e, value));
+			}
+			value.children = set(children);
+			value.unsupported = reader.unsupported;
+			return value;
+		}
+
+		private <T extends TaskValue> T task(Object model, Class<?> type, T value) {
+			Reader reader = new Reader(model, type);
+			value.name = reader.string("getName");
+			value.path = reader.string("getPath");
+			value.description = reader.string("getDescription");
+			value.displayName = reader.string("getDisplayName");
+			value.group = reader.string("getGroup");
+			value.isPublic = reader.bool("isPublic");
+			value.unsupported = reader.unsupported;
+			return value;
+		}
+
+		private BuildInvocationsValue buildInvocations(Object model) {
+			Reader reader = new Reader(model, BuildInvocations.class);
+			BuildInvocationsValue value = new BuildInvocationsValue();
+			List<TaskSelectorValue> selectors = new ArrayList<TaskSelectorValue>();
+			for (Object e : reader.list("getTaskSelectors")) {
+				Reader selectorReader = new Reader(e, TaskSelector.class);
+				TaskSelectorValue selector = new TaskSelectorValue();
+				selector.name = selectorReader.string("getName");
+				selector.description = selectorReader.string("getDescription");
+				selector.displayName = selectorReader.string("getDisplayName");
+				selector.isPublic = selectorReader.bool("isPublic");
+				selector.unsupported = selectorReader.unsupported;
+				selectors.add(selector);
+			}
+			value.taskSelectors = set(selectors);
+			List<TaskValue> tasks = new ArrayList<TaskValue>();
+			for (Object e : reader.list("getTasks")) {
+				tasks.add(task(e, Task.class, new TaskValue()));
+			}
+			value.tasks = set(tasks);
+			value.unsupported = reader.unsupported;
+			return value;
+		}
+
+		private PublicationsValue publications(Object model) {
+			Reader reader = new Reader(model, ProjectPublications.class);
+			PublicationsValue value = new PublicationsValue();
+			List<PublicationValue> publications = new ArrayList<PublicationValue>();
+			for (Object e : reader.list("getPublications")) {
+				publications.add(publication(e));
+			}
+			value.publications = set(publications);
+			value.unsupported = reader.unsupported;
+			return value;
+		}
+
+		private PublicationValue publication(Object model) {
+			Reader reader = new Reader(model, GradlePublication.class);
+			PublicationValue value = new PublicationValue();
+			value.id = moduleVersion(reader.get("getId"));
+			value.unsupported = reader.unsupported;
+			return value;
+		}
+
+		private ExternalDependencyValue externalDependency(Object model) {
+			Reader reader = new Reader(model, ExternalDependency.class);
+			ExternalDependencyValue value = new ExternalDependencyValue();
+			value.file = reader.file("getFile");
+			value.source = reader.file("getSource");
+			value.javadoc = reader.file("getJavadoc");
+			value.exported = reader.bool("isExported");
+			value.gradleModuleVersion = moduleVersion(reader.get("getGradleModuleVersion"));
+			value.unsupported = reader.unsupported;
+			return value;
+		}
+
+		private ModuleVersionValue moduleVersion(Object model) {
+			if (model==null) {
+				return null;
+			}
+			Reader reader = new Reader(model, GradleModuleVersion.class);
+			ModuleVersionValue value = new ModuleVersionValue();
+			value.group = reader.string("getGroup");
+			value.name = reader.string("getName");
+			value.version = reader.string("getVersion");
+			value.unsupported = reader.unsupported;
+			return value;
+		}
+
+		private SourceDirectoryValue sourceDirectory(Object model) {
+			Reader reader = new Reader(model, EclipseSourceDirectory.class);
+			SourceDirectoryValue value = new SourceDirectoryValue();
+			value.path = reader.string("getPath");
+			value.directory = reader.file("getDirectory");
+			value.unsupported = reader.unsupported;
+			return value;
+		}
+
+		private LinkedResourceValue linkedResource(Object model) {
+			Reader reader = new Reader(model, EclipseLinkedResource.class);
+			LinkedResourceValue value = new LinkedResourceValue();
+			value.name = reader.string("getName");
+			value.type = reader.string("getType");
+			value.location = reader.string("getLocation");
+			value.locationUri = reader.string("getLocationUri");
+			value.unsupported = reader.unsupported;
+			return value;
+		}
+
+		private GradleScriptValue script(Object model) {
+			if (model==null) {
+				return null;
+			}
+			Reader reader = new Reader(model, GradleScript.class);
+			GradleScriptValue value = new GradleScriptValue();
+			value.sourceFile = reader.file("getSourceFile");
+			value.unsupported = reader.unsupported;
+			return value;
+		}
+	}
+
+	/**
+	 * Calls the getters of a model through one of its interfaces, and remembers which of them failed.
+	 */
+	private static final class Reader {
+		private final Object model;
+		private final Class<?> type;
+		private Map<String, String> unsupported;
+
+		Reader(Object model, Class<?> type) {
+			this.model = model;
+			this.type = type;
+		}
+
+		Object get(String name) {
+			try {
+				return type.getMethod(name).invoke(model);
+			} catch (InvocationTargetException e) {
+				fail(name, e.getCause());
+			} catch (Exception e) {
+				fail(name, e);
+			}
+			return null;
+		}
+
+		private void fail(String name, Throwable e) {
+			if (unsupported==null) {
+				unsupported = new HashMap<String, String>(4);
+			}
+			unsupported.put(name, intern(""+e.getMessage()));
+		}
+
+		String string(String name) {
+			return intern((String) get(name));
+		}
+
+		File file(String name) {
+			return intern((File) get(name));
+		}
+
+		boolean bool(String name) {
+			return Boolean.TRUE.equals(get(name));
+		}
+
+		Iterable<?> list(String name) {
+			Object value = get(name);
+			if (value instanceof Iterable) {
+				return (Iterable<?>) value;
+			}
+			return Collections.emptyList();
+		}
+	}
+
+	private static abstract class Value implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Messages of the exceptions thrown by the methods of the original model that failed, keyed by
+		 * method name. Null if all of them succeeded.
+		 */
+		Map<String, String> unsupported;
+
+		protected void check(String method) {
+			if (unsupported!=null) {
+				String message = unsupported.get(method);
+				if (message!=null) {
+					throw new UnsupportedMethodException(message);
+				}
+			}
+		}
+	}
+
+	static class HierarchicalEclipseProjectValue extends Value implements HierarchicalEclipseProject {
+		private static final long serialVersionUID = 1L;
+		String name;
+		String description;
+		File projectDirectory;
+		HierarchicalEclipseProjectValue parent;
+		ImmutableDomainObjectSet<? extends HierarchicalEclipseProjectValue> children;
+		ImmutableDomainObjectSet<ProjectDependencyValue> projectDependencies;
+		ImmutableDomainObjectSet<SourceDirectoryValue> sourceDirectories;
+		ImmutableDomainObjectSet<LinkedResourceValue> linkedResources;
+		GradleProjectValue gradleProject;
+
+		public String getName() {
+			check("getName");
+			return name;
+		}
+
+		public String getDescription() {
+			check("getDescription");
+			return description;
+		}
+
+		public HierarchicalEclipseProject getParent() {
+			return parent;
+		}
+
+		public DomainObjectSet<? extends HierarchicalEclipseProject> getChildren() {
+			check("getChildren");
+			return children;
+		}
+
+		public DomainObjectSet<? extends EclipseProjectDependency> getProjectDependencies() {
+			check("getProjectDependencies");
+			return projectDependencies;
+		}
+
+		public DomainObjectSet<? extends EclipseSourceDirectory> getSourceDirectories() {
+			check("getSourceDirectories");
+			return sourceDirectories;
+		}
+
+		public DomainObjectSet<? extends EclipseLinkedResource> getLinkedResources() {
+			check("getLinkedResources");
+			return linkedResources;
+		}
+
+		public File getProjectDirectory() {
+			check("getProjectDirectory");
+			return projectDirectory;
+		}
+
+		public GradleProject getGradleProject() {
+			check("getGradleProject");
+			return gradleProject;
+		}
+
+		@Override
+		public String toString() {
+			return "EclipseProject["+name+"]";
+		}
+	}
+
+	static final class EclipseProjectValue extends HierarchicalEclipseProjectValue implements EclipseProject {
+		private static final long serialVersionUID = 1L;
+		ImmutableDomainObjectSet<ExternalDependencyValue> classpath;
+
+		public EclipseProject getParent() {
+			return (EclipseProject) parent;
+		}
+
+		@SuppressWarnings("unchecked")
+		public DomainObjectSet<? extends EclipseProject> getChildren() {
+			check("getChildren");
+			return (DomainObjectSet<? extends EclipseProject>) (DomainObjectSet<?>) children;
+		}
+
+		public DomainObjectSet<? extends ExternalDependency> getClasspath() {
+			check("getClasspath");
+			return classpath;
+		}
+	}
+
+	static final class ProjectDependencyValue extends Value implements EclipseProjectDependency {
+		private static final long serialVersionUID = 1L;
+		String path;
+		boolean exported;
+		HierarchicalEclipseProjectValue targetProject;
+
+		public String getPath() {
+			check("getPath");
+			return path;
+		}
+
+		public HierarchicalEclipseProject getTargetProject() {
+			check("getTargetProject");
+			return targetProject;
+		}
+
+		public boolean isExported() {
+			check("isExported");
+			return exported;
+		}
+	}
+
+	static final class SourceDirectoryValue extends Value implements EclipseSourceDirectory {
+		private static final long serialVersionUID = 1L;
+		String path;
+		File directory;
+
+		public String getPath() {
+			check("getPath");
+			return path;
+		}
+
+		public File getDirectory() {
+			check("getDirectory");
+			return directory;
+		}
+	}
+
+	static final class LinkedResourceValue extends Value implements EclipseLinkedResource {
+		private static final long serialVersionUID = 1L;
+		String name;
+		String type;
+		String location;
+		String locationUri;
+
+		public String getName() {
+			check("getName");
+			return name;
+		}
+
+		public String getType() {
+			check("getType");
+			return type;
+		}
+
+		public String getLocation() {
+			check("getLocation");
+			return location;
+		}
+
+		public String getLocationUri() {
+			check("getLocationUri");
+			return locationUri;
+		}
+	}
+
+	static final class ExternalDependencyValue extends Value implements ExternalDependency {
+		private static final long serialVersionUID = 1L;
+		File file;
+		File source;
+		File javadoc;
+		boolean exported;
+		ModuleVersionValue gradleModuleVersion;
+
+		public File getFile() {
+			check("getFile");
+			return file;
+		}
+
+		public File getSource() {
+			check("getSource");
+			return source;
+		}
+
+		public File getJavadoc() {
+			check("getJavadoc");
+			return javadoc;
+		}
+
+		public boolean isExported() {
+			check("isExported");
+			return exported;
+		}
+
+		public GradleModuleVersion getGradleModuleVersion() {
+			check("getGradleModuleVersion");
+			return gradleModuleVersion;
+		}
+
+		@Override
+		public String toString() {
+			return "ExternalDependency["+file+"]";
+		}
+	}
+
+	static final class ModuleVersionValue extends Value implements GradleModuleVersion {
+		private static final long serialVersionUID = 1L;
+		String group;
+		String name;
+		String version;
+
+		public String getGroup() {
+			check("getGroup");
+			return group;
+		}
+
+		public String getName() {
+			check("getName");
+			return name;
+		}
+
+		public String getVersion() {
+			check("getVersion");
+			return version;
+		}
+
+		@Override
+		public String toString() {
+			return group+":"+name+":"+version;
+		}
+	}
+
+	static final class GradleProjectValue extends Value implements GradleProject {
+		private static final long serialVersionUID = 1L;
+		String name;
+		String description;
+		String path;
+		File buildDirectory;
+		File projectDirectory;
+		GradleScriptValue buildScript;
+		GradleProjectValue parent;
+		ImmutableDomainObjectSet<GradleProjectValue> children;
+		ImmutableDomainObjectSet<GradleTaskValue> tasks;
+
+		public String getName() {
+			check("getName");
+			return name;
+		}
+
+		public String getDescription() {
+			check("getDescription");
+			return description;
+		}
+
+		public String getPath() {
+			check("getPath");
+			return path;
+		}
+
+		public GradleProject getParent() {
+			return parent;
+		}
+
+		public DomainObjectSet<? extends GradleProject> getChildren() {
+			check("getChildren");
+			return children;
+		}
+
+		public DomainObjectSet<? extends GradleTask> getTasks() {
+			check("getTasks");
+			return tasks;
+		}
+
+		public GradleScript getBuildScript() {
+			check("getBuildScript");
+			return buildScript;
+		}
+
+		public File getBuildDirectory() {
+			check("getBuildDirectory");
+			return buildDirectory;
+		}
+
+		public File getProjectDirectory() {
+			check("getProjectDirectory");
+			return projectDirectory;
+		}
+
+		public GradleProject findByPath(String path) {
+			if (path.equals(this.path)) {
+				return this;
+			}
+			if (children!=null) {
+				for (GradleProjectValue child : children) {
+					GradleProject found = child.findByPath(path);
+					if (found!=null) {
+						return found;
+					}
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return "GradleProject["+path+"]";
+		}
+	}
+
+	static final class GradleScriptValue extends Value implements GradleScript {
+		private static final long serialVersionUID = 1L;
+		File sourceFile;
+
+		public File getSourceFile() {
+			check("getSourceFile");
+			return sourceFile;
+		}
+	}
+
+	static class TaskValue extends Value implements Task {
+		private static final long serialVersionUID = 1L;
+		String name;
+		String path;
+		String description;
+		String displayName;
+		String group;
+		boolean isPublic;
+
+		public String getName() {
+			check("getName");
+			return name;
+		}
+
+		public String getPath() {
+			check("getPath");
+			return path;
+		}
+
+		public String getDescription() {
+			check("getDescription");
+			return description;
+		}
+
+		public String getDisplayName() {
+			check("getDisplayName");
+			return displayName;
+		}
+
+		public String getGroup() {
+			check("getGroup");
+			return group;
+		}
+
+		public boolean isPublic() {
+			check("isPublic");
+			return isPublic;
+		}
+
+		@Override
+		public String toString() {
+			return "Task["+path+"]";
+		}
+	}
+
+	static final class GradleTaskValue extends TaskValue implements GradleTask {
+		private static final long serialVersionUID = 1L;
+		GradleProjectValue project;
+
+		public GradleProject getProject() {
+			return project;
+		}
+	}
+
+	static final class TaskSelectorValue extends Value implements TaskSelector {
+		private static final long serialVersionUID = 1L;
+		String name;
+		String description;
+		String displayName;
+		boolean isPublic;
+
+		public String getName() {
+			check("getName");
+			return name;
+		}
+
+		public String getDescription() {
+			check("getDescription");
+			return description;
+		}
+
+		public String getDisplayName() {
+			check("getDisplayName");
+			return displayName;
+		}
+
+		public boolean isPublic() {
+			check("isPublic");
+			return isPublic;
+		}
+	}
+
+	static final class BuildInvocationsValue extends Value implements BuildInvocations {
+		private static final long serialVersionUID = 1L;
+		ImmutableDomainObjectSet<TaskSelectorValue> taskSelectors;
+		ImmutableDomainObjectSet<TaskValue> tasks;
+
+		public DomainObjectSet<? extends TaskSelector> getTaskSelectors() {
+			check("getTaskSelectors");
+			return taskSelectors;
+		}
+
+		public DomainObjectSet<? extends Task> getTasks() {
+			check("getTasks");
+			return tasks;
+		}
+	}
+
+	static final class PublicationsValue extends Value implements ProjectPublications {
+		private static final long serialVersionUID = 1L;
+		ImmutableDomainObjectSet<PublicationValue> publications;
+
+		public DomainObjectSet<? extends GradlePublication> getPublications() {
+			check("getPublications");
+			return publications;
+		}
+	}
+
+	static final class PublicationValue extends Value implements GradlePublication {
+		private static final long serialVersionUID = 1L;
+		ModuleVersionValue id;
+
+		public GradleModuleVersion getId() {
+			check("getId");
+			return id;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.gradle.tooling.model.GradleModuleVersion;
+import org.gradle.tooling.model.gradle.GradlePublication;
+import org.gradle.tooling.model.gradle.ProjectPublications;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+
+/**
+ * Index of the publications of GradleProjects by (group, name) coordinates. Used to map jar
+ * dependencies onto the projects producing them, without iterating over all the projects and
+ * their publications for each jar.
+ * <p>
+ * The index is filled as ProjectPublications models are added to the model cache. It only knows about
+ * projects for which it has seen a publications model. Clients can use {@link #isComplete()} to
+ * determine whether a failed lookup may be because of projects that haven't been indexed yet.
+ * <p>
+ * To mark the index complete, clients take note of the {@link #getGeneration()} before they start
+ * indexing missing projects and pass it to {@link #setComplete(int)}. This way the index isn't marked
+ * complete when projects were added or removed while they were busy.
+ */
+public class PublicationIndex {
+
+	private final Map<List<String>, Set<GradleProject>> byCoordinates = new HashMap<List<String>, Set<GradleProject>>();
+	private final Map<GradleProject, Set<List<String>>> indexed = new HashMap<GradleProject, Set<List<String>>>();
+
+	/**
+	 * Set by clients after they ensured all relevant projects are indexed. Reset whenever a
+	 * project is removed from the index.
+	 */
+	private boolean complete = false;
+
+	/**
+	 * Incremented whenever the index becomes incomplete.
+	 */
+	private int generation = 0;
+
+	/**
+	 * Add or replace the publications of a given project.
+	 */
+	public void add(GradleProject project, ProjectPublications model) {
+		Set<List<String>> keys = new HashSet<List<String>>();
+		for (GradlePublication pub : model.getPublications()) {
+			List<String> key = key(pub.getId());
+			if (key!=null) {
+				keys.add(key);
+			}
+		}
+		synchronized (this) {
+			removeEntries(project);
+			indexed.put(project, keys);
+			for (List<String> key : keys) {
+				Set<GradleProject> projects = byCoordinates.get(key);
+				if (projects==null) {
+					byCoordinates.put(key, projects = new LinkedHashSet<GradleProject>());
+				}
+				projects.add(project);
+			}
+		}
+	}
+
+	/**
+	 * @return The projects publishing a module with the same group and name as the given module version.
+	 */
+	public synchronized GradleProject[] find(GradleModuleVersion module) {
+		Set<GradleProject> projects = byCoordinates.get(key(module));
+		if (projects==null) {
+			return new GradleProject[0];
+		}
+		return projects.toArray(new GradleProject[projects.size()]);
+	}
+
+	public synchronized boolean isIndexed(GradleProject project) {
+		return indexed.containsKey(project);
+	}
+
+	public synchronized boolean isComplete() {
+		return complete;
+	}
+
+	public synchronized int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Mark the index complete, unless it became incomplete since a given generation.
+	 *
+	 * @param generation Generation of the index when the client started indexing missing projects.
+	 * @return Whether the index was marked complete.
+	 */
+	public synchronized boolean setComplete(int generation) {
+		if (this.generation==generation) {
+			complete = true;
+		}
+		return complete;
+	}
+
+	/**
+	 * Called when projects may have been added to the workspace that aren't indexed yet.
+	 */
+	public synchronized void setIncomplete() {
+		complete = false;
+		generation++;
+	}
+
+	/**
+	 * Remove all publications of a given project from the index.
+	 */
+	public synchronized void invalidate(GradleProject project) {
+		removeEntries(project);
+		setIncomplete();
+	}
+
+	/**
+	 * Remove all entries from the index.
+	 */
+	public synchronized void invalidate() {
+		byCoordinates.clear();
+		indexed.clear();
+		setIncomplete();
+	}
+
+	private void removeEntries(GradleProject project) {
+		Set<List<String>> keys = indexed.remove(project);
+		if (keys!=null) {
+			for (List<String> key : keys) {
+				Set<GradleProject> projects = byCoordinates.get(key);
+				if (projects!=null) {
+					projects.remove(project);
+					if (projects.isEmpty()) {
+						byCoordinates.remove(key);
+					}
+				}
+			}
+		}
+	}
+
+	private static List<String> key(GradleModuleVersion module) {
+		if (module==null) {
+			return null;
+		}
+		//TODO: make matching algo configurable to some degree. (e.g. also match versions)
+		return Arrays.asList(module.getGroup(), module.getName());
+	}
+
+}
@@ -17,9 +17,12 @@ import java.net.URI;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.gradle.tooling.BuildAction;
+import org.gradle.tooling.BuildActionExecuter;
 import org.gradle.tooling.CancellationToken;
 import org.gradle.tooling.GradleConnectionException;
 import org.gradle.tooling.GradleConnector;
+import org.gradle.tooling.LongRunningOperation;
 import org.gradle.tooling.ModelBuilder;
 import org.gradle.tooling.ProgressEvent;
 import org.gradle.tooling.ProgressListener;
@@ -36,6 +39,12 @@ import org.springsource.ide.eclipse.gradle.core.util.GradleOpearionProgressMonit
 public class ToolinApiUtils {
 	
 	private static final boolean DEBUG = false;
+	
+	private static final ConnectionPool connectionPool = new ConnectionPool(new ConnectionPool.ConnectionFactory() {
+		public ProjectConnection connect(ConnectionPool.Key key, IProgressMonitor mon) throws Exception {
+			return getGradleConnector(key.getProjectDir(), key.getDistribution(), key.getGradleUserHome(), mon);
+		}
+	});
 
 	private static void debug(String string) {
 		if (DEBUG) {
@@ -58,48 +67,7 @@ public class ToolinApiUtils {
 			monitor.subTask("Loading model");
 			
 			ModelBuilder<T> builder = connection.model(requiredType);
-			project.configureOperation(builder, null);
-			builder.setStandardOutput(console.out);
-			builder.setStandardError(console.err);
-			CancellationToken cancellationToken = GradleOpearionProgressMonitor
-					.findCancellationToken(monitor);
-			if (cancellationToken != null) {
-				builder.withCancellationToken(cancellationToken);
-				/*
-				 * Hack to print something in the console right away to give
-				 * user a heads up that cancel is pending
-				 */
-				if (cancellationToken instanceof CancellationTokenInternal) {
-					((CancellationTokenInternal) cancellationToken).getToken()
-							.addCallback(new Runnable() {
-								@Override
-								public void run() {
-									try {
-										console.out
-												.write("Cancellation request posted...\n"
-														.getBytes());
-									} catch (IOException e) {
-										e.printStackTrace();
-									}
-								}
-							});
-				}
-			}
-			builder.addProgressListener(new ProgressListener() {
-				
-				int remainingWork = totalWork;
-				
-				public void statusChanged(ProgressEvent evt) {
-					debug("progress = '"+evt.getDescription()+"'");
-					monitor.subTask(evt.getDescription());
-					int worked = remainingWork / 100;
-					if (worked>0) {
-						monitor.worked(worked);
-						remainingWork -= worked;
-					}
-				}
-
-			});
+			configureOperation(builder, project, console, monitor, totalWork);
 			T model = builder.get();  // blocks until the model is available
 			return model;
 		} catch (GradleConnectionException e) {
@@ -109,13 +77,93 @@ public class ToolinApiUtils {
 		} finally {
 			monitor.done();
 			if (connection!=null) {
-				connection.close();
+				releaseConnection(connection);
 			}
 			if (console!=null) {
 				console.close();
 			}
 		}
 	}
+
+	/**
+	 * Execute a BuildAction inside the Gradle build of a given project. This allows fetching several
+	 * models with a single tooling API request, so the build is only configured once.
+	 */
+	public static <T> T executeAction(GradleProject project, BuildAction<T> action, String jobName, final IProgressMonitor monitor) throws CoreException {
+		SystemPropertyCleaner.clean();
+		final int totalWork = 10000;
+		monitor.beginTask(jobName, totalWork+100);
+		ProjectConnection connection = null;
+		final Console console = ConsoleUtil.getConsole(jobName+" '"+project.getLocation()+"'");
+		try {
+			connection = getGradleConnector(project, new SubProgressMonitor(monitor, 100));
+			monitor.subTask("Loading models");
+			BuildActionExecuter<T> executer = connection.action(action);
+			configureOperation(executer, project, console, monitor, totalWork);
+			return executer.run(); // blocks until the action is complete
+		} catch (GradleConnectionException e) {
+			throw e;
+		} catch (Exception e) {
+			throw ExceptionUtil.coreException(e);
+		} finally {
+			monitor.done();
+			if (connection!=null) {
+				releaseConnection(connection);
+			}
+			if (console!=null) {
+				console.close();
+			}
+		}
+	}
+
+	/**
+	 * Configure a model build or build action with the project's preferences, send its output to a console and
+	 * connect it to a progress monitor.
+	 */
+	private static void configureOperation(LongRunningOperation op, GradleProject project, final Console console, final IProgressMonitor monitor, final int totalWork) {
+		project.configureOperation(op, null);
+		op.setStandardOutput(console.out);
+		op.setStandardError(console.err);
+		CancellationToken cancellationToken = GradleOpearionProgressMonitor
+				.findCancellationToken(monitor);
+		if (cancellationToken != null) {
+			op.withCancellationToken(cancellationToken);
+			/*
+			 * Hack to print something in the console right away to give
+			 * user a heads up that cancel is pending
+			 */
+			if (cancellationToken instanceof CancellationTokenInternal) {
+				((CancellationTokenInternal) cancellationToken).getToken()
+						.addCallback(new Runnable() {
+							@Override
+							public void run() {
+								try {
+									console.out
+											.write("Cancellation request posted...\n"
+													.getBytes());
+								} catch (IOException e) {
+									e.printStackTrace();
+								}
+							}
+						});
+			}
+		}
+		op.addProgressListener(new ProgressListener() {
+			
+			int remainingWork = totalWork;
+			
+			public void statusChanged(ProgressEvent evt) {
+				debug("progress = '"+evt.getDescription()+"'");
+				monitor.subTask(evt.getDescription());
+				int worked = remainingWork / 100;
+				if (worked>0) {
+					monitor.worked(worked);
+					remainingWork -= worked;
+				}
+			}
+
+		});
+	}
 	
 	private static URI getDistributionPref() {
 		return GradleCore.getInstance().getPreferences().getDistribution();
@@ -153,28 +201,19 @@ public class ToolinApiUtils {
 	/**
 	 * Tries to connect to gradle, using the distrubution set by the preferences page. If this fails and the prefs page wasn't
 	 * actually set, then we try to fall back on the distribution zip that's packaged up into the core plugin.
+	 * <p>
+	 * The connection is borrowed from a pool of open connections. Callers must not close it, but must
+	 * call {@link #releaseConnection(ProjectConnection)} when they are done with it.
 	 */
 	public static ProjectConnection getGradleConnector(GradleProject project, IProgressMonitor monitor) throws CoreException {
 		monitor.beginTask("Connecting to Gradle", 1);
 		File projectLoc = project.getLocation();
 		try {
-			ProjectConnection connection;
 			URI distribution = getDistributionPref();
 			File gradleUserHome = getGradleUserHomePref();
-			try {
-				connection = getGradleConnector(projectLoc, distribution, gradleUserHome, new SubProgressMonitor(monitor, 1));
-				return connection;
-			} catch (Exception e) {
-//				if (distribution==null) {
-//					//Try find built-in distribution instead.
-//					distribution = FallBackDistributionCore.getFallBackDistribution(projectLoc, e);
-//					if (distribution!=null) {
-//						connection = getGradleConnector(projectLoc, distribution, new SubProgressMonitor(monitor, 1));
-//						return connection;
-//					}
-//				}
-				throw e;
-			}
+			File javaHome = project.getProjectPreferences().getJavaHome();
+			ConnectionPool.Key key = new ConnectionPool.Key(projectLoc, distribution, gradleUserHome, javaHome);
+			return connectionPool.borrow(key, new SubProgressMonitor(monitor, 1));
 		} catch (Exception e) {
 			throw ExceptionUtil.coreException(e);
 		} finally {
@@ -182,6 +221,17 @@ public class ToolinApiUtils {
 		}
 	}
 	
+	/**
+	 * Give back a connection obtained from {@link #getGradleConnector(GradleProject, IProgressMonitor)}.
+	 */
+	public static void releaseConnection(ProjectConnection connection) {
+		connectionPool.release(connection);
+	}
+	
+	public static ConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+	
 	private static File getGradleUserHomePref() {
 		return GradleCore.getInstance().getPreferences().getGradleUserHome();
 	}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Models of several types for the projects in a Gradle build, all fetched with a single
+ * request to Gradle. There is a 'root model', built for the project the request was made for, and
+ * any number of per-project models.
+ * <p>
+ * Note: instances are created inside the Gradle build process by {@link WorkspaceSnapshotAction}
+ * and serialized. This class should not reference any Eclipse classes.
+ */
+public class WorkspaceSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Class<?> rootType;
+	private Object rootModel;
+	private final LinkedHashMap<Class<?>, LinkedHashMap<File, Object>> projectModels = new LinkedHashMap<Class<?>, LinkedHashMap<File, Object>>();
+
+	public WorkspaceSnapshot(Class<?> rootType, Class<?>... projectTypes) {
+		this.rootType = rootType;
+		for (Class<?> type : projectTypes) {
+			projectModels.put(type, new LinkedHashMap<File, Object>());
+		}
+	}
+
+	public void setRootModel(Object model) {
+		this.rootModel = model;
+	}
+
+	public void put(Class<?> type, File projectDir, Object model) {
+		projectModels.get(type).put(projectDir, model);
+	}
+
+	public <T> T getRootModel(Class<T> type) {
+		if (type.isAssignableFrom(rootType)) {
+			return type.cast(rootModel);
+		}
+		return null;
+	}
+
+	public Set<Class<?>> getProjectTypes() {
+		return Collections.unmodifiableSet(projectModels.keySet());
+	}
+
+	/**
+	 * @return Models of a given type, keyed by project directory. Projects that don't have a model
+	 *      of the type are not included.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Map<File, T> getProjectModels(Class<T> type) {
+		Map<File, Object> models = projectModels.get(type);
+		if (models==null) {
+			return Collections.emptyMap();
+		}
+		return (Map<File, T>) Collections.unmodifiableMap(models);
+	}
+
+}
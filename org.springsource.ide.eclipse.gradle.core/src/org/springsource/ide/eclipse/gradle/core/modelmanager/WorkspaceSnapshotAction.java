@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.modelmanager;
+
+import org.gradle.tooling.BuildAction;
+import org.gradle.tooling.BuildController;
+import org.gradle.tooling.model.gradle.BasicGradleProject;
+import org.gradle.tooling.model.gradle.GradleBuild;
+
+/**
+ * BuildAction that fetches a {@link WorkspaceSnapshot}: the model of a given root type for the
+ * project the action is executed on, and models of some other types for every project in the build.
+ * <p>
+ * Failing to build the root model fails the action. Failing to build one of the other models
+ * only leaves that model out of the snapshot.
+ * <p>
+ * Note: this class is serialized and executed inside the Gradle build process. It should
+ * not reference any Eclipse classes.
+ */
+public class WorkspaceSnapshotAction implements BuildAction<WorkspaceSnapshot> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Class<?> rootType;
+	private final Class<?>[] projectTypes;
+
+	public WorkspaceSnapshotAction(Class<?> rootType, Class<?>... projectTypes) {
+		this.rootType = rootType;
+		this.projectTypes = projectTypes;
+	}
+
+	@Override
+	public WorkspaceSnapshot execute(BuildController controller) {
+		WorkspaceSnapshot snapshot = new WorkspaceSnapshot(rootType, projectTypes);
+		snapshot.setRootModel(controller.getModel(rootType));
+		GradleBuild build = controller.getBuildModel();
+		for (Class<?> type : projectTypes) {
+			for (BasicGradleProject project : build.getProjects()) {
+				try {
+					Object model = controller.findModel(project, type);
+					if (model!=null) {
+						snapshot.put(type, project.getProjectDirectory(), model);
+					}
+				} catch (RuntimeException e) {
+					//Leave it out. It will be built separately if someone needs it and then
+					// the error will be reported.
+				}
+			}
+		}
+		return snapshot;
+	}
+
+}
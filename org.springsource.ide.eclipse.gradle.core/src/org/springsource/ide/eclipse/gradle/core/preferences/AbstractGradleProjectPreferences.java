@@ -100,6 +100,8 @@ public abstract class AbstractGradleProjectPreferences extends AbstractGradlePre
 
 	private Properties getProperties() {
 		if (properties==null) {
+			//Another preferences object for the same file may still have changes that need writing.
+			PreferencesWriter.flush(propertiesFile);
 			properties = new Properties();
 			if (propertiesFile.exists()) {
 				loadProps(properties, propertiesFile);
@@ -148,18 +150,41 @@ public abstract class AbstractGradleProjectPreferences extends AbstractGradlePre
 			}
 		}
 		if (changed) {
-			try {
-				flush();
-			} catch (Throwable e) {
-				GradleCore.log(e);
-			}
+			PreferencesWriter.changed(propertiesFile, this);
 		}
 	}
 
-	public void flush() throws IOException {
-		//TODO: find a way to not flush repeatedly if we set many properties in a row. 
-		// Idea: use a job and schedule it a little later than now...
-		// if a job exist already do not schedule a second one.
+	/**
+	 * Write any pending changes to project preferences to disk now, rather than wait for
+	 * them to be written in the background. Changes are normally written a short while
+	 * after they were made, so that many changes in a row only cause a single write.
+	 */
+	public static void flushNow() {
+		PreferencesWriter.flushNow();
+	}
+
+	/**
+	 * @return Number of times project preferences were changed, for testing and diagnostics.
+	 */
+	public static int getChangeCount() {
+		return PreferencesWriter.getChanges();
+	}
+
+	/**
+	 * @return Number of times project preferences were written to disk in the background, for
+	 * testing and diagnostics.
+	 */
+	public static int getWriteCount() {
+		return PreferencesWriter.getWrites();
+	}
+
+	/**
+	 * Write the preferences to disk immediately.
+	 */
+	public synchronized void flush() throws IOException {
+		if (properties==null) {
+			return; //Never loaded, so nothing changed either.
+		}
 		if (properties.isEmpty() && !propertiesFile.exists()) {
 			return; //don't bother creating an empty file
 		}
@@ -35,6 +35,7 @@ import org.springsource.ide.eclipse.gradle.core.GradleCore;
 import org.springsource.ide.eclipse.gradle.core.actions.RefreshAllActionCore;
 import org.springsource.ide.eclipse.gradle.core.autorefresh.DependencyRefresher;
 import org.springsource.ide.eclipse.gradle.core.classpathcontainer.GradleClassPathContainer;
+import org.springsource.ide.eclipse.gradle.core.modelmanager.ToolinApiUtils;
 import org.springsource.ide.eclipse.gradle.core.util.JavaRuntimeUtils;
 import org.springsource.ide.eclipse.gradle.core.wtp.DeploymentExclusions;
 import org.springsource.ide.eclipse.gradle.core.wtp.RegexpListDeploymentExclusions;
@@ -79,6 +80,12 @@ public class GradlePreferences extends AbstractGradlePreferences implements IPre
 	public static final String JAR_REMAP_GRADLE_TO_GRADLE = GradlePreferences.class.getName()+".JAR_REMAP_GRADLE_TO_GRADLE";
 	public static final String JAR_REMAP_ON_OPEN_CLOSE = GradlePreferences.class.getName()+".JAR_REMAP_ON_OPEN_CLOSE";
 	
+	public static final String MAX_CONCURRENT_BUILDS = GradlePreferences.class.getName()+".MAX_CONCURRENT_BUILDS";
+	public static final int DEFAULT_MAX_CONCURRENT_BUILDS = 4;
+	
+	public static final String MAX_RESIDENT_PROJECTS = GradlePreferences.class.getName()+".MAX_RESIDENT_PROJECTS";
+	public static final int DEFAULT_MAX_RESIDENT_PROJECTS = 250;
+	
 	public static final String USE_CUSTOM_TOOLING_MODEL = GradlePreferences.class.getName()+"USE_CUSTOM_TOOLING_MODEL";
 	public static final boolean DEFAULT_USE_CUSTOM_TOOLING_MODEL = false;
 	
@@ -293,6 +300,12 @@ public class GradlePreferences extends AbstractGradlePreferences implements IPre
 				|| JAR_REMAP_GRADLE_TO_GRADLE.equals(event.getKey())
 				|| JAR_REMAP_GRADLE_TO_MAVEN.equals(event.getKey())) {
 			GradleClassPathContainer.ensureOpenCloseListener();
+		} else if (DISTRIBUTION.equals(event.getKey())
+				|| GRADLE_USER_HOME.equals(event.getKey())
+				|| JAVA_HOME_JRE_NAME.equals(event.getKey())
+				|| JAVA_HOME_EE_NAME.equals(event.getKey())) {
+			//Pooled connections were created with the old settings.
+			ToolinApiUtils.getConnectionPool().invalidate();
 		}
 	}
 
@@ -379,6 +392,30 @@ public class GradlePreferences extends AbstractGradlePreferences implements IPre
 	}
 	
 
+	/**
+	 * Maximum number of tooling API model builds that may run at the same time. Builds for projects in the
+	 * same build family are always serialized, this limit applies to builds of unrelated families.
+	 */
+	public int getMaxConcurrentBuilds() {
+		return get(MAX_CONCURRENT_BUILDS, DEFAULT_MAX_CONCURRENT_BUILDS);
+	}
+	
+	public void setMaxConcurrentBuilds(int max) {
+		put(MAX_CONCURRENT_BUILDS, max);
+	}
+
+	/**
+	 * Maximum number of projects whose models are kept in memory. When there are more, models of the least
+	 * recently used projects are dropped. They are restored from a snapshot or rebuilt when needed again.
+	 */
+	public int getMaxResidentProjects() {
+		return get(MAX_RESIDENT_PROJECTS, DEFAULT_MAX_RESIDENT_PROJECTS);
+	}
+	
+	public void setMaxResidentProjects(int max) {
+		put(MAX_RESIDENT_PROJECTS, max);
+	}
+
 	public boolean getJarRemappingOnOpenClose() {
 		return get(JAR_REMAP_ON_OPEN_CLOSE, DEFAULT_JAR_REMAP_ON_OPEN_CLOSE);
 	}
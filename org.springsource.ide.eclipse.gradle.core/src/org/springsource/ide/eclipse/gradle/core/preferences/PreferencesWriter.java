@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.preferences;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.Job;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
+import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
+
+/**
+ * Writes changed project preferences to disk in the background. Preferences that change
+ * several times in a short period of time (e.g. while importing a large multi-project build, when
+ * the root project and build family are set on every project) are only written once.
+ * <p>
+ * Pending changes are keyed by the file they are written to, so that anyone about to read
+ * a preferences file can first make sure pending changes for that file are written.
+ */
+class PreferencesWriter {
+
+	/**
+	 * How long to wait (in milliseconds) after the last change, before writing preferences to disk.
+	 */
+	private static final long WRITE_DELAY = 200;
+
+	private static final Map<File, AbstractGradleProjectPreferences> dirty = new LinkedHashMap<File, AbstractGradleProjectPreferences>();
+
+	//Statistics
+	private static int changes = 0;
+	private static int writes = 0;
+
+	private static final Job writeJob = new Job("Save Gradle project preferences") {
+		{
+			setSystem(true);
+		}
+		@Override
+		protected IStatus run(IProgressMonitor mon) {
+			flushNow();
+			return ExceptionUtil.OK_STATUS;
+		}
+	};
+
+	/**
+	 * Called when preferences have changed. They will be written a little while later.
+	 */
+	static void changed(File file, AbstractGradleProjectPreferences prefs) {
+		synchronized (PreferencesWriter.class) {
+			changes++;
+			dirty.put(file, prefs);
+		}
+		writeJob.schedule(WRITE_DELAY);
+	}
+
+	/**
+	 * Write pending changes for a given file now.
+	 */
+	static void flush(File file) {
+		AbstractGradleProjectPreferences prefs;
+		synchronized (PreferencesWriter.class) {
+			prefs = dirty.remove(file);
+		}
+		if (prefs!=null) {
+			write(prefs);
+		}
+	}
+
+	/**
+	 * Write all pending changes now.
+	 */
+	static void flushNow() {
+		List<AbstractGradleProjectPreferences> toWrite;
+		synchronized (PreferencesWriter.class) {
+			if (dirty.isEmpty()) {
+				return;
+			}
+			toWrite = new ArrayList<AbstractGradleProjectPreferences>(dirty.values());
+			dirty.clear();
+		}
+		//Careful: don't hold the lock on the class while writing. AbstractGradleProjectPreferences.put calls
+		// 'changed' while holding the lock on the preferences object.
+		for (AbstractGradleProjectPreferences prefs : toWrite) {
+			write(prefs);
+		}
+	}
+
+	private static void write(AbstractGradleProjectPreferences prefs) {
+		if (!prefs.getGradleProject().getLocation().exists()) {
+			return; //Project was deleted in the mean time, don't resurrect it.
+		}
+		try {
+			prefs.flush();
+			synchronized (PreferencesWriter.class) {
+				writes++;
+			}
+		} catch (Throwable e) {
+			GradleCore.log(e);
+		}
+	}
+
+	static synchronized int getChanges() {
+		return changes;
+	}
+
+	static synchronized int getWrites() {
+		return writes;
+	}
+
+}
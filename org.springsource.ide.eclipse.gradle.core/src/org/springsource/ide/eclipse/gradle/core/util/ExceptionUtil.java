@@ -138,5 +138,21 @@ public class ExceptionUtil {
 		// org.gradle.tooling.UnknownModelException
 		return ExceptionUtil.getDeepestCause(e).getClass().getSimpleName().equals("UnknownModelException");
 	}
-	
+
+	/**
+	 * Check whether an exception signals that the Gradle version used by a build doesn't support
+	 * an operation (e.g. BuildActions require Gradle 1.8 or later).
+	 */
+	public static boolean isUnsupportedVersionException(Throwable e) {
+		// org.gradle.tooling.UnsupportedVersionException and its subclasses
+		while (e!=null) {
+			String name = e.getClass().getSimpleName();
+			if (name.equals("UnsupportedVersionException") || name.equals("UnsupportedOperationConfigurationException")) {
+				return true;
+			}
+			e = e.getCause()==e ? null : e.getCause();
+		}
+		return false;
+	}
+
 }
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.gradle.tooling.CancellationTokenSource;
+import org.gradle.tooling.GradleConnector;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+
+/**
+ * Executes a piece of work for each project in a collection of projects. Projects are grouped
+ * by their root project. Projects in the same group are processed one after the other, since their
+ * models typically come from the same build. Different groups are independent, so they are processed
+ * in parallel, by a bounded number of worker jobs.
+ * <p>
+ * Progress monitors are not thread safe. So the workers do not report progress on the caller's monitor
+ * directly. Instead the calling thread waits for the workers to finish and reports one unit of work
+ * on its monitor for each project that was completed. Canceling the caller's monitor cancels the
+ * monitor passed to the workers, and the Gradle builds they are running.
+ */
+public class ProjectFamilyExecutor {
+
+	public interface ProjectWork {
+		void run(GradleProject project, IProgressMonitor mon) throws Exception;
+	}
+
+	/**
+	 * How often the calling thread checks for progress and cancelation while waiting for workers.
+	 */
+	private static final long POLLING_INTERVAL = 100;
+
+	private final String name;
+	private final int maxConcurrency;
+
+	public ProjectFamilyExecutor(String name, int maxConcurrency) {
+		this.name = name;
+		this.maxConcurrency = Math.max(1, maxConcurrency);
+	}
+
+	/**
+	 * Groups projects by root project. Projects for which the root project isn't known yet
+	 * each get a group of their own.
+	 */
+	public static Collection<List<GradleProject>> groupByRoot(Collection<GradleProject> projects) {
+		Map<GradleProject, List<GradleProject>> groups = new LinkedHashMap<GradleProject, List<GradleProject>>();
+		for (GradleProject project : projects) {
+			GradleProject root = project.getRootProjectMaybe();
+			if (root==null) {
+				root = project;
+			}
+			List<GradleProject> group = groups.get(root);
+			if (group==null) {
+				groups.put(root, group = new ArrayList<GradleProject>());
+			}
+			group.add(project);
+		}
+		return groups.values();
+	}
+
+	/**
+	 * Executes the work for all the projects and waits for it to be done. If the work fails
+	 * for one of the projects, no work is started for projects in other groups and the exception is rethrown
+	 * after all workers have stopped. Likewise, when the calling thread is interrupted the workers are
+	 * canceled, and OperationCanceledException is thrown once they have stopped.
+	 * <p>
+	 * Uses one unit of work on the monitor per project.
+	 */
+	public void execute(Collection<GradleProject> projects, IProgressMonitor mon, ProjectWork work) throws Exception {
+		mon.beginTask(name, projects.size());
+		try {
+			Collection<List<GradleProject>> groups = groupByRoot(projects);
+			int workers = Math.min(maxConcurrency, groups.size());
+			if (workers<=1) {
+				//No need for extra threads.
+				for (GradleProject project : projects) {
+					JobUtil.checkCanceled(mon);
+					work.run(project, new SubProgressMonitor(mon, 1));
+				}
+			} else {
+				Execution execution = new Execution(groups, work);
+				for (int i = 0; i < workers; i++) {
+					execution.startWorker();
+				}
+				execution.waitForWorkers(mon);
+			}
+		} finally {
+			mon.done();
+		}
+	}
+
+	private class Execution {
+
+		private final LinkedList<List<GradleProject>> queue;
+		private final ProjectWork work;
+
+		private final CancellationTokenSource cancellationSource = GradleConnector.newCancellationTokenSource();
+
+		/**
+		 * Monitor passed to the workers. It is only used to forward cancelation requests. It carries a
+		 * cancellation token, so that Gradle builds started by the workers are canceled too.
+		 */
+		private final IProgressMonitor workerMon = new GradleOpearionProgressMonitor(new NullProgressMonitor(), cancellationSource.token());
+
+		private int activeWorkers = 0;
+		private int completed = 0;
+		private Throwable error = null;
+
+		Execution(Collection<List<GradleProject>> groups, ProjectWork work) {
+			this.queue = new LinkedList<List<GradleProject>>(groups);
+			this.work = work;
+		}
+
+		synchronized void startWorker() {
+			activeWorkers++;
+			Job job = new Job(name) {
+				@Override
+				protected IStatus run(IProgressMonitor ignore) {
+					try {
+						List<GradleProject> group;
+						while ((group = nextGroup())!=null) {
+							for (GradleProject project : group) {
+								if (workerMon.isCanceled()) {
+									return ExceptionUtil.OK_STATUS;
+								}
+								work.run(project, workerMon);
+								projectDone();
+							}
+						}
+					} catch (Throwable e) {
+						failed(e);
+					} finally {
+						workerDone();
+					}
+					return ExceptionUtil.OK_STATUS;
+				}
+			};
+			job.setSystem(true);
+			job.schedule();
+		}
+
+		private synchronized List<GradleProject> nextGroup() {
+			if (error!=null || workerMon.isCanceled()) {
+				return null;
+			}
+			return queue.poll();
+		}
+
+		private synchronized void projectDone() {
+			completed++;
+			notifyAll();
+		}
+
+		private synchronized void failed(Throwable e) {
+			if (error==null) {
+				error = e;
+			}
+			notifyAll();
+		}
+
+		private synchronized void workerDone() {
+			activeWorkers--;
+			notifyAll();
+		}
+
+		void waitForWorkers(IProgressMonitor mon) throws Exception {
+			int reported = 0;
+			boolean finished = false;
+			boolean interrupted = false;
+			while (!finished) {
+				int done;
+				synchronized (this) {
+					if (activeWorkers>0) {
+						try {
+							wait(POLLING_INTERVAL);
+						} catch (InterruptedException e) {
+							//Cancel the workers and wait for them to stop. The flag is restored after that,
+							// else every further wait would be interrupted right away.
+							interrupted = true;
+						}
+					}
+					finished = activeWorkers==0;
+					done = completed;
+				}
+				//Talk to the monitor outside the synch block, the workers shouldn't wait for the UI.
+				if (done>reported) {
+					mon.worked(done-reported);
+					reported = done;
+				}
+				if ((interrupted || mon.isCanceled()) && !workerMon.isCanceled()) {
+					workerMon.setCanceled(true);
+					cancellationSource.cancel();
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			}
+			if (error!=null) {
+				if (error instanceof Exception) {
+					throw (Exception) error;
+				}
+				throw ExceptionUtil.coreException(error);
+			}
+			if (workerMon.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+		}
+	}
+
+}
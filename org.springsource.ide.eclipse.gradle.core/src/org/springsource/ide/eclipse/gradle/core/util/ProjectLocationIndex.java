@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.util;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * Index of the projects in the workspace by their file system location. Used to find the project
+ * at a given location or the project containing a given file without scanning all projects in
+ * the workspace.
+ * <p>
+ * The index is built on first use and kept up-to-date by a resource change listener. Since resource
+ * change events are only sent at the end of a workspace operation, a project that was
+ * created earlier in the currently executing operation may not be indexed yet. To deal with
+ * this, a lookup for the project at a given location that finds nothing in the index scans all
+ * projects in the workspace and updates the index with the ones whose location changed.
+ * <p>
+ * Such misses are remembered, and a location is only looked for again when projects may have
+ * been added, removed or moved since: after a resource change event for a project, or when the
+ * number of projects in the workspace changed.
+ * <p>
+ * Lookups of indexed projects by location, and repeated lookups of locations without a project,
+ * don't take any locks.
+ */
+public class ProjectLocationIndex implements IResourceChangeListener {
+
+	private static ProjectLocationIndex instance;
+
+	public static synchronized ProjectLocationIndex getInstance() {
+		if (instance==null) {
+			instance = new ProjectLocationIndex();
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(instance, IResourceChangeEvent.POST_CHANGE);
+		}
+		return instance;
+	}
+
+	public static synchronized void dispose() {
+		if (instance!=null) {
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(instance);
+			instance = null;
+		}
+	}
+
+	/**
+	 * Node in a tree of path segments. A node has a project associated with it if
+	 * the path leading to it is the location of that project.
+	 */
+	private static class TrieNode {
+		Map<String, TrieNode> children = null;
+		IProject project = null;
+
+		TrieNode getChild(String segment, boolean create) {
+			TrieNode child = children==null ? null : children.get(segment);
+			if (child==null && create) {
+				if (children==null) {
+					children = new HashMap<String, TrieNode>();
+				}
+				children.put(segment, child = new TrieNode());
+			}
+			return child;
+		}
+	}
+
+	/**
+	 * A lookup that found no project at some location.
+	 */
+	private static class Miss {
+		final int generation;
+		final int projectCount;
+
+		Miss(int generation, int projectCount) {
+			this.generation = generation;
+			this.projectCount = projectCount;
+		}
+	}
+
+	private volatile boolean initialized = false;
+
+	/**
+	 * Incremented when a resource change event says projects may have been added, removed or moved.
+	 */
+	private volatile int generation = 0;
+
+	/**
+	 * Locations where no project was found, with the generation and the number of projects in the
+	 * workspace at the time. Cleared when the generation changes.
+	 */
+	private final Map<IPath, Miss> misses = new ConcurrentHashMap<IPath, Miss>();
+
+	private int scanCount = 0;
+
+	private final Map<IPath, IProject> byLocation = new ConcurrentHashMap<IPath, IProject>();
+	/**
+	 * Location each project was indexed under. Needed to remove deleted projects, whose location
+	 * is no longer available.
+	 */
+	private final Map<IProject, IPath> locations = new HashMap<IProject, IPath>();
+	private final TrieNode trie = new TrieNode();
+
+	private ProjectLocationIndex() {
+	}
+
+	/**
+	 * @return The project whose location is exactly the given location, or null if there is no such project.
+	 */
+	public IProject getProject(File location) {
+		IPath path = new Path(location.getAbsolutePath());
+		if (initialized) {
+			IProject project = byLocation.get(path);
+			if (project!=null && project.exists()) {
+				return project;
+			}
+			Miss miss = misses.get(path);
+			if (miss!=null && miss.generation==generation && miss.projectCount==getRoot().getProjects().length) {
+				return null; //Nothing changed since the last time we looked.
+			}
+		}
+		return findProject(path);
+	}
+
+	private synchronized IProject findProject(IPath path) {
+		initialize();
+		int currentGeneration = generation;
+		IProject project = byLocation.get(path);
+		if (project!=null) {
+			if (project.exists()) {
+				return project;
+			}
+			//Deleted in the current workspace operation
+			remove(project);
+		}
+		//Created, moved or renamed in the current workspace operation?
+		IProject[] projects = getRoot().getProjects();
+		scanCount++;
+		for (IProject candidate : projects) {
+			IPath loc = candidate.getLocation();
+			if (loc!=null && !loc.equals(locations.get(candidate))) {
+				add(candidate);
+			}
+		}
+		project = byLocation.get(path);
+		if (project!=null && project.exists()) {
+			return project;
+		}
+		misses.put(path, new Miss(currentGeneration, projects.length));
+		return null;
+	}
+
+	/**
+	 * For a given absolute file, find the most nested project whose location is a prefix of the file's path.
+	 * @return The project or null if no project contains the file.
+	 */
+	public synchronized IProject getContainingProject(File file) {
+		initialize();
+		IPath path = new Path(file.getAbsolutePath());
+		IProject found = null;
+		TrieNode node = trie.getChild(deviceKey(path), false);
+		for (int i = 0; node!=null; i++) {
+			if (node.project!=null && node.project.exists()) {
+				found = node.project;
+			}
+			if (i>=path.segmentCount()) {
+				break;
+			}
+			node = node.getChild(path.segment(i), false);
+		}
+		return found;
+	}
+
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta==null) {
+			return;
+		}
+		synchronized (this) {
+			if (!initialized) {
+				return;
+			}
+			for (IResourceDelta projectDelta : delta.getAffectedChildren()) {
+				IResource resource = projectDelta.getResource();
+				if (resource instanceof IProject) {
+					IProject project = (IProject) resource;
+					switch (projectDelta.getKind()) {
+					case IResourceDelta.ADDED:
+						add(project);
+						forgetMisses();
+						break;
+					case IResourceDelta.REMOVED:
+						remove(project);
+						forgetMisses();
+						break;
+					case IResourceDelta.CHANGED:
+						if ((projectDelta.getFlags() & (IResourceDelta.OPEN | IResourceDelta.DESCRIPTION | IResourceDelta.REPLACED))!=0) {
+							remove(project);
+							add(project);
+							forgetMisses();
+						}
+						break;
+					default:
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Number of times all projects in the workspace were scanned for a location that isn't indexed.
+	 */
+	public synchronized int getScanCount() {
+		return scanCount;
+	}
+
+	private void forgetMisses() {
+		generation++;
+		misses.clear();
+	}
+
+	private void initialize() {
+		if (!initialized) {
+			for (IProject project : getRoot().getProjects()) {
+				add(project);
+			}
+			initialized = true;
+		}
+	}
+
+	private void add(IProject project) {
+		IPath loc = project.getLocation();
+		if (loc!=null) {
+			remove(project);
+			locations.put(project, loc);
+			byLocation.put(loc, project);
+			TrieNode node = trie.getChild(deviceKey(loc), true);
+			for (String segment : loc.segments()) {
+				node = node.getChild(segment, true);
+			}
+			node.project = project;
+		}
+	}
+
+	private void remove(IProject project) {
+		IPath loc = locations.remove(project);
+		if (loc!=null) {
+			if (project.equals(byLocation.get(loc))) {
+				byLocation.remove(loc);
+			}
+			TrieNode node = trie.getChild(deviceKey(loc), false);
+			for (int i = 0; node!=null && i < loc.segmentCount(); i++) {
+				node = node.getChild(loc.segment(i), false);
+			}
+			if (node!=null && project.equals(node.project)) {
+				node.project = null;
+			}
+		}
+	}
+
+	private static String deviceKey(IPath path) {
+		String device = path.getDevice();
+		return device==null ? "" : device;
+	}
+
+	private static IWorkspaceRoot getRoot() {
+		return ResourcesPlugin.getWorkspace().getRoot();
+	}
+
+}
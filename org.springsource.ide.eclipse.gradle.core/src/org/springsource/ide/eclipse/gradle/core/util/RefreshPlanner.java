@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Pivotal Software, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.springsource.ide.eclipse.gradle.core.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.SubProgressMonitor;
+import org.gradle.tooling.model.eclipse.EclipseLinkedResource;
+import org.gradle.tooling.model.eclipse.EclipseProject;
+import org.gradle.tooling.model.eclipse.EclipseSourceDirectory;
+import org.springsource.ide.eclipse.gradle.core.GradleCore;
+import org.springsource.ide.eclipse.gradle.core.GradleProject;
+import org.springsource.ide.eclipse.gradle.core.actions.GradleRefreshPreferences;
+import org.springsource.ide.eclipse.gradle.core.classpathcontainer.FastOperationFailedException;
+
+/**
+ * Refreshes the parts of a project that running Gradle tasks (e.g. 'cleanEclipse eclipse') on it
+ * may have changed, rather than the whole project. Refreshing a whole project walks every file in it,
+ * which is slow for projects with big 'build' or 'node_modules' folders.
+ * <p>
+ * The refreshed resources are:
+ * <ul>
+ *   <li>the project's direct members, i.e. '.project', '.classpath' and any new top-level folders</li>
+ *   <li>the '.settings' folder</li>
+ *   <li>the source folders and linked resources declared in the project's Gradle model</li>
+ * </ul>
+ * The whole project is refreshed instead if the user asked for that in the project's
+ * {@link GradleRefreshPreferences}, or if the model isn't available.
+ */
+public class RefreshPlanner {
+
+	private final GradleProject project;
+
+	public RefreshPlanner(GradleProject project) {
+		this.project = project;
+	}
+
+	/**
+	 * Refresh a project, in the way selected by its refresh preferences.
+	 */
+	public static void refresh(GradleProject project, IProgressMonitor mon) throws CoreException {
+		new RefreshPlanner(project).refresh(mon);
+	}
+
+	public void refresh(IProgressMonitor mon) throws CoreException {
+		IProject p = project.getProject();
+		if (p==null) {
+			return;
+		}
+		List<IResource> targets = null;
+		if (!project.getRefreshPreferences().getFullRefresh()) {
+			try {
+				targets = getTargets();
+			} catch (FastOperationFailedException e) {
+				//No model, can't tell what changed.
+			}
+		}
+		if (targets==null) {
+			p.refreshLocal(IResource.DEPTH_INFINITE, mon);
+			return;
+		}
+		mon.beginTask("Refresh "+p.getName(), targets.size()+1);
+		try {
+			p.refreshLocal(IResource.DEPTH_ONE, new SubProgressMonitor(mon, 1));
+			for (IResource target : targets) {
+				createParents(target);
+				target.refreshLocal(IResource.DEPTH_INFINITE, new SubProgressMonitor(mon, 1));
+			}
+		} finally {
+			mon.done();
+		}
+	}
+
+	/**
+	 * @return The resources to refresh, other than the project itself (which is refreshed to depth one).
+	 *     None of the resources are nested inside one another. Null if the whole project should be refreshed.
+	 * @throws FastOperationFailedException if the project's model isn't available.
+	 */
+	public List<IResource> getTargets() throws FastOperationFailedException, CoreException {
+		IProject p = project.getProject();
+		EclipseProject model = project.getGradleModel();
+		List<IResource> targets = new ArrayList<IResource>();
+		targets.add(p.getFolder(".settings"));
+		for (EclipseSourceDirectory sourceDir : model.getSourceDirectories()) {
+			IPath path = new Path(sourceDir.getPath());
+			if (path.segmentCount()==0) {
+				return null; //The project itself is a source folder
+			}
+			addTarget(targets, p.getFolder(path));
+		}
+		try {
+			for (EclipseLinkedResource linked : model.getLinkedResources()) {
+				Path path = new Path(linked.getName());
+				addTarget(targets, "1".equals(linked.getType()) ? p.getFile(path) : p.getFolder(path));
+			}
+		} catch (UnsupportedOperationException e) {
+			//Too old a version of Gradle, the model has no linked resources.
+		}
+		return targets;
+	}
+
+	private static void addTarget(List<IResource> targets, IResource target) {
+		for (Iterator<IResource> iter = targets.iterator(); iter.hasNext();) {
+			IResource existing = iter.next();
+			if (existing.getFullPath().isPrefixOf(target.getFullPath())) {
+				return;
+			} else if (target.getFullPath().isPrefixOf(existing.getFullPath())) {
+				iter.remove();
+			}
+		}
+		targets.add(target);
+	}
+
+	/**
+	 * Make sure folders containing a resource that only exists on disk are known to the workspace,
+	 * without refreshing their other members.
+	 */
+	private static void createParents(IResource target) {
+		IContainer parent = target.getParent();
+		if (parent!=null && parent.getType()==IResource.FOLDER && !parent.exists()) {
+			createParents(parent);
+			try {
+				parent.refreshLocal(IResource.DEPTH_ZERO, null);
+			} catch (CoreException e) {
+				GradleCore.log(e);
+			}
+		}
+	}
+
+}
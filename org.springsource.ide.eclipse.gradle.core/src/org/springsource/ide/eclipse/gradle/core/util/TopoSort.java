@@ -11,17 +11,20 @@
 package org.springsource.ide.eclipse.gradle.core.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
+import org.eclipse.core.runtime.Assert;
+
 /**
- * Class that implements a simple topological sort algorithm. The algorithm should be able to
+ * Class that implements a topological sort algorithm. The algorithm should be able to
  * handle cycles. (I.e. still produce some kind of sorting order even the partial order provided
  * isn't a true partial ordering.
  * <p>
@@ -87,7 +90,7 @@ public class TopoSort<T> {
 		Collection<T> getPredecessors(T o1);
 	}
 
-	private HashSet<T> elementsToSort;
+	private List<T> elementsToSort;
 	private ModifyablePartialOrder<T> graph;
 	private ArrayList<T> sortedElements;
 
@@ -96,7 +99,7 @@ public class TopoSort<T> {
 	 * The collection of elements should not contain any duplicates!
 	 */
 	public TopoSort(Collection<T> elements, PartialOrder<T> compare) {
-		this.elementsToSort = new LinkedHashSet<T>(elements);
+		this.elementsToSort = new ArrayList<T>(new LinkedHashSet<T>(elements));
 		this.graph = new ModifyablePartialOrder<T>(compare);
 	}
 	
@@ -111,54 +114,215 @@ public class TopoSort<T> {
 		}
 	}
 
+	/**
+	 * Sorts in three steps, each linear in the size of the graph:
+	 * <ol>
+	 *   <li>Ask for the predecessors of each element (once) and number the elements and edges.</li>
+	 *   <li>Find the cycles, as the strongly connected components of the graph (Tarjan's algorithm),
+	 *     and cut each of them by removing the edges that lead back to an element on the current path
+	 *     of a depth first search of the component.</li>
+	 *   <li>Sort the resulting DAG by repeatedly emitting an element whose predecessors have all been
+	 *     emitted (Kahn's algorithm). When there's a choice, elements are emitted in the order they
+	 *     were given in. This makes the result deterministic and keeps unrelated elements in their
+	 *     original order.</li>
+	 * </ol>
+	 * None of the steps use recursion, so long chains of dependencies are fine.
+	 */
 	private void sort() {
-		sortedElements = new ArrayList<T>();
-		while (!elementsToSort.isEmpty()) {
-			T element = chase(getElement(elementsToSort), new HashSet<T>());
-			elementsToSort.remove(element);
-			sortedElements.add(element);
+		int n = elementsToSort.size();
+		Map<T, Integer> index = new HashMap<T, Integer>(n*2);
+		for (int i = 0; i < n; i++) {
+			index.put(elementsToSort.get(i), i);
 		}
+		int[][] preds = new int[n][];
+		for (int i = 0; i < n; i++) {
+			preds[i] = predecessors(i, index);
+		}
+		boolean[][] cut = cutCycles(preds);
+		sortedElements = kahn(preds, cut);
 	}
 
 	/**
-	 * Chase down a path following pred relationship until we find an element that has no more pred in the elementsToSort.
+	 * @return Indexes of the predecessors of an element, limited to elements being sorted and
+	 *     excluding the element itself.
 	 */
-	private T chase(T element, HashSet<T> seen) {
-		//TODO: optimise: use while loop instead of recursion
-		T pred = getPred(element, seen);
-		if (pred==null) {
-			return element;
-		} else {
-			seen.add(element);
-			return chase(pred, seen);
+	private int[] predecessors(int i, Map<T, Integer> index) {
+		Collection<T> preds = graph.getPredecessors(elementsToSort.get(i));
+		if (preds==null || preds.isEmpty()) {
+			return NO_PREDS;
 		}
+		int[] result = new int[preds.size()];
+		int count = 0;
+		for (T p : preds) {
+			Integer pi = index.get(p);
+			if (pi!=null && pi!=i) {
+				result[count++] = pi;
+			}
+		}
+		return count==result.length ? result : Arrays.copyOf(result, count);
 	}
 
+	private static final int[] NO_PREDS = new int[0];
+
 	/**
-	 * Get a pred of given element, limited to preds that are still in elementsToSort
-	 * and are not excluded because of cycle detection. If cycle detection is used
-	 * to exclude a pred... the hasCycles flag will be set.
+	 * Find strongly connected components with (an iterative version of) Tarjan's algorithm. For each
+	 * component with more than one element, break its cycles.
+	 *
+	 * @return For each element, flags marking the edges to its predecessors that were removed.
+	 *     Null for elements that didn't lose any edges.
 	 */
-	private T getPred(T element, HashSet<T> seen) {
-		Collection<T> preds = graph.getPredecessors(element);
-		for (T p : preds) {
-			if (!p.equals(element) && elementsToSort.contains(p)) {
-				if (seen.contains(p)) {
-					graph.removePred(element, p);
+	private boolean[][] cutCycles(int[][] preds) {
+		int n = preds.length;
+		boolean[][] cut = new boolean[n][];
+		int[] order = new int[n]; // discovery order + 1, 0 means 'not visited yet'
+		int[] low = new int[n];
+		int[] component = new int[n];
+		Arrays.fill(component, -1);
+		int[] next = new int[n]; // next pred to look at, per element on the dfs stack
+		int[] dfs = new int[n];
+		int[] tarjan = new int[n];
+		int counter = 0;
+		int components = 0;
+		for (int start = 0; start < n; start++) {
+			if (order[start]!=0) {
+				continue;
+			}
+			int dfsTop = 0;
+			int tarjanTop = 0;
+			dfs[dfsTop++] = start;
+			order[start] = low[start] = ++counter;
+			tarjan[tarjanTop++] = start;
+			while (dfsTop>0) {
+				int v = dfs[dfsTop-1];
+				if (next[v]<preds[v].length) {
+					int w = preds[v][next[v]++];
+					if (order[w]==0) {
+						order[w] = low[w] = ++counter;
+						tarjan[tarjanTop++] = w;
+						dfs[dfsTop++] = w;
+					} else if (component[w]<0) { // w is on the tarjan stack
+						low[v] = Math.min(low[v], order[w]);
+					}
 				} else {
-					return p; //Found a good one to chase!
+					dfsTop--;
+					if (dfsTop>0) {
+						int parent = dfs[dfsTop-1];
+						low[parent] = Math.min(low[parent], low[v]);
+					}
+					if (low[v]==order[v]) {
+						int bottom = tarjanTop;
+						do {
+							component[tarjan[--bottom]] = components;
+						} while (tarjan[bottom]!=v);
+						if (tarjanTop-bottom>1) {
+							int[] members = Arrays.copyOfRange(tarjan, bottom, tarjanTop);
+							Arrays.sort(members);
+							cutCycles(members, components, preds, component, next, cut);
+						}
+						tarjanTop = bottom;
+						components++;
+					}
 				}
 			}
 		}
-		return null; //No acceptable pred found
+		return cut;
 	}
 
 	/**
-	 * Get some element from a set. We don't care which one as long as it is in the set.
+	 * Make a strongly connected component acyclic by removing the edges that lead back to an element on
+	 * the path of a depth first search of the component. To be deterministic, the searches start from the
+	 * component's elements in the order they were given in.
+	 *
+	 * @param members The elements in the component, sorted.
+	 * @param next Scratch space to track the next pred to look at, per element on the search path.
 	 */
-	private T getElement(HashSet<T> set) {
-		Iterator<T> iter = set.iterator();
-		return iter.next();
+	private void cutCycles(int[] members, int c, int[][] preds, int[] component, int[] next, boolean[][] cut) {
+		final int VISITED = -2;
+		final int DONE = -3;
+		for (int v : members) {
+			component[v] = VISITED; //temporarily, so that elements on the search path can be told apart
+			next[v] = 0;
+		}
+		int[] path = new int[members.length];
+		for (int start : members) {
+			if (component[start]!=VISITED || next[start]>0) {
+				continue;
+			}
+			int top = 0;
+			path[top++] = start;
+			while (top>0) {
+				int v = path[top-1];
+				if (next[v]<preds[v].length) {
+					int i = next[v]++;
+					int w = preds[v][i];
+					if (component[w]==VISITED) {
+						if (next[w]>0) { //on the search path: cut the edge
+							if (cut[v]==null) {
+								cut[v] = new boolean[preds[v].length];
+							}
+							cut[v][i] = true;
+							graph.removePred(elementsToSort.get(v), elementsToSort.get(w));
+						} else {
+							path[top++] = w;
+						}
+					}
+				} else {
+					top--;
+					component[v] = DONE;
+				}
+			}
+		}
+		for (int v : members) {
+			component[v] = c;
+		}
+	}
+
+	/**
+	 * Kahn's algorithm, on the graph without the edges that were cut.
+	 */
+	private ArrayList<T> kahn(int[][] preds, boolean[][] cut) {
+		int n = preds.length;
+		int[] remaining = new int[n]; // number of preds not emitted yet
+		int[] succCount = new int[n];
+		for (int v = 0; v < n; v++) {
+			for (int i = 0; i < preds[v].length; i++) {
+				if (cut[v]==null || !cut[v][i]) {
+					remaining[v]++;
+					succCount[preds[v][i]]++;
+				}
+			}
+		}
+		int[][] succs = new int[n][];
+		for (int v = 0; v < n; v++) {
+			succs[v] = succCount[v]==0 ? NO_PREDS : new int[succCount[v]];
+			succCount[v] = 0;
+		}
+		for (int v = 0; v < n; v++) {
+			for (int i = 0; i < preds[v].length; i++) {
+				if (cut[v]==null || !cut[v][i]) {
+					int p = preds[v][i];
+					succs[p][succCount[p]++] = v;
+				}
+			}
+		}
+		PriorityQueue<Integer> ready = new PriorityQueue<Integer>();
+		for (int v = 0; v < n; v++) {
+			if (remaining[v]==0) {
+				ready.add(v);
+			}
+		}
+		ArrayList<T> sorted = new ArrayList<T>(n);
+		while (!ready.isEmpty()) {
+			int v = ready.poll();
+			sorted.add(elementsToSort.get(v));
+			for (int s : succs[v]) {
+				if (--remaining[s]==0) {
+					ready.add(s);
+				}
+			}
+		}
+		Assert.isTrue(sorted.size()==n, "Cycles were not cut properly");
+		return sorted;
 	}
 
 	public boolean hasCycle() {
@@ -14,8 +14,6 @@ import java.io.File;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ResourcesPlugin;
-import org.eclipse.core.runtime.IPath;
-import org.eclipse.core.runtime.Path;
 
 /**
  * Utility methods related workspace and resources in the workspace.
@@ -38,21 +36,7 @@ public class WorkspaceUtil {
 	 * If no project is found, null is returned.
 	 */
 	public static IProject getContainingProject(File file) {
-		IPath path = new Path(file.getAbsolutePath());
-		int longest = 0;
-		IProject found = null;
-		for (IProject p : getProjects()) {
-			IPath loc = p.getLocation();
-			if (loc!=null && loc.isPrefixOf(path)) {
-				//Found a match
-				if (loc.segmentCount()>longest) {
-					//Only keep longest match
-					found = p;
-					longest = loc.segmentCount();
-				}
-			}
-		}
-		return found;
+		return ProjectLocationIndex.getInstance().getContainingProject(file);
 	}
 
 	public static IProject[] getProjects() {
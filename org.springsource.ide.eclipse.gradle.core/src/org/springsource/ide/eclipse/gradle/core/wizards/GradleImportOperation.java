@@ -26,6 +26,7 @@ import org.eclipse.core.resources.IProjectDescription;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceFilterDescription;
 import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
@@ -60,12 +61,17 @@ import org.springsource.ide.eclipse.gradle.core.TaskUtil;
 import org.springsource.ide.eclipse.gradle.core.TaskUtil.ITaskProvider;
 import org.springsource.ide.eclipse.gradle.core.actions.GradleRefreshPreferences;
 import org.springsource.ide.eclipse.gradle.core.classpathcontainer.FastOperationFailedException;
+import org.springsource.ide.eclipse.gradle.core.classpathcontainer.GradleClassPathContainer;
+import org.springsource.ide.eclipse.gradle.core.preferences.AbstractGradleProjectPreferences;
 import org.springsource.ide.eclipse.gradle.core.util.ErrorHandler;
 import org.springsource.ide.eclipse.gradle.core.util.ExceptionUtil;
 import org.springsource.ide.eclipse.gradle.core.util.GradleProjectSorter;
 import org.springsource.ide.eclipse.gradle.core.util.GradleProjectUtil;
 import org.springsource.ide.eclipse.gradle.core.util.JobUtil;
 import org.springsource.ide.eclipse.gradle.core.util.NatureUtils;
+import org.springsource.ide.eclipse.gradle.core.util.ProjectFamilyExecutor;
+import org.springsource.ide.eclipse.gradle.core.util.ProjectFamilyExecutor.ProjectWork;
+import org.springsource.ide.eclipse.gradle.core.util.RefreshPlanner;
 import org.springsource.ide.eclipse.gradle.core.util.ResourceFilterFactory;
 import org.springsource.ide.eclipse.gradle.core.wizards.PrecomputedProjectMapper.NameClashException;
 
@@ -159,8 +165,9 @@ public class GradleImportOperation {
 	}
 	
 	public void perform(ErrorHandler eh, IProgressMonitor monitor) throws CoreException, OperationCanceledException {
-		int totalWork = projectsToImport.size();
-		int tasksWork = (totalWork+4)/5;
+		int importWork = projectsToImport.size();
+		int totalWork = importWork*4;
+		int tasksWork = (importWork+4)/5;
 		if (doBeforeTasks) {
 			totalWork += tasksWork;
 		}
@@ -180,11 +187,16 @@ public class GradleImportOperation {
 				if (tasksExecuted) {
 					refreshProjectPreferences(sorted);
 				}
-					
-				for (HierarchicalEclipseProject project : sorted) {
-					importProject(project, eh, new SubProgressMonitor(monitor, 1));
-					JobUtil.checkCanceled(monitor);
-				}
+
+				// Import in phases. Each phase deals with all the projects at once, so that the workspace and JDT
+				// see a few big changes rather than many small ones.
+				buildModels(sorted, new SubProgressMonitor(monitor, importWork));
+				JobUtil.checkCanceled(monitor);
+				List<ProjectImport> imports = createProjects(sorted, eh, new SubProgressMonitor(monitor, importWork));
+				JobUtil.checkCanceled(monitor);
+				configureClasspaths(imports, eh, new SubProgressMonitor(monitor, importWork));
+				JobUtil.checkCanceled(monitor);
+				configureProjects(imports, eh, new SubProgressMonitor(monitor, importWork));
 				
 				// Execute "after" tasks and refresh projects because they've been imported by now
 				tasksExecuted = doAfterTasks(sorted, eh, new SubProgressMonitor(monitor, tasksWork-tasksWork/3));
@@ -198,6 +210,162 @@ public class GradleImportOperation {
 			monitor.done();
 		}
 	}
+
+	/**
+	 * State of a project being imported, passed from one phase of the import to the next.
+	 */
+	private static class ProjectImport {
+		final HierarchicalEclipseProject model;
+		final GradleProject gradleProject;
+		final boolean wasDependencyManaged;
+		IProject project;
+
+		ProjectImport(HierarchicalEclipseProject model) {
+			this.model = model;
+			this.gradleProject = GradleCore.create(model);
+			//For reimport case we must preserve whether the project has dep managment enabled.
+			// We must check this early on before the .classpath is obliterated by the reimport.
+			this.wasDependencyManaged = gradleProject.isDependencyManaged();
+		}
+	}
+
+	/**
+	 * Builds the models the import needs, so that the later phases find them in the model cache. Models for
+	 * projects in different build families are built concurrently.
+	 * <p>
+	 * Errors are ignored here. They are reported by the phase that needs the model.
+	 */
+	private void buildModels(List<HierarchicalEclipseProject> sorted, IProgressMonitor monitor) {
+		List<GradleProject> projects = new ArrayList<GradleProject>(sorted.size());
+		for (HierarchicalEclipseProject p : sorted) {
+			projects.add(GradleCore.create(p));
+		}
+		int concurrency = GradleCore.getInstance().getPreferences().getMaxConcurrentBuilds();
+		try {
+			new ProjectFamilyExecutor("Build project models", concurrency).execute(projects, monitor, new ProjectWork() {
+				public void run(GradleProject project, IProgressMonitor mon) throws Exception {
+					try {
+						project.getGradleModel(mon);
+					} catch (CoreException e) {
+						//Ignore: reported later.
+					}
+				}
+			});
+		} catch (OperationCanceledException e) {
+			throw e;
+		} catch (Exception e) {
+			GradleCore.log(e);
+		}
+	}
+
+	/**
+	 * Creates (or, on reimport, refreshes) the workspace projects. This is done in a single workspace
+	 * operation, so resource change listeners see one delta for all the projects.
+	 * 
+	 * @return The projects that were created successfully.
+	 */
+	private List<ProjectImport> createProjects(final List<HierarchicalEclipseProject> sorted, final ErrorHandler eh, IProgressMonitor monitor) throws CoreException {
+		final List<ProjectImport> imports = new ArrayList<ProjectImport>(sorted.size());
+		IWorkspace ws = ResourcesPlugin.getWorkspace();
+		ws.run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				monitor.beginTask("Create projects", sorted.size()*2);
+				try {
+					for (HierarchicalEclipseProject model : sorted) {
+						ProjectImport it = new ProjectImport(model);
+						try {
+							it.project = createProject(it, eh, new SubProgressMonitor(monitor, 1));
+							imports.add(it);
+						} catch (Exception e) {
+							eh.handleError(e);
+						}
+						JobUtil.checkCanceled(monitor);
+					}
+					
+					//Write pending preferences, so the workspace sees .settings files when it opens/refreshes the projects.
+					AbstractGradleProjectPreferences.flushNow();
+					for (Iterator<ProjectImport> iter = imports.iterator(); iter.hasNext();) {
+						ProjectImport it = iter.next();
+						try {
+							openProject(it, new SubProgressMonitor(monitor, 1));
+						} catch (Exception e) {
+							eh.handleError(e);
+							iter.remove();
+						}
+						JobUtil.checkCanceled(monitor);
+					}
+				} finally {
+					monitor.done();
+				}
+			}
+		}, ws.getRoot(), IWorkspace.AVOID_UPDATE, monitor);
+		return imports;
+	}
+
+	/**
+	 * Sets up natures and classpaths of the imported projects. Classpath changes are batched into a single
+	 * JDT operation, after which JDT is told about all the Gradle classpath containers at once.
+	 */
+	private void configureClasspaths(final List<ProjectImport> imports, final ErrorHandler eh, IProgressMonitor monitor) throws CoreException {
+		monitor.beginTask("Configure classpaths", imports.size()+1);
+		try {
+			JavaCore.run(new IWorkspaceRunnable() {
+				public void run(IProgressMonitor monitor) throws CoreException {
+					monitor.beginTask("Configure classpaths", imports.size());
+					try {
+						for (ProjectImport it : imports) {
+							try {
+								configureClasspath(it, eh, new SubProgressMonitor(monitor, 1));
+							} catch (Exception e) {
+								eh.handleError(e);
+							}
+							JobUtil.checkCanceled(monitor);
+						}
+					} finally {
+						monitor.done();
+					}
+				}
+			}, ResourcesPlugin.getWorkspace().getRoot(), new SubProgressMonitor(monitor, imports.size()));
+			
+			List<GradleClassPathContainer> containers = new ArrayList<GradleClassPathContainer>(imports.size());
+			for (ProjectImport it : imports) {
+				GradleClassPathContainer container = it.gradleProject.getClassPathcontainer();
+				if (container!=null) {
+					containers.add(container);
+				}
+			}
+			GradleClassPathContainer.notifyJDT(containers);
+			monitor.worked(1);
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Runs the contributed project configurators and adds the projects to working sets.
+	 */
+	private void configureProjects(List<ProjectImport> imports, ErrorHandler eh, IProgressMonitor monitor) {
+		final boolean haveWorkingSets = workingSets.length>0 || quickWorkingSetName!=null;
+		monitor.beginTask("Configure projects", imports.size()*2);
+		try {
+			for (ProjectImport it : imports) {
+				try {
+					// Configure project. Delegated to clients.
+					ProjectConfigurationManager.getInstance().configure(
+							new ProjectConfigurationRequest(it.gradleProject.getGradleModel(),
+									it.project), new SubProgressMonitor(monitor, 1));
+					if (haveWorkingSets) {
+						addToWorkingSets(it.project, new SubProgressMonitor(monitor, 1));
+					}
+				} catch (Exception e) {
+					eh.handleError(e);
+				}
+				JobUtil.checkCanceled(monitor);
+			}
+		} finally {
+			monitor.done();
+		}
+	}
 	
 	private void refreshProjectPreferences(List<HierarchicalEclipseProject> projects) {
 		for (HierarchicalEclipseProject p : projects) {
@@ -206,15 +374,24 @@ public class GradleImportOperation {
 		}
 	}
 
-	private void markBuildFolderAsDerived(List<HierarchicalEclipseProject> sorted, IProgressMonitor mon) {
-		mon.beginTask("Mark derived resources", sorted.size());
+	private void markBuildFolderAsDerived(final List<HierarchicalEclipseProject> sorted, IProgressMonitor mon) {
+		IWorkspace ws = ResourcesPlugin.getWorkspace();
 		try {
-			for (HierarchicalEclipseProject hp : sorted) {
-				GradleProject gp = GradleCore.create(hp);
-				markBuildFolderAsDerived(gp, new SubProgressMonitor(mon, 1));
-			}
-		} finally {
-			mon.done();
+			ws.run(new IWorkspaceRunnable() {
+				public void run(IProgressMonitor mon) throws CoreException {
+					mon.beginTask("Mark derived resources", sorted.size());
+					try {
+						for (HierarchicalEclipseProject hp : sorted) {
+							GradleProject gp = GradleCore.create(hp);
+							markBuildFolderAsDerived(gp, new SubProgressMonitor(mon, 1));
+						}
+					} finally {
+						mon.done();
+					}
+				}
+			}, ws.getRoot(), IWorkspace.AVOID_UPDATE, mon);
+		} catch (CoreException e) {
+			GradleCore.log(e);
 		}
 	}
 
@@ -248,9 +425,8 @@ public class GradleImportOperation {
 		mon.beginTask("Refreshing projects", sorted.size()*2);
 		try {
 			for (HierarchicalEclipseProject _p : sorted) {
-				IProject p = GradleCore.create(_p).getProject();
 				try {
-					p.refreshLocal(IResource.DEPTH_INFINITE, new SubProgressMonitor(mon, 1));
+					RefreshPlanner.refresh(GradleCore.create(_p), new SubProgressMonitor(mon, 1));
 				} catch (CoreException e) {
 					GradleCore.log(e);
 				}
@@ -319,25 +495,12 @@ public class GradleImportOperation {
 		}
 	}
 	
-	private void importProject(HierarchicalEclipseProject projectModel, ErrorHandler eh, IProgressMonitor monitor) {
-		final boolean haveWorkingSets = workingSets.length>0 || quickWorkingSetName!=null;
+	private IProject createProject(ProjectImport it, ErrorHandler eh, IProgressMonitor monitor) throws Exception {
+		HierarchicalEclipseProject projectModel = it.model;
 		//This provisional implementation just creates a linked project pointing to wherever the root folder
 		// is pointing to.
-		int totalWork = 8;
-		if (addResourceFilters) { 
-			totalWork++; //9
-		}
-		if (haveWorkingSets) {
-			totalWork++; //10
-		}
-		monitor.beginTask("Import "+projectModel.getName(), totalWork);
+		monitor.beginTask("Create "+projectModel.getName(), 3);
 		try {
-			GradleProject gProj = GradleCore.create(projectModel);
-			
-			//For reimport case we must preserve whether the project has dep managment enabled.
-			// We must check this early on before the .classpath is obliterated by the reimport.
-			boolean wasDependencyManaged = gProj.isDependencyManaged();
-			
 			//1
 			IWorkspace ws = ResourcesPlugin.getWorkspace();
 			String projectName = getEclipseName(projectModel);
@@ -364,12 +527,13 @@ public class GradleImportOperation {
 			IProject project = ws.getRoot().getProject(projectName);
 			if (isReimport) {
 				Assert.isLegal(project.exists());
+				monitor.worked(1);
 			} else {
 				project.create(projectDescription, new SubProgressMonitor(monitor, 1));
 			}
 
 			//3
-			GradleRefreshPreferences refreshPrefs = gProj.getRefreshPreferences();
+			GradleRefreshPreferences refreshPrefs = it.gradleProject.getRefreshPreferences();
 			if (!isReimport) {
 				refreshPrefs.copyFrom(this);
 			}
@@ -378,21 +542,38 @@ public class GradleImportOperation {
 			if ((!isReimport && addResourceFilters) || (isReimport && refreshPrefs.getAddResourceFilters())) {
 				createResourceFilters(project, projectModel, new SubProgressMonitor(monitor, 1));
 			}
-			
-			//5
+			return project;
+		} finally {
+			monitor.done();
+		}
+	}
+
+	private void openProject(ProjectImport it, IProgressMonitor monitor) throws CoreException {
+		IProject project = it.project;
+		monitor.beginTask("Open "+project.getName(), 2);
+		try {
 			if (isReimport) {
 				String comment = project.getDescription().getComment();
-				project.refreshLocal(IResource.DEPTH_INFINITE, new SubProgressMonitor(monitor, 1));
+				RefreshPlanner.refresh(it.gradleProject, new SubProgressMonitor(monitor, 1));
 				// Keep the comment after refresh
 				IProjectDescription description = project.getDescription();
 				description.setComment(comment);
 				project.setDescription(description, new SubProgressMonitor(monitor, 1));
 				forceClasspathUpToDate(project);
 			} else {
-				project.open(new SubProgressMonitor(monitor, 1));
+				project.open(new SubProgressMonitor(monitor, 2));
 			}
-			
-			//6..7
+		} finally {
+			monitor.done();
+		}
+	}
+
+	private void configureClasspath(ProjectImport it, ErrorHandler eh, IProgressMonitor monitor) throws CoreException {
+		IProject project = it.project;
+		GradleProject gProj = it.gradleProject;
+		monitor.beginTask("Configure classpath of "+project.getName(), 4);
+		try {
+			//1..2
 			if (project.hasNature(GradleNature.OLD_NATURE_ID)) {
 				// project needs migration (i.e. remove old nature and classpath container entries)
 				NatureUtils.remove(project, GradleNature.OLD_NATURE_ID,  new SubProgressMonitor(monitor, 1));
@@ -411,11 +592,11 @@ public class GradleImportOperation {
 				monitor.worked(2);
 			}	
 			
-			//8..9
-			boolean generateOnly = isReimport ? !wasDependencyManaged : !getEnableDependencyManagement();
+			//3..4
+			boolean generateOnly = isReimport ? !it.wasDependencyManaged : !getEnableDependencyManagement();
 			if (generateOnly) {
 				try {
-					NatureUtils.ensure(project, new SubProgressMonitor(monitor, 1), 
+					NatureUtils.ensure(project, new SubProgressMonitor(monitor, 2), 
 								GradleNature.NATURE_ID, //Must be first to make gradle project icon have gradle nature showing 
 								JavaCore.NATURE_ID
 					);
@@ -425,21 +606,7 @@ public class GradleImportOperation {
 			} else {
 				gProj.convertToGradleProject(projectMapper, eh, new SubProgressMonitor(monitor, 2));
 			}
-			
-			// Configure project. Delegated to clients.
-			ProjectConfigurationManager.getInstance().configure(
-					new ProjectConfigurationRequest(gProj.getGradleModel(),
-							gProj.getProject()), monitor);
-			
-			//10
-			if (haveWorkingSets) {
-				addToWorkingSets(project, new SubProgressMonitor(monitor, 1));
-			}
-			
-		} catch (Exception e) {
-			eh.handleError(e);
-		}
-		finally {
+		} finally {
 			monitor.done();
 		}
 	}